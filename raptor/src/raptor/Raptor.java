@@ -39,13 +39,17 @@ import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
 import raptor.service.ActionScriptService;
 import raptor.service.AliasService;
+import raptor.service.AnalysisCacheService;
 import raptor.service.ChessBoardCacheService;
 import raptor.service.ConnectorService;
 import raptor.service.DictionaryService;
 import raptor.service.EcoService;
 import raptor.service.MemoService;
+import raptor.service.OpeningExplorerService;
+import raptor.service.PolyglotBookService;
 import raptor.service.ScriptService;
 import raptor.service.SoundService;
+import raptor.service.StartupService;
 import raptor.service.ThemeService;
 import raptor.service.ThreadService;
 import raptor.service.UCIEngineService;
@@ -75,6 +79,8 @@ public class Raptor implements PreferenceKeys {
 			System.getProperty("user.home") + "/" + APP_HOME_DIR);
 	public static final String USER_RAPTOR_HOME_PATH = USER_RAPTOR_DIR
 			.getAbsolutePath();
+	public static final File INSTALL_MANIFEST = new File(USER_RAPTOR_DIR,
+			"installManifest.properties");
 	public static final String ICONS_DIR = "resources/icons/";
 	public static final String IMAGES_DIR = "resources/images/";
 	public static final String RESOURCES_SCRIPTS = "resources/scripts";
@@ -92,6 +98,16 @@ public class Raptor implements PreferenceKeys {
 		instance.init();
 	}
 
+	/**
+	 * Creates an instance without a display for headless tools such as the
+	 * IcsReplayBenchmark. Only the preferences are available, there are no
+	 * registries, clipboard or window, and isDisposed returns true.
+	 */
+	public static void createHeadlessInstance() {
+		instance = new Raptor(true);
+		instance.preferences = new RaptorPreferenceStore();
+	}
+
 	/**
 	 * Print message and stop application: cannot rely on standard logging and
 	 * error processing code because the Java version is too old so those
@@ -203,6 +219,10 @@ public class Raptor implements PreferenceKeys {
 						FileUtils.deleteDir(new File(USER_RAPTOR_HOME_PATH
 								+ "/imagecache"));
 
+						StartupService.getInstance().markMilestone(
+								"RaptorWindow opened");
+						StartupService.getInstance().writeReportWhenComplete();
+
 					} catch (Throwable t) {
 						Raptor.getInstance().onError(
 								"Error initializing Raptor", t);
@@ -235,16 +255,13 @@ public class Raptor implements PreferenceKeys {
 	 */
 	private final RaptorLogger LOG = RaptorLogger.getLog(Raptor.class);
 
-	protected RaptorImageRegistry imageRegistry = new RaptorImageRegistry(
-			Display.getCurrent());
+	protected RaptorImageRegistry imageRegistry;
 
-	protected FontRegistry fontRegistry = new FontRegistry(Display.getCurrent());
+	protected FontRegistry fontRegistry;
 
-	protected ColorRegistry colorRegistry = new ColorRegistry(
-			Display.getCurrent());
+	protected ColorRegistry colorRegistry;
 
-	protected RaptorCursorRegistry cursorRegistry = new RaptorCursorRegistry(
-			Display.getCurrent());
+	protected RaptorCursorRegistry cursorRegistry;
 
 	protected RaptorPreferenceStore preferences;
 
@@ -261,9 +278,16 @@ public class Raptor implements PreferenceKeys {
 	private List<Integer> errorsDisplayed = new ArrayList<Integer>();
 
 	public Raptor() {
+		imageRegistry = new RaptorImageRegistry(Display.getCurrent());
+		fontRegistry = new FontRegistry(Display.getCurrent());
+		colorRegistry = new ColorRegistry(Display.getCurrent());
+		cursorRegistry = new RaptorCursorRegistry(Display.getCurrent());
 		clipboard = new Clipboard(display);
 	}
 
+	private Raptor(boolean isHeadless) {
+	}
+
 	/**
 	 * Displays an alert message centered in the RaptorWindow.
 	 */
@@ -398,6 +422,14 @@ public class Raptor implements PreferenceKeys {
 				&& instance.raptorWindow.getShell().isDisposed();
 	}
 
+	/**
+	 * Returns true if this instance was created by createHeadlessInstance and
+	 * has no display.
+	 */
+	public boolean isHeadless() {
+		return display == null;
+	}
+
 	public boolean isShutdown() {
 		return isShutdown;
 	}
@@ -606,6 +638,30 @@ public class Raptor implements PreferenceKeys {
 			}
 		}
 
+		if (OpeningExplorerService.serviceCreated) {
+			try {
+				OpeningExplorerService.getInstance().dispose();
+			} catch (Throwable t) {
+				LOG.warn("Error shutting down OpeningExplorerService", t);
+			}
+		}
+
+		if (AnalysisCacheService.serviceCreated) {
+			try {
+				AnalysisCacheService.getInstance().dispose();
+			} catch (Throwable t) {
+				LOG.warn("Error shutting down AnalysisCacheService", t);
+			}
+		}
+
+		if (PolyglotBookService.serviceCreated) {
+			try {
+				PolyglotBookService.getInstance().dispose();
+			} catch (Throwable t) {
+				LOG.warn("Error shutting down PolyglotBookService", t);
+			}
+		}
+
 		if (DictionaryService.serviceCreated) {
 			try {
 				DictionaryService.getInstance().dispose();
@@ -647,24 +703,84 @@ public class Raptor implements PreferenceKeys {
 	}
 
 	/**
-	 * Initializes raptor.
+	 * Initializes raptor. Installation and the services which do not require
+	 * the display are started in parallel by the StartupService. Only the
+	 * install is waited on here, the services are created on demand if the UI
+	 * requests them before their startup task runs.
 	 */
 	private void init() {
 		preferences = new RaptorPreferenceStore();
-		install();
 
-		ThreadService.getInstance();
+		StartupService startup = StartupService.getInstance();
+		startup.addTask("install", new String[0], new Runnable() {
+			public void run() {
+				install();
+			}
+		});
+		startup.addTask("EcoService", new String[0], new Runnable() {
+			public void run() {
+				EcoService.getInstance();
+			}
+		});
+		startup.addTask("SoundService", new String[0], new Runnable() {
+			public void run() {
+				SoundService.getInstance();
+			}
+		});
+		startup.addTask("AliasService", new String[0], new Runnable() {
+			public void run() {
+				AliasService.getInstance();
+			}
+		});
+		startup.addTask("DictionaryService", new String[] { "install" },
+				new Runnable() {
+					public void run() {
+						DictionaryService.getInstance();
+					}
+				});
+		startup.addTask("ScriptService", new String[] { "install" },
+				new Runnable() {
+					public void run() {
+						ScriptService.getInstance();
+					}
+				});
+		startup.addTask("ActionScriptService", new String[] { "install" },
+				new Runnable() {
+					public void run() {
+						ActionScriptService.getInstance();
+					}
+				});
+		startup.addTask("UserTagService", new String[] { "install" },
+				new Runnable() {
+					public void run() {
+						UserTagService.getInstance();
+					}
+				});
+		startup.addTask("MemoService", new String[] { "install" },
+				new Runnable() {
+					public void run() {
+						MemoService.getInstance();
+					}
+				});
+		startup.start();
+		startup.awaitTask("install");
+
 		ConnectorService.getInstance();
 	}
 
 	/**
 	 * Installs raptor. Currently this places everything in the default home
 	 * directory in the users raptor directory. This is so new releases will
-	 * always take effect.
+	 * always take effect. Only files changed since the last install, as
+	 * recorded in INSTALL_MANIFEST, are copied.
 	 */
 	private void install() {
 		try {
-			FileUtils.copyFiles(DEFAULT_HOME_DIR, USER_RAPTOR_DIR);
+			long startTime = System.currentTimeMillis();
+			int copied = FileUtils.copyChangedFiles(DEFAULT_HOME_DIR,
+					USER_RAPTOR_DIR, INSTALL_MANIFEST);
+			LOG.info("Installed " + copied + " changed files in "
+					+ (System.currentTimeMillis() - startTime) + "ms");
 
 			if (!new File(preferences.getString(APP_PGN_FILE)).exists()) {
 				new File(preferences.getString(APP_PGN_FILE)).createNewFile();
@@ -14,11 +14,14 @@
 package raptor;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jface.action.Action;
@@ -59,6 +62,8 @@ import org.eclipse.swt.widgets.ToolItem;
 import raptor.chat.ChatEvent;
 import raptor.chat.ChatType;
 import raptor.connector.Connector;
+import raptor.engine.uci.PgnAnnotator;
+import raptor.engine.uci.UCIEnginePool;
 import raptor.international.L10n;
 import raptor.layout.Layout;
 import raptor.pref.PreferenceKeys;
@@ -68,7 +73,10 @@ import raptor.service.AliasService;
 import raptor.service.ConnectorService;
 import raptor.service.LayoutService;
 import raptor.service.MemoService;
+import raptor.service.PolyglotBookService;
 import raptor.service.SoundService;
+import raptor.service.ThreadService;
+import raptor.service.UCIEngineService;
 import raptor.service.ThemeService;
 import raptor.service.ThemeService.Theme;
 import raptor.swt.BrowserWindowItem;
@@ -1383,6 +1391,53 @@ public class RaptorWindow extends ApplicationWindow {
 				}
 			}
 		});
+		fileMenu.add(new Action(local.getString("rapWinL64")) {
+			@Override
+			public void run() {
+				FileDialog fd = new FileDialog(getShell(), SWT.OPEN);
+				fd.setText(local.getString("rapWinL64"));
+				fd.setFilterExtensions(new String[] { "*.pgn", "*" });
+				final String selected = fd.open();
+				if (StringUtils.isBlank(selected)) {
+					return;
+				}
+				File pgnFile = new File(selected);
+				FileDialog saveDialog = new FileDialog(getShell(), SWT.SAVE);
+				saveDialog.setText(local.getString("rapWinL65"));
+				saveDialog.setFilterPath(pgnFile.getParent());
+				saveDialog.setFileName(pgnFile.getName().replaceAll("(?i)\\.pgn$", "") + "-annotated.pgn");
+				final String output = saveDialog.open();
+				if (StringUtils.isBlank(output)) {
+					return;
+				}
+
+				ThreadService.getInstance().run(new Runnable() {
+					public void run() {
+						// Use every core: half as many engines with two threads each.
+						int engines = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+						UCIEnginePool pool = UCIEngineService.getInstance().createEnginePool(engines, 2, 128);
+						if (!pool.start()) {
+							Raptor.getInstance().onError(local.getString("rapWinL66"));
+							return;
+						}
+						ExecutorService executor = Executors.newFixedThreadPool(engines);
+						try {
+							PgnAnnotator annotator = new PgnAnnotator(pool, executor,
+									PgnAnnotator.DEFAULT_GO_PARAMETERS);
+							annotator.setBook(PolyglotBookService.getInstance().getBook());
+							int games = annotator.annotate(new File(selected), new File(output));
+							Raptor.getInstance().alert(local.getString("rapWinL67", String.valueOf(games), output)
+									+ "\n" + annotator.getStatus());
+						} catch (IOException ioe) {
+							Raptor.getInstance().onError(local.getString("rapWinL68") + selected, ioe);
+						} finally {
+							executor.shutdown();
+							pool.quit();
+						}
+					}
+				});
+			}
+		});
 		fileMenu.add(new Separator());
 		fileMenu.add(new Action(local.getString("rapWinL6")) {
 			@Override
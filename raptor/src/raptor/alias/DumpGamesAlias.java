@@ -38,6 +38,9 @@ public class DumpGamesAlias extends RaptorAlias {
 					.getAllActiveGames();
 			for (Game game : games) {
                 output.append("Game ").append(game.getId()).append(":\n").append(game.toString());
+				output.append("\nUpdate queue: ").append(
+						controller.getConnector().getGameService()
+								.getGameQueueStats(game.getId())).append("\n");
 			}
 			return new RaptorAliasResult(null, output.toString());
 		}
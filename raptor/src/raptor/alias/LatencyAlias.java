@@ -0,0 +1,81 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.alias;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.Raptor;
+import raptor.service.LatencyTraceService;
+import raptor.service.SoundService;
+import raptor.swt.chat.ChatConsoleController;
+import raptor.util.RaptorStringTokenizer;
+
+public class LatencyAlias extends RaptorAlias {
+
+	public static final String DEFAULT_CSV_FILE = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/latency.csv";
+
+	public LatencyAlias() {
+		super(
+				"latency",
+				"Shows how long Raptor takes between reading a move from the socket and "
+						+ "painting it, and between you making a move and writing it to the socket, "
+						+ "and how long sounds take to start playing. "
+						+ "'latency reset' clears the data and 'latency csv' exports it to "
+						+ "$RAPTOR_HOME_DIR/latency.csv or the specified file.",
+				"'latency [reset | csv [fileName]]'. Example: 'latency csv'");
+	}
+
+	@Override
+	public RaptorAliasResult apply(ChatConsoleController controller,
+			String command) {
+		if (StringUtils.equalsIgnoreCase(command, "latency")) {
+			String soundLatency = SoundService.getInstance()
+					.getLatencyReport();
+			return new RaptorAliasResult(null, "latency output:\n"
+					+ LatencyTraceService.getInstance().getSummary()
+					+ (soundLatency == null ? "" : "sound: " + soundLatency
+							+ "\n"));
+		} else if (StringUtils.startsWithIgnoreCase(command, "latency ")) {
+			RaptorStringTokenizer tok = new RaptorStringTokenizer(command, " ",
+					true);
+			tok.nextToken();
+			String subCommand = tok.nextToken();
+			if (StringUtils.equalsIgnoreCase(subCommand, "reset")) {
+				LatencyTraceService.getInstance().reset();
+				return new RaptorAliasResult(null, "Latency data cleared.");
+			} else if (StringUtils.equalsIgnoreCase(subCommand, "csv")) {
+				File file = new File(tok.hasMoreTokens() ? tok
+						.getWhatsLeft().trim() : DEFAULT_CSV_FILE);
+				try {
+					LatencyTraceService.getInstance().writeCsv(file);
+					return new RaptorAliasResult(null,
+							"Latency data written to "
+									+ file.getAbsolutePath());
+				} catch (IOException ioe) {
+					return new RaptorAliasResult(null,
+							"Could not write latency data to "
+									+ file.getAbsolutePath() + ": "
+									+ ioe.getMessage());
+				}
+			}
+			return new RaptorAliasResult(null, "Invalid syntax: " + command
+					+ "\n" + getUsage());
+		}
+		return null;
+	}
+}
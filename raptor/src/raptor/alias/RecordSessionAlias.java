@@ -0,0 +1,80 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.alias;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.Raptor;
+import raptor.connector.ics.IcsConnector;
+import raptor.swt.chat.ChatConsoleController;
+
+public class RecordSessionAlias extends RaptorAlias {
+
+	public static final String RECORDINGS_DIR = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/recordings";
+
+	public RecordSessionAlias() {
+		super(
+				"recordsession",
+				"Records the raw text the server sends to $RAPTOR_HOME_DIR/recordings, "
+						+ "until 'recordsession stop' or disconnecting. Recordings can be replayed with "
+						+ "raptor.connector.ics.timeseal.LoopbackIcsServer and benchmarked with "
+						+ "raptor.connector.ics.IcsReplayBenchmark.",
+				"'recordsession [stop]'. Example: 'recordsession'");
+	}
+
+	@Override
+	public RaptorAliasResult apply(ChatConsoleController controller,
+			String command) {
+		if (!StringUtils.startsWithIgnoreCase(command, "recordsession")) {
+			return null;
+		}
+		if (!(controller.getConnector() instanceof IcsConnector)) {
+			return new RaptorAliasResult(null,
+					"recordsession is only supported on ICS connectors.");
+		}
+		IcsConnector connector = (IcsConnector) controller.getConnector();
+		String argument = command.substring("recordsession".length()).trim();
+
+		if (argument.equalsIgnoreCase("stop")) {
+			File file = connector.stopRecording();
+			return new RaptorAliasResult(null, file == null ? "Not recording."
+					: "Recording saved to " + file.getAbsolutePath());
+		} else if (argument.length() == 0) {
+			File directory = new File(RECORDINGS_DIR);
+			directory.mkdirs();
+			File file = new File(directory, connector.getShortName() + "-"
+					+ new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+					+ ".rec");
+			try {
+				if (connector.startRecording(file)) {
+					return new RaptorAliasResult(null, "Recording to "
+							+ file.getAbsolutePath());
+				}
+				return new RaptorAliasResult(null,
+						"You must be connected to record.");
+			} catch (IOException ioe) {
+				return new RaptorAliasResult(null, "Could not record to "
+						+ file.getAbsolutePath() + ": " + ioe.getMessage());
+			}
+		}
+		return new RaptorAliasResult(null, "Invalid syntax: " + command + "\n"
+				+ getUsage());
+	}
+}
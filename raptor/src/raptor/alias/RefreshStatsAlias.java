@@ -0,0 +1,50 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.alias;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.connector.Connector;
+import raptor.service.RefreshScheduler;
+import raptor.swt.chat.ChatConsoleController;
+
+public class RefreshStatsAlias extends RaptorAlias {
+
+	public RefreshStatsAlias() {
+		super(
+				"refreshstats",
+				"Shows how often the bugwho, sought and games lists of this connection "
+						+ "were requested, how many requests were merged into one already "
+						+ "outstanding, how many results came back unchanged, and the current "
+						+ "poll interval of each.",
+				"'refreshstats'. Example: 'refreshstats'");
+	}
+
+	@Override
+	public RaptorAliasResult apply(ChatConsoleController controller,
+			String command) {
+		if (StringUtils.equalsIgnoreCase(command, "refreshstats")) {
+			Connector connector = controller.getConnector();
+			RefreshScheduler scheduler = connector == null ? null : connector
+					.getRefreshScheduler();
+			if (scheduler == null) {
+				return new RaptorAliasResult(null,
+						"This connection does not poll any lists.");
+			}
+			return new RaptorAliasResult(null, "refreshstats output:\n"
+					+ scheduler.getStatistics());
+		}
+		return null;
+	}
+}
@@ -25,6 +25,7 @@ public class ChatEvent {
 	protected ChatType type;
 	protected int pingTime;
 	protected boolean hasSoundBeenHandled;
+	protected long logOffset = -1;
 
 	public ChatEvent() {
 		time = System.currentTimeMillis();
@@ -146,6 +147,19 @@ public class ChatEvent {
 		this.type = type;
 	}
 
+	/**
+	 * Returns the offset in the chat log the events logged before this one
+	 * end at, or -1 if it was not passed to a ChatLogger yet. Events which
+	 * are not logged themselves get an offset as well.
+	 */
+	public long getLogOffset() {
+		return logOffset;
+	}
+
+	public void setLogOffset(long logOffset) {
+		this.logOffset = logOffset;
+	}
+
 	public int getPingTime() {
 		return pingTime;
 	}
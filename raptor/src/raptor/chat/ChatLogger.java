@@ -18,6 +18,8 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -54,6 +56,8 @@ public class ChatLogger {
 	private static final RaptorLogger LOG = RaptorLogger
 			.getLog(ChatLogger.class);
 
+	private static final int BLOCK_SIZE = 8192;
+
 	protected String pathToFile;
 	protected Connector connector;
 
@@ -151,6 +155,91 @@ public class ChatLogger {
 		}
 	}
 
+	/**
+	 * Parses the events logged before the specified log offset, newest first,
+	 * and invokes the listener on each until it returns false. Sets the log
+	 * offset of each event parsed. Only the part of the file before the offset
+	 * is read.
+	 */
+	public void parseFileBackwards(long offset,
+			ChatEventParseListener listener) {
+		synchronized (this) {
+			RandomAccessFile file = null;
+			try {
+				File logFile = new File(pathToFile);
+				if (logFile.exists()) {
+					file = new RandomAccessFile(logFile, "r");
+					long position = Math.min(offset, file.length());
+					byte[] block = new byte[BLOCK_SIZE];
+					// The start of the line following the block.
+					byte[] lineStart = new byte[0];
+					boolean isParsing = true;
+					while (isParsing && position > 0) {
+						int length = (int) Math.min(BLOCK_SIZE, position);
+						position -= length;
+						file.seek(position);
+						file.readFully(block, 0, length);
+						int lineEnd = length;
+						for (int i = length - 1; i >= 0 && isParsing; i--) {
+							if (block[i] == '\n') {
+								isParsing = parseLine(join(block, i + 1,
+										lineEnd, lineStart), position + i + 1,
+										listener);
+								lineStart = new byte[0];
+								lineEnd = i;
+							}
+						}
+						lineStart = join(block, 0, lineEnd, lineStart);
+					}
+					if (isParsing) {
+						parseLine(lineStart, 0, listener);
+					}
+				}
+				listener.onParseCompleted();
+			} catch (IOException ioe) {
+				throw new RuntimeException(ioe);
+			} finally {
+				if (file != null) {
+					try {
+						file.close();
+					} catch (Throwable t) {
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns bytes from to to followed by tail.
+	 */
+	protected byte[] join(byte[] bytes, int from, int to, byte[] tail) {
+		byte[] result = new byte[to - from + tail.length];
+		System.arraycopy(bytes, from, result, 0, to - from);
+		System.arraycopy(tail, 0, result, to - from, tail.length);
+		return result;
+	}
+
+	/**
+	 * Passes the event on the line to the listener. Returns false if the
+	 * parse should cease.
+	 */
+	protected boolean parseLine(byte[] line, long offset,
+			ChatEventParseListener listener) {
+		if (line.length == 0) {
+			return true;
+		}
+		String currentLine = new String(line, Charset.defaultCharset());
+		try {
+			ChatEvent event = ChatEventUtils.deserializeChatEvent(currentLine);
+			event.setLogOffset(offset);
+			return listener.onNewEventParsed(event);
+		} catch (Throwable t) {
+			LOG.warn("Error reading chat event line " + currentLine
+					+ " skipping ChatEvent", t);
+			return true;
+		}
+	}
+
 	protected boolean vetoWrite(ChatEvent event) {
 		return event.getType() == ChatType.GAMES
 				|| event.getType() == ChatType.BUGWHO_ALL
@@ -165,10 +254,11 @@ public class ChatLogger {
 	 * the configured loggers in the users preferences.
 	 */
 	public void write(ChatEvent event) {
-		if (vetoWrite(event)) {
-			return;
-		}
 		synchronized (this) {
+			event.setLogOffset(new File(pathToFile).length());
+			if (vetoWrite(event)) {
+				return;
+			}
 			writeToLogFiles(event);
 			if (event.getMessage().length() < 1500) {
 				@SuppressWarnings("unused")
@@ -31,6 +31,7 @@ import static raptor.chess.util.GameUtils.pawnCapture;
 import static raptor.chess.util.GameUtils.pawnDoublePush;
 import static raptor.chess.util.GameUtils.pawnEpCapture;
 import static raptor.chess.util.GameUtils.pawnSinglePush;
+import static raptor.chess.util.PolyglotUtils.polyglot;
 import static raptor.chess.util.ZobristUtils.zobrist;
 
 import java.util.ArrayList;
@@ -47,6 +48,7 @@ import org.apache.commons.lang.WordUtils;
 import raptor.chess.pgn.PgnHeader;
 import raptor.chess.pgn.PgnUtils;
 import raptor.chess.util.GameUtils;
+import raptor.chess.util.PolyglotUtils;
 import raptor.chess.util.SanUtils;
 import raptor.chess.util.SanUtils.SanValidations;
 import raptor.service.EcoService;
@@ -76,6 +78,7 @@ public class ClassicGame implements Game {
 	protected Map<PgnHeader, String> pgnHeaderMap = new HashMap<PgnHeader, String>();
 	protected long[][] pieceBB = new long[2][7];
 	protected int[][] pieceCounts = new int[2][7];
+	protected long polyglotPositionHash;
 	protected int state;
 	protected long zobristGameHash;
 	protected long zobristPositionHash;
@@ -143,6 +146,7 @@ public class ClassicGame implements Game {
 		initialEpSquare = EMPTY_SQUARE;
 		zobristGameHash = 0L;
 		zobristPositionHash = 0L;
+		polyglotPositionHash = 0L;
 		moveRepHash = new int[MOVE_REP_CACHE_SIZE];
 		//notColorToMoveBB = 0L;
 		occupiedBB = 0L;
@@ -501,6 +505,16 @@ public class ClassicGame implements Game {
 		return board[square];
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getPolyglotKey() {
+		return polyglotPositionHash
+				^ PolyglotUtils.polyglot(colorToMove, PolyglotUtils
+						.polyglotEpFile(this), getCastling(WHITE),
+						getCastling(BLACK));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1044,6 +1058,7 @@ public class ClassicGame implements Game {
 					0, dropCounts[i].length);
 		}
 		gameToOverwrite.zobristPositionHash = zobristPositionHash;
+		gameToOverwrite.polyglotPositionHash = polyglotPositionHash;
 		gameToOverwrite.zobristGameHash = zobristGameHash;
 
 		if (!ignoreHashes) {
@@ -1240,6 +1255,9 @@ public class ClassicGame implements Game {
 	 */
 	public void setZobristPositionHash(long hash) {
 		zobristPositionHash = hash;
+		// The position hash is only set after the pieces are placed, so the
+		// Polyglot hash is reseeded from the board along with it.
+		polyglotPositionHash = PolyglotUtils.polyglotHashPositionOnly(this);
 	}
 
 	/**
@@ -1323,7 +1341,9 @@ public class ClassicGame implements Game {
 		int charsInCurrentLine = 0;
 
 		// TO DO: add breaking up lines in comments.
-		for (int i = 0; i < halfMoveCount; i++) {
+		// halfMoveCount starts at the FEN move number for set up positions, so
+		// it can't be used to count the moves played.
+		for (int i = 0; i < moves.getSize(); i++) {
 			int charsBefore = builder.length();
 			nextMoveRequiresNumber = PgnUtils.getMove(builder, moves
 					.get(i), nextMoveRequiresNumber);
@@ -2535,12 +2555,17 @@ public class ClassicGame implements Game {
 	protected void updateZobristDrop(Move move, int oppositeColor) {
 		zobristPositionHash ^= zobrist(move.getColor(), move.getPiece()
 				& NOT_PROMOTED_MASK, move.getTo());
+		polyglotPositionHash ^= polyglot(move.getColor(), move.getPiece()
+				& NOT_PROMOTED_MASK, move.getTo());
 	}
 
 	protected void updateZobristEP(Move move, int captureSquare) {
 		zobristPositionHash ^= zobrist(move.getColor(), PAWN, move.getFrom())
 				^ zobrist(move.getColor(), PAWN, move.getTo())
 				^ zobrist(move.getCaptureColor(), PAWN, captureSquare);
+		polyglotPositionHash ^= polyglot(move.getColor(), PAWN, move.getFrom())
+				^ polyglot(move.getColor(), PAWN, move.getTo())
+				^ polyglot(move.getCaptureColor(), PAWN, captureSquare);
 	}
 
 	protected void updateZobristHash() {
@@ -2558,6 +2583,14 @@ public class ClassicGame implements Game {
 						move.getTo())
 				^ zobrist(move.getColor(), move.getPiece() & NOT_PROMOTED_MASK,
 						move.getFrom());
+		polyglotPositionHash ^= polyglot(move.getColor(),
+				move.isPromotion() ? move.getPiecePromotedTo()
+						& NOT_PROMOTED_MASK : move.getPiece()
+						& NOT_PROMOTED_MASK, move.getTo())
+				^ polyglot(oppositeColor, move.getCapture() & NOT_PROMOTED_MASK,
+						move.getTo())
+				^ polyglot(move.getColor(), move.getPiece() & NOT_PROMOTED_MASK,
+						move.getFrom());
 	}
 
 	protected void updateZobristPOCastleKsideBlack() {
@@ -2565,6 +2598,10 @@ public class ClassicGame implements Game {
 				^ zobrist(BLACK, KING, SQUARE_G8)
 				^ zobrist(BLACK, ROOK, SQUARE_H8)
 				^ zobrist(BLACK, ROOK, SQUARE_F8);
+		polyglotPositionHash ^= polyglot(BLACK, KING, SQUARE_E8)
+				^ polyglot(BLACK, KING, SQUARE_G8)
+				^ polyglot(BLACK, ROOK, SQUARE_H8)
+				^ polyglot(BLACK, ROOK, SQUARE_F8);
 	}
 
 	protected void updateZobristPOCastleKsideWhite() {
@@ -2572,6 +2609,10 @@ public class ClassicGame implements Game {
 				^ zobrist(WHITE, KING, SQUARE_G1)
 				^ zobrist(WHITE, ROOK, SQUARE_H1)
 				^ zobrist(WHITE, ROOK, SQUARE_F1);
+		polyglotPositionHash ^= polyglot(WHITE, KING, SQUARE_E1)
+				^ polyglot(WHITE, KING, SQUARE_G1)
+				^ polyglot(WHITE, ROOK, SQUARE_H1)
+				^ polyglot(WHITE, ROOK, SQUARE_F1);
 	}
 
 	protected void updateZobristPOCastleQsideBlack() {
@@ -2579,6 +2620,10 @@ public class ClassicGame implements Game {
 				^ zobrist(BLACK, KING, SQUARE_C8)
 				^ zobrist(BLACK, ROOK, SQUARE_A8)
 				^ zobrist(BLACK, ROOK, SQUARE_D8);
+		polyglotPositionHash ^= polyglot(BLACK, KING, SQUARE_E8)
+				^ polyglot(BLACK, KING, SQUARE_C8)
+				^ polyglot(BLACK, ROOK, SQUARE_A8)
+				^ polyglot(BLACK, ROOK, SQUARE_D8);
 	}
 
 	protected void updateZobristPOCastleQsideWhite() {
@@ -2586,6 +2631,10 @@ public class ClassicGame implements Game {
 				^ zobrist(WHITE, KING, SQUARE_C1)
 				^ zobrist(WHITE, ROOK, SQUARE_A1)
 				^ zobrist(WHITE, ROOK, SQUARE_D1);
+		polyglotPositionHash ^= polyglot(WHITE, KING, SQUARE_E1)
+				^ polyglot(WHITE, KING, SQUARE_C1)
+				^ polyglot(WHITE, ROOK, SQUARE_A1)
+				^ polyglot(WHITE, ROOK, SQUARE_D1);
 	}
 
 	protected void updateZobristPONoCapture(Move move, int oppositeColor) {
@@ -2595,6 +2644,12 @@ public class ClassicGame implements Game {
 						& NOT_PROMOTED_MASK, move.getTo())
 				^ zobrist(move.getColor(), move.getPiece() & NOT_PROMOTED_MASK,
 						move.getFrom());
+		polyglotPositionHash ^= polyglot(move.getColor(),
+				move.isPromotion() ? move.getPiecePromotedTo()
+						& NOT_PROMOTED_MASK : move.getPiece()
+						& NOT_PROMOTED_MASK, move.getTo())
+				^ polyglot(move.getColor(), move.getPiece() & NOT_PROMOTED_MASK,
+						move.getFrom());
 	}
 
 	/**
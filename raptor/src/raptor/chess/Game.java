@@ -318,6 +318,14 @@ public interface Game extends GameConstants {
 	 */
 	public int getPieceWithPromoteMask(int square);
 
+	/**
+	 * Returns the Polyglot opening book key of the current position. This is
+	 * only meaningful for classic games.
+	 * 
+	 * @return The Polyglot key.
+	 */
+	public long getPolyglotKey();
+
 	/**
 	 * Returns a move list containing all pseudo legal moves.
 	 */
@@ -13,6 +13,9 @@
  */
 package raptor.chess;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import raptor.chess.pgn.PgnHeader;
 import raptor.util.RaptorLogger;
 
@@ -37,9 +40,22 @@ import raptor.util.RaptorLogger;
  * <p>
  * Cursor position 1 is the position after the first move is made.
  * </p>
+ * <p>
+ * Navigation does not copy the master game on every step. The cursor game is
+ * a private working copy which is moved forward or rolled back one half move
+ * at a time, and copies of the master are kept every
+ * <code>checkpointInterval</code> half moves so a random jump replays at most
+ * that many moves. A checkpoint interval of 0 restores the old behavior of
+ * copying the master and rolling it back on every navigation.
+ * </p>
  */
 public class GameCursor implements Game {
 
+	/**
+	 * The default number of half moves between navigation checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
 	public enum Mode {
 		/**
 		 * All moves and are made on the cursor game. The move list reflects the
@@ -65,6 +81,8 @@ public class GameCursor implements Game {
 
 	static final RaptorLogger LOG = RaptorLogger.getLog(GameCursor.class);
 
+	protected int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+	protected List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
 	protected Game cursor;
 	protected int cursorPosition;
 	protected int cursorPositionBeforeCursorMoves;
@@ -174,6 +192,10 @@ public class GameCursor implements Game {
 		return cursor.getBoard();
 	}
 
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
 	public int getCastling(int color) {
 		return cursor.getCastling(color);
 	}
@@ -290,6 +312,10 @@ public class GameCursor implements Game {
 		return cursor.getPieceWithPromoteMask(square);
 	}
 
+	public long getPolyglotKey() {
+		return cursor.getPolyglotKey();
+	}
+
 	public PriorityMoveList getPseudoLegalMoves() {
 		return cursor.getPseudoLegalMoves();
 	}
@@ -592,15 +618,28 @@ public class GameCursor implements Game {
 		}
 
 		if (cursorPosition != halfMoveIndex) {
-			cursor = master.deepCopy(true);
-			while (cursor.getMoveList().getSize() > halfMoveIndex) {
-				cursor.rollback();
+			if (checkpointInterval <= 0) {
+				cursor = master.deepCopy(true);
+				while (cursor.getMoveList().getSize() > halfMoveIndex) {
+					cursor.rollback();
+				}
+			} else {
+				navigateTo(halfMoveIndex);
 			}
 		}
 		cursorPosition = halfMoveIndex;
 
 	}
 
+	/**
+	 * Sets the number of half moves between navigation checkpoints. 0 disables
+	 * checkpoints and copies the master game on every navigation.
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = Math.max(0, checkpointInterval);
+		checkpoints.clear();
+	}
+
 	public void setCursorFirst() {
 		if (hasFirst()) {
 			setCursor(0);
@@ -740,4 +779,125 @@ public class GameCursor implements Game {
 		cursorPosition = cursor.getMoveList().getSize();
 		isInCursorSubline = true;
 	}
+
+	/**
+	 * Returns the checkpoint at or below the specified half move index,
+	 * creating any missing checkpoints. Checkpoints which no longer match the
+	 * master game are discarded first.
+	 */
+	protected Checkpoint getCheckpoint(int halfMoveIndex) {
+		MoveList masterMoves = master.getMoveList();
+		for (int i = 0; i < checkpoints.size(); i++) {
+			if (!checkpoints.get(i).isValid(masterMoves)) {
+				checkpoints.subList(i, checkpoints.size()).clear();
+				break;
+			}
+		}
+
+		if (checkpoints.isEmpty()) {
+			Game game = master.deepCopy(true);
+			List<Checkpoint> reversed = new ArrayList<Checkpoint>();
+			for (int ply = masterMoves.getSize(); ply >= 0; ply--) {
+				if (ply < masterMoves.getSize() && ply % checkpointInterval == 0) {
+					reversed.add(new Checkpoint(game.deepCopy(true), masterMoves
+							.get(ply)));
+				}
+				if (ply > 0) {
+					game.rollback();
+				}
+			}
+			for (int i = reversed.size() - 1; i >= 0; i--) {
+				checkpoints.add(reversed.get(i));
+			}
+		}
+
+		int index = halfMoveIndex / checkpointInterval;
+		if (index >= checkpoints.size()) {
+			Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+			Game game = last.game.deepCopy(true);
+			int ply = last.getHalfMoveIndex();
+			while (checkpoints.size() <= index) {
+				game.forceMove(masterMoves.get(ply++));
+				if (ply % checkpointInterval == 0) {
+					checkpoints.add(new Checkpoint(game.deepCopy(true),
+							masterMoves.get(ply)));
+				}
+			}
+		}
+		return checkpoints.get(index);
+	}
+
+	/**
+	 * Positions the cursor game at the specified half move index of the master
+	 * using the cheapest of stepping the current cursor game, rolling back a
+	 * copy of the master, or replaying from the nearest checkpoint.
+	 */
+	protected void navigateTo(int halfMoveIndex) {
+		MoveList masterMoves = master.getMoveList();
+		int masterSize = masterMoves.getSize();
+
+		Game source = null;
+		int sourcePly = -1;
+		int cost = Integer.MAX_VALUE;
+
+		if (cursor != master) {
+			int cursorSize = cursor.getMoveList().getSize();
+			if (cursorSize > 0 && cursorSize <= masterSize
+					&& cursor.getMoveList().get(cursorSize - 1) == masterMoves
+							.get(cursorSize - 1)) {
+				source = cursor;
+				sourcePly = cursorSize;
+				cost = Math.abs(halfMoveIndex - cursorSize);
+			}
+		}
+
+		if (masterSize - halfMoveIndex < cost) {
+			source = master;
+			sourcePly = masterSize;
+			cost = masterSize - halfMoveIndex;
+		}
+
+		if (cost > checkpointInterval && halfMoveIndex < masterSize) {
+			Checkpoint checkpoint = getCheckpoint(halfMoveIndex);
+			if (halfMoveIndex - checkpoint.getHalfMoveIndex() < cost) {
+				source = checkpoint.game;
+				sourcePly = checkpoint.getHalfMoveIndex();
+			}
+		}
+
+		if (source != cursor || source == master) {
+			cursor = source.deepCopy(true);
+		}
+		while (sourcePly > halfMoveIndex) {
+			cursor.rollback();
+			sourcePly--;
+		}
+		while (sourcePly < halfMoveIndex) {
+			cursor.forceMove(masterMoves.get(sourcePly++));
+		}
+	}
+
+	/**
+	 * A copy of the master game at a half move index along with the master
+	 * move made from that position, used to detect when the master changes.
+	 */
+	protected static class Checkpoint {
+		protected Game game;
+		protected Move nextMove;
+
+		public Checkpoint(Game game, Move nextMove) {
+			this.game = game;
+			this.nextMove = nextMove;
+		}
+
+		public int getHalfMoveIndex() {
+			return game.getMoveList().getSize();
+		}
+
+		public boolean isValid(MoveList masterMoves) {
+			int halfMoveIndex = getHalfMoveIndex();
+			return halfMoveIndex < masterMoves.getSize()
+					&& masterMoves.get(halfMoveIndex) == nextMove;
+		}
+	}
 }
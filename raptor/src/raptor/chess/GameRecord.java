@@ -0,0 +1,241 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raptor.chess.pgn.MoveAnnotation;
+import raptor.chess.pgn.PgnHeader;
+
+/**
+ * <p>
+ * A compact immutable record of a game used to hold large numbers of parsed
+ * games in memory. A full Game allocates a MoveList, a repetition hash table,
+ * a header map and a Move object per half move. A GameRecord only keeps the
+ * interned header values, the moves packed into an int per half move along
+ * with their interned SAN, and the annotations of the moves which have them.
+ * </p>
+ * <p>
+ * Use toGame to turn the record back into a Game, e.g. when a board is opened
+ * on it. Moves are replayed against the variants move generator, so records
+ * are only valid for games whose moves were legal when they were made.
+ * </p>
+ */
+public final class GameRecord {
+	private static final int FROM_MASK = 0xFF;
+	private static final int TO_SHIFT = 8;
+	private static final int PROMOTED_SHIFT = 16;
+	private static final int PIECE_SHIFT = 20;
+	private static final int DROP_FLAG = 1 << 24;
+	private static final int CASTLE_SHORT_FLAG = 1 << 25;
+	private static final int CASTLE_LONG_FLAG = 1 << 26;
+
+	private static final PgnHeader[] NO_HEADERS = new PgnHeader[0];
+	private static final String[] NO_VALUES = new String[0];
+	private static final int[] NO_PLIES = new int[0];
+	private static final MoveAnnotation[][] NO_ANNOTATIONS = new MoveAnnotation[0][];
+
+	/**
+	 * Creates a record from the specified game. The game is not modified.
+	 */
+	public static GameRecord fromGame(Game game) {
+		PgnHeader[] headerNames = game.getAllHeaders();
+		String[] headerValues = headerNames.length == 0 ? NO_VALUES
+				: new String[headerNames.length];
+		for (int i = 0; i < headerNames.length; i++) {
+			String value = game.getHeader(headerNames[i]);
+			headerValues[i] = value == null ? null : value.intern();
+		}
+		if (headerNames.length == 0) {
+			headerNames = NO_HEADERS;
+		}
+
+		MoveList moveList = game.getMoveList();
+		int[] moves = new int[moveList.getSize()];
+		String[] sans = new String[moves.length];
+		List<Integer> annotatedPlies = null;
+		List<MoveAnnotation[]> annotations = null;
+		for (int i = 0; i < moves.length; i++) {
+			Move move = moveList.get(i);
+			moves[i] = packMove(move);
+			sans[i] = move.getSan() == null ? null : move.getSan().intern();
+			MoveAnnotation[] moveAnnotations = move.getAnnotations();
+			if (moveAnnotations.length > 0) {
+				if (annotatedPlies == null) {
+					annotatedPlies = new ArrayList<Integer>();
+					annotations = new ArrayList<MoveAnnotation[]>();
+				}
+				annotatedPlies.add(i);
+				annotations.add(moveAnnotations);
+			}
+		}
+
+		int[] plies = NO_PLIES;
+		MoveAnnotation[][] sparseAnnotations = NO_ANNOTATIONS;
+		if (annotatedPlies != null) {
+			plies = new int[annotatedPlies.size()];
+			for (int i = 0; i < plies.length; i++) {
+				plies[i] = annotatedPlies.get(i);
+			}
+			sparseAnnotations = annotations.toArray(new MoveAnnotation[0][]);
+		}
+
+		return new GameRecord(game.getVariant(), headerNames, headerValues,
+				moves, sans, plies, sparseAnnotations);
+	}
+
+	/**
+	 * Returns true if the move is the one packed into the specified int by
+	 * packMove.
+	 */
+	public static boolean isPackedMove(Move move, int packedMove) {
+		return (packedMove & FROM_MASK) == (move.getFrom() & FROM_MASK)
+				&& (packedMove >>> TO_SHIFT & FROM_MASK) == (move.getTo() & FROM_MASK)
+				&& (packedMove >>> PROMOTED_SHIFT & 0xF) == (move
+						.getPiecePromotedTo() & 0xF)
+				&& (packedMove >>> PIECE_SHIFT & 0xF) == (move.getPiece() & 0xF)
+				&& (packedMove & DROP_FLAG) != 0 == move.isDrop()
+				&& (packedMove & CASTLE_SHORT_FLAG) != 0 == move.isCastleShort()
+				&& (packedMove & CASTLE_LONG_FLAG) != 0 == move.isCastleLong();
+	}
+
+	/**
+	 * Packs the from and to squares, piece, promotion and drop and castling
+	 * flags of the move into an int.
+	 */
+	public static int packMove(Move move) {
+		int result = move.getFrom() & FROM_MASK;
+		result |= (move.getTo() & FROM_MASK) << TO_SHIFT;
+		result |= (move.getPiecePromotedTo() & 0xF) << PROMOTED_SHIFT;
+		result |= (move.getPiece() & 0xF) << PIECE_SHIFT;
+		if (move.isDrop()) {
+			result |= DROP_FLAG;
+		}
+		if (move.isCastleShort()) {
+			result |= CASTLE_SHORT_FLAG;
+		}
+		if (move.isCastleLong()) {
+			result |= CASTLE_LONG_FLAG;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the move packed into the specified int by packMove for the
+	 * current position of the game, or null if there is no such move.
+	 */
+	public static Move unpackMove(Game game, int packedMove) {
+		Move[] candidates = game.getPseudoLegalMoves().asArray();
+		for (Move candidate : candidates) {
+			if (isPackedMove(candidate, packedMove)) {
+				return candidate;
+			}
+		}
+		if ((packedMove & DROP_FLAG) != 0) {
+			// Bughouse games do not track the pieces passed by the partner.
+			return new Move(packedMove >>> TO_SHIFT & FROM_MASK,
+					packedMove >>> PIECE_SHIFT & 0xF, game.getColorToMove());
+		}
+		return null;
+	}
+
+	private final PgnHeader[] headerNames;
+	private final String[] headerValues;
+	private final int[] moves;
+	private final String[] sans;
+	private final int[] annotatedPlies;
+	private final MoveAnnotation[][] annotations;
+	private final Variant variant;
+
+	private GameRecord(Variant variant, PgnHeader[] headerNames,
+			String[] headerValues, int[] moves, String[] sans,
+			int[] annotatedPlies, MoveAnnotation[][] annotations) {
+		this.variant = variant;
+		this.headerNames = headerNames;
+		this.headerValues = headerValues;
+		this.moves = moves;
+		this.sans = sans;
+		this.annotatedPlies = annotatedPlies;
+		this.annotations = annotations;
+	}
+
+	/**
+	 * Returns the value of the specified header, or null if it is not set.
+	 */
+	public String getHeader(PgnHeader header) {
+		for (int i = 0; i < headerNames.length; i++) {
+			if (headerNames[i] == header) {
+				return headerValues[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of half moves in the game.
+	 */
+	public int getHalfMoveCount() {
+		return moves.length;
+	}
+
+	public Result getResult() {
+		return Result.get(getHeader(PgnHeader.Result));
+	}
+
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Creates a new inactive Game from this record with all moves, headers
+	 * and annotations restored.
+	 * 
+	 * @throws IllegalStateException
+	 *             If a recorded move can not be made.
+	 */
+	public Game toGame() {
+		String fen = getHeader(PgnHeader.FEN);
+		Game result = fen == null ? GameFactory.createStartingPosition(variant)
+				: GameFactory.createFromFen(fen, variant);
+		result.addState(Game.UPDATING_SAN_STATE);
+
+		int nextAnnotation = 0;
+		for (int i = 0; i < moves.length; i++) {
+			Move move = unpackMove(result, moves[i]);
+			if (move == null) {
+				throw new IllegalStateException("Could not replay half move "
+						+ (i + 1) + " of the game record.\n" + result);
+			}
+			move.setSan(sans[i]);
+			result.forceMove(move);
+
+			if (nextAnnotation < annotatedPlies.length
+					&& annotatedPlies[nextAnnotation] == i) {
+				for (MoveAnnotation annotation : annotations[nextAnnotation]) {
+					move.addAnnotation(annotation);
+				}
+				nextAnnotation++;
+			}
+		}
+
+		for (int i = 0; i < headerNames.length; i++) {
+			if (headerValues[i] != null) {
+				result.setHeader(headerNames[i], headerValues[i]);
+			}
+		}
+		result.addState(Game.INACTIVE_STATE);
+		return result;
+	}
+}
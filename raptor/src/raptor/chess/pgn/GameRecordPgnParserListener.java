@@ -0,0 +1,53 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.pgn;
+
+import java.util.ArrayList;
+
+import raptor.chess.Game;
+import raptor.chess.GameRecord;
+
+/**
+ * A LenientPgnParserListener which keeps each parsed game as a compact
+ * GameRecord instead of a full Game.
+ */
+public class GameRecordPgnParserListener extends LenientPgnParserListener {
+	private ArrayList<PgnParserError> errors = new ArrayList<PgnParserError>();
+
+	private ArrayList<GameRecord> records = new ArrayList<GameRecord>();
+
+	public GameRecordPgnParserListener() {
+		super();
+	}
+
+	@Override
+	public void errorEncountered(PgnParserError error) {
+		errors.add(error);
+	}
+
+	@Override
+	public boolean gameParsed(Game game, int lineNumber) {
+		records.add(GameRecord.fromGame(game));
+		return false;
+	}
+
+	public ArrayList<PgnParserError> getErrors() {
+		return errors;
+	}
+
+	public ArrayList<GameRecord> getRecords() {
+		return records;
+	}
+
+}
@@ -0,0 +1,343 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.GameRecord;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+import raptor.chess.pgn.PgnHeader;
+
+/**
+ * <p>
+ * A read only archive of games backed by a memory mapped file, written by
+ * GameArchiveWriter. Nothing is decoded when the archive is opened: the fixed
+ * size game table gives the headers, variant and length of any game directly
+ * and a games moves are only replayed when getGame is called.
+ * </p>
+ * <p>
+ * The file is a 32 byte header (magic, version, game count and the offsets of
+ * the game table and string table) followed by the move blocks, the game table
+ * and the string table. Each game table entry holds the offset of the games
+ * move block, its half move count and move encoding and the string table ids
+ * of its variant and of the FIXED_HEADERS. A move block holds the string ids of
+ * any other headers followed by the moves, either a short per move with its
+ * from and to squares and promotion (ENCODING_SQUARES) or the int from
+ * GameRecord.packMove (ENCODING_PACKED) when those don't identify every move
+ * of the game, which happens with drops and some Fischer random castles. The
+ * squares don't depend on the order moves are generated in, so archives stay
+ * readable when the move generation changes. The string table interns every player,
+ * event and other header value, so repeated names are stored once.
+ * </p>
+ * <p>
+ * Move annotations are not archived.
+ * </p>
+ */
+public class GameArchive {
+	public static final int MAGIC = 0x52414741;
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 32;
+	public static final int ENTRY_SIZE = 64;
+
+	public static final byte ENCODING_SQUARES = 0;
+	public static final byte ENCODING_PACKED = 1;
+
+	/**
+	 * The headers kept in the game table. Any other header is stored in the
+	 * move block of its game.
+	 */
+	public static final PgnHeader[] FIXED_HEADERS = { PgnHeader.Event,
+			PgnHeader.Site, PgnHeader.Date, PgnHeader.Round, PgnHeader.White,
+			PgnHeader.Black, PgnHeader.Result, PgnHeader.WhiteElo,
+			PgnHeader.BlackElo, PgnHeader.ECO };
+
+	/**
+	 * The offsets of the fields of a game table entry.
+	 */
+	protected static final int MOVES_OFFSET = 0;
+	protected static final int HALF_MOVES_OFFSET = 8;
+	protected static final int ENCODING_OFFSET = 12;
+	protected static final int VARIANT_OFFSET = 16;
+	protected static final int FIXED_HEADERS_OFFSET = 20;
+	protected static final int EXTRA_HEADERS_OFFSET = FIXED_HEADERS_OFFSET
+			+ FIXED_HEADERS.length * 4;
+
+	protected static final int NO_STRING = -1;
+
+	protected File file;
+	protected RandomAccessFile randomAccessFile;
+	protected MappedByteBuffer buffer;
+	protected int gameCount;
+	protected int gameTableOffset;
+	protected int stringCount;
+	protected int stringOffsetsOffset;
+	protected int stringDataOffset;
+	protected String[] strings;
+
+	public GameArchive(File file) throws IOException {
+		this.file = file;
+		randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file
+						+ " is too large to be mapped as a game archive.");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a game archive.");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException(file + " is a version "
+						+ buffer.getInt(4) + " game archive, expected version "
+						+ VERSION + ". Convert its PGN again.");
+			}
+			gameCount = buffer.getInt(8);
+			long tableOffset = buffer.getLong(16);
+			long stringTableOffset = buffer.getLong(24);
+			if (tableOffset + (long) gameCount * ENTRY_SIZE > stringTableOffset
+					|| stringTableOffset + 4 > buffer.capacity()) {
+				throw new IOException(file + " is truncated.");
+			}
+			gameTableOffset = (int) tableOffset;
+			stringCount = buffer.getInt((int) stringTableOffset);
+			stringOffsetsOffset = (int) stringTableOffset + 4;
+			stringDataOffset = stringOffsetsOffset + (stringCount + 1) * 4;
+			if (stringDataOffset > buffer.capacity()
+					|| stringDataOffset + buffer.getInt(stringDataOffset - 4) > buffer
+							.capacity()) {
+				throw new IOException(file + " is truncated.");
+			}
+			strings = new String[stringCount];
+		} catch (IOException ioe) {
+			randomAccessFile.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Returns the from and to squares and promotion of the specified move as
+	 * stored with ENCODING_SQUARES, or -1 if the move is a drop.
+	 */
+	public static int encodeSquares(Move move) {
+		if (move.isDrop() || move.getFrom() > 63 || move.getTo() > 63) {
+			return -1;
+		}
+		return move.getFrom() | move.getTo() << 6
+				| (move.getPiecePromotedTo() & 0xF) << 12;
+	}
+
+	/**
+	 * Returns the only one of the candidates encoded by encodeSquares as the
+	 * specified value, or null if there is none or more than one.
+	 */
+	public static Move findMove(Move[] candidates, int squares) {
+		Move result = null;
+		for (Move candidate : candidates) {
+			if (encodeSquares(candidate) == squares) {
+				if (result != null) {
+					return null;
+				}
+				result = candidate;
+			}
+		}
+		return result;
+	}
+
+	public void close() {
+		try {
+			randomAccessFile.close();
+		} catch (IOException ioe) {
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the game at the specified index with all of its headers and
+	 * moves. The moves are replayed from the games starting position.
+	 */
+	public Game getGame(int index) {
+		int entry = getEntryOffset(index);
+		int halfMoves = buffer.getInt(entry + HALF_MOVES_OFFSET);
+		byte encoding = buffer.get(entry + ENCODING_OFFSET);
+		int extraHeaders = buffer.getInt(entry + EXTRA_HEADERS_OFFSET);
+		int block = (int) buffer.getLong(entry + MOVES_OFFSET);
+		int moves = block + extraHeaders * 8;
+
+		Variant variant = getVariant(index);
+		String fen = getHeader(index, PgnHeader.FEN);
+		Game result = fen == null ? GameFactory
+				.createStartingPosition(variant) : GameFactory.createFromFen(
+				fen, variant);
+		result.addState(Game.UPDATING_SAN_STATE);
+
+		for (int i = 0; i < halfMoves; i++) {
+			Move move = null;
+			if (encoding == ENCODING_SQUARES) {
+				move = findMove(result.getPseudoLegalMoves().asArray(), buffer
+						.getShort(moves + i * 2) & 0xFFFF);
+			} else {
+				move = GameRecord.unpackMove(result, buffer.getInt(moves + i
+						* 4));
+			}
+			if (move == null) {
+				throw new IllegalStateException("Could not replay half move "
+						+ (i + 1) + " of game " + index + " in " + file
+						+ ".\n" + result);
+			}
+			result.forceMove(move);
+		}
+
+		for (int i = 0; i < FIXED_HEADERS.length; i++) {
+			String value = getString(buffer.getInt(entry
+					+ FIXED_HEADERS_OFFSET + i * 4));
+			if (value != null) {
+				result.setHeader(FIXED_HEADERS[i], value);
+			}
+		}
+		for (int i = 0; i < extraHeaders; i++) {
+			PgnHeader header = toPgnHeader(getString(buffer.getInt(block + i
+					* 8)));
+			if (header != null) {
+				result.setHeader(header, getString(buffer.getInt(block + i * 8
+						+ 4)));
+			}
+		}
+		result.addState(Game.INACTIVE_STATE);
+		return result;
+	}
+
+	public int getGameCount() {
+		return gameCount;
+	}
+
+	/**
+	 * Returns the number of half moves in the game at the specified index
+	 * without decoding it.
+	 */
+	public int getHalfMoveCount(int index) {
+		return buffer.getInt(getEntryOffset(index) + HALF_MOVES_OFFSET);
+	}
+
+	/**
+	 * Returns the value of the header of the game at the specified index
+	 * without decoding its moves, or null if the game does not have the
+	 * header.
+	 */
+	public String getHeader(int index, PgnHeader header) {
+		int entry = getEntryOffset(index);
+		for (int i = 0; i < FIXED_HEADERS.length; i++) {
+			if (FIXED_HEADERS[i] == header) {
+				return getString(buffer.getInt(entry + FIXED_HEADERS_OFFSET
+						+ i * 4));
+			}
+		}
+		int extraHeaders = buffer.getInt(entry + EXTRA_HEADERS_OFFSET);
+		int block = (int) buffer.getLong(entry + MOVES_OFFSET);
+		for (int i = 0; i < extraHeaders; i++) {
+			if (header.name().equals(getString(buffer.getInt(block + i * 8)))) {
+				return getString(buffer.getInt(block + i * 8 + 4));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the variant of the game at the specified index without
+	 * decoding it.
+	 */
+	public Variant getVariant(int index) {
+		String variant = getString(buffer.getInt(getEntryOffset(index)
+				+ VARIANT_OFFSET));
+		try {
+			return variant == null ? Variant.classic : Variant
+					.valueOf(variant);
+		} catch (IllegalArgumentException iae) {
+			return Variant.classic;
+		}
+	}
+
+	/**
+	 * Writes every game in the archive to the specified PGN file.
+	 */
+	public void writePgn(File pgnFile) throws IOException {
+		Writer writer = new BufferedWriter(new FileWriter(pgnFile, false),
+				64 * 1024);
+		try {
+			for (int i = 0; i < gameCount; i++) {
+				writer.write(getGame(i).toPgn());
+				writer.write("\n\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	protected int getEntryOffset(int index) {
+		if (index < 0 || index >= gameCount) {
+			throw new IndexOutOfBoundsException("Game " + index
+					+ " is not in " + file);
+		}
+		return gameTableOffset + index * ENTRY_SIZE;
+	}
+
+	/**
+	 * Returns the string with the specified id, decoding it on first use.
+	 */
+	protected String getString(int id) {
+		if (id == NO_STRING) {
+			return null;
+		}
+		String result = strings[id];
+		if (result == null) {
+			int start = buffer.getInt(stringOffsetsOffset + id * 4);
+			int end = buffer.getInt(stringOffsetsOffset + id * 4 + 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer data = buffer.duplicate();
+			data.position(stringDataOffset + start);
+			data.get(bytes);
+			try {
+				result = new String(bytes, "UTF-8");
+			} catch (UnsupportedEncodingException uee) {
+				throw new IllegalStateException(uee);
+			}
+			strings[id] = result;
+		}
+		return result;
+	}
+
+	protected PgnHeader toPgnHeader(String name) {
+		try {
+			return PgnHeader.valueOf(name);
+		} catch (IllegalArgumentException iae) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.GameRecord;
+import raptor.chess.Move;
+import raptor.chess.MoveList;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.StreamingPgnParser;
+
+/**
+ * Writes a GameArchive. Move blocks are streamed to the file as games are
+ * added, the game table and string table are kept in memory and written by
+ * close, which then fills in the file header.
+ */
+public class GameArchiveWriter {
+
+	/**
+	 * Converts the specified PGN file into a game archive. Returns the number
+	 * of games archived. Games with errors are skipped.
+	 */
+	public static int convertPgn(File pgnFile, File archiveFile)
+			throws IOException {
+		final GameArchiveWriter writer = new GameArchiveWriter(archiveFile);
+		final IOException[] failure = new IOException[1];
+		StreamingPgnParser parser = new StreamingPgnParser(pgnFile,
+				Integer.MAX_VALUE);
+		try {
+			parser.addPgnParserListener(new LenientPgnParserListener() {
+				@Override
+				public void errorEncountered(PgnParserError error) {
+				}
+
+				@Override
+				public boolean gameParsed(Game game, int lineNumber) {
+					if (failure[0] == null) {
+						try {
+							writer.addGame(game);
+						} catch (IOException ioe) {
+							failure[0] = ioe;
+						}
+					}
+					return false;
+				}
+
+				@Override
+				protected void createGameFromHeaders(PgnParser parser) {
+					super.createGameFromHeaders(parser);
+					if (currentGame != null) {
+						currentGame.clearState(Game.UPDATING_SAN_STATE);
+						currentGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+					}
+				}
+			});
+			parser.parse();
+		} finally {
+			parser.close();
+			writer.close();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return writer.getGameCount();
+	}
+
+	protected File file;
+	protected DataOutputStream out;
+	protected long position;
+	protected ByteArrayOutputStream gameTable = new ByteArrayOutputStream();
+	protected DataOutputStream gameTableOut = new DataOutputStream(gameTable);
+	protected Map<String, Integer> stringIds = new HashMap<String, Integer>();
+	protected List<String> strings = new ArrayList<String>();
+	protected int gameCount;
+	protected boolean isClosed;
+
+	public GameArchiveWriter(File file) throws IOException {
+		this.file = file;
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 64 * 1024));
+		out.write(new byte[GameArchive.HEADER_SIZE]);
+		position = GameArchive.HEADER_SIZE;
+	}
+
+	/**
+	 * Adds the specified game to the archive. The game is not modified.
+	 */
+	public void addGame(Game game) throws IOException {
+		MoveList moveList = game.getMoveList();
+		int halfMoves = moveList.getSize();
+		int[] packedMoves = new int[halfMoves];
+		for (int i = 0; i < halfMoves; i++) {
+			packedMoves[i] = GameRecord.packMove(moveList.get(i));
+		}
+		short[] squares = encodeMoves(game, packedMoves);
+
+		List<PgnHeader> extraHeaders = new ArrayList<PgnHeader>();
+		for (PgnHeader header : game.getAllHeaders()) {
+			if (game.getHeader(header) != null && !isFixedHeader(header)) {
+				extraHeaders.add(header);
+			}
+		}
+
+		gameTableOut.writeLong(position);
+		gameTableOut.writeInt(halfMoves);
+		gameTableOut.writeByte(squares == null ? GameArchive.ENCODING_PACKED
+				: GameArchive.ENCODING_SQUARES);
+		gameTableOut.write(new byte[3]);
+		gameTableOut.writeInt(getStringId(game.getVariant().name()));
+		for (PgnHeader header : GameArchive.FIXED_HEADERS) {
+			gameTableOut.writeInt(getStringId(game.getHeader(header)));
+		}
+		gameTableOut.writeInt(extraHeaders.size());
+
+		for (PgnHeader header : extraHeaders) {
+			out.writeInt(getStringId(header.name()));
+			out.writeInt(getStringId(game.getHeader(header)));
+			position += 8;
+		}
+		if (squares != null) {
+			for (short move : squares) {
+				out.writeShort(move);
+			}
+			position += halfMoves * 2L;
+		} else {
+			for (int packedMove : packedMoves) {
+				out.writeInt(packedMove);
+			}
+			position += halfMoves * 4L;
+		}
+		gameCount++;
+	}
+
+	/**
+	 * Writes the game table and string table and closes the file.
+	 */
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		long gameTableOffset = position;
+		long stringTableOffset = gameTableOffset + gameTable.size();
+		try {
+			gameTable.writeTo(out);
+
+			List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+			for (String string : strings) {
+				encoded.add(string.getBytes("UTF-8"));
+			}
+			out.writeInt(encoded.size());
+			int offset = 0;
+			out.writeInt(offset);
+			for (byte[] bytes : encoded) {
+				offset += bytes.length;
+				out.writeInt(offset);
+			}
+			for (byte[] bytes : encoded) {
+				out.write(bytes);
+			}
+		} finally {
+			out.close();
+		}
+
+		RandomAccessFile header = new RandomAccessFile(file, "rw");
+		try {
+			header.writeInt(GameArchive.MAGIC);
+			header.writeInt(GameArchive.VERSION);
+			header.writeInt(gameCount);
+			header.writeInt(0);
+			header.writeLong(gameTableOffset);
+			header.writeLong(stringTableOffset);
+		} finally {
+			header.close();
+		}
+	}
+
+	public int getGameCount() {
+		return gameCount;
+	}
+
+	protected int getStringId(String string) {
+		if (string == null) {
+			return GameArchive.NO_STRING;
+		}
+		Integer result = stringIds.get(string);
+		if (result == null) {
+			result = strings.size();
+			strings.add(string);
+			stringIds.put(string, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Replays the packed moves from the games starting position and returns
+	 * each move encoded by GameArchive.encodeSquares, or null if the squares
+	 * of a move don't identify it among the pseudo legal moves of its
+	 * position.
+	 */
+	protected short[] encodeMoves(Game game, int[] packedMoves) {
+		String fen = game.getHeader(PgnHeader.FEN);
+		Game replay;
+		try {
+			replay = fen == null ? GameFactory.createStartingPosition(game
+					.getVariant()) : GameFactory.createFromFen(fen, game
+					.getVariant());
+		} catch (IllegalArgumentException iae) {
+			return null;
+		}
+
+		short[] result = new short[packedMoves.length];
+		for (int i = 0; i < packedMoves.length; i++) {
+			Move[] candidates = replay.getPseudoLegalMoves().asArray();
+			Move move = null;
+			for (int j = 0; move == null && j < candidates.length; j++) {
+				if (GameRecord.isPackedMove(candidates[j], packedMoves[i])) {
+					move = candidates[j];
+				}
+			}
+			int squares = move == null ? -1 : GameArchive.encodeSquares(move);
+			if (squares == -1 || GameArchive.findMove(candidates, squares) != move) {
+				return null;
+			}
+			result[i] = (short) squares;
+			replay.forceMove(move);
+		}
+		return result;
+	}
+
+	protected boolean isFixedHeader(PgnHeader header) {
+		for (PgnHeader fixedHeader : GameArchive.FIXED_HEADERS) {
+			if (fixedHeader == header) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import static raptor.chess.GameFactory.createStartingPosition;
+
+import java.util.Random;
+
+import raptor.chess.Game;
+import raptor.chess.GameCursor;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+
+/**
+ * Compares GameCursor navigation using checkpoints against copying the master
+ * game and rolling it back on every navigation. Each trial steps back from the
+ * end of a long game to the start, forward to the end again, and then makes a
+ * number of random jumps.
+ */
+public class GameCursorBenchmark {
+	private static final int HALF_MOVES = 300;
+	private static final int JUMPS = 300;
+
+	public static void main(String args[]) {
+		Game game = createLongGame(HALF_MOVES);
+		System.err.println("Game length: " + game.getMoveList().getSize()
+				+ " half moves.");
+
+		// Prime:
+		for (int i = 0; i < 20; i++) {
+			navigate(game, 0);
+			navigate(game, GameCursor.DEFAULT_CHECKPOINT_INTERVAL);
+		}
+
+		// Now run:
+		int n = 100;
+		long[] copying = new long[n];
+		long[] checkpointed = new long[n];
+		for (int i = 0; i < n; i++) {
+			copying[i] = navigate(game, 0);
+			checkpointed[i] = navigate(game,
+					GameCursor.DEFAULT_CHECKPOINT_INTERVAL);
+		}
+
+		System.err.println("deepCopy+rollback: mean(ns/navigation): "
+				+ Benchmark.mean(copying) + " stdv "
+				+ Benchmark.stdv(copying));
+		System.err.println("checkpoints("
+				+ GameCursor.DEFAULT_CHECKPOINT_INTERVAL
+				+ "): mean(ns/navigation): " + Benchmark.mean(checkpointed)
+				+ " stdv " + Benchmark.stdv(checkpointed));
+	}
+
+	/**
+	 * Returns a game of random legal moves with at most the specified number
+	 * of half moves.
+	 */
+	protected static Game createLongGame(int halfMoves) {
+		Random random = new Random(0);
+		Game game = createStartingPosition(Variant.classic);
+		game.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		for (int i = 0; i < halfMoves; i++) {
+			Move[] legals = game.getLegalMoves().asArray();
+			if (legals.length == 0) {
+				break;
+			}
+			game.move(legals[random.nextInt(legals.length)]);
+		}
+		return game;
+	}
+
+	/**
+	 * Runs one trial and returns the mean nanoseconds per navigation.
+	 */
+	protected static long navigate(Game game, int checkpointInterval) {
+		GameCursor cursor = new GameCursor(game,
+				GameCursor.Mode.MakeMovesOnMaster);
+		cursor.setCheckpointInterval(checkpointInterval);
+		Random random = new Random(1);
+		int length = game.getMoveList().getSize();
+		int navigations = 0;
+
+		long startTime = System.nanoTime();
+		while (cursor.hasPrevious()) {
+			cursor.setCursorPrevious();
+			navigations++;
+		}
+		while (cursor.hasNext()) {
+			cursor.setCursorNext();
+			navigations++;
+		}
+		for (int i = 0; i < JUMPS; i++) {
+			cursor.setCursor(random.nextInt(length + 1));
+			navigations++;
+		}
+		return (System.nanoTime() - startTime) / navigations;
+	}
+}
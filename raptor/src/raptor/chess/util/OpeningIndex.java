@@ -0,0 +1,329 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import raptor.chess.Result;
+
+/**
+ * <p>
+ * A read only opening tree backed by a memory mapped file. For every position,
+ * keyed by its zobrist position hash, the index holds one entry per move
+ * played from it with the number of games, the results and the average Elo of
+ * the player who made the move.
+ * </p>
+ * <p>
+ * The file is a 16 byte header (magic, version and entry count) followed by
+ * fixed size entries sorted by position hash and then by packed move, so a
+ * position is found with a binary search of the mapped file.
+ * </p>
+ */
+public class OpeningIndex {
+
+	/**
+	 * The statistics of one move played from one position.
+	 */
+	public static class Entry {
+		protected long hash;
+		protected int move;
+		protected int count;
+		protected int whiteWins;
+		protected int draws;
+		protected int blackWins;
+		protected int eloCount;
+		protected long eloSum;
+
+		public Entry(long hash, int move) {
+			this.hash = hash;
+			this.move = move;
+		}
+
+		/**
+		 * Adds the statistics of the specified entry to this entry.
+		 */
+		public void add(Entry entry) {
+			count += entry.count;
+			whiteWins += entry.whiteWins;
+			draws += entry.draws;
+			blackWins += entry.blackWins;
+			eloCount += entry.eloCount;
+			eloSum += entry.eloSum;
+		}
+
+		/**
+		 * Adds one game to this entry. Result is one of WHITE_WON, DRAW,
+		 * BLACK_WON or any other value for an unfinished game. Elo is the
+		 * rating of the player making the move, 0 if unknown.
+		 */
+		public void addGame(Result result, int elo) {
+			count++;
+			if (result == Result.WHITE_WON) {
+				whiteWins++;
+			} else if (result == Result.DRAW) {
+				draws++;
+			} else if (result == Result.BLACK_WON) {
+				blackWins++;
+			}
+			if (elo > 0) {
+				eloCount++;
+				eloSum += elo;
+			}
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Entry)) {
+				return false;
+			}
+			Entry entry = (Entry) object;
+			return entry.hash == hash && entry.move == move;
+		}
+
+		/**
+		 * Returns the average Elo of the players who made the move, 0 if none
+		 * of them were rated.
+		 */
+		public int getAverageElo() {
+			return eloCount == 0 ? 0 : (int) (eloSum / eloCount);
+		}
+
+		public int getBlackWins() {
+			return blackWins;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public int getDraws() {
+			return draws;
+		}
+
+		public long getHash() {
+			return hash;
+		}
+
+		/**
+		 * Returns the move packed with GameRecord.packMove.
+		 */
+		public int getMove() {
+			return move;
+		}
+
+		public int getWhiteWins() {
+			return whiteWins;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ hash >>> 32) * 31 + move;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [hash=" + hash + ", move=" + move + ", count="
+					+ count + ", whiteWins=" + whiteWins + ", draws=" + draws
+					+ ", blackWins=" + blackWins + ", averageElo="
+					+ getAverageElo() + "]";
+		}
+	}
+
+	/**
+	 * Orders entries the way they are stored in the file.
+	 */
+	public static final Comparator<Entry> FILE_ORDER = new Comparator<Entry>() {
+		public int compare(Entry entry1, Entry entry2) {
+			if (entry1.hash != entry2.hash) {
+				return entry1.hash < entry2.hash ? -1 : 1;
+			}
+			return entry1.move < entry2.move ? -1
+					: entry1.move == entry2.move ? 0 : 1;
+		}
+	};
+
+	/**
+	 * Orders entries by the number of games played, most played first.
+	 */
+	public static final Comparator<Entry> COUNT_ORDER = new Comparator<Entry>() {
+		public int compare(Entry entry1, Entry entry2) {
+			return entry2.count < entry1.count ? -1
+					: entry2.count == entry1.count ? 0 : 1;
+		}
+	};
+
+	public static final int MAGIC = 0x52414f49;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	public static final int ENTRY_SIZE = 40;
+
+	/**
+	 * Writes the entries, which must already be in FILE_ORDER, to the
+	 * specified file.
+	 */
+	public static void write(File file, Collection<Entry> entries)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 64 * 1024));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(entries.size());
+			for (Entry entry : entries) {
+				out.writeLong(entry.hash);
+				out.writeInt(entry.move);
+				out.writeInt(entry.count);
+				out.writeInt(entry.whiteWins);
+				out.writeInt(entry.draws);
+				out.writeInt(entry.blackWins);
+				out.writeInt(entry.eloCount);
+				out.writeLong(entry.eloSum);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	protected File file;
+	protected RandomAccessFile randomAccessFile;
+	protected MappedByteBuffer buffer;
+	protected int size;
+
+	/**
+	 * Opens and maps the specified index file.
+	 * 
+	 * @throws IOException
+	 *             If the file can not be read or is not an opening index.
+	 */
+	public OpeningIndex(File file) throws IOException {
+		this.file = file;
+		randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+			if (buffer.capacity() < HEADER_SIZE
+					|| buffer.getInt(0) != MAGIC
+					|| buffer.getInt(4) != VERSION) {
+				throw new IOException(file + " is not an opening index.");
+			}
+			long entries = buffer.getLong(8);
+			if (HEADER_SIZE + entries * ENTRY_SIZE != buffer.capacity()) {
+				throw new IOException(file + " is truncated.");
+			}
+			size = (int) entries;
+		} catch (IOException ioe) {
+			randomAccessFile.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released when it is garbage
+	 * collected.
+	 */
+	public void close() {
+		try {
+			randomAccessFile.close();
+		} catch (IOException ioe) {
+		}
+	}
+
+	/**
+	 * Returns all of the entries in FILE_ORDER. Used when merging an index
+	 * with newly imported games.
+	 */
+	public List<Entry> getAllEntries() {
+		List<Entry> result = new ArrayList<Entry>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(read(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the entries for the position with the specified zobrist position
+	 * hash ordered by most played first. Returns an empty array if the
+	 * position is not in the index.
+	 */
+	public Entry[] getEntries(long hash) {
+		int low = 0;
+		int high = size - 1;
+		int found = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleHash = getHash(middle);
+			if (middleHash < hash) {
+				low = middle + 1;
+			} else if (middleHash > hash) {
+				high = middle - 1;
+			} else {
+				found = middle;
+				high = middle - 1;
+			}
+		}
+
+		if (found == -1) {
+			return new Entry[0];
+		}
+
+		List<Entry> result = new ArrayList<Entry>();
+		for (int i = found; i < size && getHash(i) == hash; i++) {
+			result.add(read(i));
+		}
+		Entry[] entries = result.toArray(new Entry[result.size()]);
+		Arrays.sort(entries, COUNT_ORDER);
+		return entries;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of entries in the index.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	protected long getHash(int index) {
+		return buffer.getLong(HEADER_SIZE + index * ENTRY_SIZE);
+	}
+
+	protected Entry read(int index) {
+		int offset = HEADER_SIZE + index * ENTRY_SIZE;
+		Entry result = new Entry(buffer.getLong(offset), buffer
+				.getInt(offset + 8));
+		result.count = buffer.getInt(offset + 12);
+		result.whiteWins = buffer.getInt(offset + 16);
+		result.draws = buffer.getInt(offset + 20);
+		result.blackWins = buffer.getInt(offset + 24);
+		result.eloCount = buffer.getInt(offset + 28);
+		result.eloSum = buffer.getLong(offset + 32);
+		return result;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import raptor.chess.Game;
+import raptor.chess.GameRecord;
+import raptor.chess.Move;
+import raptor.chess.MoveList;
+import raptor.chess.Result;
+import raptor.chess.Variant;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.SimplePgnParser;
+import raptor.chess.util.OpeningIndex.Entry;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * Builds the entries of an OpeningIndex from PGN files. The games are split
+ * and parsed in batches by a PgnBatchProcessor. Each batch is walked into its
+ * own map, which is then merged into the shared entries.
+ * </p>
+ * <p>
+ * Only classic games are indexed and only their first maxHalfMoves half moves.
+ * </p>
+ */
+public class OpeningIndexBuilder {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(OpeningIndexBuilder.class);
+
+	public static final int DEFAULT_MAX_HALF_MOVES = 40;
+
+	/**
+	 * Parses the games of one batch into the batches entries.
+	 */
+	protected class IndexParserListener extends LenientPgnParserListener {
+		protected Map<Entry, Entry> batchEntries;
+
+		public IndexParserListener(Map<Entry, Entry> batchEntries) {
+			this.batchEntries = batchEntries;
+		}
+
+		@Override
+		public void errorEncountered(PgnParserError error) {
+		}
+
+		@Override
+		public boolean gameParsed(Game game, int lineNumber) {
+			addGame(game, batchEntries);
+			return false;
+		}
+
+		/**
+		 * Parses the specified game text.
+		 */
+		public void parse(String pgn) {
+			SimplePgnParser parser = new SimplePgnParser(pgn);
+			parser.addPgnParserListener(this);
+			parser.parse();
+		}
+
+		@Override
+		protected void createGameFromHeaders(PgnParser parser) {
+			super.createGameFromHeaders(parser);
+			if (currentGame != null) {
+				currentGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+			}
+		}
+	}
+
+	protected Map<Entry, Entry> entries = new HashMap<Entry, Entry>();
+	protected AtomicInteger gameCount = new AtomicInteger();
+	protected int maxHalfMoves;
+	protected PgnBatchProcessor processor = new PgnBatchProcessor(
+			"OpeningIndexBuilder", true) {
+		@Override
+		protected void processBatch(List<String> games,
+				List<Integer> lineNumbers) {
+			addBatch(games);
+		}
+	};
+
+	public OpeningIndexBuilder() {
+		this(DEFAULT_MAX_HALF_MOVES);
+	}
+
+	public OpeningIndexBuilder(int maxHalfMoves) {
+		this.maxHalfMoves = maxHalfMoves;
+	}
+
+	/**
+	 * Imports the games in the specified PGN file starting at the specified
+	 * line number (1 for the start of the file). Returns the line number of
+	 * the end of the last complete game, which is where an incremental import
+	 * of the same file should resume once more games are appended. The last
+	 * game of the file is only complete once its result has been written.
+	 */
+	public int addPgnFile(File file, int startLine) throws IOException {
+		return processor.process(file, startLine);
+	}
+
+	/**
+	 * Returns the number of games imported so far.
+	 */
+	public int getGameCount() {
+		return gameCount.get();
+	}
+
+	/**
+	 * Returns the imported entries merged with the entries of the specified
+	 * index, which may be null, in OpeningIndex.FILE_ORDER.
+	 */
+	public List<Entry> merge(OpeningIndex index) {
+		Map<Entry, Entry> merged = new HashMap<Entry, Entry>();
+		if (index != null) {
+			for (Entry entry : index.getAllEntries()) {
+				merged.put(entry, entry);
+			}
+		}
+		synchronized (entries) {
+			for (Entry entry : entries.values()) {
+				Entry existing = merged.get(entry);
+				if (existing == null) {
+					existing = new Entry(entry.getHash(), entry.getMove());
+					merged.put(existing, existing);
+				}
+				existing.add(entry);
+			}
+		}
+		List<Entry> result = new ArrayList<Entry>(merged.values());
+		Collections.sort(result, OpeningIndex.FILE_ORDER);
+		return result;
+	}
+
+	protected void addGame(Game game, Map<Entry, Entry> batchEntries) {
+		if (!Variant.isClassic(game.getVariant())) {
+			return;
+		}
+		Result result = game.getResult();
+		int whiteElo = NumberUtils.toInt(game.getHeader(PgnHeader.WhiteElo));
+		int blackElo = NumberUtils.toInt(game.getHeader(PgnHeader.BlackElo));
+
+		// Walk the game backwards so no copies or move generation are needed.
+		MoveList moves = game.getMoveList();
+		while (moves.getSize() > maxHalfMoves) {
+			game.rollback();
+		}
+		while (moves.getSize() > 0) {
+			Move move = moves.getLast();
+			game.rollback();
+			Entry probe = new Entry(game.getZobristPositionHash(), GameRecord
+					.packMove(move));
+			Entry entry = batchEntries.get(probe);
+			if (entry == null) {
+				batchEntries.put(probe, probe);
+				entry = probe;
+			}
+			entry.addGame(result, move.isWhitesMove() ? whiteElo : blackElo);
+		}
+		gameCount.incrementAndGet();
+	}
+
+	protected void addBatch(List<String> games) {
+		Map<Entry, Entry> batchEntries = new HashMap<Entry, Entry>();
+		IndexParserListener parserListener = new IndexParserListener(
+				batchEntries);
+		for (String game : games) {
+			try {
+				parserListener.parse(game);
+			} catch (RuntimeException re) {
+				LOG.warn("Error importing a game into the opening index", re);
+			}
+		}
+		synchronized (entries) {
+			for (Entry entry : batchEntries.values()) {
+				Entry existing = entries.get(entry);
+				if (existing == null) {
+					entries.put(entry, entry);
+				} else {
+					existing.add(entry);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import raptor.chess.Result;
+import raptor.chess.pgn.SimplePgnParser;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * Splits a PGN file into games on the calling thread and hands them to
+ * processBatch in batches of BATCH_SIZE games. The batches run on an executor
+ * owned by the processor, one thread per core, which is created when a file
+ * is processed and shut down once it is done. At most two batches per thread
+ * are queued, so reading a large file does not run ahead of the parsing and
+ * the shared ThreadService pool is left alone.
+ * </p>
+ * <p>
+ * Used by OpeningIndexBuilder and PositionSearch.
+ * </p>
+ */
+public abstract class PgnBatchProcessor {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(PgnBatchProcessor.class);
+
+	public static final int BATCH_SIZE = 64;
+
+	protected String name;
+	protected int threadCount;
+	protected int maxBatchesInFlight;
+	protected boolean isSkippingIncompleteGame;
+	protected volatile boolean isCancelled;
+	protected volatile Throwable failure;
+
+	/**
+	 * Creates a processor whose threads are named after the specified name. If
+	 * isSkippingIncompleteGame is true the last game of a file is only
+	 * processed once its result has been written.
+	 */
+	public PgnBatchProcessor(String name, boolean isSkippingIncompleteGame) {
+		this.name = name;
+		this.isSkippingIncompleteGame = isSkippingIncompleteGame;
+		threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+		maxBatchesInFlight = threadCount * 2;
+	}
+
+	/**
+	 * Stops processing the current file. Batches already running are left to
+	 * check isCancelled themselves.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Processes the games of the specified file starting at the specified line
+	 * number (1 for the start of the file) and blocks until every batch has
+	 * been processed. Returns the line number of the end of the last game
+	 * processed, or startLine - 1 if there was none. Throws an IOException if
+	 * the file could not be read or a batch failed.
+	 */
+	public int process(File file, int startLine) throws IOException {
+		failure = null;
+		int lastGameEnd = Math.max(0, startLine - 1);
+		final Semaphore inFlight = new Semaphore(maxBatchesInFlight);
+		ThreadPoolExecutor executor = createExecutor();
+		BufferedReader reader = new BufferedReader(new FileReader(file), 65536);
+		try {
+			List<String> games = new ArrayList<String>(BATCH_SIZE);
+			List<Integer> lineNumbers = new ArrayList<Integer>(BATCH_SIZE);
+			StringBuilder game = null;
+			String lastWord = null;
+			int gameLineNumber = 0;
+			int gameEnd = 0;
+			int lineNumber = 0;
+			String line = null;
+
+			while (!isCancelled && (line = reader.readLine()) != null) {
+				lineNumber++;
+				if (lineNumber < startLine) {
+					continue;
+				}
+				if (line.startsWith(SimplePgnParser.GAME_START_WORD)) {
+					if (game != null) {
+						games.add(game.toString());
+						lineNumbers.add(gameLineNumber);
+						lastGameEnd = gameEnd;
+						if (games.size() == BATCH_SIZE) {
+							submit(executor, inFlight, games, lineNumbers);
+							games = new ArrayList<String>(BATCH_SIZE);
+							lineNumbers = new ArrayList<Integer>(BATCH_SIZE);
+						}
+					}
+					game = new StringBuilder(1024);
+					gameLineNumber = lineNumber;
+				}
+				if (game != null) {
+					game.append(line).append('\n');
+					String trimmed = line.trim();
+					if (trimmed.length() > 0) {
+						gameEnd = lineNumber;
+						lastWord = trimmed.substring(trimmed.lastIndexOf(' ') + 1);
+					}
+				}
+			}
+			if (game != null && !isCancelled
+					&& (!isSkippingIncompleteGame || Result.get(lastWord) != null)) {
+				games.add(game.toString());
+				lineNumbers.add(gameLineNumber);
+				lastGameEnd = gameEnd;
+			}
+			if (!games.isEmpty()) {
+				submit(executor, inFlight, games, lineNumbers);
+			}
+			inFlight.acquireUninterruptibly(maxBatchesInFlight);
+			inFlight.release(maxBatchesInFlight);
+		} finally {
+			executor.shutdownNow();
+			try {
+				reader.close();
+			} catch (IOException ioe) {
+			}
+		}
+
+		if (failure != null) {
+			throw new IOException("Error processing " + file + ": "
+					+ failure.getMessage());
+		}
+		return lastGameEnd;
+	}
+
+	/**
+	 * Processes one batch of games. lineNumbers holds the line number each
+	 * game starts at. Invoked on the processors executor threads.
+	 */
+	protected abstract void processBatch(List<String> games,
+			List<Integer> lineNumbers);
+
+	protected ThreadPoolExecutor createExecutor() {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(threadCount, threadCount, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, name + " "
+								+ threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	protected void submit(ThreadPoolExecutor executor,
+			final Semaphore inFlight, final List<String> games,
+			final List<Integer> lineNumbers) {
+		inFlight.acquireUninterruptibly();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						processBatch(games, lineNumbers);
+					} catch (Throwable t) {
+						LOG.error("Error processing a batch of games in " + name,
+								t);
+						failure = t;
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+		} catch (RuntimeException re) {
+			inFlight.release();
+			throw re;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.Variant;
+
+/**
+ * A read only Polyglot opening book. The .bin file is a sorted array of 16
+ * byte big endian entries: key (8), move (2), weight (2), learn (4). The file
+ * is memory mapped and probed with a binary search on the key, so a lookup
+ * is a handful of page cache reads and no allocation when nothing is found.
+ * 
+ * Lookups are thread safe, they only use absolute reads on the mapping.
+ */
+public class PolyglotBook implements GameConstants {
+	public static final int ENTRY_SIZE = 16;
+
+	/**
+	 * Raptor promotion pieces indexed by the Polyglot promotion code.
+	 */
+	private static final int[] PROMOTED_PIECE = { EMPTY, KNIGHT, BISHOP,
+			ROOK, QUEEN };
+
+	private static final Comparator<Entry> WEIGHT_COMPARATOR = new Comparator<Entry>() {
+		public int compare(Entry entry1, Entry entry2) {
+			return entry2.weight - entry1.weight;
+		}
+	};
+
+	/**
+	 * A book move. Castling is stored as the king move, not the Polyglot king
+	 * takes rook encoding.
+	 */
+	public static class Entry {
+		protected int from;
+		protected int to;
+		protected int promotedPiece;
+		protected int weight;
+		protected int learn;
+
+		public int getFrom() {
+			return from;
+		}
+
+		public int getLearn() {
+			return learn;
+		}
+
+		/**
+		 * Returns the Raptor piece promoted to, or EMPTY.
+		 */
+		public int getPromotedPiece() {
+			return promotedPiece;
+		}
+
+		public int getTo() {
+			return to;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		@Override
+		public String toString() {
+			return GameUtils.getSan(from) + GameUtils.getSan(to) + " "
+					+ weight;
+		}
+	}
+
+	protected File file;
+	protected MappedByteBuffer buffer;
+	protected int size;
+
+	/**
+	 * Maps the book file. Books must be smaller than 2GB.
+	 */
+	public PolyglotBook(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length % ENTRY_SIZE != 0) {
+				throw new IOException(file.getName()
+						+ " is not a Polyglot book. Its length " + length
+						+ " is not a multiple of " + ENTRY_SIZE + ".");
+			}
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException(file.getName()
+						+ " is too large to map.");
+			}
+			size = (int) (length / ENTRY_SIZE);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					length);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+		} finally {
+			// The mapping stays valid after the channel is closed.
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns true if the book has moves for the key.
+	 */
+	public boolean contains(long key) {
+		int index = indexOf(key);
+		return index < size && getKey(index) == key;
+	}
+
+	/**
+	 * Returns true if the game is classic and the book has moves for its
+	 * current position.
+	 */
+	public boolean contains(Game game) {
+		return Variant.isClassic(game.getVariant())
+				&& contains(game.getPolyglotKey());
+	}
+
+	/**
+	 * Returns the book moves for the current position of the game sorted by
+	 * weight, highest first. Returns an empty array if the game is not
+	 * classic or the position is not in the book.
+	 */
+	public Entry[] getEntries(Game game) {
+		if (!Variant.isClassic(game.getVariant())) {
+			return new Entry[0];
+		}
+		long key = game.getPolyglotKey();
+		int start = indexOf(key);
+		int end = start;
+		while (end < size && getKey(end) == key) {
+			end++;
+		}
+
+		Entry[] result = new Entry[end - start];
+		for (int i = start; i < end; i++) {
+			result[i - start] = decode(game, i);
+		}
+		Arrays.sort(result, WEIGHT_COMPARATOR);
+		return result;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of entries in the book.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Decodes the move at index. Polyglot moves are to file (3 bits), to row
+	 * (3), from file (3), from row (3), promotion (3). Castling is encoded as
+	 * the king capturing its own rook.
+	 */
+	protected Entry decode(Game game, int index) {
+		int offset = index * ENTRY_SIZE;
+		int move = buffer.getShort(offset + 8) & 0xffff;
+
+		Entry result = new Entry();
+		result.to = move & 0x3f;
+		result.from = move >> 6 & 0x3f;
+		int promotion = move >> 12 & 0x7;
+		result.promotedPiece = promotion < PROMOTED_PIECE.length ? PROMOTED_PIECE[promotion]
+				: EMPTY;
+		result.weight = buffer.getShort(offset + 10) & 0xffff;
+		result.learn = buffer.getInt(offset + 12);
+
+		if ((game.getPiece(result.from) & NOT_PROMOTED_MASK) == KING) {
+			if (result.from == SQUARE_E1 && result.to == SQUARE_H1) {
+				result.to = SQUARE_G1;
+			} else if (result.from == SQUARE_E1 && result.to == SQUARE_A1) {
+				result.to = SQUARE_C1;
+			} else if (result.from == SQUARE_E8 && result.to == SQUARE_H8) {
+				result.to = SQUARE_G8;
+			} else if (result.from == SQUARE_E8 && result.to == SQUARE_A8) {
+				result.to = SQUARE_C8;
+			}
+		}
+		return result;
+	}
+
+	protected long getKey(int index) {
+		return buffer.getLong(index * ENTRY_SIZE);
+	}
+
+	/**
+	 * Returns the index of the first entry with a key greater than or equal
+	 * to key. Keys are compared unsigned.
+	 */
+	protected int indexOf(long key) {
+		long unsignedKey = key ^ Long.MIN_VALUE;
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = low + high >>> 1;
+			if ((getKey(middle) ^ Long.MIN_VALUE) < unsignedKey) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
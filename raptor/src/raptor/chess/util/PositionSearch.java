@@ -0,0 +1,480 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.chess.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.SimplePgnParser;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * Searches PGN files for games reaching a position described by a Query. The
+ * games are split, parsed and replayed in batches by a PgnBatchProcessor, so
+ * the move generation runs on all cores.
+ * </p>
+ * <p>
+ * Every position of a game is tested as it is replayed. A game stops being
+ * replayed as soon as it matches or as soon as its material can no longer
+ * reach the material the query requires.
+ * </p>
+ */
+public class PositionSearch implements GameConstants {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(PositionSearch.class);
+
+	/**
+	 * Receives the results of a search. hitFound is invoked on the searchs
+	 * batch threads and searchFinished on the thread calling search.
+	 */
+	public static interface PositionSearchListener {
+		/**
+		 * Invoked for each game matching the query as soon as it is found.
+		 */
+		public void hitFound(Hit hit);
+
+		/**
+		 * Invoked once every game of the file has been searched, or the search
+		 * was cancelled.
+		 */
+		public void searchFinished(PositionSearch search);
+	}
+
+	/**
+	 * A game matching the query.
+	 */
+	public static class Hit {
+		protected int lineNumber;
+		protected int halfMoveIndex;
+		protected String white;
+		protected String black;
+		protected String whiteElo;
+		protected String blackElo;
+		protected String result;
+		protected String date;
+		protected String event;
+		protected String pgn;
+
+		protected Hit(Game game, int lineNumber, String pgn) {
+			this.lineNumber = lineNumber;
+			this.pgn = pgn;
+			halfMoveIndex = game.getMoveList().getSize();
+			white = game.getHeader(PgnHeader.White);
+			black = game.getHeader(PgnHeader.Black);
+			whiteElo = game.getHeader(PgnHeader.WhiteElo);
+			blackElo = game.getHeader(PgnHeader.BlackElo);
+			result = game.getHeader(PgnHeader.Result);
+			date = game.getHeader(PgnHeader.Date);
+			event = game.getHeader(PgnHeader.Event);
+		}
+
+		public String getBlack() {
+			return black;
+		}
+
+		public String getBlackElo() {
+			return blackElo;
+		}
+
+		public String getDate() {
+			return date;
+		}
+
+		public String getEvent() {
+			return event;
+		}
+
+		/**
+		 * Returns the number of half moves played when the game first matched.
+		 */
+		public int getHalfMoveIndex() {
+			return halfMoveIndex;
+		}
+
+		/**
+		 * Returns the line number of the games Event header.
+		 */
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		/**
+		 * Returns the pgn text of the game.
+		 */
+		public String getPgn() {
+			return pgn;
+		}
+
+		public String getResult() {
+			return result;
+		}
+
+		public String getWhite() {
+			return white;
+		}
+
+		public String getWhiteElo() {
+			return whiteElo;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Describes the positions to search for. A position matches if it has the
+	 * zobrist hash, exactly the piece counts and at least the pieces on the
+	 * squares of the masks the query was created with.
+	 * </p>
+	 * <p>
+	 * The query also keeps the minimum number of pawns and of pieces a side
+	 * must have. Outside of drop variants neither ever increases, so a game
+	 * below either can be abandoned.
+	 * </p>
+	 */
+	public static class Query {
+		protected boolean isMatchingHash;
+		protected long hash;
+		protected int[][] pieceCounts;
+		protected long[][] masks;
+		protected Variant variant;
+		protected int[] minPawns = new int[2];
+		protected int[] minPieces = new int[2];
+
+		protected Query(Variant variant) {
+			this.variant = variant;
+		}
+
+		/**
+		 * Returns a query for the material of the specified game: the same
+		 * number of each piece for both sides.
+		 */
+		public static Query material(Game game) {
+			Query query = new Query(game.getVariant());
+			query.pieceCounts = new int[2][KING + 1];
+			for (int color = WHITE; color <= BLACK; color++) {
+				for (int piece = PAWN; piece <= KING; piece++) {
+					query.pieceCounts[color][piece] = game.getPieceCount(color,
+							piece);
+				}
+			}
+			query.updateMinimums();
+			return query;
+		}
+
+		/**
+		 * Returns a query for the pieces on squares described by the specified
+		 * masks, indexed by color and piece. A position matches if every
+		 * square of a mask holds that piece. Null masks or 0 masks match any
+		 * position. Variant may be null to search games of every variant.
+		 */
+		public static Query pattern(Variant variant, long[][] masks) {
+			Query query = new Query(variant);
+			query.masks = new long[2][KING + 1];
+			for (int color = WHITE; color <= BLACK; color++) {
+				for (int piece = PAWN; piece <= KING; piece++) {
+					if (masks[color] != null && piece < masks[color].length) {
+						query.masks[color][piece] = masks[color][piece];
+					}
+				}
+			}
+			query.updateMinimums();
+			return query;
+		}
+
+		/**
+		 * Returns a query for the pawn structure of the specified game: a pawn
+		 * of the same color on every square holding a pawn in the game.
+		 */
+		public static Query pawnStructure(Game game) {
+			long[][] masks = new long[2][KING + 1];
+			masks[WHITE][PAWN] = game.getPieceBB(WHITE, PAWN);
+			masks[BLACK][PAWN] = game.getPieceBB(BLACK, PAWN);
+			return pattern(game.getVariant(), masks);
+		}
+
+		/**
+		 * Returns a query for the position of the specified game. Positions
+		 * are compared by their zobrist position hash.
+		 */
+		public static Query position(Game game) {
+			Query query = material(game);
+			query.isMatchingHash = true;
+			query.hash = game.getZobristPositionHash();
+			return query;
+		}
+
+		/**
+		 * Returns true if games of the specified variant can be searched.
+		 */
+		public boolean accepts(Variant gameVariant) {
+			return variant == null
+					|| variant == gameVariant
+					|| (Variant.isClassic(variant) && Variant
+							.isClassic(gameVariant));
+		}
+
+		/**
+		 * Returns false if no position following the current position of the
+		 * specified game can match.
+		 */
+		public boolean canStillMatch(Game game) {
+			Variant gameVariant = game.getVariant();
+			if (Variant.isBughouse(gameVariant)
+					|| Variant.isCrazyhouse(gameVariant)) {
+				return true;
+			}
+			for (int color = WHITE; color <= BLACK; color++) {
+				int pawns = game.getPieceCount(color, PAWN);
+				if (pawns < minPawns[color]) {
+					return false;
+				}
+				int pieces = pawns;
+				for (int piece = PAWN + 1; piece <= KING; piece++) {
+					pieces += game.getPieceCount(color, piece);
+				}
+				if (pieces < minPieces[color]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns true if the current position of the specified game matches.
+		 */
+		public boolean matches(Game game) {
+			if (isMatchingHash && game.getZobristPositionHash() != hash) {
+				return false;
+			}
+			if (pieceCounts != null) {
+				for (int color = WHITE; color <= BLACK; color++) {
+					for (int piece = PAWN; piece <= KING; piece++) {
+						if (game.getPieceCount(color, piece) != pieceCounts[color][piece]) {
+							return false;
+						}
+					}
+				}
+			}
+			if (masks != null) {
+				for (int color = WHITE; color <= BLACK; color++) {
+					for (int piece = PAWN; piece <= KING; piece++) {
+						long mask = masks[color][piece];
+						if (mask != 0L
+								&& (game.getPieceBB(color, piece) & mask) != mask) {
+							return false;
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		protected void updateMinimums() {
+			for (int color = WHITE; color <= BLACK; color++) {
+				int pawns = 0;
+				int pieces = 0;
+				for (int piece = PAWN; piece <= KING; piece++) {
+					int count = 0;
+					if (pieceCounts != null) {
+						count = pieceCounts[color][piece];
+					}
+					if (masks != null) {
+						count = Math.max(count, Long
+								.bitCount(masks[color][piece]));
+					}
+					if (piece == PAWN) {
+						pawns = count;
+					}
+					pieces += count;
+				}
+				minPawns[color] = pawns;
+				minPieces[color] = pieces;
+			}
+		}
+	}
+
+	/**
+	 * Replays the games of one batch, testing every position against the
+	 * query.
+	 */
+	protected class SearchParserListener extends LenientPgnParserListener {
+		protected int lineNumber;
+		protected String pgn;
+
+		@Override
+		public void errorEncountered(PgnParserError error) {
+		}
+
+		@Override
+		public boolean gameParsed(Game game, int lineNumber) {
+			return false;
+		}
+
+		/**
+		 * Searches the specified game text, which starts at the specified line
+		 * of the file.
+		 */
+		public void search(String pgn, int lineNumber) {
+			this.pgn = pgn;
+			this.lineNumber = lineNumber;
+			SimplePgnParser parser = new SimplePgnParser(pgn);
+			parser.addPgnParserListener(this);
+			parser.parse();
+		}
+
+		@Override
+		protected void createGameFromHeaders(PgnParser parser) {
+			super.createGameFromHeaders(parser);
+			if (currentGame != null && !isIgnoringCurrentGame) {
+				currentGame.clearState(Game.UPDATING_SAN_STATE);
+				currentGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+				if (query.accepts(currentGame.getVariant())) {
+					testPosition();
+				} else {
+					isIgnoringCurrentGame = true;
+				}
+			}
+		}
+
+		@Override
+		protected Move makeGameMoveFromWord(String word)
+				throws IllegalArgumentException {
+			Move result = super.makeGameMoveFromWord(word);
+			testPosition();
+			return result;
+		}
+
+		protected void testPosition() {
+			positionsScanned.incrementAndGet();
+			if (query.matches(currentGame)) {
+				hitCount.incrementAndGet();
+				listener.hitFound(new Hit(currentGame, lineNumber, pgn));
+				isIgnoringCurrentGame = true;
+			} else if (!query.canStillMatch(currentGame)) {
+				isIgnoringCurrentGame = true;
+			}
+		}
+	}
+
+	protected PositionSearchListener listener;
+	protected Query query;
+	protected AtomicLong gamesScanned = new AtomicLong();
+	protected AtomicLong positionsScanned = new AtomicLong();
+	protected AtomicInteger hitCount = new AtomicInteger();
+	protected long startTime;
+	protected volatile long endTime;
+	protected PgnBatchProcessor processor = new PgnBatchProcessor(
+			"PositionSearch", false) {
+		@Override
+		protected void processBatch(List<String> games,
+				List<Integer> lineNumbers) {
+			searchBatch(games, lineNumbers);
+		}
+	};
+
+	public PositionSearch(Query query, PositionSearchListener listener) {
+		this.query = query;
+		this.listener = listener;
+	}
+
+	/**
+	 * Stops the search. Batches already being replayed finish their current
+	 * game.
+	 */
+	public void cancel() {
+		processor.cancel();
+	}
+
+	/**
+	 * Returns the number of milliseconds the search has been running, or ran
+	 * if it has finished.
+	 */
+	public long getElapsedMillis() {
+		if (startTime == 0) {
+			return 0;
+		}
+		return (endTime == 0 ? System.currentTimeMillis() : endTime)
+				- startTime;
+	}
+
+	public long getGamesScanned() {
+		return gamesScanned.get();
+	}
+
+	/**
+	 * Returns the number of games scanned per second so far.
+	 */
+	public long getGamesPerSecond() {
+		long elapsed = getElapsedMillis();
+		return elapsed == 0 ? 0 : getGamesScanned() * 1000L / elapsed;
+	}
+
+	public int getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getPositionsScanned() {
+		return positionsScanned.get();
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public boolean isCancelled() {
+		return processor.isCancelled();
+	}
+
+	public boolean isFinished() {
+		return endTime != 0;
+	}
+
+	/**
+	 * Searches the specified PGN file and blocks until every game has been
+	 * searched. Hits are passed to the listener as they are found.
+	 */
+	public void search(File file) throws IOException {
+		startTime = System.currentTimeMillis();
+		try {
+			processor.process(file, 1);
+		} finally {
+			endTime = System.currentTimeMillis();
+			listener.searchFinished(this);
+		}
+	}
+
+	protected void searchBatch(List<String> games, List<Integer> lineNumbers) {
+		SearchParserListener parserListener = new SearchParserListener();
+		for (int i = 0; i < games.size() && !processor.isCancelled(); i++) {
+			try {
+				parserListener.search(games.get(i), lineNumbers.get(i));
+			} catch (RuntimeException re) {
+				LOG.warn("Error searching the game at line " + lineNumbers.get(i),
+						re);
+			}
+			gamesScanned.incrementAndGet();
+		}
+	}
+}
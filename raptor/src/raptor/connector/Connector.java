@@ -30,6 +30,7 @@ import raptor.script.ScriptContext;
 import raptor.service.BughouseService;
 import raptor.service.ChatService;
 import raptor.service.GameService;
+import raptor.service.RefreshScheduler;
 import raptor.service.SeekService;
 
 public interface Connector {
@@ -240,6 +241,12 @@ public interface Connector {
 
 	public SeekService getSeekService();
 
+	/**
+	 * Returns the scheduler which polls bugwho, sought and games for this
+	 * connector.
+	 */
+	public RefreshScheduler getRefreshScheduler();
+
 	/**
 	 * Returns a short name describing this connector.
 	 * 
@@ -13,6 +13,8 @@
  */
 package raptor.connector.ics;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -22,7 +24,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -49,6 +50,7 @@ import raptor.connector.ConnectorListener;
 import raptor.connector.MessageCallback;
 import raptor.connector.ics.timeseal.MessageListener;
 import raptor.connector.ics.timeseal.MessageProducer;
+import raptor.connector.ics.timeseal.SessionRecording;
 import raptor.connector.ics.timeseal.TimesealSocketMessageProducer;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
@@ -63,10 +65,14 @@ import raptor.script.ScriptConnectorType;
 import raptor.script.ScriptContext;
 import raptor.service.BughouseService;
 import raptor.service.ChatService;
+import raptor.service.ConnectorScheduler;
 import raptor.service.GameService;
 import raptor.service.GameService.GameServiceListener;
 import raptor.service.GameService.Offer;
 import raptor.service.GameService.Offer.OfferType;
+import raptor.service.LatencyTraceService;
+import raptor.service.LatencyTraceService.Stage;
+import raptor.service.RefreshScheduler;
 import raptor.service.ScriptService;
 import raptor.service.ScriptService.ScriptServiceListener;
 import raptor.service.SeekService;
@@ -74,6 +80,7 @@ import raptor.service.SeekService.SeekType;
 import raptor.service.SoundService;
 import raptor.service.ThreadService;
 import raptor.service.UserTagService;
+import raptor.speech.SpeechQueue;
 import raptor.swt.BugButtonsWindowItem;
 import raptor.swt.BugWhoWindowItem;
 import raptor.swt.GamesWindowItem;
@@ -85,6 +92,7 @@ import raptor.swt.chat.controller.ChannelController;
 import raptor.swt.chat.controller.MainController;
 import raptor.swt.chat.controller.RegExController;
 import raptor.swt.chess.ChessBoardUtils;
+import raptor.util.AutoCompleteStore;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 import raptor.util.RaptorStringUtils;
@@ -130,8 +138,14 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	protected Set<String> channelToSpeakTellsFrom = new HashSet<String>();
 	protected Set<String> gamesToSpeakTellsFrom = new HashSet<String>();
 	protected SeekService seekService;
+	protected RefreshScheduler refreshScheduler;
 	protected boolean isSpeakingAllPersonTells = false;
-	protected TreeMap<String, String> autoCompleteList = new TreeMap<String, String>();
+	/**
+	 * The maximum number of handles kept for auto complete.
+	 */
+	protected static final int MAX_AUTO_COMPLETE_HANDLES = 5000;
+
+	protected AutoCompleteStore autoCompleteList = new AutoCompleteStore(MAX_AUTO_COMPLETE_HANDLES);
 	protected List<Pattern> patternsToBlock = new ArrayList<Pattern>(20);
 	protected MessageProducer messageProducer;
 
@@ -220,7 +234,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		this.context = context;
 		chatService = new ChatService(this);
 		seekService = new SeekService(this);
-		gameService = new GameService();
+		refreshScheduler = new RefreshScheduler(this);
+		gameService = new GameService(this);
 		gameService.addGameServiceListener(gameServiceListener);
 		setBughouseService(new BughouseService(this));
 		prepopulateAutoCompleteList();
@@ -241,7 +256,12 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	@Override
 	public void connectionClosed(StringBuilder buffer) {
 		parseMessage(drainInboundMessageBuffer(buffer));
-		disconnect();
+		// Disconnect after the messages already queued have been parsed.
+		ConnectorScheduler.getInstance().execute(this, new Runnable() {
+			public void run() {
+				disconnect();
+			}
+		});
 	}
 
 	@Override
@@ -323,36 +343,13 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	 * @return True if in auto complete, false otherwise.
 	 */
 	public boolean isInAutoComplete(String word) {
-		synchronized (autoCompleteList) {
-			String lcw = word.toLowerCase();
-			return autoCompleteList.containsKey(lcw);
-		}
+		return autoCompleteList.contains(word);
 	}
 
 	public String[] autoComplete(String word) {
 		if (word != null && word.length() > 0) {
-			synchronized (autoCompleteList) {
-				String lowerCaseWord = word.toLowerCase();
-				int maxout = 5;
-				int n = 0;
-				List<String> result = new ArrayList<String>(maxout);
-				String w = autoCompleteList.higherKey(lowerCaseWord);
-				if ((w == null) || !w.startsWith(lowerCaseWord)) {
-					//
-					// No matches found
-					//
-					return new String[0];
-				}
-				//
-				// Return up to maxout completions
-				//
-				while ((n < maxout) && (w != null) && w.startsWith(lowerCaseWord)) {
-					result.add(w);
-					++n;
-					w = autoCompleteList.higherKey(w);
-				}
-				return (String[]) result.toArray(new String[0]);
-			}
+			// Return up to 5 completions.
+			return autoCompleteList.complete(word, 5);
 		} else {
 			return new String[0];
 		}
@@ -507,6 +504,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 			chatService.dispose();
 			chatService = null;
 		}
+		if (refreshScheduler != null) {
+			refreshScheduler.dispose();
+		}
 		if (gameService != null) {
 			gameService.removeGameServiceListener(gameServiceListener);
 			gameService.dispose();
@@ -519,6 +519,10 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		return bughouseService;
 	}
 
+	public RefreshScheduler getRefreshScheduler() {
+		return refreshScheduler;
+	}
+
 	public String[][] getChannelActions(String channel) {
 		String channelActions = Raptor.getInstance().getPreferences()
 				.getString(context.getPreferencePrefix() + PreferenceKeys.CHANNEL_COMMANDS);
@@ -745,7 +749,9 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	public void makeMove(Game game, Move move) {
-		sendMessage(move.getLan(), true);
+		long traceOrigin = LatencyTraceService.getInstance().beginMove();
+		sendMessage(move.getLan(), true, null, MessageProducer.PRIORITY_URGENT);
+		LatencyTraceService.getInstance().moveEnqueued(traceOrigin);
 	}
 
 	public void matchBughouse(String playerName, boolean isRated, int time, int inc) {
@@ -983,7 +989,8 @@ public abstract class IcsConnector implements Connector, MessageListener {
 				playBughouseSounds(event);
 				if (!event.hasSoundBeenHandled()
 						&& getPreferences().getBoolean(PreferenceKeys.BUGHOUSE_SPEAK_PARTNER_TELLS)) {
-					event.setHasSoundBeenHandled(speak(getTextAfterColon(event.getMessage())));
+					event.setHasSoundBeenHandled(speak(getTextAfterColon(event.getMessage()),
+							SpeechQueue.PRIORITY_PARTNER));
 				}
 			}
 
@@ -1158,6 +1165,16 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	 * should not be published to the ChatService.
 	 */
 	public void sendMessage(String message, boolean isHidingFromUser, ChatType hideNextChatType) {
+		sendMessage(message, isHidingFromUser, hideNextChatType,
+				message.startsWith("$$") ? MessageProducer.PRIORITY_URGENT : MessageProducer.PRIORITY_NORMAL);
+	}
+
+	/**
+	 * Sends a message to the connector with the specified MessageProducer
+	 * priority. Urgent messages are written ahead of normal ones which are
+	 * still queued.
+	 */
+	protected void sendMessage(String message, boolean isHidingFromUser, ChatType hideNextChatType, int priority) {
 		// long start = System.currentTimeMillis();
 		if (isConnected()) {
 
@@ -1184,7 +1201,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 					if (!current.endsWith("\n")) {
 						current += "\n";
 					}
-					messageProducer.send(current);
+					messageProducer.send(current, priority);
 				}
 				if (message.startsWith("$$")) {
 					// Don't update last send time on a $$ since idle time
@@ -1275,6 +1292,36 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		}
 	}
 
+	/**
+	 * Starts recording the raw text read from the server to file, for replay
+	 * with a ReplayMessageProducer or a LoopbackIcsServer. Returns false if
+	 * the connector is not connected to a socket.
+	 */
+	public boolean startRecording(File file) throws IOException {
+		if (isConnected() && messageProducer instanceof TimesealSocketMessageProducer) {
+			((TimesealSocketMessageProducer) messageProducer)
+					.setRecorder(new SessionRecording.Recorder(file, messageProducer.isTimeseal2On()));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stops recording. Returns the file recorded to, or null if the session
+	 * was not being recorded.
+	 */
+	public File stopRecording() {
+		if (messageProducer instanceof TimesealSocketMessageProducer) {
+			TimesealSocketMessageProducer producer = (TimesealSocketMessageProducer) messageProducer;
+			SessionRecording.Recorder recorder = producer.getRecorder();
+			if (recorder != null) {
+				producer.setRecorder(null);
+				return recorder.getFile();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Stores off the tab states that matter to this connector so they can be
 	 * restored when reconnected.
@@ -1354,13 +1401,11 @@ public abstract class IcsConnector implements Connector, MessageListener {
 		sendMessage("whisper " + whisper);
 	}
 
+	/**
+	 * Adds a word which is never aged out of auto complete.
+	 */
 	protected void addToAutoComplete(String word) {
-		final String lowerCaseWord = word.toLowerCase();
-		synchronized (autoCompleteList) {
-			if (!autoCompleteList.containsKey(lowerCaseWord)) {
-				autoCompleteList.put(lowerCaseWord, lowerCaseWord);
-			}
-		}
+		autoCompleteList.addPermanent(word);
 	}
 
 	/**
@@ -1564,6 +1609,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	protected void firePingInfo(final int pingMillis) {
+		LatencyTraceService.getInstance().recordPing(pingMillis);
 		ThreadService.getInstance().run(new Runnable() {
 			public void run() {
 				if (connectorListeners == null) {
@@ -1756,7 +1802,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	 * 
 	 * This method also handles login logic which is tricky.
 	 */
-	public void messageArrived(StringBuilder buffer) {
+	public void messageArrived(StringBuilder buffer, long readTime) {
 
 		// System.err.println("Message arrived (buffer): " + buffer);
 
@@ -1768,7 +1814,7 @@ public abstract class IcsConnector implements Connector, MessageListener {
 			int promptIndex = -1;
 			while ((promptIndex = buffer.indexOf(context.getRawPrompt())) != -1) {
 				String message = drainInboundMessageBuffer(buffer, promptIndex + context.getRawPrompt().length());
-				parseMessage(message);
+				parseMessage(message, readTime);
 			}
 		} else {
 
@@ -1851,26 +1897,54 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	 * in, message will be all of the text received since the last login prompt.
 	 * 
 	 * message will always use \n as the line delimiter.
+	 * 
+	 * The message is parsed and its events are published on the
+	 * ConnectorScheduler, which runs the messages of this connector in order
+	 * and gives the connector the user is playing on priority over the others.
 	 */
-	protected void parseMessage(final String message) {
+	protected void parseMessage(String message) {
+		parseMessage(message, 0);
+	}
+
+	/**
+	 * Parses the message on the ConnectorScheduler. readTime is the
+	 * System.nanoTime of the socket read which completed the message, or 0 if
+	 * it is not traced. The parse task and the tasks it spawns carry it to the
+	 * LatencyTraceService.
+	 */
+	protected void parseMessage(final String message, long readTime) {
+		ConnectorScheduler.getInstance().execute(this,
+				LatencyTraceService.getInstance().withReadTime(readTime, new Runnable() {
+					public void run() {
+						processMessage(message);
+					}
+
+					@Override
+					public String toString() {
+						return "IcsConnector.parseMessage runnable";
+					}
+				}));
+	}
+
+	/**
+	 * Parses the message with the IcsParser and publishes its events. Invoked
+	 * by parseMessage on the ConnectorScheduler.
+	 */
+	protected void processMessage(String message) {
 		try {
 			String filteredMessage = filterTrailingPrompts(message);
 
 			// This call will handle all game events, and return back a list of
 			// ChatEvents to process.
-			final ChatEvent[] events = context.getParser().parse(filteredMessage);
-
-			ThreadService.getInstance().run(new Runnable() {
-				public void run() {
+			ChatEvent[] events = context.getParser().parse(filteredMessage);
+			LatencyTraceService.getInstance().recordInbound(Stage.PARSE);
 
-					for (ChatEvent event : events) {
-						event.setMessage(IcsUtils.maciejgFormatToUnicode(event.getMessage()));
-						publishEvent(event);
-					}
-				}
-			});
+			for (ChatEvent event : events) {
+				event.setMessage(IcsUtils.maciejgFormatToUnicode(event.getMessage()));
+				publishEvent(event);
+			}
 		} catch (RuntimeException re) {
-			throw new RuntimeException("Error occured parsing message: " + message, re);
+			onError("Error occured parsing message: " + message, re);
 		}
 	}
 
@@ -2152,25 +2226,25 @@ public abstract class IcsConnector implements Connector, MessageListener {
 	}
 
 	protected static boolean speak(String message) {
+		return speak(message, SpeechQueue.PRIORITY_CHAT);
+	}
+
+	protected static boolean speak(String message, int priority) {
 		message = StringUtils.remove(message, "fics%").trim();
-		return SoundService.getInstance().textToSpeech(message);
+		return SoundService.getInstance().textToSpeech(message, priority);
 	}
 
+	/**
+	 * Adds the events source to auto complete. This is done inline, the
+	 * AutoCompleteStore is lock free so it never blocks the UI thread.
+	 */
 	protected void updateAutoComplete(final ChatEvent event) {
 		if (!isConnected()) {
 			return;
 		}
-		ThreadService.getInstance().run(new Runnable() {
-			public void run() {
-				if (StringUtils.isNotBlank(event.getSource())) {
-					addToAutoComplete(event.getSource());
-				}
-			}
-
-			public String toString() {
-				return "IcsConnector.updateAutoComplete runnable";
-			}
-		});
+		if (StringUtils.isNotBlank(event.getSource())) {
+			autoCompleteList.touch(event.getSource());
+		}
 	}
 
 	protected boolean vetoMessage(String message) {
@@ -14,9 +14,9 @@
 package raptor.connector.ics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -78,6 +78,7 @@ import raptor.service.GameService;
 import raptor.service.GameService.GameInfo;
 import raptor.service.GameService.Offer;
 import raptor.service.GameService.Offer.OfferType;
+import raptor.service.RefreshScheduler;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 
@@ -114,7 +115,8 @@ public class IcsParser implements GameConstants {
 	 * style 12 and another B1. This breaks Raptor, since it uses the game
 	 * object to keep track of the state. So it is currently being used to
 	 * ignore all B1s if the game is zh and its a BICS parser if they were not
-	 * preceded by a style 12.
+	 * preceded by a style 12. Only used on the parsing thread, B1s capture it
+	 * when they are queued.
 	 */
 	protected boolean containedStyle12;
 
@@ -126,21 +128,21 @@ public class IcsParser implements GameConstants {
 	 * first style 12 message comes along. A new game requires a 12 message as
 	 * well as a G1.
 	 */
-	protected Map<String, G1Message> unprocessedG1Messages = new HashMap<String, G1Message>();
+	protected Map<String, G1Message> unprocessedG1Messages = new ConcurrentHashMap<String, G1Message>();
 
 	/**
 	 * A map keyed by game id. Used to temporarily store style12 messages from
 	 * newly examined games until the moves message comes along. From the moves
 	 * message you can identify the variant and create the game correctly.
 	 */
-	protected Map<String, Style12Message> examineGamesWaitingOnMoves = new HashMap<String, Style12Message>();
+	protected Map<String, Style12Message> examineGamesWaitingOnMoves = new ConcurrentHashMap<String, Style12Message>();
 
 	/**
 	 * A map keyed by game id. Used to temporarily store style12 messages from
 	 * newly examined games until the moves message comes along. From the moves
 	 * message you can identify the variant and create the game correctly.
 	 */
-	protected Map<String, B1Message> examineB1sWaitingOnMoves = new HashMap<String, B1Message>();
+	protected Map<String, B1Message> examineB1sWaitingOnMoves = new ConcurrentHashMap<String, B1Message>();
 
 	/**
 	 * BICS does'nt support the partner board in G1 messages so you have to
@@ -148,6 +150,13 @@ public class IcsParser implements GameConstants {
 	 */
 	protected List<String> bugGamesWithoutBoard2 = new ArrayList<String>(10);
 
+	/**
+	 * The two boards of a bughouse game are created by different game
+	 * threads. Games are added, linked to their partner board and shown while
+	 * holding this lock, so only the board created second finds the other.
+	 */
+	protected final Object gameCreationLock = new Object();
+
 	public IcsParser(boolean isBicsParser) {
 		this.isBicsParser = isBicsParser;
 		gameEndParser = new GameEndParser();
@@ -271,42 +280,56 @@ public class IcsParser implements GameConstants {
 
 	/**
 	 * Invoked when a user is examining a game and it becomes a setup position.
+	 * The transition is queued behind the pending updates of each active game.
 	 */
 	public void processExaminedGameBecameSetup() {
-		Game[] activeGames = connector.getGameService().getAllActiveGames();
-		for (Game game : activeGames) {
-			if (game.isInState(Game.EXAMINING_STATE)) {
-				if (LOG.isDebugEnabled()) {
-					LOG.debug("Handling transition from examined game to bsetup.");
+		final GameService service = connector.getGameService();
+		for (Game game : service.getAllActiveGames()) {
+			final String gameId = game.getId();
+			service.execute(gameId, new Runnable() {
+				public void run() {
+					processExaminedGameBecameSetup(gameId, service);
 				}
-				SetupGame setupGame = new SetupGame();
-				game.overwrite(setupGame, true);
-
-				// Set all the drop pieces.
-				setupGame.setPieceCount(WHITE, PAWN, 1);
-				setupGame.setPieceCount(WHITE, KNIGHT, 1);
-				setupGame.setPieceCount(WHITE, BISHOP, 1);
-				setupGame.setPieceCount(WHITE, ROOK, 1);
-				setupGame.setPieceCount(WHITE, QUEEN, 1);
-				setupGame.setPieceCount(WHITE, KING, 1);
-				setupGame.setPieceCount(BLACK, PAWN, 1);
-				setupGame.setPieceCount(BLACK, KNIGHT, 1);
-				setupGame.setPieceCount(BLACK, BISHOP, 1);
-				setupGame.setPieceCount(BLACK, ROOK, 1);
-				setupGame.setPieceCount(BLACK, QUEEN, 1);
-				setupGame.setPieceCount(BLACK, KING, 1);
-
-				// Adjust the state since it was cleared after the overwrite.
-				setupGame.clearState(Game.EXAMINING_STATE);
-				setupGame.clearState(Game.OBSERVING_EXAMINED_STATE);
-				setupGame.clearState(Game.OBSERVING_STATE);
-				setupGame.addState(Game.SETUP_STATE);
-				setupGame.addState(Game.DROPPABLE_STATE);
-				connector.getGameService().addGame(setupGame);
-				connector.getGameService().fireExaminedGameBecameSetup(
-						game.getId());
-				break;
+			});
+		}
+	}
+
+	/**
+	 * Turns the game into a setup game if it is being examined. Must be
+	 * invoked on the game's GameService queue.
+	 */
+	protected void processExaminedGameBecameSetup(String gameId,
+			GameService service) {
+		Game game = service.getGame(gameId);
+		if (game != null && game.isInState(Game.EXAMINING_STATE)) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Handling transition from examined game to bsetup.");
 			}
+			SetupGame setupGame = new SetupGame();
+			game.overwrite(setupGame, true);
+
+			// Set all the drop pieces.
+			setupGame.setPieceCount(WHITE, PAWN, 1);
+			setupGame.setPieceCount(WHITE, KNIGHT, 1);
+			setupGame.setPieceCount(WHITE, BISHOP, 1);
+			setupGame.setPieceCount(WHITE, ROOK, 1);
+			setupGame.setPieceCount(WHITE, QUEEN, 1);
+			setupGame.setPieceCount(WHITE, KING, 1);
+			setupGame.setPieceCount(BLACK, PAWN, 1);
+			setupGame.setPieceCount(BLACK, KNIGHT, 1);
+			setupGame.setPieceCount(BLACK, BISHOP, 1);
+			setupGame.setPieceCount(BLACK, ROOK, 1);
+			setupGame.setPieceCount(BLACK, QUEEN, 1);
+			setupGame.setPieceCount(BLACK, KING, 1);
+
+			// Adjust the state since it was cleared after the overwrite.
+			setupGame.clearState(Game.EXAMINING_STATE);
+			setupGame.clearState(Game.OBSERVING_EXAMINED_STATE);
+			setupGame.clearState(Game.OBSERVING_STATE);
+			setupGame.addState(Game.SETUP_STATE);
+			setupGame.addState(Game.DROPPABLE_STATE);
+			service.addGame(setupGame);
+			service.fireExaminedGameBecameSetup(game.getId());
 		}
 	}
 
@@ -382,7 +405,7 @@ public class IcsParser implements GameConstants {
 	protected void adjustBughouseHeadersAndFollowPartnersGamesForFics(
 			Game game, G1Message g1Message, Style12Message message,
 			GameService service) {
-		if (!connector.getGameService().isManaging(g1Message.parterGameId)) {
+		if (!service.isManaging(g1Message.parterGameId)) {
 			if (observePartnerBoardForGame(game)) {
 				connector
 						.sendMessage("observe " + g1Message.parterGameId, true);
@@ -469,7 +492,8 @@ public class IcsParser implements GameConstants {
 	 * Parses and removes all of the game events from inboundEvent. Adjusts the
 	 * games in service. Returns a String with the game events removed.
 	 */
-	protected String parseGameEvents(String inboundMessage) {
+	protected String parseGameEvents(final String inboundMessage) {
+		final GameService service = connector.getGameService();
 		containedStyle12 = false;
 		if (inboundMessage.length() > MAX_GAME_MESSAGE) {
 			return inboundMessage;
@@ -494,30 +518,46 @@ public class IcsParser implements GameConstants {
 							+ line);
 				}
 
-				G1Message g1Message = g1Parser.parse(line);
+				final G1Message g1Message = g1Parser.parse(line);
 				if (g1Message != null) {
-					process(g1Message, connector.getGameService());
+					service.execute(g1Message.gameId, new Runnable() {
+						public void run() {
+							process(g1Message, service);
+						}
+					});
 					trimAtEnd = true;
 					continue;
 				}
 
-				Style12Message style12Message = style12Parser.parse(line);
+				final Style12Message style12Message = style12Parser.parse(line);
 				if (style12Message != null) {
-					process(style12Message, connector.getGameService(),
-							inboundMessage);
+					service.execute(style12Message.gameId, new Runnable() {
+						public void run() {
+							process(style12Message, service, inboundMessage);
+						}
+					});
 					containedStyle12 = true;
 					continue;
 				}
 
-				B1Message b1Message = b1Parser.parse(line);
+				final B1Message b1Message = b1Parser.parse(line);
 				if (b1Message != null) {
-					process(b1Message, connector.getGameService());
+					final boolean isAfterStyle12 = containedStyle12;
+					service.execute(b1Message.gameId, new Runnable() {
+						public void run() {
+							process(b1Message, service, isAfterStyle12);
+						}
+					});
 					continue;
 				}
 
-				GameEndMessage gameEndMessage = gameEndParser.parse(line);
+				final GameEndMessage gameEndMessage = gameEndParser.parse(line);
 				if (gameEndMessage != null) {
-					process(gameEndMessage, connector.getGameService());
+					service.execute(gameEndMessage.gameId, new Runnable() {
+						public void run() {
+							process(gameEndMessage, service);
+						}
+					});
 					result.append(line).append(tok.hasMoreTokens() ? "\n" : "");
 					trimAtEnd = true;
 					continue;
@@ -531,11 +571,16 @@ public class IcsParser implements GameConstants {
 					continue;
 				}
 
-				RemovingObsGameMessage removingObsGameMessage = removingObsGameParser
+				final RemovingObsGameMessage removingObsGameMessage = removingObsGameParser
 						.parse(line);
 				if (removingObsGameMessage != null) {
-					process(removingObsGameMessage, inboundMessage,
-							connector.getGameService());
+					service.execute(removingObsGameMessage.gameId,
+							new Runnable() {
+								public void run() {
+									process(removingObsGameMessage,
+											inboundMessage, service);
+								}
+							});
 					result.append(line).append(tok.hasMoreTokens() ? "\n" : "");
 					continue;
 				}
@@ -545,11 +590,16 @@ public class IcsParser implements GameConstants {
 					continue;
 				}
 
-				NoLongerExaminingGameMessage noLongerExaminingGameMessage = noLongerExaminingParser
+				final NoLongerExaminingGameMessage noLongerExaminingGameMessage = noLongerExaminingParser
 						.parse(line);
 				if (noLongerExaminingGameMessage != null) {
-					process(noLongerExaminingGameMessage,
-							connector.getGameService());
+					service.execute(noLongerExaminingGameMessage.gameId,
+							new Runnable() {
+								public void run() {
+									process(noLongerExaminingGameMessage,
+											service);
+								}
+							});
 					result.append(line).append(tok.hasMoreTokens() ? "\n" : "");
 					continue;
 				}
@@ -593,9 +643,14 @@ public class IcsParser implements GameConstants {
 	 */
 	protected String parseMovesMessage(String inboundMessage,
 			List<ChatEvent> events) {
-		MovesMessage movesMessage = movesParser.parse(inboundMessage);
+		final MovesMessage movesMessage = movesParser.parse(inboundMessage);
 		if (movesMessage != null) {
-			process(movesMessage, connector.getGameService());
+			final GameService service = connector.getGameService();
+			service.execute(movesMessage.gameId, new Runnable() {
+				public void run() {
+					process(movesMessage, service);
+				}
+			});
 			events.add(new ChatEvent(null, ChatType.MOVES, inboundMessage));
 			return null;
 		} else {
@@ -603,7 +658,12 @@ public class IcsParser implements GameConstants {
 		}
 	}
 
-	protected void process(B1Message message, GameService service) {
+	/**
+	 * Processes a B1. isAfterStyle12 should be true if the message containing
+	 * the B1 had a style 12 before it.
+	 */
+	protected void process(B1Message message, GameService service,
+			boolean isAfterStyle12) {
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Processing b1: " + message);
 		}
@@ -619,7 +679,7 @@ public class IcsParser implements GameConstants {
 				}
 			}
 		} else {
-			if (isBicsParser && isCrazyhouse(game) && !containedStyle12) {
+			if (isBicsParser && isCrazyhouse(game) && !isAfterStyle12) {
 				// See the documentation on the variable for an explanation of
 				// why this is done.
 				return;
@@ -680,8 +740,15 @@ public class IcsParser implements GameConstants {
 		// For now ignore simuls and just send this to the first active game
 		// found in the game service.
 		Game[] allActive = service.getAllActiveGames();
-		for (Game game : allActive) {
-			service.fireIllegalMove(game.getId(), message.move);
+		for (final Game game : allActive) {
+			// Queued so it follows the games pending updates.
+			final GameService finalService = service;
+			final String move = message.move;
+			service.execute(game.getId(), new Runnable() {
+				public void run() {
+					finalService.fireIllegalMove(game.getId(), move);
+				}
+			});
 		}
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Processed illegal move: " + message);
@@ -877,19 +944,26 @@ public class IcsParser implements GameConstants {
 					raptor.chat.BugGame[] bugGames = bugWhoGParser
 							.parse(message);
 					if (bugGames != null) {
-						connector.getBughouseService().setGamesInProgress(
-								bugGames);
+						connector.getRefreshScheduler().onResult(
+								RefreshScheduler.BUG_GAMES,
+								connector.getBughouseService()
+										.setGamesInProgress(bugGames));
 						result = new ChatEvent(null, ChatType.BUGWHO_GAMES,
 								message);
 					}
 				} else {
-					connector.getBughouseService().setAvailablePartnerships(
-							partnerships);
+					connector.getRefreshScheduler().onResult(
+							RefreshScheduler.BUG_AVAILABLE_TEAMS,
+							connector.getBughouseService()
+									.setAvailablePartnerships(partnerships));
 					result = new ChatEvent(null,
 							ChatType.BUGWHO_AVAILABLE_TEAMS, message);
 				}
 			} else {
-				connector.getBughouseService().setUnpartneredBuggers(buggers);
+				connector.getRefreshScheduler().onResult(
+						RefreshScheduler.BUG_UNPARTNERED_BUGGERS,
+						connector.getBughouseService().setUnpartneredBuggers(
+								buggers));
 				result = new ChatEvent(null,
 						ChatType.BUGWHO_UNPARTNERED_BUGGERS, message);
 			}
@@ -899,27 +973,41 @@ public class IcsParser implements GameConstants {
 
 	/**
 	 * Handles disconnections. Currently removes all active games from the game
-	 * service.
+	 * service. Each game is removed after its queued updates, and only if it
+	 * is still the game of that id, so a game of a new connection that reuses
+	 * the id is left alone.
 	 */
 	/*
 	 * This method is kept here so it can reference takebackParser without
 	 * hacks. There is no associated DisconnectMessage because such a message
 	 * (or parser) would currently not be very useful.
 	 */
-	public void processDisconnection(GameService service) {
-		for (Game game : service.getAllActiveGames()) {
-			game.setHeader(PgnHeader.ResultDescription,
-					"Interrupted by disconnection");
-			game.setHeader(PgnHeader.Result,
-					Result.UNDETERMINED.getDescription());
-			game.clearState(Game.ACTIVE_STATE | Game.IS_CLOCK_TICKING_STATE);
-			game.addState(Game.INACTIVE_STATE);
-			service.fireGameInactive(game.getId());
-			service.removeGame(game);
-			takebackParser.clearTakebackMessages(game.getId());
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Processed removing game: " + game.getId());
-			}
+	public void processDisconnection(final GameService service) {
+		for (final Game activeGame : service.getAllActiveGames()) {
+			final String gameId = activeGame.getId();
+			// Runs after the updates still queued for the game.
+			service.execute(gameId, new Runnable() {
+				public void run() {
+					Game game = service.getGame(gameId);
+					if (game != activeGame
+							|| !game.isInState(Game.ACTIVE_STATE)) {
+						return;
+					}
+					game.setHeader(PgnHeader.ResultDescription,
+							"Interrupted by disconnection");
+					game.setHeader(PgnHeader.Result,
+							Result.UNDETERMINED.getDescription());
+					game.clearState(Game.ACTIVE_STATE
+							| Game.IS_CLOCK_TICKING_STATE);
+					game.addState(Game.INACTIVE_STATE);
+					service.fireGameInactive(game.getId());
+					service.removeGame(game);
+					takebackParser.clearTakebackMessages(game.getId());
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Processed removing game: " + game.getId());
+					}
+				}
+			});
 		}
 	}
 
@@ -960,6 +1048,26 @@ public class IcsParser implements GameConstants {
 							+ " because you are playing a game.", null));
 			connector.onUnobserve(game);
 		} else {
+			addG1Game(game, g1Message, message, service);
+
+			/**
+			 * Send a request for the moves.
+			 */
+			if (message.fullMoveNumber > 1 || message.fullMoveNumber == 1
+					&& !message.isWhitesMoveAfterMoveIsMade) {
+				connector.sendMessage("moves " + message.gameId, true,
+						ChatType.MOVES);
+			}
+		}
+	}
+
+	/**
+	 * Adds a game created from a G1 message to the service, links bughouse
+	 * boards to their partner and fires gameCreated.
+	 */
+	protected void addG1Game(Game game, G1Message g1Message,
+			Style12Message message, GameService service) {
+		synchronized (gameCreationLock) {
 			service.addGame(game);
 
 			adjustWhiteOnTopHeader(game, message);
@@ -983,15 +1091,6 @@ public class IcsParser implements GameConstants {
 				LOG.debug("Firing game created.");
 			}
 			service.fireGameCreated(game.getId());
-
-			/**
-			 * Send a request for the moves.
-			 */
-			if (message.fullMoveNumber > 1 || message.fullMoveNumber == 1
-					&& !message.isWhitesMoveAfterMoveIsMade) {
-				connector.sendMessage("moves " + message.gameId, true,
-						ChatType.MOVES);
-			}
 		}
 	}
 
@@ -1000,7 +1099,10 @@ public class IcsParser implements GameConstants {
 		if (gameInfoParser != null) {
 			GameInfo[] gameInfos = gameInfoParser.parse(message);
 			if (gameInfos != null) {
-				connector.getGameService().fireGameInfoChanged(gameInfos);
+				connector.getRefreshScheduler().onResult(
+						RefreshScheduler.GAMES,
+						connector.getGameService().fireGameInfoChanged(
+								gameInfos));
 				result = new ChatEvent(null, ChatType.GAMES, message);
 			}
 		}
@@ -1160,7 +1262,9 @@ public class IcsParser implements GameConstants {
 		if (soughtParser != null) {
 			Seek[] seeks = soughtParser.parse(message);
 			if (seeks != null) {
-				connector.getSeekService().setSeeks(seeks);
+				connector.getRefreshScheduler().onResult(
+						RefreshScheduler.SEEKS,
+						connector.getSeekService().setSeeks(seeks));
 				result = new ChatEvent(null, ChatType.SEEKS, message);
 			}
 		}
@@ -1302,7 +1406,7 @@ public class IcsParser implements GameConstants {
 				LOG.debug("Handling examined game became setup game transition.");
 			}
 			// Handles an examined game becoming a setup game.
-			processExaminedGameBecameSetup();
+			processExaminedGameBecameSetup(game.getId(), service);
 		} else if (entireMessage.contains("entering examine mode.\n")
 				|| entireMessage.contains("Entering examine mode.\n")) {
 			// Add this game to the games waiting on moves.
@@ -0,0 +1,290 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+import raptor.Raptor;
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatType;
+import raptor.connector.ics.timeseal.ReplayMessageProducer;
+import raptor.connector.ics.timeseal.SessionRecording;
+import raptor.service.ChatService;
+import raptor.service.GameService;
+
+/**
+ * A headless benchmark of the ICS inbound pipeline. A SessionRecording is
+ * played through a ReplayMessageProducer as fast as possible into this
+ * connector, which runs the real IcsConnector.messageArrived,
+ * IcsConnector.processMessage, IcsParser.parse, GameService and
+ * IcsConnector.publishEvent code without a socket or a display:
+ * <ul>
+ * <li>Messages are processed inline on the replay thread instead of on the
+ * ConnectorScheduler.</li>
+ * <li>Game updates run inline instead of on the GameService queues. No boards
+ * or controllers are opened.</li>
+ * <li>Published chat events stop at the ChatService, and sent messages are
+ * dropped.</li>
+ * </ul>
+ * Raptor is created with Raptor.createHeadlessInstance, so the preferences in
+ * the users raptor home directory are used. swt.jar must be on the class
+ * path, but no display is needed.
+ * 
+ * Reports events and messages per second, the time spent parsing, updating
+ * games and publishing events, and the allocation rate of the replay thread
+ * where the JVM supports it.
+ * 
+ * Usage: IcsReplayBenchmark recordingFile [runs]. Every run but the last is
+ * a warm up.
+ */
+public class IcsReplayBenchmark extends IcsConnector {
+
+	protected static final int PARSE = 0;
+	protected static final int GAME_UPDATE = 1;
+	protected static final int PUBLISH = 2;
+	protected static final String[] STAGE_NAMES = { "IcsParser.parse", "GameService updates",
+			"IcsConnector.publishEvent" };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: IcsReplayBenchmark recordingFile [runs]");
+			System.exit(1);
+		}
+		SessionRecording recording = SessionRecording.read(new File(args[0]));
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Raptor.createHeadlessInstance();
+		IcsReplayBenchmark benchmark = null;
+		for (int i = 0; i < runs; i++) {
+			benchmark = new IcsReplayBenchmark();
+			benchmark.run(recording);
+			System.out.println("Run " + (i + 1) + ": " + benchmark.getSummary());
+		}
+		System.out.println();
+		System.out.println("Last run:");
+		System.out.println(benchmark.getStageTimings());
+		System.exit(0);
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread, or -1 if the JVM
+	 * does not support measuring it.
+	 */
+	protected static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	protected CountDownLatch finished = new CountDownLatch(1);
+	protected long allocatedBytes;
+	protected long bytes;
+	protected long elapsedNanos;
+	protected long processingNanos;
+	protected long messages;
+	protected long events;
+	protected long chatEvents;
+	protected long sentMessages;
+	protected long errors;
+	protected long[] stageCalls = new long[STAGE_NAMES.length];
+	protected long[] stageNanos = new long[STAGE_NAMES.length];
+	protected int stage = -1;
+	protected long stageStartNanos;
+
+	public IcsReplayBenchmark() {
+		super(new IcsConnectorContext(new IcsParser(false)));
+		context.getParser().setConnector(this);
+		isLoggedIn = true;
+		userName = "IcsReplayBenchmark";
+
+		chatService = new ChatService(this) {
+			@Override
+			public void publishChatEvent(ChatEvent event) {
+				chatEvents++;
+			}
+		};
+		gameService.removeGameServiceListener(gameServiceListener);
+		gameService = new GameService() {
+			@Override
+			public void execute(String gameId, Runnable update) {
+				int previousStage = enterStage(GAME_UPDATE);
+				try {
+					update.run();
+				} catch (RuntimeException re) {
+					onError("Error updating game " + gameId, re);
+				} finally {
+					exitStage(previousStage);
+				}
+			}
+		};
+	}
+
+	@Override
+	public void connectionClosed(StringBuilder buffer) {
+		processMessage(drainInboundMessageBuffer(buffer));
+		finished.countDown();
+	}
+
+	/**
+	 * Returns a table of the time spent in each stage. A stage does not
+	 * include the time of the stages it invoked.
+	 */
+	public String getStageTimings() {
+		StringBuilder result = new StringBuilder(400);
+		result.append(String.format("%-28s %10s %10s %10s\n", "stage", "calls", "total ms", "ns/call"));
+		for (int i = 0; i < STAGE_NAMES.length; i++) {
+			result.append(String.format("%-28s %10d %10.1f %10d\n", STAGE_NAMES[i], stageCalls[i],
+					stageNanos[i] / 1000000.0, stageCalls[i] == 0 ? 0 : stageNanos[i] / stageCalls[i]));
+		}
+		return result.toString();
+	}
+
+	public String getSummary() {
+		double processingSeconds = processingNanos / 1000000000.0;
+		StringBuilder result = new StringBuilder(200);
+		result.append(String.format("%d bytes, %d messages, %d events in %.1f ms (%.1f ms processing): "
+				+ "%.0f events/sec, %.0f messages/sec", bytes, messages, events, elapsedNanos / 1000000.0,
+				processingNanos / 1000000.0, events / processingSeconds, messages / processingSeconds));
+		if (allocatedBytes >= 0) {
+			result.append(String.format(", %.1f MB allocated (%.0f MB/sec)", allocatedBytes / 1048576.0,
+					allocatedBytes / 1048576.0 / processingSeconds));
+		}
+		result.append(", ").append(getGameService().getAllActiveGames().length).append(" active games");
+		if (errors > 0) {
+			result.append(", ").append(errors).append(" errors");
+		}
+		return result.toString();
+	}
+
+	@Override
+	public void messageArrived(StringBuilder inboundMessageBuffer, long readTime) {
+		long startAllocated = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		super.messageArrived(inboundMessageBuffer, readTime);
+
+		processingNanos += System.nanoTime() - start;
+		if (startAllocated >= 0 && allocatedBytes >= 0) {
+			allocatedBytes += getAllocatedBytes() - startAllocated;
+		} else {
+			allocatedBytes = -1;
+		}
+	}
+
+	@Override
+	public void onError(String message, Throwable t) {
+		if (errors++ == 0) {
+			System.err.println(message);
+			if (t != null) {
+				t.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void publishEvent(ChatEvent event) {
+		events++;
+		int previousStage = enterStage(PUBLISH);
+		try {
+			super.publishEvent(event);
+		} finally {
+			exitStage(previousStage);
+		}
+	}
+
+	/**
+	 * Replays the recording and waits for it to finish.
+	 */
+	public void run(SessionRecording recording) throws InterruptedException {
+		bytes = recording.getTotalBytes();
+		long start = System.nanoTime();
+		new ReplayMessageProducer(recording, 0, this);
+		finished.await();
+		elapsedNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Sent messages are counted and dropped.
+	 */
+	@Override
+	protected void sendMessage(String message, boolean isHidingFromUser, ChatType hideNextChatType, int priority) {
+		sentMessages++;
+	}
+
+	/**
+	 * Runs the message inline instead of on the ConnectorScheduler.
+	 */
+	@Override
+	protected void parseMessage(String message, long readTime) {
+		processMessage(message);
+	}
+
+	@Override
+	protected void processMessage(String message) {
+		messages++;
+		int previousStage = enterStage(PARSE);
+		try {
+			super.processMessage(message);
+		} finally {
+			exitStage(previousStage);
+		}
+	}
+
+	/**
+	 * Makes newStage current and returns the previous stage, -1 for none.
+	 */
+	protected int enterStage(int newStage) {
+		stageCalls[newStage]++;
+		return switchStage(newStage);
+	}
+
+	/**
+	 * Returns to the stage enterStage returned.
+	 */
+	protected void exitStage(int previousStage) {
+		switchStage(previousStage);
+	}
+
+	/**
+	 * Charges the time since the last switch to the current stage and makes
+	 * newStage current.
+	 */
+	private int switchStage(int newStage) {
+		long now = System.nanoTime();
+		if (stage != -1) {
+			stageNanos[stage] += now - stageStartNanos;
+		}
+		int result = stage;
+		stage = newStage;
+		stageStartNanos = now;
+		return result;
+	}
+
+	@Override
+	protected void loadExtendedCensorList() {
+	}
+
+	@Override
+	protected void onSuccessfulLogin() {
+	}
+
+	@Override
+	protected void writeExtendedCensorList() {
+	}
+}
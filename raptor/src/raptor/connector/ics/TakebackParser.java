@@ -13,8 +13,8 @@
  */
 package raptor.connector.ics;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
@@ -46,7 +46,7 @@ public class TakebackParser {
 
 	public static final String REQUEST_TAKE_BACK = "would like to take back";
 
-	protected Map<String, TakebackMessage> gameToTakebackMessages = new HashMap<String, TakebackMessage>();
+	protected Map<String, TakebackMessage> gameToTakebackMessages = new ConcurrentHashMap<String, TakebackMessage>();
 
 	/**
 	 * Clears the take back message for the specified gameId.
@@ -0,0 +1,167 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.timeseal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * A fake ICS server on a loopback socket which plays a SessionRecording to
+ * the first client which connects. Pointing a connection profile at it runs
+ * recorded traffic through the whole client, timeseal included: the
+ * recorded ack requests are sent as is, and whatever the client writes is
+ * read and dropped.
+ * 
+ * The recording is preceded by a FICS login banner, so the connector
+ * considers itself logged in as Replay before the recorded traffic starts.
+ */
+public class LoopbackIcsServer {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(LoopbackIcsServer.class);
+
+	public static final String LOGIN_BANNER = "**** Starting FICS session as Replay ****\n\nfics% ";
+
+	/**
+	 * Usage: LoopbackIcsServer recordingFile [speed] [port]. A speed of 0
+	 * replays as fast as possible. The default speed is 1 and the default
+	 * port is 5000.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: LoopbackIcsServer recordingFile [speed] [port]");
+			System.exit(1);
+		}
+		SessionRecording recording = SessionRecording.read(new File(args[0]));
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+		LoopbackIcsServer server = new LoopbackIcsServer(recording, speed, port);
+		server.start();
+		System.out.println("Replaying " + recording.getChunks().size() + " chunks to 127.0.0.1:" + server.getPort()
+				+ " at speed " + speed);
+		server.join();
+	}
+
+	protected SessionRecording recording;
+	protected double speed;
+	protected ServerSocket serverSocket;
+	protected Socket socket;
+	protected Thread serverThread;
+
+	/**
+	 * Creates a server for the recording. A port of 0 binds any free port.
+	 */
+	public LoopbackIcsServer(SessionRecording recording, double speed, int port) throws IOException {
+		this.recording = recording;
+		this.speed = speed;
+		serverSocket = new ServerSocket(port, 1, InetAddress.getByName("127.0.0.1"));
+	}
+
+	public synchronized void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException ioe) {
+		}
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException ioe) {
+			}
+			socket = null;
+		}
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Waits until the recording has been played or the server is closed.
+	 */
+	public void join() throws InterruptedException {
+		serverThread.join();
+	}
+
+	/**
+	 * Starts waiting for the client on a daemon thread.
+	 */
+	public void start() {
+		serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				serve();
+			}
+		});
+		serverThread.setDaemon(true);
+		serverThread.setName("LoopbackIcsServer Thread");
+		serverThread.start();
+	}
+
+	protected void serve() {
+		try {
+			Socket client = serverSocket.accept();
+			synchronized (this) {
+				socket = client;
+			}
+			client.setTcpNoDelay(true);
+			Thread drainThread = startDraining(client.getInputStream());
+
+			OutputStream out = client.getOutputStream();
+			out.write(LOGIN_BANNER.getBytes());
+			out.flush();
+
+			long startNanos = System.nanoTime();
+			for (SessionRecording.Chunk chunk : recording.getChunks()) {
+				SessionRecording.waitFor(chunk, startNanos, speed);
+				out.write(chunk.getBytes());
+				out.flush();
+			}
+			LOG.info("LoopbackIcsServer replayed " + recording.getChunks().size() + " chunks.");
+
+			// Closing with unread client data would reset the connection and
+			// lose the end of the recording, so wait for the client to close.
+			client.shutdownOutput();
+			drainThread.join();
+		} catch (InterruptedException ie) {
+		} catch (IOException ioe) {
+			LOG.debug("LoopbackIcsServer IOException (common when the client disconnects)", ioe);
+		} finally {
+			close();
+		}
+	}
+
+	protected Thread startDraining(final InputStream in) {
+		Thread drainThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[4096];
+				try {
+					while (in.read(buffer) != -1) {
+					}
+				} catch (IOException ioe) {
+				}
+			}
+		});
+		drainThread.setDaemon(true);
+		drainThread.setName("LoopbackIcsServer Drain Thread");
+		drainThread.start();
+		return drainThread;
+	}
+}
@@ -1,7 +1,11 @@
 package raptor.connector.ics.timeseal;
 
 public interface MessageListener {
-    public void messageArrived(StringBuilder inboundMessageBuffer);
+    /**
+     * Invoked after text was appended to inboundMessageBuffer. readTime is the
+     * System.nanoTime of the read which completed the text.
+     */
+    public void messageArrived(StringBuilder inboundMessageBuffer, long readTime);
     public void onError(String message, Throwable t);
     public void connectionClosed(StringBuilder inboundMessageBuffer);
 }
@@ -1,8 +1,24 @@
 package raptor.connector.ics.timeseal;
 
 public interface MessageProducer {
+	/**
+	 * The priority of moves, premoves, $$ commands and timeseal acks.
+	 */
+	public static final int PRIORITY_URGENT = 0;
+
+	/**
+	 * The priority of everything else, e.g. tells and aliases.
+	 */
+	public static final int PRIORITY_NORMAL = 1;
+
 	public void send(String message);
 
+	/**
+	 * Sends the message ahead of queued messages with a less urgent
+	 * priority.
+	 */
+	public void send(String message, int priority);
+
 	public void close();
 
 	public boolean isTimeseal2On();
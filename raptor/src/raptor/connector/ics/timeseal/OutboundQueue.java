@@ -0,0 +1,204 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.timeseal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A blocking queue of outbound messages with a FIFO lane per priority. take()
+ * returns the oldest message of the most urgent lane which is not empty, so
+ * a move never waits behind chat queued before it, while messages of the
+ * same priority keep their order.
+ * 
+ * Each lane keeps the enqueue to wire latency of the messages written from
+ * it.
+ */
+public class OutboundQueue {
+	/**
+	 * A queued message.
+	 */
+	public static class Message {
+		protected byte[] bytes;
+		protected int priority;
+		protected long enqueueTime;
+
+		public Message(byte[] bytes, int priority) {
+			this.bytes = bytes;
+			this.priority = priority;
+			enqueueTime = System.nanoTime();
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the System.nanoTime() the message was queued at.
+		 */
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+	}
+
+	/**
+	 * Latency totals of the messages written from a lane.
+	 */
+	public static class LaneStats {
+		protected AtomicLong messages = new AtomicLong();
+		protected AtomicLong bytes = new AtomicLong();
+		protected AtomicLong totalLatency = new AtomicLong();
+		protected AtomicLong maxLatency = new AtomicLong();
+
+		/**
+		 * Returns the average enqueue to wire latency in microseconds.
+		 */
+		public long getAverageLatencyMicros() {
+			long count = messages.get();
+			return count == 0 ? 0 : totalLatency.get() / count / 1000;
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		/**
+		 * Returns the largest enqueue to wire latency in microseconds.
+		 */
+		public long getMaxLatencyMicros() {
+			return maxLatency.get() / 1000;
+		}
+
+		public long getMessages() {
+			return messages.get();
+		}
+
+		protected void record(long latency, int length) {
+			messages.incrementAndGet();
+			bytes.addAndGet(length);
+			totalLatency.addAndGet(latency);
+			long max = maxLatency.get();
+			while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+				max = maxLatency.get();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return getMessages() + " messages " + getBytes() + " bytes avg "
+					+ getAverageLatencyMicros() + "us max "
+					+ getMaxLatencyMicros() + "us";
+		}
+	}
+
+	protected List<ArrayDeque<Message>> lanes;
+	protected LaneStats[] stats;
+	protected int size;
+	protected boolean isClosed;
+
+	/**
+	 * Creates a queue with the specified number of priorities. 0 is the most
+	 * urgent.
+	 */
+	public OutboundQueue(int priorities) {
+		lanes = new ArrayList<ArrayDeque<Message>>(priorities);
+		stats = new LaneStats[priorities];
+		for (int i = 0; i < priorities; i++) {
+			lanes.add(new ArrayDeque<Message>());
+			stats[i] = new LaneStats();
+		}
+	}
+
+	/**
+	 * Closes the queue dropping any queued messages. take() returns null
+	 * from then on.
+	 */
+	public synchronized void close() {
+		isClosed = true;
+		for (ArrayDeque<Message> lane : lanes) {
+			lane.clear();
+		}
+		size = 0;
+		notifyAll();
+	}
+
+	public LaneStats getStats(int priority) {
+		return stats[priority];
+	}
+
+	public synchronized boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Queues a message. Returns false if the queue is closed.
+	 */
+	public synchronized boolean offer(byte[] bytes, int priority) {
+		if (isClosed) {
+			return false;
+		}
+		lanes.get(priority).add(new Message(bytes, priority));
+		size++;
+		notifyAll();
+		return true;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Waits for and removes the next message to write. Returns null once
+	 * the queue is closed.
+	 */
+	public synchronized Message take() throws InterruptedException {
+		while (size == 0 && !isClosed) {
+			wait();
+		}
+		if (isClosed) {
+			return null;
+		}
+		size--;
+		for (ArrayDeque<Message> lane : lanes) {
+			if (!lane.isEmpty()) {
+				return lane.poll();
+			}
+		}
+		throw new IllegalStateException("size and lanes out of sync.");
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(200);
+		for (int i = 0; i < stats.length; i++) {
+			result.append(i == 0 ? "" : ", ").append("priority ").append(i)
+					.append(": ").append(stats[i]);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Records a message as written.
+	 */
+	public void written(Message message) {
+		stats[message.priority].record(System.nanoTime()
+				- message.enqueueTime, message.bytes.length);
+	}
+}
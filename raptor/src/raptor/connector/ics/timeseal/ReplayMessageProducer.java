@@ -0,0 +1,128 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.timeseal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.connector.ics.IcsUtils;
+import raptor.util.RaptorLogger;
+
+/**
+ * A MessageProducer which plays a SessionRecording back to a
+ * MessageListener instead of reading a socket. The chunks are handed to the
+ * listener the same way TimesealSocketMessageProducer does, at the recorded
+ * pace, speed times faster, or as fast as possible if speed is 0. Sent
+ * messages are counted and dropped.
+ */
+public class ReplayMessageProducer implements MessageProducer {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(ReplayMessageProducer.class);
+
+	private static final String TIMESEAL_ACK_REQUEST = "[G]\0";
+
+	protected SessionRecording recording;
+	protected double speed;
+	protected MessageListener listener;
+	protected StringBuilder inboundMessageBuffer = new StringBuilder(25000);
+	protected Thread daemonThread;
+	protected AtomicInteger sentMessages = new AtomicInteger();
+	protected volatile boolean isClosed;
+
+	public ReplayMessageProducer(SessionRecording recording, double speed, MessageListener listener) {
+		this.recording = recording;
+		this.speed = speed;
+		this.listener = listener;
+
+		daemonThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				replayLoop();
+			}
+		});
+		daemonThread.setDaemon(true);
+		daemonThread.setName("ReplayMessageProducer Thread");
+		daemonThread.start();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		if (daemonThread != null && daemonThread != Thread.currentThread()) {
+			daemonThread.interrupt();
+		}
+		daemonThread = null;
+		try {
+			listener.connectionClosed(inboundMessageBuffer);
+		} catch (Throwable t) {
+		}
+	}
+
+	/**
+	 * Returns the number of messages sent since the replay started.
+	 */
+	public int getSentMessages() {
+		return sentMessages.get();
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	@Override
+	public boolean isTimeseal2On() {
+		return recording.isTimesealOn();
+	}
+
+	@Override
+	public void send(String message) {
+		send(message, PRIORITY_NORMAL);
+	}
+
+	@Override
+	public void send(String message, int priority) {
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("ReplayMessageProducer dropping " + message.trim());
+		}
+		sentMessages.incrementAndGet();
+	}
+
+	protected void replayLoop() {
+		try {
+			long startNanos = System.nanoTime();
+			for (SessionRecording.Chunk chunk : recording.getChunks()) {
+				if (isClosed) {
+					return;
+				}
+				SessionRecording.waitFor(chunk, startNanos, speed);
+
+				String text = new String(chunk.getBytes());
+				if (recording.isTimesealOn()) {
+					text = StringUtils.remove(text, TIMESEAL_ACK_REQUEST);
+				}
+				if (StringUtils.isNotBlank(text)) {
+					inboundMessageBuffer.append(IcsUtils.cleanupMessage(text));
+					listener.messageArrived(inboundMessageBuffer, System.nanoTime());
+				}
+			}
+		} catch (InterruptedException ie) {
+		} catch (Throwable t) {
+			listener.onError("ReplayMessageProducer error replaying", t);
+		}
+		close();
+	}
+}
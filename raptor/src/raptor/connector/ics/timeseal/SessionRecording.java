@@ -0,0 +1,200 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.timeseal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recording of the raw chunks read from an ICS socket, before timeseal is
+ * handled, each with the time it was read. Recordings are written by a
+ * SessionRecording.Recorder and played back by a ReplayMessageProducer or a
+ * LoopbackIcsServer.
+ * 
+ * The file is a header (the UTF string RaptorSession, an int version, a
+ * boolean which is true if timeseal was on and the long start time in epoch
+ * milliseconds) followed by one record per chunk: the long nanoseconds since
+ * the start, the int length and the bytes.
+ */
+public class SessionRecording {
+	public static final String MAGIC = "RaptorSession";
+	public static final int VERSION = 1;
+
+	/**
+	 * A chunk read from the socket.
+	 */
+	public static class Chunk {
+		protected long time;
+		protected byte[] bytes;
+
+		public Chunk(long time, byte[] bytes) {
+			this.time = time;
+			this.bytes = bytes;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the nanoseconds between the start of the recording and the
+		 * read.
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	/**
+	 * Appends the chunks read from a socket to a recording file. Chunks are
+	 * buffered, so close must be invoked to flush them.
+	 */
+	public static class Recorder {
+		protected DataOutputStream out;
+		protected long startNanos;
+		protected File file;
+
+		public Recorder(File file, boolean isTimesealOn) throws IOException {
+			this.file = file;
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file), 64 * 1024));
+			out.writeUTF(MAGIC);
+			out.writeInt(VERSION);
+			out.writeBoolean(isTimesealOn);
+			out.writeLong(System.currentTimeMillis());
+			startNanos = System.nanoTime();
+		}
+
+		public synchronized void close() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ioe) {
+				}
+				out = null;
+			}
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public synchronized boolean isClosed() {
+			return out == null;
+		}
+
+		/**
+		 * Records the chunk. Does nothing if the recorder is closed.
+		 */
+		public synchronized void record(byte[] bytes, int offset, int length)
+				throws IOException {
+			if (out != null) {
+				out.writeLong(System.nanoTime() - startNanos);
+				out.writeInt(length);
+				out.write(bytes, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Reads the recording in file. A truncated last chunk, which is left if
+	 * Raptor exits without closing the recorder, is ignored.
+	 */
+	public static SessionRecording read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 64 * 1024));
+		try {
+			if (!MAGIC.equals(in.readUTF()) || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a session recording.");
+			}
+			SessionRecording result = new SessionRecording();
+			result.isTimesealOn = in.readBoolean();
+			result.startTime = in.readLong();
+			try {
+				while (true) {
+					long time = in.readLong();
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					result.chunks.add(new Chunk(time, bytes));
+				}
+			} catch (EOFException eof) {
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Sleeps until the time the chunk was read in the recording, replayed
+	 * speed times faster than it was recorded starting at
+	 * replayStartNanos. A speed of 0 or less does not sleep.
+	 */
+	public static void waitFor(Chunk chunk, long replayStartNanos, double speed)
+			throws InterruptedException {
+		if (speed > 0) {
+			long waitNanos = replayStartNanos + (long) (chunk.getTime() / speed)
+					- System.nanoTime();
+			if (waitNanos > 0) {
+				Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+			}
+		}
+	}
+
+	protected List<Chunk> chunks = new ArrayList<Chunk>(1000);
+	protected boolean isTimesealOn;
+	protected long startTime;
+
+	protected SessionRecording() {
+	}
+
+	public List<Chunk> getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Returns the time the recording started in epoch milliseconds.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the total number of bytes in all of the chunks.
+	 */
+	public long getTotalBytes() {
+		long result = 0;
+		for (Chunk chunk : chunks) {
+			result += chunk.getBytes().length;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the recorded session had timeseal on. The chunks then
+	 * contain the timeseal ack requests.
+	 */
+	public boolean isTimesealOn() {
+		return isTimesealOn;
+	}
+}
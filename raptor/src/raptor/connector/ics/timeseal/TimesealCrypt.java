@@ -0,0 +1,100 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.connector.ics.timeseal;
+
+/**
+ * The timeseal 1 encryption of an outbound line. A line is the text
+ * followed by 0x18, the milliseconds since connecting and 0x19, padded with
+ * '1' to a multiple of 12 bytes. Every 12 byte block gets three byte swaps,
+ * then the whole line is xored with the timeseal key and shifted down by 32.
+ * It is terminated by 0x80 and a newline.
+ * 
+ * crypt works on whole arrays and does not allocate, so the writer thread
+ * can reuse one output buffer for every message.
+ */
+public final class TimesealCrypt {
+	private static final byte[] TIMESEAL_KEY = "Timestamp (FICS) v1.0 - programmed by Henrik Gram."
+			.getBytes();
+
+	/**
+	 * Encrypts length bytes of message starting at offset, which should not
+	 * include the newline, into output. Returns the number of bytes written.
+	 * output must be at least getCryptedLength(length) long.
+	 */
+	public static int crypt(byte[] message, int offset, int length,
+			long timestamp, byte[] output) {
+		System.arraycopy(message, offset, output, 0, length);
+		int result = length;
+		output[result++] = 24;
+		result = writeDecimal(timestamp, output, result);
+		output[result++] = 25;
+		int end = result + 12 - result % 12;
+		while (result < end) {
+			output[result++] = 49;
+		}
+
+		for (int i = 0; i < result; i += 12) {
+			swap(output, i, i + 11);
+			swap(output, i + 2, i + 9);
+			swap(output, i + 4, i + 7);
+		}
+
+		int keyIndex = 0;
+		for (int i = 0; i < result; i++) {
+			output[i] = (byte) (((output[i] | 0x80) ^ TIMESEAL_KEY[keyIndex]) - 32);
+			if (++keyIndex == TIMESEAL_KEY.length) {
+				keyIndex = 0;
+			}
+		}
+
+		output[result++] = -128;
+		output[result++] = 10;
+		return result;
+	}
+
+	/**
+	 * Returns the most bytes crypt can write for a message of the specified
+	 * length.
+	 */
+	public static int getCryptedLength(int length) {
+		// 0x18, at most 20 digits and 0x19, then up to 12 bytes of padding,
+		// 0x80 and the newline.
+		return length + 22 + 12 + 2;
+	}
+
+	private static void swap(byte[] bytes, int index1, int index2) {
+		byte temp = bytes[index1];
+		bytes[index1] = bytes[index2];
+		bytes[index2] = temp;
+	}
+
+	private static int writeDecimal(long value, byte[] output, int offset) {
+		if (value < 0) {
+			output[offset++] = '-';
+			value = -value;
+		}
+		int start = offset;
+		do {
+			output[offset++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		for (int i = start, j = offset - 1; i < j; i++, j--) {
+			swap(output, i, j);
+		}
+		return offset;
+	}
+
+	private TimesealCrypt() {
+	}
+}
@@ -1,95 +1,26 @@
 package raptor.connector.ics.timeseal;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.connector.ics.IcsUtils;
+import raptor.service.LatencyTraceService;
+import raptor.service.LatencyTraceService.Stage;
 import raptor.util.RaptorLogger;
 
+/**
+ * Reads and writes the ICS socket, applying timeseal if it is on. Outbound
+ * messages are queued and written by a writer thread, so callers such as
+ * the SWT thread never block on the socket. Urgent messages, i.e. moves,
+ * $$ commands and timeseal acks, are written ahead of queued normal ones.
+ */
 public class TimesealSocketMessageProducer implements MessageProducer {
-	private class CryptOutputStream extends OutputStream {
-		private byte buffer[];
-		private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-		private OutputStream outputStreamToDecorate;
-		private final byte timesealKey[] = "Timestamp (FICS) v1.0 - programmed by Henrik Gram.".getBytes();
-
-		public CryptOutputStream(OutputStream outputstream) {
-			buffer = new byte[10000];
-			outputStreamToDecorate = outputstream;
-		}
-
-		@Override
-		public void write(int i) throws IOException {
-			if (i == 10) {
-				synchronized (socket) {
-					if (initialTime == -1) {
-						initialTime = System.currentTimeMillis();
-					}
-					int resultLength = crypt(byteArrayOutputStream.toByteArray(),
-							System.currentTimeMillis() - initialTime);
-					outputStreamToDecorate.write(buffer, 0, resultLength);
-					outputStreamToDecorate.flush();
-					byteArrayOutputStream.reset();
-				}
-			} else {
-				byteArrayOutputStream.write(i);
-			}
-		}
-
-		private int crypt(byte stringToWriteBytes[], long timestamp) {
-			int bytesInLength = stringToWriteBytes.length;
-			System.arraycopy(stringToWriteBytes, 0, buffer, 0, stringToWriteBytes.length);
-			buffer[bytesInLength++] = 24;
-			byte abyte1[] = Long.toString(timestamp).getBytes();
-			System.arraycopy(abyte1, 0, buffer, bytesInLength, abyte1.length);
-			bytesInLength += abyte1.length;
-			buffer[bytesInLength++] = 25;
-			int j = bytesInLength;
-			for (bytesInLength += 12 - bytesInLength % 12; j < bytesInLength;) {
-				buffer[j++] = 49;
-			}
-
-			for (int k = 0; k < bytesInLength; k++) {
-				buffer[k] |= 0x80;
-			}
-
-			for (int i1 = 0; i1 < bytesInLength; i1 += 12) {
-				byte byte0 = buffer[i1 + 11];
-				buffer[i1 + 11] = buffer[i1];
-				buffer[i1] = byte0;
-				byte0 = buffer[i1 + 9];
-				buffer[i1 + 9] = buffer[i1 + 2];
-				buffer[i1 + 2] = byte0;
-				byte0 = buffer[i1 + 7];
-				buffer[i1 + 7] = buffer[i1 + 4];
-				buffer[i1 + 4] = byte0;
-			}
-
-			int l1 = 0;
-			for (int j1 = 0; j1 < bytesInLength; j1++) {
-				buffer[j1] ^= timesealKey[l1];
-				l1 = (l1 + 1) % timesealKey.length;
-			}
-
-			for (int k1 = 0; k1 < bytesInLength; k1++) {
-				buffer[k1] -= 32;
-			}
-
-			buffer[bytesInLength++] = -128;
-			buffer[bytesInLength++] = 10;
-			return bytesInLength;
-		}
-	}
-
 	private static final RaptorLogger LOG = RaptorLogger.getLog(TimesealSocketMessageProducer.class);
 
-	private CryptOutputStream cryptedOutputStream;
+	private static final byte[] ACK = "\0029\n".getBytes();
 
 	private long initialTime = -1;
 
@@ -101,30 +32,69 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 
 	protected Thread daemonThread;
 
+	protected Thread writerThread;
+
+	protected OutboundQueue outboundQueue = new OutboundQueue(2);
+
+	protected volatile SessionRecording.Recorder recorder;
+
 	protected StringBuilder inboundMessageBuffer = new StringBuilder(25000);
 
 	protected boolean isTimesealOn;
 
-	private Lock writeLock = new ReentrantLock(true);
-
 	public boolean isTimeseal2On() {
 		return isTimesealOn;
 	}
 
+	/**
+	 * Returns the recorder chunks read from the socket are recorded to, or
+	 * null if the session is not being recorded.
+	 */
+	public SessionRecording.Recorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Starts recording the chunks read from the socket to the recorder, or
+	 * stops recording if recorder is null. The previous recorder is closed.
+	 */
+	public void setRecorder(SessionRecording.Recorder recorder) {
+		SessionRecording.Recorder previous = this.recorder;
+		this.recorder = recorder;
+		if (previous != null) {
+			previous.close();
+		}
+	}
+
+	/**
+	 * Returns the outbound queue, which keeps the enqueue to wire latency of
+	 * each priority.
+	 */
+	public OutboundQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
 	@Override
 	public void send(String message) {
-		try {
-			writeLock.lock();
-			getOutputStream().write(message.getBytes());
-		} catch (IOException ioe) {
-			throw new RuntimeException(ioe);
-		} finally {
-			writeLock.unlock();
+		send(message, PRIORITY_NORMAL);
+	}
+
+	@Override
+	public void send(String message, int priority) {
+		if (!outboundQueue.offer(message.getBytes(), priority)) {
+			throw new IllegalStateException("Not connected.");
 		}
 	}
 
 	@Override
-	public void close() {
+	public synchronized void close() {
+		if (!outboundQueue.isClosed()) {
+			outboundQueue.close();
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Outbound latency " + outboundQueue);
+			}
+		}
+
 		try {
 			if (socket != null) {
 				socket.close();
@@ -132,9 +102,11 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 		} catch (IOException ioe) {
 		}
 
+		setRecorder(null);
+
 		socket = null;
 		daemonThread = null;
-		cryptedOutputStream = null;
+		writerThread = null;
 		initialTimesealString = null;
 		if (listener != null) {
 			MessageListener tempListener = listener;
@@ -154,6 +126,9 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 			this.isTimesealOn = isTimesealOn;
 			this.listener = listener;
 			socket = new Socket(address, port);
+			// Moves are small writes which must not wait for the ack of the
+			// previous one.
+			socket.setTcpNoDelay(true);
 			this.initialTimesealString = initialTimestampString;
 			init();
 		} catch (IOException ioe) {
@@ -204,6 +179,8 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 				// long start = System.currentTimeMillis();
 				int numRead = socket.getInputStream().read(buffer);
 				if (numRead > 0) {
+					long readTime = System.nanoTime();
+					record(buffer, numRead);
 					if (LOG.isDebugEnabled()) {
 						LOG.debug("TimesealSocketMessageProducer " + "Read " + numRead + " bytes.");
 					}
@@ -211,12 +188,17 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 					// System.err.println("Raw in: " + new String(buffer, 0,
 					// numRead));
 
-					String text = isTimesealOn ? handleTimeseal(new String(buffer, 0, numRead))
-							: new String(buffer, 0, numRead);
+					String text = null;
+					if (isTimesealOn) {
+						text = handleTimeseal(new String(buffer, 0, numRead));
+						LatencyTraceService.getInstance().recordInbound(Stage.TIMESEAL, readTime);
+					} else {
+						text = new String(buffer, 0, numRead);
+					}
 
 					if (StringUtils.isNotBlank(text)) {
 						inboundMessageBuffer.append(IcsUtils.cleanupMessage(text));
-						listener.messageArrived(inboundMessageBuffer);
+						listener.messageArrived(inboundMessageBuffer, readTime);
 					}
 				} else {
 					if (LOG.isDebugEnabled()) {
@@ -244,40 +226,94 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 		}
 	}
 
-	private OutputStream getOutputStream() throws IOException {
-		return isTimesealOn ? cryptedOutputStream : socket.getOutputStream();
+	/**
+	 * Records the chunk if the session is being recorded. Recording stops if
+	 * the chunk can not be written.
+	 */
+	protected void record(byte[] buffer, int length) {
+		SessionRecording.Recorder currentRecorder = recorder;
+		if (currentRecorder != null) {
+			try {
+				currentRecorder.record(buffer, 0, length);
+			} catch (IOException ioe) {
+				LOG.warn("Error recording to " + currentRecorder.getFile() + ". Recording stopped.", ioe);
+				setRecorder(null);
+			}
+		}
 	}
 
-	private void sendAck() throws IOException {
+	/**
+	 * The writer threads loop. Writes queued messages until the queue is
+	 * closed.
+	 */
+	protected void writeLoop(OutputStream outputStream) {
+		byte[] buffer = new byte[1024];
 		try {
-			writeLock.lock();
-			getOutputStream().write("\0029\n".getBytes());
+			OutboundQueue.Message message = null;
+			while ((message = outboundQueue.take()) != null) {
+				buffer = write(outputStream, message.getBytes(), buffer);
+				outputStream.flush();
+				outboundQueue.written(message);
+				if (message.getPriority() == PRIORITY_URGENT) {
+					LatencyTraceService.getInstance().recordWrite(message.getEnqueueTime());
+				}
+			}
+		} catch (InterruptedException ie) {
 		} catch (IOException ioe) {
-			throw ioe;
+			if (!outboundQueue.isClosed()) {
+				LOG.debug("TimesealSocketMessageProducer "
+						+ "IOException occured in writeLoop (These are common when disconnecting and ignorable)",
+						ioe);
+				close();
+			}
 		} finally {
-			writeLock.unlock();
+			LOG.debug("TimesealSocketMessageProducer  Leaving writeLoop");
 		}
 	}
 
+	/**
+	 * Writes the bytes to the output stream, encrypting each line if
+	 * timeseal is on. Returns the buffer to use for the next write, which is
+	 * grown if it was too small.
+	 */
+	protected byte[] write(OutputStream outputStream, byte[] bytes,
+			byte[] buffer) throws IOException {
+		if (!isTimesealOn) {
+			outputStream.write(bytes);
+			return buffer;
+		}
+
+		int start = 0;
+		for (int i = 0; i <= bytes.length; i++) {
+			if (i == bytes.length ? i > start : bytes[i] == '\n') {
+				int length = i - start;
+				if (buffer.length < TimesealCrypt.getCryptedLength(length)) {
+					buffer = new byte[TimesealCrypt.getCryptedLength(length) * 2];
+				}
+				int cryptedLength = TimesealCrypt.crypt(bytes, start, length,
+						System.currentTimeMillis() - initialTime, buffer);
+				outputStream.write(buffer, 0, cryptedLength);
+				start = i + 1;
+			}
+		}
+		return buffer;
+	}
+
+	private void sendAck() {
+		outboundQueue.offer(ACK, PRIORITY_URGENT);
+	}
+
 	private void init() throws IOException {
 		initialTime = System.currentTimeMillis();
-		cryptedOutputStream = new CryptOutputStream(socket.getOutputStream());
 		writeInitialTimesealString();
 	}
 
 	private void writeInitialTimesealString() throws IOException {
-
+		final OutputStream outputStream = socket.getOutputStream();
 		if (isTimesealOn) {
-			OutputStream outputstream = getOutputStream();
-			try {
-				writeLock.lock();
-				outputstream.write(initialTimesealString.getBytes());
-				outputstream.write(10);
-			} catch (IOException ioe) {
-				throw ioe;
-			} finally {
-				writeLock.unlock();
-			}
+			write(outputStream, (initialTimesealString + "\n").getBytes(),
+					new byte[1024]);
+			outputStream.flush();
 		}
 
 		daemonThread = new Thread(new Runnable() {
@@ -290,5 +326,16 @@ public class TimesealSocketMessageProducer implements MessageProducer {
 		daemonThread.setName("TimesealSocketMessageProducer Thread");
 		daemonThread.setPriority(Thread.MAX_PRIORITY);
 		daemonThread.start();
+
+		writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop(outputStream);
+			}
+		});
+		writerThread.setDaemon(true);
+		writerThread.setName("TimesealSocketMessageProducer Writer Thread");
+		writerThread.setPriority(Thread.MAX_PRIORITY);
+		writerThread.start();
 	}
 }
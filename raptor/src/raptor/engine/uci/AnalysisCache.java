@@ -0,0 +1,554 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import raptor.chess.Variant;
+import raptor.util.FileUtils;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * A cache of engine analysis keyed by zobrist position hash, variant and
+ * engine name. For each MultiPV line the deepest score and principal
+ * variation seen is kept.
+ * </p>
+ * <p>
+ * Recently used positions are held in a bounded LRU map. Every improvement
+ * appends a record with all the lines of the position to a log file, and the
+ * offset of the latest record of each position is indexed in memory, so
+ * positions evicted from the map or analyzed in an earlier session are read
+ * back from disk. Records are buffered and written FLUSH_SIZE bytes at a time,
+ * or after FLUSH_MILLIS, and on close. When the log is opened with more
+ * superseded records than live ones it is rewritten and replaced with
+ * FileUtils.replaceFile.
+ * </p>
+ */
+public class AnalysisCache {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(AnalysisCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 2000;
+
+	protected static final int MAGIC = 0x52414144;
+	protected static final int HEADER_SIZE = 4;
+	protected static final int MIN_RECORDS_TO_COMPACT = 1000;
+	protected static final int FLUSH_SIZE = 16 * 1024;
+	protected static final long FLUSH_MILLIS = 10000;
+
+	/**
+	 * The deepest analysis of one MultiPV line of a position. Scores are from
+	 * the side to moves point of view, as the engine sent them.
+	 */
+	public static class Line {
+		protected int multiPv;
+		protected int depth;
+		protected int centipawns;
+		protected int mateInMoves;
+		protected String pv;
+
+		public Line(int multiPv, int depth, int centipawns, int mateInMoves,
+				String pv) {
+			this.multiPv = multiPv;
+			this.depth = depth;
+			this.centipawns = centipawns;
+			this.mateInMoves = mateInMoves;
+			this.pv = pv;
+		}
+
+		public int getCentipawns() {
+			return centipawns;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public int getMateInMoves() {
+			return mateInMoves;
+		}
+
+		/**
+		 * Returns the principal variation as UCIMoves.
+		 */
+		public UCIMove[] getMoves() {
+			if (pv.length() == 0) {
+				return new UCIMove[0];
+			}
+			String[] values = pv.split(" ");
+			UCIMove[] result = new UCIMove[values.length];
+			for (int i = 0; i < values.length; i++) {
+				result[i] = new UCIMove(values[i]);
+			}
+			return result;
+		}
+
+		public int getMultiPv() {
+			return multiPv;
+		}
+
+		/**
+		 * Returns the principal variation as space separated UCI moves.
+		 */
+		public String getPv() {
+			return pv;
+		}
+
+		public boolean isMate() {
+			return mateInMoves != 0;
+		}
+	}
+
+	/**
+	 * The cached lines of a position.
+	 */
+	public static class Entry {
+		protected Line[] lines = new Line[0];
+
+		/**
+		 * Returns true if the go parameters are "depth n" and the first line
+		 * is at least n deep, so a search with them would not improve it.
+		 */
+		public boolean covers(String goParameters) {
+			String[] words = goParameters.trim().split(" ");
+			return words.length == 2 && words[0].equals("depth")
+					&& NumberUtils.isDigits(words[1])
+					&& getDepth() >= Integer.parseInt(words[1]);
+		}
+
+		/**
+		 * Returns the depth of the first line, 0 if there is none.
+		 */
+		public int getDepth() {
+			Line line = getLine(1);
+			return line == null ? 0 : line.getDepth();
+		}
+
+		/**
+		 * Returns the line with the specified 1 based MultiPV id, or null.
+		 */
+		public Line getLine(int multiPv) {
+			return multiPv > 0 && multiPv <= lines.length ? lines[multiPv - 1]
+					: null;
+		}
+
+		/**
+		 * Returns the cached lines in MultiPV order.
+		 */
+		public Line[] getLines() {
+			List<Line> result = new ArrayList<Line>(lines.length);
+			for (Line line : lines) {
+				if (line != null) {
+					result.add(line);
+				}
+			}
+			return result.toArray(new Line[result.size()]);
+		}
+
+		/**
+		 * Stores the line if it is deeper than the cached one. Returns true
+		 * if it was stored.
+		 */
+		protected boolean update(Line line) {
+			Line current = getLine(line.getMultiPv());
+			if (current != null && current.getDepth() >= line.getDepth()) {
+				return false;
+			}
+			if (line.getMultiPv() > lines.length) {
+				Line[] newLines = new Line[line.getMultiPv()];
+				System.arraycopy(lines, 0, newLines, 0, lines.length);
+				lines = newLines;
+			}
+			lines[line.getMultiPv() - 1] = line;
+			return true;
+		}
+	}
+
+	/**
+	 * Counts the bytes read so the offset of each record is known while the
+	 * log is scanned through a buffer.
+	 */
+	protected static class CountingInputStream extends FilterInputStream {
+		protected long count;
+
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result != -1) {
+				count++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int result = super.read(b, off, len);
+			if (result > 0) {
+				count += result;
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long result = super.skip(n);
+			count += result;
+			return result;
+		}
+	}
+
+	protected File file;
+	protected RandomAccessFile log;
+	protected long logLength;
+	protected ByteArrayOutputStream pending = new ByteArrayOutputStream(
+			FLUSH_SIZE + 1024);
+	protected DataOutputStream pendingOut = new DataOutputStream(pending);
+	protected long firstPendingTime;
+	protected Map<String, Long> offsets = new HashMap<String, Long>();
+	protected LinkedHashMap<String, Entry> entries;
+	protected long hits;
+	protected long misses;
+
+	/**
+	 * Opens the cache stored in the specified file, creating it if it does
+	 * not exist. At most maxEntries positions are held in memory.
+	 */
+	public AnalysisCache(File file, final int maxEntries) throws IOException {
+		this.file = file;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		if (file.getParentFile() != null && !file.getParentFile().exists()) {
+			file.getParentFile().mkdirs();
+		}
+		File current = FileUtils.getReplacedFile(file);
+		if (current != file && !current.renameTo(file)) {
+			throw new IOException("Unable to restore " + file + " from "
+					+ current);
+		}
+		load();
+	}
+
+	public synchronized void close() {
+		if (log != null) {
+			flush();
+		}
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException ioe) {
+				LOG.warn("Error closing " + file, ioe);
+			}
+			log = null;
+		}
+		entries.clear();
+		offsets.clear();
+		pending.reset();
+	}
+
+	/**
+	 * Writes the buffered records to the log.
+	 */
+	public synchronized void flush() {
+		if (log == null || pending.size() == 0) {
+			return;
+		}
+		try {
+			log.seek(logLength);
+			log.write(pending.toByteArray());
+			logLength += pending.size();
+			pending.reset();
+		} catch (IOException ioe) {
+			LOG.warn("Error writing to " + file
+					+ ". Analysis is no longer persisted.", ioe);
+			close();
+		}
+	}
+
+	/**
+	 * Returns the cached analysis of the position, or null if there is none.
+	 */
+	public synchronized Entry get(long hash, Variant variant,
+			String engineName) {
+		Entry result = engineName == null ? null : getEntry(hash, variant,
+				engineName, false);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of positions with analysis on disk, counting a
+	 * position once for each engine and variant.
+	 */
+	public synchronized int getPositionCount() {
+		return offsets.size();
+	}
+
+	/**
+	 * Stores the line if it is deeper than the cached one for the position.
+	 * Returns true if it was stored.
+	 */
+	public synchronized boolean put(long hash, Variant variant,
+			String engineName, int multiPv, int depth, int centipawns,
+			int mateInMoves, UCIMove[] pv) {
+		if (log == null || engineName == null || multiPv < 1 || depth < 1) {
+			return false;
+		}
+		StringBuilder pvText = new StringBuilder(pv.length * 5);
+		for (UCIMove move : pv) {
+			if (pvText.length() > 0) {
+				pvText.append(' ');
+			}
+			pvText.append(move.getValue());
+		}
+		Line line = new Line(multiPv, depth, centipawns, mateInMoves, pvText
+				.toString());
+		Entry entry = getEntry(hash, variant, engineName, true);
+		if (!entry.update(line)) {
+			return false;
+		}
+
+		try {
+			if (pending.size() == 0) {
+				firstPendingTime = System.currentTimeMillis();
+			}
+			long offset = logLength + pending.size();
+			writeRecord(pendingOut, hash, variant.name(), engineName, entry
+					.getLines());
+			offsets.put(getKey(hash, variant.name(), engineName), offset);
+		} catch (IOException ioe) {
+			// Not thrown by a ByteArrayOutputStream.
+			throw new IllegalStateException(ioe);
+		}
+		if (pending.size() >= FLUSH_SIZE
+				|| System.currentTimeMillis() - firstPendingTime >= FLUSH_MILLIS) {
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the live records to a new log and replaces the old one with it.
+	 */
+	protected void compact(List<Long> liveOffsets) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			for (long offset : liveOffsets) {
+				in.seek(offset);
+				long hash = in.readLong();
+				String variant = in.readUTF();
+				String engineName = in.readUTF();
+				writeRecord(out, hash, variant, engineName, readLines(in));
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		FileUtils.replaceFile(tempFile, file);
+	}
+
+	protected Entry getEntry(long hash, Variant variant, String engineName,
+			boolean isCreating) {
+		String key = getKey(hash, variant.name(), engineName);
+		Entry result = entries.get(key);
+		if (result == null) {
+			result = readEntry(key);
+			if (result != null || isCreating) {
+				if (result == null) {
+					result = new Entry();
+				}
+				entries.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	protected String getKey(long hash, String variant, String engineName) {
+		return hash + " " + variant + " " + engineName;
+	}
+
+	/**
+	 * Scans the log, indexing the latest record of every position. Truncated
+	 * records at the end, from a crash while appending, are cut off. A log
+	 * written in an older format is discarded.
+	 */
+	protected void load() throws IOException {
+		Map<String, Long> latest = new HashMap<String, Long>();
+		int records = 0;
+		long validLength = HEADER_SIZE;
+
+		if (file.exists() && file.length() > 0) {
+			CountingInputStream counter = new CountingInputStream(
+					new BufferedInputStream(new FileInputStream(file), 65536));
+			DataInputStream in = new DataInputStream(counter);
+			try {
+				if (file.length() < HEADER_SIZE || in.readInt() != MAGIC) {
+					LOG.warn(file + " is not an analysis cache of this "
+							+ "version. Starting a new one.");
+					validLength = 0;
+				} else {
+					while (true) {
+						long offset = counter.count;
+						try {
+							String key = getKey(in.readLong(), in.readUTF(), in
+									.readUTF());
+							readLines(in);
+							latest.put(key, offset);
+						} catch (EOFException eof) {
+							break;
+						}
+						records++;
+						validLength = counter.count;
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if (records >= MIN_RECORDS_TO_COMPACT && records > 2 * latest.size()) {
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Compacting " + file + " from " + records + " to "
+						+ latest.size() + " records.");
+			}
+			List<Long> liveOffsets = new ArrayList<Long>(latest.values());
+			Collections.sort(liveOffsets);
+			compact(liveOffsets);
+			load();
+			return;
+		}
+
+		log = new RandomAccessFile(file, "rw");
+		if (validLength == 0) {
+			log.setLength(0);
+		} else if (validLength < log.length()) {
+			LOG.warn("Truncating " + (log.length() - validLength)
+					+ " bytes of partial records from " + file);
+			log.setLength(validLength);
+		}
+		if (log.length() == 0) {
+			log.writeInt(MAGIC);
+		}
+		logLength = log.length();
+		offsets = latest;
+	}
+
+	/**
+	 * Reads the lines of a record, after its hash, variant and engine name.
+	 */
+	protected Line[] readLines(DataInput in) throws IOException {
+		Line[] result = new Line[in.readUnsignedByte()];
+		for (int i = 0; i < result.length; i++) {
+			int multiPv = in.readUnsignedByte();
+			int depth = in.readUnsignedShort();
+			int centipawns = in.readInt();
+			int mateInMoves = in.readShort();
+			result[i] = new Line(multiPv, depth, centipawns, mateInMoves, in
+					.readUTF());
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the latest record of the position with the specified key from the
+	 * log, or returns null if there is none.
+	 */
+	protected Entry readEntry(String key) {
+		Long offset = offsets.get(key);
+		if (offset == null || log == null) {
+			return null;
+		}
+		if (offset >= logLength) {
+			flush();
+			if (log == null) {
+				return null;
+			}
+		}
+		try {
+			log.seek(offset + 8);
+			log.readUTF();
+			log.readUTF();
+			Entry result = new Entry();
+			for (Line line : readLines(log)) {
+				result.update(line);
+			}
+			return result;
+		} catch (IOException ioe) {
+			LOG.warn("Error reading " + file, ioe);
+			return null;
+		}
+	}
+
+	protected void writeRecord(DataOutputStream out, long hash,
+			String variant, String engineName, Line[] lines) throws IOException {
+		out.writeLong(hash);
+		out.writeUTF(variant);
+		out.writeUTF(engineName);
+		out.writeByte(lines.length);
+		for (Line line : lines) {
+			out.writeByte(line.getMultiPv());
+			out.writeShort(line.getDepth());
+			out.writeInt(line.getCentipawns());
+			out.writeShort(line.getMateInMoves());
+			out.writeUTF(line.getPv());
+		}
+	}
+}
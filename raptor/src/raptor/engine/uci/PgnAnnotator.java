@@ -0,0 +1,428 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.GameRecord;
+import raptor.chess.Move;
+import raptor.chess.MoveList;
+import raptor.chess.Variant;
+import raptor.chess.pgn.Comment;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.Nag;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.StreamingPgnParser;
+import raptor.chess.util.PolyglotBook;
+import raptor.engine.uci.UCIEnginePool.EngineStats;
+import raptor.engine.uci.UCIEnginePool.Evaluation;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * Annotates the games of a PGN file with the evaluations of a UCIEnginePool.
+ * Every position of a game is searched in parallel across the pool. Each move
+ * gets a comment with the score after it, and moves losing at least
+ * MISTAKE_CENTIPAWNS also get a $2 and the engines choice. If a book is set,
+ * the opening moves still in the book are neither searched nor annotated.
+ * </p>
+ * <p>
+ * Games are appended to the output file one at a time. After each game the
+ * line to resume from is saved in a progress file next to the output, so an
+ * interrupted run continues where it stopped when it is started again with the
+ * same files.
+ * </p>
+ */
+public class PgnAnnotator {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(PgnAnnotator.class);
+
+	public static final String DEFAULT_GO_PARAMETERS = "movetime 1000";
+	public static final int MISTAKE_CENTIPAWNS = 100;
+	public static final int MATE_CENTIPAWNS = 10000;
+
+	protected static final String NEXT_LINE = "nextLine";
+	protected static final String GAMES = "games";
+
+	/**
+	 * Returns the file the progress of an annotation into the specified
+	 * output file is saved in.
+	 */
+	public static File getProgressFile(File outputFile) {
+		return new File(outputFile.getPath() + ".progress");
+	}
+
+	protected UCIEnginePool pool;
+	protected ExecutorService executor;
+	protected PolyglotBook book;
+	protected String goParameters;
+	protected AtomicLong positionsAnalyzed = new AtomicLong();
+	protected int gamesAnnotated;
+	protected long startTime;
+	protected volatile boolean isCancelled;
+
+	/**
+	 * Creates an annotator searching with the specified go parameters. The
+	 * executor should have at least as many threads as the pool has engines.
+	 */
+	public PgnAnnotator(UCIEnginePool pool, ExecutorService executor,
+			String goParameters) {
+		this.pool = pool;
+		this.executor = executor;
+		this.goParameters = goParameters;
+	}
+
+	/**
+	 * Annotates the games of the PGN file into the output file, resuming a
+	 * previous run into the same output file if there was one. Returns the
+	 * number of games annotated by this call.
+	 */
+	public int annotate(File pgnFile, final File outputFile) throws IOException {
+		startTime = System.currentTimeMillis();
+		gamesAnnotated = 0;
+		positionsAnalyzed.set(0);
+
+		Properties progress = loadProgress(outputFile);
+		int startLine = Integer.parseInt(progress.getProperty(NEXT_LINE, "1"));
+		final int previousGames = Integer.parseInt(progress.getProperty(GAMES,
+				"0"));
+		boolean isResuming = startLine > 1 && outputFile.exists();
+		if (isResuming) {
+			LOG.info("Resuming the annotation of " + pgnFile + " at line "
+					+ startLine + " after " + previousGames + " games.");
+		}
+
+		final Writer writer = new BufferedWriter(new FileWriter(outputFile,
+				isResuming));
+		final StreamingPgnParser parser = new StreamingPgnParser(pgnFile,
+				Integer.MAX_VALUE);
+		final IOException[] failure = new IOException[1];
+		try {
+			if (isResuming) {
+				parser.jumpToLine(startLine);
+			}
+			parser.addPgnParserListener(new LenientPgnParserListener() {
+				@Override
+				public void errorEncountered(PgnParserError error) {
+				}
+
+				@Override
+				public boolean gameParsed(Game game, int lineNumber) {
+					if (isCancelled) {
+						return true;
+					}
+					try {
+						annotateGame(game);
+					} catch (InterruptedException ie) {
+						isCancelled = true;
+						return true;
+					}
+					try {
+						writer.write(game.toPgn());
+						writer.write("\n\n");
+						writer.flush();
+						gamesAnnotated++;
+						saveProgress(outputFile, parser.getLineNumber() + 1,
+								previousGames + gamesAnnotated);
+					} catch (IOException ioe) {
+						failure[0] = ioe;
+						isCancelled = true;
+					}
+					if (LOG.isInfoEnabled()) {
+						LOG.info("Annotated game " + (previousGames + gamesAnnotated)
+								+ " " + getStatus());
+					}
+					return isCancelled;
+				}
+
+				@Override
+				protected void createGameFromHeaders(PgnParser parser) {
+					super.createGameFromHeaders(parser);
+					if (currentGame != null) {
+						currentGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+					}
+				}
+			});
+			parser.parse();
+		} finally {
+			parser.close();
+			writer.close();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return gamesAnnotated;
+	}
+
+	/**
+	 * Stops annotating after the positions being searched.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+
+	public PolyglotBook getBook() {
+		return book;
+	}
+
+	public int getGamesAnnotated() {
+		return gamesAnnotated;
+	}
+
+	public long getPositionsAnalyzed() {
+		return positionsAnalyzed.get();
+	}
+
+	/**
+	 * Returns the overall positions per second and the positions per second
+	 * of each engine.
+	 */
+	public String getStatus() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		StringBuilder result = new StringBuilder(200);
+		result.append(getPositionsAnalyzed()).append(" positions ").append(
+				String.format("%.2f", elapsed == 0 ? 0.0
+						: getPositionsAnalyzed() * 1000.0 / elapsed)).append(
+				"/sec");
+		for (EngineStats stats : pool.getStats()) {
+			result.append(", ").append(stats);
+		}
+		return result.toString();
+	}
+
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Sets the book used to skip the opening, null for none.
+	 */
+	public void setBook(PolyglotBook book) {
+		this.book = book;
+	}
+
+	/**
+	 * Adds the evaluations to the moves of the game. Only classic games are
+	 * annotated, other variants are left as they are.
+	 */
+	protected void annotateGame(Game game) throws InterruptedException {
+		if (!Variant.isClassic(game.getVariant())) {
+			return;
+		}
+		MoveList moves = game.getMoveList();
+		int halfMoves = moves.getSize();
+
+		Game replay = game.deepCopy(true);
+		final String[] fens = new String[halfMoves + 1];
+		boolean[] isInBook = new boolean[halfMoves + 1];
+		for (int i = halfMoves; i >= 0; i--) {
+			fens[i] = replay.toFen();
+			isInBook[i] = book != null && book.contains(replay);
+			if (i > 0) {
+				replay.rollback();
+			}
+		}
+
+		// The last position of the opening still in the book is searched so
+		// the first move out of it can be judged.
+		int firstSearched = 0;
+		while (firstSearched < halfMoves && isInBook[firstSearched + 1]) {
+			firstSearched++;
+		}
+
+		List<Future<Evaluation>> futures = new ArrayList<Future<Evaluation>>(
+				fens.length);
+		for (int i = 0; i < fens.length; i++) {
+			if (i < firstSearched) {
+				futures.add(null);
+				continue;
+			}
+			final String fen = fens[i];
+			futures.add(executor.submit(new Callable<Evaluation>() {
+				public Evaluation call() throws Exception {
+					Evaluation result = pool.evaluate(fen, goParameters);
+					positionsAnalyzed.incrementAndGet();
+					return result;
+				}
+			}));
+		}
+
+		Evaluation[] evaluations = new Evaluation[fens.length];
+		int[] whiteScores = new int[fens.length];
+		try {
+			for (int i = firstSearched; i < fens.length; i++) {
+				evaluations[i] = futures.get(i).get();
+				whiteScores[i] = isWhiteToMove(fens[i]) ? getCentipawns(evaluations[i])
+						: -getCentipawns(evaluations[i]);
+			}
+		} catch (ExecutionException ee) {
+			LOG.error("Error analyzing " + game.getHeader(PgnHeader.White)
+					+ " vs " + game.getHeader(PgnHeader.Black)
+					+ ". Leaving it unannotated.", ee.getCause());
+			for (Future<Evaluation> future : futures) {
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+			return;
+		} catch (InterruptedException ie) {
+			for (Future<Evaluation> future : futures) {
+				if (future != null) {
+					future.cancel(true);
+				}
+			}
+			throw ie;
+		}
+
+		for (int i = 0; i < halfMoves; i++) {
+			Move move = moves.get(i);
+			if (i >= firstSearched) {
+				int loss = move.isWhitesMove() ? whiteScores[i] - whiteScores[i + 1]
+						: whiteScores[i + 1] - whiteScores[i];
+				String comment = getScoreText(evaluations[i + 1], isWhiteToMove(fens[i + 1]));
+
+				UCIMove bestMove = evaluations[i].getBestMove();
+				if (loss >= MISTAKE_CENTIPAWNS && bestMove != null
+						&& !isSameMove(move, bestMove)) {
+					move.addAnnotation(Nag.NAG_2);
+					String bestSan = getSan(replay, bestMove);
+					if (bestSan != null) {
+						comment += " (" + bestSan + " "
+								+ getScoreText(evaluations[i], isWhiteToMove(fens[i]))
+								+ ")";
+					}
+				}
+				move.addAnnotation(new Comment(comment));
+			}
+
+			Move replayMove = GameRecord.unpackMove(replay, GameRecord
+					.packMove(move));
+			if (replayMove == null) {
+				break;
+			}
+			replay.forceMove(replayMove);
+		}
+		game.setHeader(PgnHeader.Annotator, pool.getEngineName() + " "
+				+ goParameters);
+	}
+
+	/**
+	 * Returns the score of the evaluation in centipawns, with mates as
+	 * MATE_CENTIPAWNS less the moves to mate.
+	 */
+	protected int getCentipawns(Evaluation evaluation) {
+		if (evaluation.isMate()) {
+			return evaluation.getMateInMoves() > 0 ? MATE_CENTIPAWNS
+					- evaluation.getMateInMoves() : -MATE_CENTIPAWNS
+					- evaluation.getMateInMoves();
+		}
+		return evaluation.getCentipawns();
+	}
+
+	/**
+	 * Returns the san of the engine move in the current position of the game,
+	 * or null if the move is not legal.
+	 */
+	protected String getSan(Game game, UCIMove uciMove) {
+		for (Move move : game.getLegalMoves().asArray()) {
+			if (isSameMove(move, uciMove)) {
+				game.addState(Game.UPDATING_SAN_STATE);
+				game.forceMove(move);
+				String result = move.getSan();
+				game.rollback();
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the score from whites point of view, "+0.35/18" or "#-3".
+	 */
+	protected String getScoreText(Evaluation evaluation, boolean isWhiteToMove) {
+		int sign = isWhiteToMove ? 1 : -1;
+		if (evaluation.isMate()) {
+			return "#" + sign * evaluation.getMateInMoves();
+		}
+		return String.format("%+.2f", sign * evaluation.getCentipawns()
+				/ 100.0)
+				+ "/" + evaluation.getDepth();
+	}
+
+	protected boolean isSameMove(Move move, UCIMove uciMove) {
+		return move.getFrom() == uciMove.getStartSquare()
+				&& move.getTo() == uciMove.getEndSquare()
+				&& (!uciMove.isPromotion() || (move.getPiecePromotedTo() & GameConstants.NOT_PROMOTED_MASK) == uciMove
+						.getPromotedPiece());
+	}
+
+	protected boolean isWhiteToMove(String fen) {
+		return fen.indexOf(" w ") != -1;
+	}
+
+	protected Properties loadProgress(File outputFile) throws IOException {
+		Properties result = new Properties();
+		File progressFile = getProgressFile(outputFile);
+		if (progressFile.exists()) {
+			InputStream in = new FileInputStream(progressFile);
+			try {
+				result.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return result;
+	}
+
+	protected void saveProgress(File outputFile, int nextLine, int games)
+			throws IOException {
+		Properties progress = new Properties();
+		progress.setProperty(NEXT_LINE, String.valueOf(nextLine));
+		progress.setProperty(GAMES, String.valueOf(games));
+		File progressFile = getProgressFile(outputFile);
+		File tempFile = new File(progressFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tempFile);
+		try {
+			progress.store(out, "PgnAnnotator progress");
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(progressFile)) {
+			progressFile.delete();
+			if (!tempFile.renameTo(progressFile)) {
+				throw new IOException("Unable to save " + progressFile);
+			}
+		}
+	}
+}
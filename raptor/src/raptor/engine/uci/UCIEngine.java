@@ -13,68 +13,70 @@
  */
 package raptor.engine.uci;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Future;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.Raptor;
 import raptor.chess.Move;
-import raptor.engine.uci.info.BestLineFoundInfo;
-import raptor.engine.uci.info.CPULoadInfo;
-import raptor.engine.uci.info.CurrentMoveInfo;
-import raptor.engine.uci.info.DepthInfo;
-import raptor.engine.uci.info.MultiPV;
-import raptor.engine.uci.info.NodesPerSecondInfo;
-import raptor.engine.uci.info.NodesSearchedInfo;
-import raptor.engine.uci.info.ScoreInfo;
-import raptor.engine.uci.info.SelectiveSearchDepthInfo;
-import raptor.engine.uci.info.StringInfo;
-import raptor.engine.uci.info.TableBaseHitsInfo;
-import raptor.engine.uci.info.TimeInfo;
 import raptor.engine.uci.options.UCIButton;
 import raptor.engine.uci.options.UCICheck;
 import raptor.engine.uci.options.UCICombo;
 import raptor.engine.uci.options.UCISpinner;
 import raptor.engine.uci.options.UCIString;
 import raptor.pref.PreferenceKeys;
-import raptor.service.ThreadService;
 import raptor.util.RaptorLogger;
 import raptor.util.RaptorStringTokenizer;
 
 /**
  * A class representing a UCIEngine. Ponder is currently unsupported.
  * 
+ * The output of the engine process is read by a UCIEngineReader on its own
+ * thread. Info lines are parsed in place into a reused UCIInfoRecord, and
+ * readyok and bestmove wake the threads waiting for them.
+ * 
  * Information on UCI can be found in these URLs:
  * http://wbec-ridderkerk.nl/html/UCIProtocol.html
  * http://www.docstoc.com/docs/15900289/UCI-_=-Universal-Chess-Interface_
  */
 public class UCIEngine {
 	private static final RaptorLogger LOG = RaptorLogger.getLog(UCIEngine.class);
-	protected static final String[] SUPPORTED_INFO_TYPES = { "depth", "seldepth", "time", "nodes", "pv", "multipv",
-			"score", "currmove", "currentmovenumber", "hashfull", "nps", "tbhits", "cpuload", "string" };
 	protected static final long CONNECTION_TIMEOUT = 5000;
+	protected static final long READY_TIMEOUT = 30000;
+	protected static final long STOP_TIMEOUT = 2500;
+	protected static final long QUIT_TIMEOUT = 500;
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	protected static final String END_OF_OUTPUT = "\u0000end of output";
 
 	protected Process process;
-	protected boolean isUsingThreadService = true;
-	protected BufferedReader in;
+	protected UCIEngineReader reader;
 	protected PrintWriter out;
 	protected boolean isConnected;
 	protected Map<String, UCIOption> nameToOptions = new HashMap<String, UCIOption>();
 	protected String processPath;
 	protected String engineName;
 	protected String engineAuthor;
-	protected Runnable goRunnable;
-	protected boolean cancelGo;
+	protected volatile UCIInfoListener goListener;
+	protected volatile boolean isStopping;
+	protected volatile boolean isConnecting;
+	protected volatile boolean isOutputClosed;
+	protected Object goLock = new Object();
+	protected Object readyLock = new Object();
+	protected long readyRequested;
+	protected long readyReceived;
+	protected BlockingQueue<String> handshakeLines = new LinkedBlockingQueue<String>();
+	protected UCIInfoRecord infoRecord = new UCIInfoRecord();
 	protected boolean multiplyBlackScoreByMinus1 = true;
-	protected UCIBestMove lastBestMove;
+	protected volatile UCIBestMove lastBestMove;
 	protected String[] parameters;
 	protected String userName;
 	protected boolean isDefault;
@@ -95,12 +97,6 @@ public class UCIEngine {
 		}
 
 		resetConnectionState();
-		Future<?> connectionTimeoutFuture = ThreadService.getInstance().scheduleOneShot(CONNECTION_TIMEOUT,
-				new Runnable() {
-					public void run() {
-						disconnect();
-					}
-				});
 
 		try {
 			long startTime = System.currentTimeMillis();
@@ -114,15 +110,17 @@ public class UCIEngine {
 				System.arraycopy(parameters, 0, args, 1, parameters.length);
 				process = new ProcessBuilder(args).start();
 			}
-			in = new BufferedReader(new InputStreamReader(process.getInputStream()), 10000);
 			out = new PrintWriter(process.getOutputStream());
+			handshakeLines.clear();
+			isConnecting = true;
+			reader = new UCIEngineReader(this, process.getInputStream());
+			reader.start();
 
 			send("uci");
 
+			long deadline = startTime + CONNECTION_TIMEOUT;
 			String currentLine = null;
-			while ((currentLine = readLine()) != null) {
-				if (LOG.isDebugEnabled())
-					LOG.debug(currentLine);
+			while ((currentLine = nextHandshakeLine(deadline)) != null) {
 				if (currentLine.startsWith("id")) {
 					parseIdLine(currentLine);
 				} else if (currentLine.startsWith("option ")) {
@@ -135,13 +133,23 @@ public class UCIEngine {
 					}
 				}
 			}
+			isConnecting = false;
+			handshakeLines.clear();
+			if (currentLine == null) {
+				throw new IllegalStateException("No uciok received within " + CONNECTION_TIMEOUT + "ms.");
+			}
 
-			UCIOption multiPv = new UCISpinner();
-			multiPv.setName("MultiPV");
-			multiPv.setValue(
-					Raptor.getInstance().getPreferences().getString(PreferenceKeys.STOCKFISH_MOVES_TO_SUGGEST));
-			setOption(multiPv);
+			if (Raptor.getInstance() != null) {
+				UCIOption multiPv = new UCISpinner();
+				multiPv.setName("MultiPV");
+				multiPv.setValue(
+						Raptor.getInstance().getPreferences().getString(PreferenceKeys.STOCKFISH_MOVES_TO_SUGGEST));
+				setOption(multiPv);
+			}
 			isReady();
+			if (!isConnected()) {
+				return false;
+			}
 
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("engineName=" + engineName + " engineAuthor=" + engineAuthor + "UCI_Chess960="
@@ -149,7 +157,6 @@ public class UCIEngine {
 						+ (System.currentTimeMillis() - startTime));
 			}
 
-			connectionTimeoutFuture.cancel(true);
 			return true;
 		} catch (Throwable t) {
 			LOG.error("Error connecting to UCI Engine " + this, t);
@@ -268,48 +275,48 @@ public class UCIEngine {
 		}
 
 		lastBestMove = null;
-		if (!isProcessingGo()) {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Entering go(" + options + ",...)");
+		synchronized (goLock) {
+			if (goListener != null) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Go is in process. Ignoring go call.");
+				}
+				return;
 			}
+			goListener = listener;
+		}
 
-			if (StringUtils.isBlank(options)) {
-				send("go");
-			} else {
-				send("go " + options);
-			}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Entering go(" + options + ",...)");
+		}
 
-			Runnable runnable = goRunnable = new Runnable() {
-				public void run() {
-					try {
-						String line = readLine();
-
-						while (!cancelGo && line != null) {
-							if (line.startsWith("info")) {
-								parseInfoLine(line, listener);
-							} else if (line.startsWith("bestmove")) {
-								lastBestMove = parseBestMove(line);
-								listener.engineSentBestMove(lastBestMove);
-								break;
-							}
-							line = readLine();
-						}
-						goRunnable = null;
-					} catch (Throwable t) {
-						LOG.error("Error occured executng go ", t);
-					}
-				}
-			};
-			if (isUsingThreadService) {
-				ThreadService.getInstance().run(runnable);
-			} else {
-				new Thread(runnable).start();
-			}
+		if (StringUtils.isBlank(options)) {
+			send("go");
 		} else {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Go is in process. Ignoring go call.");
+			send("go " + options);
+		}
+	}
+
+	/**
+	 * Waits up to timeoutMillis for the go in process to finish. Returns true
+	 * if there is no go in process. On the reader thread, for instance from a
+	 * UCIInfoListener, it returns without waiting.
+	 */
+	public boolean awaitBestMove(long timeoutMillis) throws InterruptedException {
+		UCIEngineReader currentReader = reader;
+		if (currentReader != null && currentReader.isReaderThread()) {
+			return !isProcessingGo();
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (goLock) {
+			while (goListener != null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				goLock.wait(remaining);
 			}
 		}
+		return true;
 	}
 
 	/**
@@ -332,7 +339,7 @@ public class UCIEngine {
 	 * false.
 	 */
 	public boolean isProcessingGo() {
-		return goRunnable != null;
+		return goListener != null;
 	}
 
 	/**
@@ -354,28 +361,40 @@ public class UCIEngine {
 		if (!isConnected()) {
 			throw new IllegalStateException("Engine is not connected.");
 		}
-		if (isProcessingGo()) {
-			// Do nothing currently not supported if isProcessingGo.
-		} else {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Entering isReady()");
-			}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Entering isReady()");
+		}
 
-			send("isready");
-			try {
-				String reply = readLine();
-				while (reply != null && !reply.equalsIgnoreCase("readyok")) {
-					reply = readLine();
+		long target;
+		synchronized (readyLock) {
+			target = ++readyRequested;
+		}
+		send("isready");
+
+		UCIEngineReader currentReader = reader;
+		if (currentReader == null || currentReader.isReaderThread()) {
+			return;
+		}
+
+		boolean isAnswered;
+		try {
+			long deadline = System.currentTimeMillis() + READY_TIMEOUT;
+			synchronized (readyLock) {
+				long remaining = READY_TIMEOUT;
+				while (readyReceived < target && !isOutputClosed && remaining > 0) {
+					readyLock.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
 				}
-			} catch (Throwable t) {
-				LOG.error("Error occured in isReady. Disconnecting.", t);
-				disconnect();
+				isAnswered = readyReceived >= target;
 			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (!isAnswered && isConnected()) {
+			LOG.error("No readyok received from " + this + ". Disconnecting.");
+			disconnect();
 		}
-	}
-
-	public boolean isUsingThreadService() {
-		return isUsingThreadService;
 	}
 
 	/**
@@ -429,10 +448,14 @@ public class UCIEngine {
 			LOG.debug("Entering quit()");
 		}
 
+		UCIEngineReader currentReader = reader;
 		send("quit");
-		try {
-			Thread.sleep(100);
-		} catch (InterruptedException ie) {
+		if (currentReader != null) {
+			try {
+				currentReader.join(QUIT_TIMEOUT);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
 		}
 		disconnect();
 	}
@@ -604,10 +627,6 @@ public class UCIEngine {
 		this.userName = userName;
 	}
 
-	public void setUsingThreadService(boolean isUsingThreadService) {
-		this.isUsingThreadService = isUsingThreadService;
-	}
-
 	/**
 	 * Stops a go that is in process. The UCIBestMove is returned.
 	 */
@@ -628,14 +647,14 @@ public class UCIEngine {
 				lastBestMove = null;
 
 			} else {
-				long totalSleepTime = 0;
-				send("stop");
-				while (goRunnable != null && totalSleepTime < 2500) {
-					try {
-						Thread.sleep(500);
-						totalSleepTime += 500;
-					} catch (InterruptedException ie) {
-					}
+				isStopping = true;
+				try {
+					send("stop");
+					awaitBestMove(STOP_TIMEOUT);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				} finally {
+					isStopping = false;
 				}
 				result = lastBestMove;
 				lastBestMove = null;
@@ -658,12 +677,12 @@ public class UCIEngine {
 				process.destroy();
 				process = null;
 
-				if (in != null) {
+				if (reader != null) {
 					try {
-						in.close();
+						reader.close();
 					} catch (Throwable t) {
 					} finally {
-						in = null;
+						reader = null;
 					}
 				}
 				if (out != null) {
@@ -689,23 +708,13 @@ public class UCIEngine {
 		quit();
 	}
 
-	protected boolean isSupportedInfoType(String type) {
-		boolean result = false;
-		for (String currentType : SUPPORTED_INFO_TYPES) {
-			if (currentType.equalsIgnoreCase(type)) {
-				result = true;
-				break;
-			}
-		}
-		return result;
-	}
-
 	protected UCIBestMove parseBestMove(String bestMove) {
 
 		if (LOG.isDebugEnabled())
 			LOG.debug("parseBestMove(" + bestMove + ")");
 
 		RaptorStringTokenizer tok = new RaptorStringTokenizer(bestMove, " ", true);
+		tok.nextToken();
 
 		UCIBestMove result = new UCIBestMove();
 		result.setBestMove(parseUCIMove(tok.nextToken()));
@@ -741,209 +750,6 @@ public class UCIEngine {
 		}
 	}
 
-	/**
-	 * the engine wants to send infos to the GUI. This should be done whenever
-	 * one of the info has changed. The engine can send only selected infos and
-	 * multiple infos can be send with one info command, e.g.
-	 * "info currmove e2e4 currmovenumber 1" or
-	 * "info depth 12 nodes 123456 nps 100000". Also all infos belonging to the
-	 * pv should be sent together e.g.
-	 * "info depth 2 score cp 214 time 1242 nodes 2124 nps 34928 pv e2e4 e7e5 g1f3"
-	 * I suggest to start sending "currmove", "currmovenumber", "currline" and
-	 * "refutation" only after one second to avoid too much traffic.
-	 * 
-	 * <pre>
-	 * Additional info:
-	 * depth 
-	 * 		search depth in plies
-	 * seldepth 
-	 * 		selective search depth in plies,
-	 * 		if the engine sends seldepth there must also a &quot;depth&quot; be present in the same string.
-	 * time 
-	 * 		the time searched in ms, this should be sent together with the pv.
-	 * nodes 
-	 * 		x nodes searched, the engine should send this info regularly
-	 * pv  ... 
-	 * 		the best line found
-	 * multipv 
-	 * 		this for the multi pv mode.
-	 * 		for the best move/pv add &quot;multipv 1&quot; in the string when you send the pv.
-	 * 		in k-best mode always send all k variants in k strings together.
-	 * score
-	 * cp 
-	 * 			the score from the engine's point of view in centipawns.
-	 * mate 
-	 * 			mate in y moves, not plies.
-	 * 			If the engine is getting mated use negativ values for y.
-	 * lowerbound
-	 * 	      the score is just a lower bound.
-	 * upperbound
-	 * 		   the score is just an upper bound.
-	 * currmove 
-	 * 		currently searching this move
-	 * currmovenumber 
-	 * 		currently searching move number x, for the first move x should be 1 not 0.
-	 * hashfull 
-	 * 		the hash is x permill full, the engine should send this info regularly
-	 * nps 
-	 * 		x nodes per second searched, the engine should send this info regularly
-	 * tbhits 
-	 * 		x positions where found in the endgame table bases
-	 * cpuload 
-	 * 		the cpu usage of the engine is x permill.
-	 * string 
-	 * 		any string str which will be displayed be the engine,
-	 * 		if there is a string command the rest of the line will be interpreted as .
-	 * refutation   ... 
-	 * 	   move  is refuted by the line  ... , i can be any number &gt;= 1.
-	 * 	   Example: after move d1h5 is searched, the engine can send
-	 * 	   &quot;info refutation d1h5 g6h5&quot;
-	 * 	   if g6h5 is the best answer after d1h5 or if g6h5 refutes the move d1h5.
-	 * 	   if there is norefutation for d1h5 found, the engine should just send
-	 * 	   &quot;info refutation d1h5&quot;
-	 * 		The engine should only send this if the option &quot;UCI_ShowRefutations&quot; is set to true.
-	 * currline   ... 
-	 * 	   this is the current line the engine is calculating.  is the number of the cpu if
-	 * 	   the engine is running on more than one cpu.  = 1,2,3....
-	 * 	   if the engine is just using one cpu,  can be omitted.
-	 * 	   If  is greater than 1, always send all k lines in k strings together.
-	 * 		The engine should only send this if the option &quot;UCI_ShowCurrLine&quot; is set to true.
-	 * </pre>
-	 * 
-	 * Examples:
-	 * 
-	 * <pre>
-	 * go infinite
-	 * info depth 1 seldepth 0 time 34 nodes 0 nps 151466 score cp 1 pv c7c5 
-	 * info nps 151466 nodes 0 cpuload 0 hashfull 0 time 35
-	 * bestmove c7c5 
-	 * stop
-	 * </pre>
-	 */
-	protected void parseInfoLine(String info, UCIInfoListener listener) {
-		if (!isProcessingGo() || Thread.holdsLock(stopSynch))
-			return;
-
-		if (LOG.isDebugEnabled())
-			LOG.debug("Entering parseInfoLine(" + info + ",...)");
-
-		RaptorStringTokenizer tok = new RaptorStringTokenizer(info, " ", true);
-		tok.nextToken();
-
-		int currentMoveNumber = 0;
-
-		List<UCIInfo> infos = new ArrayList<UCIInfo>(10);
-
-		String nextType = null;
-		while (tok.hasMoreTokens()) {
-			String type = null;
-			if (nextType != null) {
-				type = nextType;
-				nextType = null;
-			} else {
-				type = tok.nextToken();
-			}
-
-			while (!isSupportedInfoType(type) && tok.hasMoreTokens()) {
-				type = tok.nextToken();
-			}
-
-			if (!isSupportedInfoType(type)) {
-				break;
-			}
-
-			if (type.equalsIgnoreCase("depth")) {
-				DepthInfo depthInfo = new DepthInfo();
-				depthInfo.setSearchDepthPlies(Integer.parseInt(tok.nextToken()));
-				infos.add(depthInfo);
-			} else if (type.equalsIgnoreCase("seldepth")) {
-				SelectiveSearchDepthInfo ssDepthInfo = new SelectiveSearchDepthInfo();
-				ssDepthInfo.setDepthInPlies(Integer.parseInt(tok.nextToken()));
-				infos.add(ssDepthInfo);
-			} else if (type.equalsIgnoreCase("time")) {
-				TimeInfo timeInfo = new TimeInfo();
-				timeInfo.setTimeMillis(Integer.parseInt(tok.nextToken()));
-				infos.add(timeInfo);
-			} else if (type.equalsIgnoreCase("nodes")) {
-				NodesSearchedInfo nodesSearched = new NodesSearchedInfo();
-				nodesSearched.setNodesSearched(Long.parseLong(tok.nextToken()));
-				infos.add(nodesSearched);
-			} else if (type.equalsIgnoreCase("pv")) {
-				BestLineFoundInfo bestLineFoundInfo = new BestLineFoundInfo();
-				String currentMove = tok.nextToken();
-				List<UCIMove> currentLine = new ArrayList<UCIMove>(10);
-				while (true) {
-					currentLine.add(new UCIMove(currentMove));
-					if (tok.hasMoreTokens()) {
-						currentMove = tok.nextToken();
-						if (isSupportedInfoType(currentMove)) {
-							nextType = currentMove;
-							break;
-						}
-					} else {
-						break;
-					}
-				}
-				bestLineFoundInfo.setMoves(currentLine.toArray(new UCIMove[0]));
-				infos.add(bestLineFoundInfo);
-			} else if (type.equalsIgnoreCase("multipv")) {
-				infos.add(new MultiPV(tok.nextToken()));
-			} else if (type.equalsIgnoreCase("score")) {
-				ScoreInfo scoreInfo = new ScoreInfo();
-				String nextToken = tok.nextToken();
-
-				while (true) {
-					if (nextToken.equalsIgnoreCase("cp")) {
-						scoreInfo.setValueInCentipawns(Integer.parseInt(tok.nextToken()));
-					} else if (nextToken.equalsIgnoreCase("mate")) {
-						scoreInfo.setMateInMoves(Integer.parseInt(tok.nextToken()));
-					} else if (nextToken.equalsIgnoreCase("lowerbound")) {
-						scoreInfo.setLowerBoundScore(true);
-					} else if (nextToken.equalsIgnoreCase("upperbound")) {
-						scoreInfo.setUpperBoundScore(true);
-					} else {
-						nextType = nextToken;
-						break;
-					}
-					if (tok.hasMoreTokens()) {
-						nextToken = tok.nextToken();
-					} else {
-						break;
-					}
-				}
-				infos.add(scoreInfo);
-			} else if (type.equalsIgnoreCase("currmove")) {
-				CurrentMoveInfo currentMoveInfo = new CurrentMoveInfo();
-				currentMoveInfo.setMove(parseUCIMove(tok.nextToken()));
-				currentMoveInfo.setMoveNumber(currentMoveNumber);
-				infos.add(currentMoveInfo);
-			} else if (type.equalsIgnoreCase("currentmovenumber")) {
-				currentMoveNumber = Integer.parseInt(tok.nextToken());
-			} else if (type.equalsIgnoreCase("hashfull")) {
-				tok.nextToken();
-			} else if (type.equalsIgnoreCase("nps")) {
-				NodesPerSecondInfo nodesPerSecInfo = new NodesPerSecondInfo();
-				nodesPerSecInfo.setNodesPerSecond(Long.parseLong(tok.nextToken()));
-				infos.add(nodesPerSecInfo);
-			} else if (type.equalsIgnoreCase("tbhits")) {
-				TableBaseHitsInfo tbInfo = new TableBaseHitsInfo();
-				tbInfo.setNumberOfHits(Integer.parseInt(tok.nextToken()));
-				infos.add(tbInfo);
-			} else if (type.equalsIgnoreCase("cpuload")) {
-				CPULoadInfo cpuInfo = new CPULoadInfo();
-				cpuInfo.setCpuUsage(Integer.parseInt(tok.nextToken()));
-				infos.add(cpuInfo);
-			} else if (type.equalsIgnoreCase("string")) {
-				StringInfo stringInfo = new StringInfo();
-				stringInfo.setValue(tok.getWhatsLeft().trim());
-				infos.add(stringInfo);
-			} else {
-				LOG.warn("Unkown type: " + type);
-			}
-		}
-		listener.engineSentInfo(infos.toArray(new UCIInfo[0]));
-	}
-
 	protected void parseOptionLine(String optionLine) {
 
 		if (LOG.isDebugEnabled())
@@ -1065,21 +871,125 @@ public class UCIEngine {
 		return result.toString();
 	}
 
-	protected String readLine() throws Exception {
-		if (!isConnected()) {
+	/**
+	 * Invoked on the reader thread when bestmove is received, or with null
+	 * when the output closed during a go.
+	 */
+	protected void goFinished(UCIBestMove bestMove) {
+		UCIInfoListener listener = goListener;
+		lastBestMove = bestMove;
+		if (listener != null && bestMove != null) {
+			try {
+				listener.engineSentBestMove(bestMove);
+			} catch (Throwable t) {
+				LOG.error("Error occured in engineSentBestMove", t);
+			}
+		}
+		synchronized (goLock) {
+			goListener = null;
+			goLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Invoked on the reader thread for each line of output. Info lines are
+	 * parsed without creating a String.
+	 */
+	protected void lineRead(UCIEngineReader source, byte[] line, int length) {
+		if (source != reader) {
+			return;
+		}
+		if (startsWith(line, length, "info")) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(new String(line, 0, length, UTF8));
+			}
+			UCIInfoListener listener = goListener;
+			if (listener != null && !isStopping) {
+				if (!infoRecord.parse(line, length)) {
+					LOG.warn("Ignoring malformed info line: " + new String(line, 0, length, UTF8));
+				} else if (listener instanceof UCIInfoRecordListener) {
+					((UCIInfoRecordListener) listener).engineSentInfo(infoRecord);
+				} else {
+					listener.engineSentInfo(infoRecord.toInfos());
+				}
+			}
+			return;
+		}
+
+		String text = new String(line, 0, length, UTF8).trim();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug(text);
+		}
+		if (text.startsWith("bestmove")) {
+			UCIBestMove bestMove;
+			try {
+				bestMove = parseBestMove(text);
+			} catch (Throwable t) {
+				LOG.warn("Could not parse " + text, t);
+				bestMove = new UCIBestMove();
+			}
+			goFinished(bestMove);
+		} else if (text.equalsIgnoreCase("readyok")) {
+			synchronized (readyLock) {
+				readyReceived++;
+				readyLock.notifyAll();
+			}
+		} else if (isConnecting) {
+			handshakeLines.offer(text);
+		} else if (LOG.isDebugEnabled()) {
+			LOG.debug("Ignoring unexpected output: " + text);
+		}
+	}
+
+	/**
+	 * Returns the next line of the reply to uci, or null if the deadline
+	 * passes or the engines output closes first.
+	 */
+	protected String nextHandshakeLine(long deadline) throws InterruptedException {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
 			return null;
-		} else {
-			return in.readLine();
+		}
+		String result = handshakeLines.poll(remaining, TimeUnit.MILLISECONDS);
+		return result == null || result.equals(END_OF_OUTPUT) ? null : result;
+	}
+
+	/**
+	 * Invoked on the reader thread when the engines output closes. Wakes any
+	 * thread waiting on the engine.
+	 */
+	protected void readerFinished(UCIEngineReader source) {
+		if (source != reader) {
+			return;
+		}
+		isOutputClosed = true;
+		handshakeLines.offer(END_OF_OUTPUT);
+		if (isProcessingGo()) {
+			goFinished(null);
+		}
+		synchronized (readyLock) {
+			readyLock.notifyAll();
 		}
 	}
 
 	protected void resetConnectionState() {
-		in = null;
+		reader = null;
 		out = null;
 		process = null;
 		engineName = null;
-		goRunnable = null;
 		lastBestMove = null;
+		isConnecting = false;
+		isStopping = false;
+		isOutputClosed = false;
+		synchronized (readyLock) {
+			readyRequested = 0;
+			readyReceived = 0;
+			readyLock.notifyAll();
+		}
+		synchronized (goLock) {
+			goListener = null;
+			goLock.notifyAll();
+		}
 	}
 
 	protected void send(String command) {
@@ -1099,6 +1009,21 @@ public class UCIEngine {
 		}
 	}
 
+	/**
+	 * Returns true if the line starts with the word prefix.
+	 */
+	protected boolean startsWith(byte[] line, int length, String prefix) {
+		if (length < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line[i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return length == prefix.length() || line[prefix.length()] == ' ';
+	}
+
 	public boolean supportsFischerRandom() {
 		return supportsFischerRandom;
 	}
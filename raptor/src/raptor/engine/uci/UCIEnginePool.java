@@ -0,0 +1,442 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import raptor.chess.GameFactory;
+import raptor.chess.Variant;
+import raptor.engine.uci.options.UCISpinner;
+import raptor.util.RaptorLogger;
+
+/**
+ * <p>
+ * A fixed number of connected copies of one UCIEngine, each with its own
+ * Threads and Hash settings. evaluate can be called from any number of threads
+ * at once: each call takes an idle engine, searches the position and returns
+ * the engine to the pool, blocking while every engine is busy.
+ * </p>
+ * <p>
+ * The pool keeps the number of positions and the search time of each engine
+ * so the throughput of each can be reported.
+ * </p>
+ */
+public class UCIEnginePool {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(UCIEnginePool.class);
+
+	public static final long DEFAULT_EVALUATION_TIMEOUT = 60000;
+
+	/**
+	 * The positions searched by one engine of the pool and the time it spent
+	 * searching them.
+	 */
+	public static class EngineStats {
+		protected String name;
+		protected AtomicLong positions = new AtomicLong();
+		protected AtomicLong searchNanos = new AtomicLong();
+
+		public EngineStats(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getPositions() {
+			return positions.get();
+		}
+
+		/**
+		 * Returns the positions searched per second of search time.
+		 */
+		public double getPositionsPerSecond() {
+			long nanos = searchNanos.get();
+			return nanos == 0 ? 0.0 : positions.get() * 1000000000.0 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + getPositions() + " positions "
+					+ String.format("%.2f", getPositionsPerSecond()) + "/sec";
+		}
+	}
+
+	/**
+	 * The final score, depth and best move of one search. The score is from
+	 * the point of view of the side to move.
+	 */
+	public static class Evaluation {
+		protected int centipawns;
+		protected int mateInMoves;
+		protected int depth;
+		protected UCIMove bestMove;
+		protected UCIMove[] bestLine = new UCIMove[0];
+
+		/**
+		 * Returns the principal variation of the last completed iteration.
+		 */
+		public UCIMove[] getBestLine() {
+			return bestLine;
+		}
+
+		public UCIMove getBestMove() {
+			return bestMove;
+		}
+
+		public int getCentipawns() {
+			return centipawns;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public int getMateInMoves() {
+			return mateInMoves;
+		}
+
+		public boolean isMate() {
+			return mateInMoves != 0;
+		}
+	}
+
+	/**
+	 * Copies the last exact score and principal variation out of the engines
+	 * info records. The moves are kept packed until the search finishes.
+	 */
+	protected class EvaluationListener implements UCIInfoRecordListener {
+		protected Evaluation evaluation = new Evaluation();
+		protected int[] pv = new int[64];
+		protected int pvLength;
+		protected boolean isBestMoveSent;
+
+		/**
+		 * Also invoked with null by evaluate to take the last principal
+		 * variation of an engine which never sent its best move.
+		 */
+		public void engineSentBestMove(UCIBestMove uciBestMove) {
+			isBestMoveSent = uciBestMove != null;
+			evaluation.bestLine = new UCIMove[pvLength];
+			for (int i = 0; i < pvLength; i++) {
+				evaluation.bestLine[i] = UCIInfoRecord.toUCIMove(pv[i]);
+			}
+			if (uciBestMove != null && uciBestMove.getBestMove() != null) {
+				evaluation.bestMove = uciBestMove.getBestMove();
+			} else if (pvLength > 0) {
+				evaluation.bestMove = evaluation.bestLine[0];
+			}
+		}
+
+		/**
+		 * The depth, score and principal variation are only taken together
+		 * from records with an exact score and a principal variation, so the
+		 * depth never claims more than the score came from. currmove lines
+		 * and bound records are ignored.
+		 */
+		public void engineSentInfo(UCIInfoRecord record) {
+			if (!record.has(UCIInfoRecord.SCORE) || record.isLowerBound()
+					|| record.isUpperBound()
+					|| !record.has(UCIInfoRecord.DEPTH)
+					|| !record.has(UCIInfoRecord.PV)
+					|| record.getPvLength() == 0) {
+				return;
+			}
+			evaluation.depth = record.getDepth();
+			evaluation.centipawns = record.getCentipawns();
+			evaluation.mateInMoves = record.getMateInMoves();
+			if (pv.length < record.getPvLength()) {
+				pv = new int[record.getPvLength()];
+			}
+			pvLength = record.getPvLength();
+			for (int i = 0; i < pvLength; i++) {
+				pv[i] = record.getPvMove(i);
+			}
+		}
+
+		public void engineSentInfo(UCIInfo[] infos) {
+			// Not invoked, records are sent instead.
+		}
+	}
+
+	protected UCIEngine prototype;
+	protected volatile int size;
+	protected int threadsPerEngine;
+	protected int hashPerEngine;
+	protected long evaluationTimeout = DEFAULT_EVALUATION_TIMEOUT;
+	protected List<UCIEngine> engines = new ArrayList<UCIEngine>();
+	protected List<EngineStats> stats = new ArrayList<EngineStats>();
+	protected BlockingQueue<UCIEngine> idleEngines = new LinkedBlockingQueue<UCIEngine>();
+	protected AnalysisCache analysisCache;
+
+	/**
+	 * Creates a pool of size copies of the specified engine. Each copy is set
+	 * to search with threadsPerEngine threads and a hashPerEngine megabyte hash
+	 * table if the engine supports the option, a value of 0 leaves the
+	 * engines default.
+	 */
+	public UCIEnginePool(UCIEngine prototype, int size, int threadsPerEngine,
+			int hashPerEngine) {
+		this.prototype = prototype;
+		this.size = size;
+		this.threadsPerEngine = threadsPerEngine;
+		this.hashPerEngine = hashPerEngine;
+	}
+
+	/**
+	 * Searches the position with the specified go parameters, for instance
+	 * "movetime 1000" or "depth 18", on the next idle engine. Infinite
+	 * searches are stopped after the evaluation timeout.
+	 */
+	public Evaluation evaluate(String fen, String goParameters)
+			throws InterruptedException {
+		long hash = 0;
+		if (analysisCache != null) {
+			hash = GameFactory.createFromFen(fen, Variant.classic)
+					.getZobristPositionHash();
+			Evaluation cached = getCachedEvaluation(hash, goParameters);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		UCIEngine engine = null;
+		while ((engine = idleEngines.poll(1, TimeUnit.SECONDS)) == null) {
+			if (size == 0) {
+				throw new IllegalStateException("Every engine of the "
+						+ prototype + " pool has been dropped.");
+			}
+		}
+		long startTime = System.nanoTime();
+		boolean isHung = false;
+		try {
+			EvaluationListener listener = new EvaluationListener();
+			engine.setPosition(fen, null);
+			engine.go(goParameters, listener);
+			// The engine passes the best move to the listener before it
+			// clears its go state and wakes this thread, so the evaluation is
+			// complete once awaitBestMove returns true.
+			boolean isFinished = engine.awaitBestMove(evaluationTimeout);
+			if (!isFinished) {
+				LOG.warn(engine + " did not finish searching " + fen
+						+ " in " + evaluationTimeout + "ms. Stopping it.");
+				engine.stop();
+				if (engine.isProcessingGo()) {
+					LOG.warn(engine + " did not answer stop while searching "
+							+ fen + ". Replacing it and returning the partial "
+							+ "evaluation.");
+					isHung = true;
+					engine.quit();
+					listener.engineSentBestMove(null);
+				}
+			}
+			Evaluation result = listener.evaluation;
+			// Only searches which ran to their own best move are cached, a
+			// stopped search may not have completed the depth it reported.
+			if (analysisCache != null && isFinished
+					&& listener.isBestMoveSent && result.depth > 0) {
+				analysisCache.put(hash, Variant.classic, engine
+						.getEngineName(), 1, result.depth, result.centipawns,
+						result.mateInMoves, result.bestLine);
+			}
+			return result;
+		} finally {
+			int index = -1;
+			synchronized (engines) {
+				index = engines.indexOf(engine);
+				if (index != -1) {
+					EngineStats engineStats = stats.get(index);
+					engineStats.positions.incrementAndGet();
+					engineStats.searchNanos.addAndGet(System.nanoTime()
+							- startTime);
+				}
+			}
+			if (index != -1) {
+				if (isHung) {
+					replaceEngine(index);
+				} else {
+					idleEngines.put(engine);
+				}
+			}
+		}
+	}
+
+	public AnalysisCache getAnalysisCache() {
+		return analysisCache;
+	}
+
+	public long getEvaluationTimeout() {
+		return evaluationTimeout;
+	}
+
+	/**
+	 * Returns the name of the engines, null before start.
+	 */
+	public String getEngineName() {
+		synchronized (engines) {
+			return engines.isEmpty() ? null : engines.get(0).getEngineName();
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the statistics of each engine in the pool.
+	 */
+	public EngineStats[] getStats() {
+		synchronized (engines) {
+			return stats.toArray(new EngineStats[stats.size()]);
+		}
+	}
+
+	/**
+	 * Quits every engine in the pool. Evaluations should have finished first.
+	 */
+	public void quit() {
+		idleEngines.clear();
+		List<UCIEngine> quitting = null;
+		synchronized (engines) {
+			quitting = new ArrayList<UCIEngine>(engines);
+			engines.clear();
+			stats.clear();
+		}
+		for (UCIEngine engine : quitting) {
+			try {
+				engine.quit();
+			} catch (Throwable t) {
+				LOG.warn("Error quitting " + engine, t);
+			}
+		}
+	}
+
+	/**
+	 * Sets the cache evaluations are stored in. Searches with a "depth"
+	 * go parameter are answered from the cache when it is deep enough.
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache) {
+		this.analysisCache = analysisCache;
+	}
+
+	public void setEvaluationTimeout(long evaluationTimeout) {
+		this.evaluationTimeout = evaluationTimeout;
+	}
+
+	/**
+	 * Launches and connects the engines. Returns false, after quitting any
+	 * engines already launched, if one of them can't be connected.
+	 */
+	public boolean start() {
+		for (int i = 0; i < size; i++) {
+			UCIEngine engine = launchEngine();
+			if (engine == null) {
+				LOG.error("Unable to connect engine " + (i + 1) + " of the "
+						+ prototype + " pool.");
+				quit();
+				return false;
+			}
+			synchronized (engines) {
+				engines.add(engine);
+				stats.add(new EngineStats(engine + " #" + (i + 1)));
+			}
+			idleEngines.add(engine);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a connected copy of the prototype set up for the pool, or null
+	 * if it could not be connected.
+	 */
+	protected UCIEngine launchEngine() {
+		UCIEngine engine = prototype.getDeepCopy();
+		if (!engine.connect()) {
+			return null;
+		}
+		setSpinnerOption(engine, "MultiPV", 1);
+		if (threadsPerEngine > 0) {
+			setSpinnerOption(engine, "Threads", threadsPerEngine);
+		}
+		if (hashPerEngine > 0) {
+			setSpinnerOption(engine, "Hash", hashPerEngine);
+		}
+		engine.isReady();
+		return engine;
+	}
+
+	/**
+	 * Replaces the engine at the specified index, which has been quit, with a
+	 * new copy. If the copy can't be connected the pool shrinks by one
+	 * engine.
+	 */
+	protected void replaceEngine(int index) {
+		UCIEngine engine = launchEngine();
+		synchronized (engines) {
+			if (engine == null) {
+				LOG.error("Unable to restart engine " + (index + 1)
+						+ " of the " + prototype + " pool. Dropping it.");
+				engines.remove(index);
+				stats.remove(index);
+				size--;
+				return;
+			}
+			engines.set(index, engine);
+		}
+		idleEngines.add(engine);
+	}
+
+	/**
+	 * Returns the cached evaluation of the position if the go parameters are
+	 * "depth n" and the cache has the first line at least that deep.
+	 */
+	protected Evaluation getCachedEvaluation(long hash, String goParameters) {
+		if (!goParameters.trim().startsWith("depth ")) {
+			return null;
+		}
+		AnalysisCache.Entry entry = analysisCache.get(hash, Variant.classic,
+				getEngineName());
+		if (entry == null || !entry.covers(goParameters)) {
+			return null;
+		}
+		AnalysisCache.Line line = entry.getLine(1);
+		Evaluation result = new Evaluation();
+		result.centipawns = line.getCentipawns();
+		result.mateInMoves = line.getMateInMoves();
+		result.depth = line.getDepth();
+		result.bestLine = line.getMoves();
+		result.bestMove = result.bestLine.length > 0 ? result.bestLine[0]
+				: null;
+		return result;
+	}
+
+	/**
+	 * Sets the spinner option on the engine if it has it. A new option is
+	 * sent rather than the engines own, which the copies share.
+	 */
+	protected void setSpinnerOption(UCIEngine engine, String name, int value) {
+		if (engine.hasOption(name)) {
+			UCISpinner option = new UCISpinner();
+			option.setName(name);
+			option.setValue(String.valueOf(value));
+			engine.setOption(option);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import raptor.util.RaptorLogger;
+
+/**
+ * Reads the output of one engine process on its own thread. Output is read in
+ * blocks into a reused buffer and split into lines in a second reused buffer,
+ * and each line is handed to the UCIEngine without creating a String. The
+ * thread ends when the process closes its output.
+ */
+public class UCIEngineReader implements Runnable {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(UCIEngineReader.class);
+
+	protected static final int READ_BUFFER_SIZE = 16384;
+	protected static final int MAX_LINE_LENGTH = 1 << 20;
+
+	protected UCIEngine engine;
+	protected InputStream in;
+	protected Thread thread;
+	protected byte[] lineBuffer = new byte[1024];
+	protected int lineLength;
+	protected volatile boolean isClosed;
+
+	public UCIEngineReader(UCIEngine engine, InputStream in) {
+		this.engine = engine;
+		this.in = in;
+	}
+
+	/**
+	 * Closes the stream, which ends the thread.
+	 */
+	public void close() {
+		isClosed = true;
+		try {
+			in.close();
+		} catch (IOException ioe) {
+		}
+	}
+
+	public Thread getThread() {
+		return thread;
+	}
+
+	/**
+	 * Returns true if the current thread is the reader thread.
+	 */
+	public boolean isReaderThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Waits up to the specified number of milliseconds for the thread to end.
+	 */
+	public void join(long millis) throws InterruptedException {
+		if (thread != null && !isReaderThread()) {
+			thread.join(millis);
+		}
+	}
+
+	public void run() {
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		try {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++) {
+					byte value = buffer[i];
+					if (value == '\n') {
+						endLine();
+					} else if (value != '\r') {
+						append(value);
+					}
+				}
+			}
+			if (lineLength > 0) {
+				endLine();
+			}
+		} catch (IOException ioe) {
+			if (!isClosed) {
+				LOG.warn("Error reading from " + engine, ioe);
+			}
+		} finally {
+			engine.readerFinished(this);
+		}
+	}
+
+	/**
+	 * Starts the reader thread. It is a daemon thread so an engine left
+	 * running does not keep Raptor from exiting.
+	 */
+	public void start() {
+		thread = new Thread(this, "UCIEngine reader " + engine);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected void append(byte value) {
+		if (lineLength == lineBuffer.length) {
+			if (lineLength >= MAX_LINE_LENGTH) {
+				return;
+			}
+			byte[] newBuffer = new byte[lineBuffer.length * 2];
+			System.arraycopy(lineBuffer, 0, newBuffer, 0, lineLength);
+			lineBuffer = newBuffer;
+		}
+		lineBuffer[lineLength++] = value;
+	}
+
+	protected void endLine() {
+		try {
+			engine.lineRead(this, lineBuffer, lineLength);
+		} catch (Throwable t) {
+			LOG.error("Error processing a line from " + engine, t);
+		}
+		lineLength = 0;
+	}
+}
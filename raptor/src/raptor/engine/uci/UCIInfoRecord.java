@@ -0,0 +1,560 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.engine.uci;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import raptor.chess.GameConstants;
+import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.info.CPULoadInfo;
+import raptor.engine.uci.info.CurrentMoveInfo;
+import raptor.engine.uci.info.DepthInfo;
+import raptor.engine.uci.info.MultiPV;
+import raptor.engine.uci.info.NodesPerSecondInfo;
+import raptor.engine.uci.info.NodesSearchedInfo;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.engine.uci.info.SelectiveSearchDepthInfo;
+import raptor.engine.uci.info.StringInfo;
+import raptor.engine.uci.info.TableBaseHitsInfo;
+import raptor.engine.uci.info.TimeInfo;
+
+/**
+ * <p>
+ * A mutable record of one UCI info line. The engines reader thread parses
+ * every info line into the same record, straight from its line buffer and
+ * without allocating, so UCIInfoRecordListeners must copy anything they keep
+ * before returning.
+ * </p>
+ * <p>
+ * Moves are packed into ints with the start square in the low byte, the end
+ * square in the second and the promoted piece in the third. toInfos converts
+ * the record to the UCIInfo objects UCIInfoListeners receive.
+ * </p>
+ */
+public class UCIInfoRecord {
+	public static final int DEPTH = 1;
+	public static final int SELECTIVE_DEPTH = 1 << 1;
+	public static final int TIME = 1 << 2;
+	public static final int NODES = 1 << 3;
+	public static final int PV = 1 << 4;
+	public static final int MULTI_PV = 1 << 5;
+	public static final int SCORE = 1 << 6;
+	public static final int CURRENT_MOVE = 1 << 7;
+	public static final int NPS = 1 << 8;
+	public static final int TABLE_BASE_HITS = 1 << 9;
+	public static final int CPU_LOAD = 1 << 10;
+	public static final int STRING = 1 << 11;
+
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	protected static final String PROMOTION_PIECES = GameConstants.PIECE_TO_SAN
+			.toLowerCase();
+
+	protected int fields;
+	protected int depth;
+	protected int selectiveDepth;
+	protected int timeMillis;
+	protected long nodes;
+	protected long nodesPerSecond;
+	protected int multiPv;
+	protected int centipawns;
+	protected int mateInMoves;
+	protected boolean isLowerBound;
+	protected boolean isUpperBound;
+	protected int currentMove;
+	protected int currentMoveNumber;
+	protected int tableBaseHits;
+	protected int cpuLoad;
+	protected int[] pv = new int[64];
+	protected int pvLength;
+	protected String string;
+
+	// Parse state.
+	protected byte[] line;
+	protected int position;
+	protected int end;
+	protected int tokenStart;
+	protected int tokenEnd;
+
+	/**
+	 * Returns the move packed into an int.
+	 */
+	public static int packMove(int startSquare, int endSquare,
+			int promotedPiece) {
+		return startSquare | endSquare << 8 | promotedPiece << 16;
+	}
+
+	/**
+	 * Returns a UCIMove for a packed move.
+	 */
+	public static UCIMove toUCIMove(int packedMove) {
+		return new UCIMove(packedMove & 0xff, packedMove >> 8 & 0xff,
+				packedMove >> 16 & 0xff);
+	}
+
+	public int getCentipawns() {
+		return centipawns;
+	}
+
+	public int getCpuLoad() {
+		return cpuLoad;
+	}
+
+	/**
+	 * Returns the packed move being searched.
+	 */
+	public int getCurrentMove() {
+		return currentMove;
+	}
+
+	public int getCurrentMoveNumber() {
+		return currentMoveNumber;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getMateInMoves() {
+		return mateInMoves;
+	}
+
+	public int getMultiPv() {
+		return multiPv;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getNodesPerSecond() {
+		return nodesPerSecond;
+	}
+
+	/**
+	 * Returns the packed move at the specified index of the principal
+	 * variation.
+	 */
+	public int getPvMove(int index) {
+		return pv[index];
+	}
+
+	public int getPvLength() {
+		return pvLength;
+	}
+
+	/**
+	 * Returns the principal variation as new UCIMoves.
+	 */
+	public UCIMove[] getPvMoves() {
+		UCIMove[] result = new UCIMove[pvLength];
+		for (int i = 0; i < pvLength; i++) {
+			result[i] = toUCIMove(pv[i]);
+		}
+		return result;
+	}
+
+	public int getSelectiveDepth() {
+		return selectiveDepth;
+	}
+
+	public String getString() {
+		return string;
+	}
+
+	public int getTableBaseHits() {
+		return tableBaseHits;
+	}
+
+	public int getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * Returns true if the line had all of the specified fields.
+	 */
+	public boolean has(int fieldMask) {
+		return (fields & fieldMask) == fieldMask;
+	}
+
+	public boolean isLowerBound() {
+		return isLowerBound;
+	}
+
+	public boolean isUpperBound() {
+		return isUpperBound;
+	}
+
+	/**
+	 * Parses the ASCII info line in line[0..length), which starts with
+	 * "info". Unknown fields are skipped. Returns false if the line is
+	 * malformed, in which case the record holds whatever was parsed before
+	 * the error.
+	 * 
+	 * From the UCI specification:
+	 * 
+	 * the engine wants to send infos to the GUI. This should be done whenever
+	 * one of the info has changed. The engine can send only selected infos and
+	 * multiple infos can be send with one info command, e.g.
+	 * "info currmove e2e4 currmovenumber 1" or
+	 * "info depth 12 nodes 123456 nps 100000". Also all infos belonging to the
+	 * pv should be sent together e.g.
+	 * "info depth 2 score cp 214 time 1242 nodes 2124 nps 34928 pv e2e4 e7e5 g1f3"
+	 * I suggest to start sending "currmove", "currmovenumber", "currline" and
+	 * "refutation" only after one second to avoid too much traffic.
+	 * 
+	 * <pre>
+	 * Additional info:
+	 * depth 
+	 * 		search depth in plies
+	 * seldepth 
+	 * 		selective search depth in plies,
+	 * 		if the engine sends seldepth there must also a &quot;depth&quot; be present in the same string.
+	 * time 
+	 * 		the time searched in ms, this should be sent together with the pv.
+	 * nodes 
+	 * 		x nodes searched, the engine should send this info regularly
+	 * pv  ... 
+	 * 		the best line found
+	 * multipv 
+	 * 		this for the multi pv mode.
+	 * 		for the best move/pv add &quot;multipv 1&quot; in the string when you send the pv.
+	 * 		in k-best mode always send all k variants in k strings together.
+	 * score
+	 * cp 
+	 * 			the score from the engine's point of view in centipawns.
+	 * mate 
+	 * 			mate in y moves, not plies.
+	 * 			If the engine is getting mated use negativ values for y.
+	 * lowerbound
+	 * 	      the score is just a lower bound.
+	 * upperbound
+	 * 		   the score is just an upper bound.
+	 * currmove 
+	 * 		currently searching this move
+	 * currmovenumber 
+	 * 		currently searching move number x, for the first move x should be 1 not 0.
+	 * hashfull 
+	 * 		the hash is x permill full, the engine should send this info regularly
+	 * nps 
+	 * 		x nodes per second searched, the engine should send this info regularly
+	 * tbhits 
+	 * 		x positions where found in the endgame table bases
+	 * cpuload 
+	 * 		the cpu usage of the engine is x permill.
+	 * string 
+	 * 		any string str which will be displayed be the engine,
+	 * 		if there is a string command the rest of the line will be interpreted as .
+	 * refutation   ... 
+	 * 	   move  is refuted by the line  ... , i can be any number &gt;= 1.
+	 * 	   Example: after move d1h5 is searched, the engine can send
+	 * 	   &quot;info refutation d1h5 g6h5&quot;
+	 * 	   if g6h5 is the best answer after d1h5 or if g6h5 refutes the move d1h5.
+	 * 	   if there is norefutation for d1h5 found, the engine should just send
+	 * 	   &quot;info refutation d1h5&quot;
+	 * 		The engine should only send this if the option &quot;UCI_ShowRefutations&quot; is set to true.
+	 * currline   ... 
+	 * 	   this is the current line the engine is calculating.  is the number of the cpu if
+	 * 	   the engine is running on more than one cpu.  = 1,2,3....
+	 * 	   if the engine is just using one cpu,  can be omitted.
+	 * 	   If  is greater than 1, always send all k lines in k strings together.
+	 * 		The engine should only send this if the option &quot;UCI_ShowCurrLine&quot; is set to true.
+	 * </pre>
+	 * 
+	 * Examples:
+	 * 
+	 * <pre>
+	 * go infinite
+	 * info depth 1 seldepth 0 time 34 nodes 0 nps 151466 score cp 1 pv c7c5 
+	 * info nps 151466 nodes 0 cpuload 0 hashfull 0 time 35
+	 * bestmove c7c5 
+	 * stop
+	 * </pre>
+	 */
+	public boolean parse(byte[] line, int length) {
+		this.line = line;
+		position = 0;
+		end = length;
+		fields = 0;
+		pvLength = 0;
+		isLowerBound = false;
+		isUpperBound = false;
+		mateInMoves = 0;
+		centipawns = 0;
+		currentMoveNumber = 0;
+		string = null;
+
+		try {
+			if (!nextToken() || !isToken("info")) {
+				return false;
+			}
+			boolean hasToken = nextToken();
+			while (hasToken) {
+				hasToken = parseField();
+			}
+			return true;
+		} catch (NumberFormatException nfe) {
+			return false;
+		} finally {
+			this.line = null;
+		}
+	}
+
+	/**
+	 * Returns the record as the UCIInfo objects the line would have been
+	 * parsed into.
+	 */
+	public UCIInfo[] toInfos() {
+		List<UCIInfo> result = new ArrayList<UCIInfo>(10);
+		if (has(DEPTH)) {
+			DepthInfo info = new DepthInfo();
+			info.setSearchDepthPlies(depth);
+			result.add(info);
+		}
+		if (has(SELECTIVE_DEPTH)) {
+			SelectiveSearchDepthInfo info = new SelectiveSearchDepthInfo();
+			info.setDepthInPlies(selectiveDepth);
+			result.add(info);
+		}
+		if (has(TIME)) {
+			TimeInfo info = new TimeInfo();
+			info.setTimeMillis(timeMillis);
+			result.add(info);
+		}
+		if (has(NODES)) {
+			NodesSearchedInfo info = new NodesSearchedInfo();
+			info.setNodesSearched(nodes);
+			result.add(info);
+		}
+		if (has(MULTI_PV)) {
+			result.add(new MultiPV(String.valueOf(multiPv)));
+		}
+		if (has(SCORE)) {
+			ScoreInfo info = new ScoreInfo();
+			info.setValueInCentipawns(centipawns);
+			info.setMateInMoves(mateInMoves);
+			info.setLowerBoundScore(isLowerBound);
+			info.setUpperBoundScore(isUpperBound);
+			result.add(info);
+		}
+		if (has(PV)) {
+			BestLineFoundInfo info = new BestLineFoundInfo();
+			info.setMoves(getPvMoves());
+			result.add(info);
+		}
+		if (has(CURRENT_MOVE)) {
+			CurrentMoveInfo info = new CurrentMoveInfo();
+			info.setMove(toUCIMove(currentMove));
+			info.setMoveNumber(currentMoveNumber);
+			result.add(info);
+		}
+		if (has(NPS)) {
+			NodesPerSecondInfo info = new NodesPerSecondInfo();
+			info.setNodesPerSecond(nodesPerSecond);
+			result.add(info);
+		}
+		if (has(TABLE_BASE_HITS)) {
+			TableBaseHitsInfo info = new TableBaseHitsInfo();
+			info.setNumberOfHits(tableBaseHits);
+			result.add(info);
+		}
+		if (has(CPU_LOAD)) {
+			CPULoadInfo info = new CPULoadInfo();
+			info.setCpuUsage(cpuLoad);
+			result.add(info);
+		}
+		if (has(STRING)) {
+			StringInfo info = new StringInfo();
+			info.setValue(string);
+			result.add(info);
+		}
+		return result.toArray(new UCIInfo[result.size()]);
+	}
+
+	protected boolean isToken(String keyword) {
+		int length = tokenEnd - tokenStart;
+		if (length != keyword.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (Character.toLowerCase((char) line[tokenStart + i]) != keyword
+					.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current token is a UCI move, "e2e4" or "e7e8q".
+	 */
+	protected boolean isMoveToken() {
+		int length = tokenEnd - tokenStart;
+		return (length == 4 || length == 5) && isFile(line[tokenStart])
+				&& isRank(line[tokenStart + 1]) && isFile(line[tokenStart + 2])
+				&& isRank(line[tokenStart + 3]);
+	}
+
+	protected boolean isFile(byte value) {
+		return value >= 'a' && value <= 'h';
+	}
+
+	protected boolean isRank(byte value) {
+		return value >= '1' && value <= '8';
+	}
+
+	/**
+	 * Advances to the next space separated token. Returns false at the end of
+	 * the line.
+	 */
+	protected boolean nextToken() {
+		while (position < end && line[position] <= ' ') {
+			position++;
+		}
+		if (position == end) {
+			return false;
+		}
+		tokenStart = position;
+		while (position < end && line[position] > ' ') {
+			position++;
+		}
+		tokenEnd = position;
+		return true;
+	}
+
+	/**
+	 * Parses the field named by the current token and advances past it.
+	 * Returns true if the current token is the next field name.
+	 */
+	protected boolean parseField() {
+		if (isToken("depth")) {
+			depth = nextInt();
+			fields |= DEPTH;
+		} else if (isToken("seldepth")) {
+			selectiveDepth = nextInt();
+			fields |= SELECTIVE_DEPTH;
+		} else if (isToken("time")) {
+			timeMillis = nextInt();
+			fields |= TIME;
+		} else if (isToken("nodes")) {
+			nodes = nextLong();
+			fields |= NODES;
+		} else if (isToken("nps")) {
+			nodesPerSecond = nextLong();
+			fields |= NPS;
+		} else if (isToken("multipv")) {
+			multiPv = nextInt();
+			fields |= MULTI_PV;
+		} else if (isToken("tbhits")) {
+			tableBaseHits = (int) nextLong();
+			fields |= TABLE_BASE_HITS;
+		} else if (isToken("cpuload")) {
+			cpuLoad = nextInt();
+			fields |= CPU_LOAD;
+		} else if (isToken("hashfull")) {
+			nextInt();
+		} else if (isToken("currmovenumber") || isToken("currentmovenumber")) {
+			currentMoveNumber = nextInt();
+		} else if (isToken("currmove")) {
+			if (!nextToken()) {
+				return false;
+			} else if (!isMoveToken()) {
+				return true;
+			}
+			currentMove = tokenToMove();
+			fields |= CURRENT_MOVE;
+		} else if (isToken("score")) {
+			fields |= SCORE;
+			while (nextToken()) {
+				if (isToken("cp")) {
+					centipawns = nextInt();
+				} else if (isToken("mate")) {
+					mateInMoves = nextInt();
+				} else if (isToken("lowerbound")) {
+					isLowerBound = true;
+				} else if (isToken("upperbound")) {
+					isUpperBound = true;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		} else if (isToken("pv")) {
+			fields |= PV;
+			while (nextToken()) {
+				if (!isMoveToken()) {
+					return true;
+				}
+				if (pvLength == pv.length) {
+					int[] newPv = new int[pv.length * 2];
+					System.arraycopy(pv, 0, newPv, 0, pvLength);
+					pv = newPv;
+				}
+				pv[pvLength++] = tokenToMove();
+			}
+			return false;
+		} else if (isToken("string")) {
+			while (position < end && line[position] <= ' ') {
+				position++;
+			}
+			string = new String(line, position, end - position, UTF8).trim();
+			fields |= STRING;
+			position = end;
+			return false;
+		}
+		// Unknown fields and their values are skipped a token at a time.
+		return nextToken();
+	}
+
+	protected int nextInt() {
+		return (int) nextLong();
+	}
+
+	protected long nextLong() {
+		if (!nextToken()) {
+			throw new NumberFormatException("Missing number");
+		}
+		int index = tokenStart;
+		boolean isNegative = line[index] == '-';
+		if (isNegative || line[index] == '+') {
+			index++;
+		}
+		if (index == tokenEnd) {
+			throw new NumberFormatException("Missing digits");
+		}
+		long result = 0;
+		for (; index < tokenEnd; index++) {
+			int digit = line[index] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Invalid digit");
+			}
+			result = result * 10 + digit;
+		}
+		return isNegative ? -result : result;
+	}
+
+	protected int tokenToMove() {
+		int startSquare = (line[tokenStart + 1] - '1') * 8 + line[tokenStart]
+				- 'a';
+		int endSquare = (line[tokenStart + 3] - '1') * 8
+				+ line[tokenStart + 2] - 'a';
+		int promotedPiece = 0;
+		if (tokenEnd - tokenStart == 5) {
+			promotedPiece = Math.max(0, PROMOTION_PIECES
+					.indexOf(Character.toLowerCase((char) line[tokenStart + 4])));
+		}
+		return packMove(startSquare, endSquare, promotedPiece);
+	}
+}
@@ -35,6 +35,21 @@ public class UCIMove {
 		}
 	}
 
+	/**
+	 * Creates a move from its squares and the promoted piece, 0 if it is not
+	 * a promotion.
+	 */
+	public UCIMove(int startSquare, int endSquare, int promotedPiece) {
+		this.startSquare = startSquare;
+		this.endSquare = endSquare;
+		this.promotedPiece = promotedPiece;
+		value = GameUtils.getSan(startSquare) + GameUtils.getSan(endSquare);
+		if (promotedPiece != 0) {
+			value += GameConstants.PIECE_TO_SAN.toLowerCase().charAt(
+					promotedPiece);
+		}
+	}
+
 	public UCIMove(String uciString) {
 		value = uciString;
 		startSquare = GameUtils.getSquare(uciString.substring(0, 2));
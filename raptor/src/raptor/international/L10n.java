@@ -141,6 +141,10 @@ public class L10n {
 			File localeFile = new File(Raptor.USER_RAPTOR_DIR + File.separator
 					+ "locale");
 			if (!localeFile.exists()) {
+				if (Raptor.getInstance() != null
+						&& Raptor.getInstance().isHeadless()) {
+					return suitLocCache;
+				}
 				suitLocCache = new LanguageDialog().open(getSuitableLocaleName());
                                 noSavedLocaleFile = true;                                
 				return suitLocCache;
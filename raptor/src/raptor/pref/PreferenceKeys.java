@@ -90,6 +90,11 @@ public interface PreferenceKeys {
 	
 	public static final String STOCKFISH_MOVES_TO_SUGGEST = "stockfish-moves-to-suggest";
 
+	public static final String BOOK_FILE = "book-file";
+	public static final String BOOK_SHOW_ARROWS = "book-show-arrows";
+	public static final String BOOK_ARROW_COLOR = "book-arrow-color";
+	public static final String BOOK_ANALYZE_POSITIONS = "book-analyze-positions";
+
 	public static final String ACTION_SEPARATOR_SEQUENCE = "action-separator-sequence";
 
 	public static final String BUG_ARENA_PARTNERS_INDEX = "bughouse-arena-partners-index";
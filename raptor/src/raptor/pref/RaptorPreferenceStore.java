@@ -276,7 +276,7 @@ public class RaptorPreferenceStore extends PreferenceStore implements Preference
 		else if (OSUtils.isLikelyWindows())
 			return "Lucida Console";
 		else {
-			if (!isDefFontLoaded) {
+			if (!isDefFontLoaded && !Raptor.getInstance().isHeadless()) {
 				isDefFontLoaded = Raptor.getInstance().getDisplay().loadFont(Raptor.RESOURCES_DIR + "Inconsolata.ttf");
 				Font fnt = new Font(Raptor.getInstance().getDisplay(), "Inconsolata", 15, SWT.NORMAL);
 				Raptor.getInstance().getFontRegistry().put(CHAT_OUTPUT_FONT, fnt.getFontData());
@@ -377,7 +377,10 @@ public class RaptorPreferenceStore extends PreferenceStore implements Preference
 	}
 
 	public void loadDefaults() {
-		defaultFontName = Raptor.getInstance().getFontRegistry().defaultFont().getFontData()[0].getName();
+		// Headless tools such as the IcsReplayBenchmark have no display to
+		// ask for fonts or monitor sizes.
+		defaultFontName = Raptor.getInstance().isHeadless() ? "Sans"
+				: Raptor.getInstance().getFontRegistry().defaultFont().getFontData()[0].getName();
 		defaultMonospacedFontName = getDefaultMonospacedFont();
 
 		setDefaultMonitorBasedSizes();
@@ -436,6 +439,12 @@ public class RaptorPreferenceStore extends PreferenceStore implements Preference
 		// Stockfish
 		setDefault(STOCKFISH_MOVES_TO_SUGGEST,3);
 
+		// Book
+		setDefault(BOOK_FILE, "");
+		setDefault(BOOK_SHOW_ARROWS, true);
+		PreferenceConverter.setDefault(this, BOOK_ARROW_COLOR, new RGB(0, 153, 255));
+		setDefault(BOOK_ANALYZE_POSITIONS, false);
+
 		// Board
 		setDefault(BOARD_ALLOW_MOUSE_WHEEL_NAVIGATION_WHEEL_PLAYING, false);
 		setDefault(BOARD_SHOW_PLAYING_GAME_STATS_ON_GAME_END, true);
@@ -811,7 +820,8 @@ public class RaptorPreferenceStore extends PreferenceStore implements Preference
 	}
 
 	protected void setDefaultMonitorBasedSizes() {
-		Rectangle fullViewBounds = Display.getCurrent().getPrimaryMonitor().getBounds();
+		Rectangle fullViewBounds = Raptor.getInstance().isHeadless() ? new Rectangle(0, 0, 0, 0)
+				: Display.getCurrent().getPrimaryMonitor().getBounds();
 		int toolbarPieceSize = 12;
 
 		String iconSize = "tiny";
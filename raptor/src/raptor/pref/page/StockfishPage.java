@@ -13,8 +13,11 @@
  */
 package raptor.pref.page;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
+import org.eclipse.jface.preference.ColorFieldEditor;
 import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.FileFieldEditor;
 
 import raptor.Raptor;
 import raptor.international.L10n;
@@ -40,5 +43,20 @@ public class StockfishPage extends FieldEditorPreferencePage {
 				PreferenceKeys.STOCKFISH_MOVES_TO_SUGGEST,
 				local.getString("movesToSuggest"),
 				MOVES_TO_SUGGEST, getFieldEditorParent()));
+
+		FileFieldEditor bookFile = new FileFieldEditor(
+				PreferenceKeys.BOOK_FILE, local.getString("bookFile"),
+				getFieldEditorParent());
+		bookFile.setFileExtensions(new String[] { "*.bin" });
+		addField(bookFile);
+
+		addField(new BooleanFieldEditor(PreferenceKeys.BOOK_SHOW_ARROWS,
+				local.getString("bookShowArrows"), getFieldEditorParent()));
+
+		addField(new ColorFieldEditor(PreferenceKeys.BOOK_ARROW_COLOR,
+				local.getString("bookArrowColor"), getFieldEditorParent()));
+
+		addField(new BooleanFieldEditor(PreferenceKeys.BOOK_ANALYZE_POSITIONS,
+				local.getString("bookAnalyzePositions"), getFieldEditorParent()));
 	}
 }
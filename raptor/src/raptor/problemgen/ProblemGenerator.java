@@ -13,253 +13,648 @@
  */
 package raptor.problemgen;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.util.Date;
-
-import org.apache.commons.lang.StringUtils;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.math.NumberUtils;
 
 import raptor.chess.Game;
+import raptor.chess.GameConstants;
+import raptor.chess.GameFactory;
 import raptor.chess.Move;
 import raptor.chess.MoveList;
 import raptor.chess.Variant;
 import raptor.chess.pgn.LenientPgnParserListener;
 import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParser;
 import raptor.chess.pgn.PgnParserError;
 import raptor.chess.pgn.StreamingPgnParser;
-import raptor.engine.uci.UCIBestMove;
+import raptor.chess.util.PolyglotBook;
 import raptor.engine.uci.UCIEngine;
-import raptor.engine.uci.UCIInfo;
-import raptor.engine.uci.UCIInfoListener;
+import raptor.engine.uci.UCIEnginePool;
 import raptor.engine.uci.UCIMove;
-import raptor.engine.uci.info.BestLineFoundInfo;
+import raptor.engine.uci.UCIEnginePool.Evaluation;
 import raptor.engine.uci.info.ScoreInfo;
+import raptor.util.FileUtils;
+import raptor.util.RaptorLogger;
 
+/**
+ * <p>
+ * Finds tactical problems in the games of a PGN file. Games are read in
+ * batches of BATCH_SIZE and go through two stages:
+ * </p>
+ * <ol>
+ * <li>A cheap prefilter, run in parallel on the executor, picking the
+ * positions where the move played was a capture or a check and the side
+ * playing it came out at least CANDIDATE_SWING centipawns of material ahead a
+ * few moves later. Positions in the book, if one is set, are skipped.</li>
+ * <li>Engine verification across a UCIEnginePool. A candidate is a problem
+ * when the side to move is winning, was not already better a move earlier,
+ * and a longer search confirms the win.</li>
+ * </ol>
+ * <p>
+ * Problems are appended to the output file as PGN games starting from the
+ * problem position, with the engines line as the solution. After each batch
+ * is written the line to resume from, the length of the output and the totals
+ * are saved in a checkpoint file next to the output, so an interrupted run
+ * continues where it stopped. On resume the output is cut back to the length
+ * in the checkpoint, dropping a batch written after the last checkpoint, and a
+ * checkpoint whose output is missing or shorter is discarded.
+ * </p>
+ */
 public class ProblemGenerator {
-	protected class CandidateInfoListener implements UCIInfoListener {
-		protected UCIBestMove bestMove;
-		protected ScoreInfo score;
-		protected BestLineFoundInfo bestLineFound;
-		protected boolean hasIssuedStop = false;
-
-		public void engineSentBestMove(UCIBestMove uciBestMove) {
-			bestMove = uciBestMove;
-		}
-
-		public void engineSentInfo(UCIInfo[] infos) {
-			for (UCIInfo info : infos) {
-				if (info instanceof ScoreInfo) {
-					score = (ScoreInfo) info;
-					if (!hasIssuedStop && score.getMateInMoves() != 0
-							|| !score.isLowerBoundScore() && !score.isUpperBoundScore()) {
-						hasIssuedStop = true;
-						new Thread(new Runnable() {
-							public void run() {
-								engine.stop();
-							}
-						}).start();
-					}
-				} else if (info instanceof BestLineFoundInfo) {
-					bestLineFound = (BestLineFoundInfo) info;
-				}
-			}
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ProblemGenerator.class);
+
+	public static final int BATCH_SIZE = 32;
+	public static final int FIRST_HALF_MOVE = 10;
+	public static final int SWING_HALF_MOVES = 4;
+	public static final int CANDIDATE_SWING = 250;
+	public static final int WINNING_CENTIPAWNS = 300;
+	public static final int BALANCED_CENTIPAWNS = 100;
+	public static final int MATE_CENTIPAWNS = 10000;
+	public static final int MAX_SOLUTION_HALF_MOVES = 10;
+	public static final String SCAN_GO_PARAMETERS = "movetime 300";
+	public static final String VERIFY_GO_PARAMETERS = "movetime 3000";
+
+	protected static final int[] PIECE_VALUES = { 0, 100, 300, 300, 500, 900,
+			0 };
+
+	protected static final String NEXT_LINE = "nextLine";
+	protected static final String OUTPUT_LENGTH = "outputLength";
+	protected static final String GAMES = "games";
+	protected static final String CANDIDATES = "candidates";
+	protected static final String PROBLEMS = "problems";
+
+	/**
+	 * A position which passed the prefilter.
+	 */
+	protected static class Candidate {
+		protected String fen;
+		protected String previousFen;
+		protected int halfMove;
+		protected String event;
+		protected String white;
+		protected String black;
+
+		public Candidate(Game game, int halfMove, String fen) {
+			this.fen = fen;
+			this.halfMove = halfMove;
+			event = game.getHeader(PgnHeader.Event);
+			white = game.getHeader(PgnHeader.White);
+			black = game.getHeader(PgnHeader.Black);
+		}
+
+		public String getFen() {
+			return fen;
 		}
 
-		public boolean isFinished() {
-			return bestMove != null;
+		/**
+		 * Returns the number of half moves played before the position.
+		 */
+		public int getHalfMove() {
+			return halfMove;
 		}
 	}
 
-	protected class ProblemInfoListener implements UCIInfoListener {
-		protected UCIBestMove bestMove;
-		protected ScoreInfo score;
-		protected BestLineFoundInfo bestLineFound;
-		protected double worstScore = .55599;
-		protected double bestScore = .55599;
-		protected boolean isWhitesMove;
+	/**
+	 * Throughput and acceptance counters of a run.
+	 */
+	public static class Metrics {
+		protected AtomicLong games = new AtomicLong();
+		protected AtomicLong positions = new AtomicLong();
+		protected AtomicLong candidates = new AtomicLong();
+		protected AtomicLong evaluations = new AtomicLong();
+		protected AtomicLong problems = new AtomicLong();
+		protected long startTime = System.currentTimeMillis();
+
+		/**
+		 * Returns the percentage of candidates accepted as problems.
+		 */
+		public double getAcceptanceRate() {
+			long candidateCount = candidates.get();
+			return candidateCount == 0 ? 0.0 : problems.get() * 100.0
+					/ candidateCount;
+		}
 
-		public void engineSentBestMove(UCIBestMove uciBestMove) {
-			bestMove = uciBestMove;
+		public long getCandidates() {
+			return candidates.get();
 		}
 
-		public void engineSentInfo(UCIInfo[] infos) {
-			for (UCIInfo info : infos) {
-				if (info instanceof ScoreInfo) {
-					score = (ScoreInfo) info;
-					if (score.getMateInMoves() == 0) {
-						double scoreInPawns = getScoreInPawns(score, isWhitesMove);
+		public long getEvaluations() {
+			return evaluations.get();
+		}
 
-						if (bestScore == .55599) {
-							worstScore = bestScore = scoreInPawns;
-						}
-						if (scoreInPawns > bestScore) {
-							bestScore = scoreInPawns;
-						} else if (scoreInPawns < worstScore) {
-							worstScore = scoreInPawns;
-						}
-					}
-				} else if (info instanceof BestLineFoundInfo) {
-					bestLineFound = (BestLineFoundInfo) info;
-				}
-			}
+		public long getGames() {
+			return games.get();
+		}
+
+		public double getGamesPerSecond() {
+			return perSecond(games.get());
+		}
+
+		public long getPositions() {
+			return positions.get();
+		}
+
+		public double getPositionsPerSecond() {
+			return perSecond(positions.get());
 		}
 
-		public boolean isFinished() {
-			return bestMove != null;
+		public long getProblems() {
+			return problems.get();
+		}
+
+		@Override
+		public String toString() {
+			return games + " games " + String.format("%.2f", getGamesPerSecond())
+					+ "/sec, " + positions + " positions "
+					+ String.format("%.0f", getPositionsPerSecond()) + "/sec, "
+					+ candidates + " candidates, " + evaluations
+					+ " evaluations " + String.format("%.2f", perSecond(evaluations.get()))
+					+ "/sec, " + problems + " problems ("
+					+ String.format("%.1f", getAcceptanceRate()) + "% accepted)";
+		}
+
+		protected double perSecond(long count) {
+			long elapsed = System.currentTimeMillis() - startTime;
+			return elapsed == 0 ? 0.0 : count * 1000.0 / elapsed;
 		}
 	}
 
+	/**
+	 * Usage: ProblemGenerator enginePath pgnFile outputFile [engines] [book]
+	 */
 	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err
+					.println("Usage: ProblemGenerator enginePath pgnFile outputFile [engines] [book]");
+			return;
+		}
+		int engines = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(
+				1, Runtime.getRuntime().availableProcessors() / 2);
+
 		UCIEngine engine = new UCIEngine();
-		engine.setUsingThreadService(false);
-		engine.setProcessPath("/Applications/HIARCS/Hiarcs12.1SPUCI");
-		new ProblemGenerator(engine, "/Users/mindspan/raptor/raptor/projectFiles/test/Alekhine4Pawns.pgn");
+		engine.setProcessPath(args[0]);
+
+		UCIEnginePool pool = new UCIEnginePool(engine, engines, 1, 64);
+		ExecutorService executor = Executors.newFixedThreadPool(engines
+				+ Runtime.getRuntime().availableProcessors());
+		try {
+			if (pool.start()) {
+				ProblemGenerator generator = new ProblemGenerator(pool, executor);
+				if (args.length > 4) {
+					generator.setBook(new PolyglotBook(new File(args[4])));
+				}
+				generator.generate(new File(args[1]), new File(args[2]));
+				System.out.println(generator.getMetrics());
+			}
+		} finally {
+			pool.quit();
+			executor.shutdownNow();
+		}
 	}
 
-	protected int numGames;
-	protected UCIEngine engine;
-	protected StreamingPgnParser parser;
-	protected String outputFile = "/Users/mindspan/problemGeneratorOutput.txt";
+	/**
+	 * Returns the file the checkpoint of a run into the specified output file
+	 * is saved in.
+	 */
+	public static File getCheckpointFile(File outputFile) {
+		return new File(outputFile.getPath() + ".checkpoint");
+	}
 
-	protected LenientPgnParserListener parserLisetener = new LenientPgnParserListener() {
+	protected UCIEnginePool pool;
+	protected ExecutorService executor;
+	protected PolyglotBook book;
+	protected Metrics metrics = new Metrics();
+	protected int batchSize = BATCH_SIZE;
+	protected volatile boolean isCancelled;
+
+	/**
+	 * Creates a generator verifying candidates with the specified pool. The
+	 * executor runs both the prefilter and the verification, so it should
+	 * have more threads than the pool has engines.
+	 */
+	public ProblemGenerator(UCIEnginePool pool, ExecutorService executor) {
+		this.pool = pool;
+		this.executor = executor;
+	}
 
-		@Override
-		public void errorEncountered(PgnParserError error) {
+	/**
+	 * Stops after the batch being verified.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
 
+	/**
+	 * Generates problems from the games of the PGN file into the output file,
+	 * resuming a previous run into the same output file if there was one.
+	 * Returns the number of problems found by this call.
+	 */
+	public int generate(File pgnFile, final File outputFile) throws IOException {
+		metrics = new Metrics();
+		isCancelled = false;
+
+		final Properties checkpoint = loadCheckpoint(outputFile);
+		int startLine = 1;
+		if (resumeOutput(outputFile, checkpoint)) {
+			startLine = Integer.parseInt(checkpoint.getProperty(NEXT_LINE));
+			LOG.info("Resuming problem generation from " + pgnFile + " at line "
+					+ startLine + " after " + checkpoint.getProperty(GAMES)
+					+ " games.");
+		} else if (!checkpoint.isEmpty()) {
+			LOG.info("Discarding the checkpoint of " + outputFile
+					+ ", it does not match the output.");
+			checkpoint.clear();
 		}
+		boolean isResuming = startLine > 1;
+
+		final Writer writer = new BufferedWriter(new FileWriter(outputFile,
+				isResuming));
+		final StreamingPgnParser parser = new StreamingPgnParser(pgnFile,
+				Integer.MAX_VALUE);
+		final List<Game> batch = new ArrayList<Game>(batchSize);
+		final int[] lastLine = new int[1];
+		final IOException[] failure = new IOException[1];
+		try {
+			if (isResuming) {
+				parser.jumpToLine(startLine);
+			}
+			parser.addPgnParserListener(new LenientPgnParserListener() {
+				@Override
+				public void errorEncountered(PgnParserError error) {
+				}
 
-		@Override
-		public boolean gameParsed(Game game, int lineNumber) {
-			if (game.getVariant() == Variant.classic) {
-				checkGameForCandidates(game);
+				@Override
+				public boolean gameParsed(Game game, int lineNumber) {
+					if (isCancelled) {
+						return true;
+					}
+					batch.add(game);
+					lastLine[0] = parser.getLineNumber();
+					if (batch.size() == batchSize) {
+						try {
+							processBatch(batch, writer, outputFile, checkpoint,
+									lastLine[0] + 1);
+						} catch (IOException ioe) {
+							failure[0] = ioe;
+							isCancelled = true;
+						}
+						batch.clear();
+					}
+					return isCancelled;
+				}
+
+				@Override
+				protected void createGameFromHeaders(PgnParser parser) {
+					super.createGameFromHeaders(parser);
+					if (currentGame != null) {
+						currentGame.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+					}
+				}
+			});
+			parser.parse();
+			if (!batch.isEmpty() && !isCancelled) {
+				processBatch(batch, writer, outputFile, checkpoint,
+						lastLine[0] + 1);
 			}
-			return false;
+		} finally {
+			parser.close();
+			writer.close();
 		}
-	};
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return (int) metrics.getProblems();
+	}
 
-	public ProblemGenerator(UCIEngine engine, String pgnFile) throws Exception {
-		this.engine = engine;
-		parser = new StreamingPgnParser(new File(pgnFile), Integer.MAX_VALUE);
-		parser.addPgnParserListener(parserLisetener);
-		parser.parse();
+	public PolyglotBook getBook() {
+		return book;
 	}
 
-	public void checkGameForCandidates(Game game) {
-		System.err.println(new Date() + " " + "Checking game: " + numGames++ + " " + game.getHeader(PgnHeader.Event)
-				+ " " + game.getHeader(PgnHeader.White) + "(" + game.getHeader(PgnHeader.WhiteElo) + ") vs "
-				+ game.getHeader(PgnHeader.Black) + "(" + game.getHeader(PgnHeader.BlackElo) + ")");
+	public Metrics getMetrics() {
+		return metrics;
+	}
 
-		MoveList moveList = game.getMoveList().deepCopy();
-		if (moveList.getSize() > 20) {
-			while (game.getMoveList().getSize() > 10) {
-				game.rollback();
-			}
-			if (!engine.isConnected()) {
-				engine.connect();
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Sets the book whose positions are not problems, null for none.
+	 */
+	public void setBook(PolyglotBook book) {
+		this.book = book;
+	}
+
+	/**
+	 * Runs both stages over the batch, writes the problems found, and then
+	 * saves the checkpoint with the new length of the output. A cancelled
+	 * batch is neither written nor checkpointed, so it is processed again on
+	 * resume.
+	 */
+	protected void processBatch(List<Game> games, Writer writer,
+			File outputFile, Properties checkpoint, int nextLine)
+			throws IOException {
+		List<Future<List<Candidate>>> prefilters = new ArrayList<Future<List<Candidate>>>(
+				games.size());
+		for (final Game game : games) {
+			prefilters.add(executor.submit(new Callable<List<Candidate>>() {
+				public List<Candidate> call() throws Exception {
+					return findCandidates(game);
+				}
+			}));
+		}
+
+		List<Future<ProblemResult>> verifications = new ArrayList<Future<ProblemResult>>();
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		int problems = 0;
+		try {
+			for (Future<List<Candidate>> prefilter : prefilters) {
+				for (final Candidate candidate : prefilter.get()) {
+					candidates.add(candidate);
+					verifications.add(executor.submit(new Callable<ProblemResult>() {
+						public ProblemResult call() throws Exception {
+							return verify(candidate);
+						}
+					}));
+				}
 			}
-			engine.newGame();
-			engine.isReady();
-
-			while (moveList.getSize() > game.getHalfMoveCount()) {
-				engine.setPosition(game.toFen(), null);
-				if (isCandidate()) {
-					System.err.println("Found candidate. Testing to see if its a real problem.");
-					testForProblem(game, moveList);
-					break;
-				} else {
-					game.move(moveList.get(game.getHalfMoveCount()));
+
+			StringBuilder pgn = new StringBuilder(1000);
+			for (int i = 0; i < verifications.size(); i++) {
+				ProblemResult result = verifications.get(i).get();
+				if (result != null) {
+					problems++;
+					pgn.append(toPgn(result, candidates.get(i))).append("\n\n");
 				}
 			}
+			writer.write(pgn.toString());
+			writer.flush();
+		} catch (InterruptedException ie) {
+			cancelAll(prefilters);
+			cancelAll(verifications);
+			isCancelled = true;
+			return;
+		} catch (ExecutionException ee) {
+			cancelAll(prefilters);
+			cancelAll(verifications);
+			isCancelled = true;
+			LOG.error("Error generating problems. Stopping at line "
+					+ checkpoint.getProperty(NEXT_LINE, "1") + ".", ee
+					.getCause());
+			return;
 		}
-	}
 
-	public String getLine(Game game, BestLineFoundInfo info) {
-		BestLineFoundInfo bestLineFoundInfo = info;
-		StringBuilder line = new StringBuilder(100);
-		game.addState(Game.UPDATING_SAN_STATE);
-		game.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		metrics.games.addAndGet(games.size());
+		metrics.problems.addAndGet(problems);
+		checkpoint.setProperty(NEXT_LINE, String.valueOf(nextLine));
+		checkpoint.setProperty(OUTPUT_LENGTH, String.valueOf(outputFile
+				.length()));
+		addTo(checkpoint, GAMES, games.size());
+		addTo(checkpoint, CANDIDATES, candidates.size());
+		addTo(checkpoint, PROBLEMS, problems);
+		saveCheckpoint(outputFile, checkpoint);
+
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Checked " + checkpoint.getProperty(GAMES) + " games, "
+					+ checkpoint.getProperty(PROBLEMS) + " problems. "
+					+ metrics);
+		}
+	}
 
-		boolean isFirstMove = true;
+	/**
+	 * The prefilter. Walks the game backwards keeping the material balance of
+	 * each position, and returns the positions before a capture or check
+	 * which won at least CANDIDATE_SWING over the next SWING_HALF_MOVES.
+	 * Candidates closer than SWING_HALF_MOVES to the next one are skipped as
+	 * part of the same combination.
+	 */
+	protected List<Candidate> findCandidates(Game game) {
+		MoveList moves = game.getMoveList();
+		int halfMoves = moves.getSize();
+		if (!Variant.isClassic(game.getVariant())
+				|| halfMoves <= FIRST_HALF_MOVE) {
+			return Collections.emptyList();
+		}
 
-		for (UCIMove move : bestLineFoundInfo.getMoves()) {
-			try {
-				Move gameMove = null;
+		List<Candidate> result = new ArrayList<Candidate>(2);
+		int[] balance = new int[halfMoves + 1];
+		boolean[] isCheck = new boolean[halfMoves + 1];
+		int nextCandidate = Integer.MAX_VALUE;
+		Candidate pending = null;
+
+		for (int i = halfMoves; i >= FIRST_HALF_MOVE - 1; i--) {
+			balance[i] = getMaterialBalance(game);
+			isCheck[i] = game.isInCheck();
+			if (pending != null) {
+				pending.previousFen = game.toFen();
+				result.add(pending);
+				pending = null;
+			}
 
-				if (move.isPromotion()) {
-					gameMove = game.makeMove(move.getStartSquare(), move.getEndSquare(), move.getPromotedPiece());
-				} else {
-					gameMove = game.makeMove(move.getStartSquare(), move.getEndSquare());
+			if (i >= FIRST_HALF_MOVE && i < halfMoves) {
+				Move move = moves.get(i);
+				int horizon = Math.min(i + SWING_HALF_MOVES, halfMoves);
+				int swing = move.isWhitesMove() ? balance[horizon] - balance[i]
+						: balance[i] - balance[horizon];
+				if ((move.isCapture() || isCheck[i + 1])
+						&& swing >= CANDIDATE_SWING
+						&& i + SWING_HALF_MOVES <= nextCandidate
+						&& (book == null || !book.contains(game))) {
+					pending = new Candidate(game, i, game.toFen());
+					nextCandidate = i;
 				}
+			}
 
-				String san = gameMove.getSan();
-				String moveNumber = isFirstMove && !gameMove.isWhitesMove() ? gameMove.getFullMoveCount() + ") ... "
-						: gameMove.isWhitesMove() ? gameMove.getFullMoveCount() + ") " : "";
-				line.append(StringUtils.isBlank(line.toString()) ? "" : " ").append(moveNumber).append(san)
-						.append(game.isInCheck() ? "+" : "").append(game.isCheckmate() ? "#" : "");
-				isFirstMove = false;
-			} catch (Throwable t) {
-				t.printStackTrace();
-				return null;
+			if (i >= FIRST_HALF_MOVE) {
+				game.rollback();
 			}
 		}
-		return line.toString();
+
+		metrics.positions.addAndGet(halfMoves - FIRST_HALF_MOVE);
+		metrics.candidates.addAndGet(result.size());
+		Collections.reverse(result);
+		return result;
 	}
 
-	protected double getScoreInPawns(ScoreInfo score, boolean isWhitesMove) {
-		return !isWhitesMove ? -1 * score.getValueInCentipawns() / 100.0 : score.getValueInCentipawns() / 100.0;
+	/**
+	 * The engine verification. Returns the problem for the candidate, or null
+	 * if it is not one.
+	 */
+	protected ProblemResult verify(Candidate candidate)
+			throws InterruptedException {
+		Evaluation scan = evaluate(candidate.fen, SCAN_GO_PARAMETERS);
+		if (getCentipawns(scan) < WINNING_CENTIPAWNS) {
+			return null;
+		}
+
+		// The side to move was not already better before the opponents move.
+		Evaluation before = evaluate(candidate.previousFen, SCAN_GO_PARAMETERS);
+		if (-getCentipawns(before) > BALANCED_CENTIPAWNS) {
+			return null;
+		}
+
+		Evaluation confirm = evaluate(candidate.fen, VERIFY_GO_PARAMETERS);
+		if (getCentipawns(confirm) < WINNING_CENTIPAWNS
+				|| confirm.getBestLine().length == 0) {
+			return null;
+		}
+
+		ScoreInfo score = new ScoreInfo();
+		score.setValueInCentipawns(confirm.getCentipawns());
+		score.setMateInMoves(confirm.getMateInMoves());
+		return new ProblemResult(candidate.fen, confirm.getBestLine(), score);
 	}
 
-	protected void handleNewProblem(Game game, BestLineFoundInfo bestLine) {
-		System.err.println("\nFound problem:\n" + game.toFen() + "\n" + getLine(game, bestLine) + "\n\n");
+	protected void addTo(Properties properties, String key, long amount) {
+		properties.setProperty(key, String.valueOf(Long.parseLong(properties
+				.getProperty(key, "0"))
+				+ amount));
 	}
 
-	protected boolean isCandidate() {
-		boolean result = false;
+	protected void cancelAll(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
 
-		CandidateInfoListener listener = new CandidateInfoListener();
-		engine.go("infinite", listener);
-		while (!listener.isFinished()) {
-			try {
-				Thread.sleep(100);
-			} catch (Throwable t) {
-			}
+	protected Evaluation evaluate(String fen, String goParameters)
+			throws InterruptedException {
+		Evaluation result = pool.evaluate(fen, goParameters);
+		metrics.evaluations.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Returns the score of the evaluation in centipawns for the side to move,
+	 * with mates as MATE_CENTIPAWNS less the moves to mate.
+	 */
+	protected int getCentipawns(Evaluation evaluation) {
+		if (evaluation.isMate()) {
+			return evaluation.getMateInMoves() > 0 ? MATE_CENTIPAWNS
+					- evaluation.getMateInMoves() : -MATE_CENTIPAWNS
+					- evaluation.getMateInMoves();
 		}
+		return evaluation.getCentipawns();
+	}
 
-		if (listener.score.getMateInMoves() > 0 || Math.abs(listener.score.getValueInCentipawns() / 100.0) > 3) {
-			result = true;
+	/**
+	 * Returns whites material less blacks material in centipawns.
+	 */
+	protected int getMaterialBalance(Game game) {
+		int result = 0;
+		for (int piece = GameConstants.PAWN; piece < GameConstants.KING; piece++) {
+			result += PIECE_VALUES[piece]
+					* (game.getPieceCount(GameConstants.WHITE, piece) - game
+							.getPieceCount(GameConstants.BLACK, piece));
 		}
 		return result;
 	}
 
-	protected void testForProblem(Game game, MoveList moveList) {
-		game.rollback();
-		game.rollback();
-		game.rollback();
-		game.rollback();
-		for (int i = 0; i < 4; i++) {
-			engine.newGame();
-			engine.setPosition(game.toFen(), null);
-			engine.isReady();
-			ProblemInfoListener listener = new ProblemInfoListener();
-			listener.isWhitesMove = game.isWhitesMove();
-			engine.go("infinite", listener);
+	protected Properties loadCheckpoint(File outputFile) throws IOException {
+		Properties result = new Properties();
+		File checkpointFile = FileUtils
+				.getReplacedFile(getCheckpointFile(outputFile));
+		if (checkpointFile.exists()) {
+			InputStream in = new FileInputStream(checkpointFile);
 			try {
-				Thread.sleep(5000);
-			} catch (InterruptedException ie) {
+				result.load(in);
+			} finally {
+				in.close();
 			}
-			engine.stop();
-			while (!listener.isFinished()) {
-				try {
-					Thread.sleep(100);
-				} catch (Throwable t) {
-				}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the checkpoint can be resumed from: it has the line to
+	 * resume from and the output is at least as long as it was when the
+	 * checkpoint was saved. The output is then cut back to that length.
+	 */
+	protected boolean resumeOutput(File outputFile, Properties checkpoint)
+			throws IOException {
+		long length = NumberUtils.toLong(checkpoint.getProperty(OUTPUT_LENGTH),
+				-1);
+		int nextLine = NumberUtils.toInt(checkpoint.getProperty(NEXT_LINE), 0);
+		if (length < 0 || nextLine <= 1 || !outputFile.exists()
+				|| outputFile.length() < length) {
+			return false;
+		}
+		if (outputFile.length() > length) {
+			LOG.info("Dropping the " + (outputFile.length() - length)
+					+ " bytes written to " + outputFile
+					+ " after the last checkpoint.");
+			RandomAccessFile file = new RandomAccessFile(outputFile, "rw");
+			try {
+				file.setLength(length);
+			} finally {
+				file.close();
 			}
-			double finalScore = getScoreInPawns(listener.score, game.isWhitesMove());
-			if (listener.score.getMateInMoves() != 0
-					|| Math.abs(listener.bestScore - listener.worstScore) >= 2.0 && Math.abs(finalScore) >= 2.0) {
-				handleNewProblem(game, listener.bestLineFound);
+		}
+		return true;
+	}
+
+	protected void saveCheckpoint(File outputFile, Properties checkpoint)
+			throws IOException {
+		File checkpointFile = getCheckpointFile(outputFile);
+		File tempFile = new File(checkpointFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tempFile);
+		try {
+			checkpoint.store(out, "ProblemGenerator checkpoint");
+		} finally {
+			out.close();
+		}
+		FileUtils.replaceFile(tempFile, checkpointFile);
+	}
+
+	/**
+	 * Returns the problem as a PGN game starting from the problem position,
+	 * with the legal prefix of the engines line as its moves.
+	 */
+	protected String toPgn(ProblemResult result, Candidate candidate) {
+		Game game = GameFactory.createFromFen(result.getFen(), Variant.classic);
+		game.addState(Game.UPDATING_SAN_STATE);
+		game.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		game.setHeader(PgnHeader.Event, "Problem from " + candidate.event);
+		game.setHeader(PgnHeader.White, candidate.white);
+		game.setHeader(PgnHeader.Black, candidate.black);
+		game.setHeader(PgnHeader.FEN, result.getFen());
+		game.setHeader(PgnHeader.Annotator, pool.getEngineName());
+
+		UCIMove[] line = result.getLine();
+		for (int i = 0; i < line.length && i < MAX_SOLUTION_HALF_MOVES; i++) {
+			UCIMove move = line[i];
+			try {
+				if (move.isPromotion()) {
+					game.makeMove(move.getStartSquare(), move.getEndSquare(),
+							move.getPromotedPiece());
+				} else {
+					game.makeMove(move.getStartSquare(), move.getEndSquare());
+				}
+			} catch (IllegalArgumentException iae) {
 				break;
 			}
-			game.move(moveList.get(game.getHalfMoveCount()));
 		}
+		return game.toPgn();
 	}
 }
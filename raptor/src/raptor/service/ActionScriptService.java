@@ -20,6 +20,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,13 +46,98 @@ public class ActionScriptService {
 		public void onActionsChanged();
 	}
 
+	/**
+	 * An immutable snapshot of the lookup indexes over nameToActionMap. A new
+	 * snapshot is built whenever the actions change, so lookups never have to
+	 * scan or sort.
+	 */
+	protected static class ActionIndex {
+		protected final Map<String, RaptorAction> nameToAction;
+		protected final Map<Long, RaptorAction> keystrokeToAction;
+		protected final Map<RaptorActionContainer, RaptorAction[]> containerToActions;
+		protected final Map<Category, RaptorAction[]> categoryToActions;
+		protected final RaptorAction[] allActions;
+		protected final ScriptedAction[] allScriptedActions;
+
+		protected ActionIndex(Map<String, RaptorAction> actions) {
+			nameToAction = Collections.unmodifiableMap(new HashMap<String, RaptorAction>(actions));
+
+			Map<Long, RaptorAction> keystrokes = new HashMap<Long, RaptorAction>();
+			Map<Category, List<RaptorAction>> categories = new EnumMap<Category, List<RaptorAction>>(Category.class);
+			Map<RaptorActionContainer, List<RaptorAction>> containers = new EnumMap<RaptorActionContainer, List<RaptorAction>>(
+					RaptorActionContainer.class);
+			List<RaptorAction> all = new ArrayList<RaptorAction>(actions.size());
+			List<ScriptedAction> scripted = new ArrayList<ScriptedAction>(actions.size());
+
+			for (RaptorAction action : nameToAction.values()) {
+				// The first action found wins, which matches the old linear
+				// scan.
+				Long keystroke = toKeystroke(action.getModifierKey(), action.getKeyCode());
+				if (!keystrokes.containsKey(keystroke)) {
+					keystrokes.put(keystroke, action);
+				}
+
+				List<RaptorAction> categoryActions = categories.get(action.getCategory());
+				if (categoryActions == null) {
+					categories.put(action.getCategory(), categoryActions = new ArrayList<RaptorAction>(20));
+				}
+				categoryActions.add(action);
+
+				for (RaptorActionContainer container : RaptorActionContainer.values()) {
+					if (action.isIn(container)) {
+						List<RaptorAction> containerActions = containers.get(container);
+						if (containerActions == null) {
+							containers.put(container, containerActions = new ArrayList<RaptorAction>(20));
+						}
+						containerActions.add(action);
+					}
+				}
+
+				if (!(action instanceof SeparatorAction)) {
+					all.add(action);
+				}
+				if (action instanceof ScriptedAction) {
+					scripted.add((ScriptedAction) action);
+				}
+			}
+
+			keystrokeToAction = Collections.unmodifiableMap(keystrokes);
+
+			Map<Category, RaptorAction[]> categoryArrays = new EnumMap<Category, RaptorAction[]>(Category.class);
+			for (Map.Entry<Category, List<RaptorAction>> entry : categories.entrySet()) {
+				Collections.sort(entry.getValue(), new NameComparator());
+				categoryArrays.put(entry.getKey(), entry.getValue().toArray(new RaptorAction[0]));
+			}
+			categoryToActions = Collections.unmodifiableMap(categoryArrays);
+
+			Map<RaptorActionContainer, RaptorAction[]> containerArrays = new EnumMap<RaptorActionContainer, RaptorAction[]>(
+					RaptorActionContainer.class);
+			for (Map.Entry<RaptorActionContainer, List<RaptorAction>> entry : containers.entrySet()) {
+				Collections.sort(entry.getValue(), new ContainerOrderComparator(entry.getKey()));
+				containerArrays.put(entry.getKey(), entry.getValue().toArray(new RaptorAction[0]));
+			}
+			containerToActions = Collections.unmodifiableMap(containerArrays);
+
+			Collections.sort(all, new CategoryNameComparator());
+			allActions = all.toArray(new RaptorAction[0]);
+			Collections.sort(scripted, new CategoryNameComparator());
+			allScriptedActions = scripted.toArray(new ScriptedAction[0]);
+		}
+
+		protected static Long toKeystroke(int modifierKey, int keyCode) {
+			return ((long) modifierKey << 32) | (keyCode & 0xffffffffL);
+		}
+	}
+
 	private static final RaptorLogger LOG = RaptorLogger.getLog(ActionScriptService.class);
 
+	private static final RaptorAction[] EMPTY_ACTIONS = new RaptorAction[0];
+
 	public static boolean serviceCreated = false;
 
 	private static ActionScriptService singletonInstance;
 
-	public static ActionScriptService getInstance() {
+	public static synchronized ActionScriptService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
@@ -61,6 +147,8 @@ public class ActionScriptService {
 
 	public Map<String, RaptorAction> nameToActionMap = new HashMap<String, RaptorAction>();
 
+	protected volatile ActionIndex index = new ActionIndex(nameToActionMap);
+
 	public List<ActionServiceListener> listeners = Collections
 			.synchronizedList(new ArrayList<ActionServiceListener>(5));
 
@@ -78,110 +166,76 @@ public class ActionScriptService {
 	 * resources/script are never touched.
 	 */
 	public boolean deleteAction(String actionName) {
-		nameToActionMap.remove(actionName);
+		synchronized (this) {
+			nameToActionMap.remove(actionName);
+			rebuildIndex();
+		}
 		fireActionsChanged();
 		return new File(Raptor.USER_RAPTOR_HOME_PATH + "/scripts/action/" + actionName + ".properties").delete();
 	}
 
 	public void dispose() {
 		listeners.clear();
-		nameToActionMap.clear();
+		synchronized (this) {
+			nameToActionMap.clear();
+			rebuildIndex();
+		}
 	}
 
+	/**
+	 * Returns the action bound to the specified keystroke, null if there is
+	 * not one.
+	 */
 	public RaptorAction getAction(int modifierKey, int keyCode) {
-		RaptorAction result = null;
-		for (RaptorAction action : nameToActionMap.values()) {
-			if (action.getKeyCode() == keyCode && action.getModifierKey() == modifierKey) {
-				result = action;
-				break;
-			}
-		}
-		return result;
+		return index.keystrokeToAction.get(ActionIndex.toKeystroke(modifierKey, keyCode));
 	}
 
 	/**
 	 * Returns the action with the specified unique name.
 	 */
 	public RaptorAction getAction(String name) {
-		return nameToActionMap.get(name);
+		return index.nameToAction.get(name);
 	}
 
 	/**
 	 * Returns all actions in the specified category sorted alphabetically.
 	 */
 	public RaptorAction[] getActions(Category category) {
-		ArrayList<RaptorAction> actions = new ArrayList<RaptorAction>(20);
-		for (RaptorAction action : nameToActionMap.values()) {
-			if (action.getCategory() == category) {
-				actions.add(action);
-			}
-		}
-		Collections.sort(actions, new NameComparator());
-		return actions.toArray(new RaptorAction[0]);
+		RaptorAction[] result = index.categoryToActions.get(category);
+		return result == null ? EMPTY_ACTIONS : result.clone();
 	}
 
 	/**
 	 * Returns all actions in the specified container.
 	 */
 	public RaptorAction[] getActions(RaptorActionContainer container) {
-		ArrayList<RaptorAction> actions = new ArrayList<RaptorAction>(20);
-
-		// // currently hardcoded to allow speak whispers and tells
-		// if (container == RaptorAction.RaptorActionContainer.GameChatConsole)
-		// {
-		// actions.add(nameToActionMap.get("Speak Whispers and Kibs"));
-		// }
-
-		for (RaptorAction action : nameToActionMap.values()) {
-			if (action.isIn(container)) {
-				actions.add(action);
-			}
-		}
-		Collections.sort(actions, new ContainerOrderComparator(container));
-		return actions.toArray(new RaptorAction[0]);
+		RaptorAction[] result = index.containerToActions.get(container);
+		return result == null ? EMPTY_ACTIONS : result.clone();
 	}
 
 	/**
 	 * Returns all chat scripts sorted by name.
 	 */
 	public RaptorAction[] getAllActions() {
-		ArrayList<RaptorAction> actions = new ArrayList<RaptorAction>(nameToActionMap.values());
-
-		for (int i = 0; i < actions.size(); i++) {
-			if (actions.get(i) instanceof SeparatorAction) {
-				actions.remove(i);
-				i--;
-			}
-		}
-
-		Collections.sort(actions, new CategoryNameComparator());
-
-		return actions.toArray(new RaptorAction[0]);
+		return index.allActions.clone();
 	}
 
 	/**
 	 * Returns all scripted actions.
 	 */
 	public ScriptedAction[] getAllScriptedActions() {
-		ArrayList<ScriptedAction> actions = new ArrayList<ScriptedAction>(nameToActionMap.size());
-
-		for (RaptorAction action : nameToActionMap.values()) {
-			if (action instanceof ScriptedAction) {
-				actions.add((ScriptedAction) action);
-			}
-		}
-
-		Collections.sort(actions, new CategoryNameComparator());
-
-		return actions.toArray(new ScriptedAction[0]);
+		return index.allScriptedActions.clone();
 	}
 
 	/**
 	 * Reloads all of the scripts.
 	 */
 	public void reload() {
-		nameToActionMap.clear();
-		loadActions();
+		synchronized (this) {
+			nameToActionMap.clear();
+			loadActions();
+			rebuildIndex();
+		}
 	}
 
 	public void removeActionServiceListener(ActionServiceListener listener) {
@@ -208,10 +262,21 @@ public class ActionScriptService {
 			} catch (Throwable t) {
 			}
 		}
-		nameToActionMap.put(action.getName(), action);
+		synchronized (this) {
+			nameToActionMap.put(action.getName(), action);
+			rebuildIndex();
+		}
 		fireActionsChanged();
 	}
 
+	/**
+	 * Publishes a new ActionIndex built from nameToActionMap. Must be invoked
+	 * while synchronized on this after every change to nameToActionMap.
+	 */
+	protected void rebuildIndex() {
+		index = new ActionIndex(nameToActionMap);
+	}
+
 	protected void fireActionsChanged() {
 		synchronized (listeners) {
 			for (ActionServiceListener listener : listeners) {
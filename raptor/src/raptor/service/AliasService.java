@@ -37,9 +37,11 @@ import raptor.alias.ClearNotifyAlias;
 import raptor.alias.ClearScreenAlias;
 import raptor.alias.ClearTagsAlias;
 import raptor.alias.ClearVariablesAlias;
+import raptor.alias.ConnectorStatsAlias;
 import raptor.alias.DeactivateScriptAlias;
 import raptor.alias.DumpGamesAlias;
 import raptor.alias.GrantSpoofAlias;
+import raptor.alias.LatencyAlias;
 import raptor.alias.ListScriptsAlias;
 import raptor.alias.MemosAlias;
 import raptor.alias.OpenBoardAlias;
@@ -47,6 +49,8 @@ import raptor.alias.OpenUrlAlias;
 import raptor.alias.PerformanceRatingAlias;
 import raptor.alias.RaptorAlias;
 import raptor.alias.RaptorAliasResult;
+import raptor.alias.RecordSessionAlias;
+import raptor.alias.RefreshStatsAlias;
 import raptor.alias.RelayAlias;
 import raptor.alias.RemoveExtendedCensorAlias;
 import raptor.alias.RemoveTagAlias;
@@ -80,10 +84,11 @@ public class AliasService {
 			ClearGNotifyAlias.class, ClearNoplayAlias.class,
 			ClearNotifyAlias.class, ClearScreenAlias.class,
 			ClearTagsAlias.class, ClearVariablesAlias.class,
+			ConnectorStatsAlias.class,
 			DeactivateScriptAlias.class, DumpGamesAlias.class,
-			GrantSpoofAlias.class, ListScriptsAlias.class,
+			GrantSpoofAlias.class, LatencyAlias.class, ListScriptsAlias.class,
 			OpenBoardAlias.class, OpenUrlAlias.class,
-			PerformanceRatingAlias.class, RelayAlias.class,RemoveTagAlias.class,
+			PerformanceRatingAlias.class, RecordSessionAlias.class, RefreshStatsAlias.class, RelayAlias.class,RemoveTagAlias.class,
 			RemoveExtendedCensorAlias.class, ScriptAlias.class,
 			SetConsoleTimeStampOnOffAlias.class, SetDebugLevelAlias.class,
 			ShowExtendedCensor.class, SetPremoveModeAlias.class,
@@ -93,7 +98,7 @@ public class AliasService {
 			TellLastPersonWhoToldYouAlias.class, TimedCommandAlias.class };
 	private static AliasService singletonInstance;
 
-	public static AliasService getInstance() {
+	public static synchronized AliasService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
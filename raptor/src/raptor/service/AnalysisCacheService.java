@@ -0,0 +1,70 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.File;
+import java.io.IOException;
+
+import raptor.Raptor;
+import raptor.engine.uci.AnalysisCache;
+import raptor.util.RaptorLogger;
+
+/**
+ * Provides the engine analysis cache shared by the analysis widgets and the
+ * batch analysis tools.
+ */
+public class AnalysisCacheService {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(AnalysisCacheService.class);
+
+	public static final String CACHE_FILE = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/analysisCache/analysis.dat";
+
+	private static AnalysisCacheService singletonInstance;
+	public static boolean serviceCreated = false;
+
+	public static synchronized AnalysisCacheService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new AnalysisCacheService();
+		return singletonInstance;
+	}
+
+	protected AnalysisCache cache;
+
+	private AnalysisCacheService() {
+		try {
+			cache = new AnalysisCache(new File(CACHE_FILE),
+					AnalysisCache.DEFAULT_MAX_ENTRIES);
+		} catch (IOException ioe) {
+			LOG.warn("Could not open the analysis cache " + CACHE_FILE
+					+ ". Analysis will not be cached.", ioe);
+		}
+		serviceCreated = true;
+	}
+
+	public void dispose() {
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Returns the cache, or null if it could not be opened.
+	 */
+	public AnalysisCache getCache() {
+		return cache;
+	}
+}
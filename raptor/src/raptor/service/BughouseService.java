@@ -21,6 +21,7 @@ import raptor.chat.BugGame;
 import raptor.chat.Bugger;
 import raptor.chat.Partnership;
 import raptor.connector.Connector;
+import raptor.util.ContentHash;
 
 public class BughouseService {
 	public static interface BughouseServiceListener {
@@ -35,6 +36,9 @@ public class BughouseService {
 	private Partnership[] availablePartnerships = new Partnership[0];
 	private Bugger[] unpartneredBuggers = new Bugger[0];
 	private Connector connector;
+	private long gamesInProgressHash = new ContentHash().get();
+	private long availablePartnershipsHash = new ContentHash().get();
+	private long unpartneredBuggersHash = new ContentHash().get();
 
 	private List<BughouseServiceListener> listeners = Collections
 			.synchronizedList(new ArrayList<BughouseServiceListener>(10));
@@ -79,19 +83,86 @@ public class BughouseService {
 		listeners.remove(listener);
 	}
 
-	public void setAvailablePartnerships(Partnership[] availablePartnerships) {
+	/**
+	 * Sets the available partnerships. Listeners are only notified if the
+	 * content changed. Returns true if it changed.
+	 */
+	public boolean setAvailablePartnerships(Partnership[] availablePartnerships) {
+		long hash = hash(availablePartnerships);
 		this.availablePartnerships = availablePartnerships;
-		fireAvaialblePartnershipsChanged();
+		if (hash != availablePartnershipsHash) {
+			availablePartnershipsHash = hash;
+			fireAvaialblePartnershipsChanged();
+			return true;
+		}
+		return false;
 	}
 
-	public void setGamesInProgress(BugGame[] gamesInProgress) {
+	/**
+	 * Sets the games in progress. Listeners are only notified if the content
+	 * changed. Returns true if it changed.
+	 */
+	public boolean setGamesInProgress(BugGame[] gamesInProgress) {
+		long hash = hash(gamesInProgress);
 		this.gamesInProgress = gamesInProgress;
-		fireGamesInProgressChanged();
+		if (hash != gamesInProgressHash) {
+			gamesInProgressHash = hash;
+			fireGamesInProgressChanged();
+			return true;
+		}
+		return false;
 	}
 
-	public void setUnpartneredBuggers(Bugger[] unpartneredBuggers) {
+	/**
+	 * Sets the unpartnered buggers. Listeners are only notified if the content
+	 * changed. Returns true if it changed.
+	 */
+	public boolean setUnpartneredBuggers(Bugger[] unpartneredBuggers) {
+		long hash = hash(unpartneredBuggers);
 		this.unpartneredBuggers = unpartneredBuggers;
-		fireUnpartneredBuggersChanged();
+		if (hash != unpartneredBuggersHash) {
+			unpartneredBuggersHash = hash;
+			fireUnpartneredBuggersChanged();
+			return true;
+		}
+		return false;
+	}
+
+	protected static void add(ContentHash hash, Bugger bugger) {
+		if (bugger == null) {
+			hash.add(-1);
+		} else {
+			hash.add(bugger.getName()).add(bugger.getRating()).add(bugger.getStatus());
+		}
+	}
+
+	protected static long hash(BugGame[] games) {
+		ContentHash hash = new ContentHash();
+		for (BugGame game : games) {
+			hash.add(game.isRated()).add(game.getTimeControl()).add(game.getGame1Id()).add(game.getGame2Id());
+			add(hash, game.getGame1White());
+			add(hash, game.getGame1Black());
+			add(hash, game.getGame2White());
+			add(hash, game.getGame2Black());
+		}
+		return hash.get();
+	}
+
+	protected static long hash(Bugger[] buggers) {
+		ContentHash hash = new ContentHash();
+		for (Bugger bugger : buggers) {
+			add(hash, bugger);
+		}
+		return hash.get();
+	}
+
+	protected static long hash(Partnership[] partnerships) {
+		ContentHash hash = new ContentHash();
+		for (Partnership partnership : partnerships) {
+			add(hash, partnership.getBugger1());
+			add(hash, partnership.getBugger2());
+		}
+		return hash.get();
 	}
 
 	protected void fireAvaialblePartnershipsChanged() {
@@ -0,0 +1,452 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import raptor.Raptor;
+import raptor.connector.Connector;
+import raptor.util.RaptorLogger;
+
+/**
+ * Schedules the work of all of the connectors on the ThreadService, so a
+ * chatty connection can not starve the one the user is playing on. Tasks
+ * passed to execute, the parsing and event publishing, run one at a time in
+ * the order they were submitted. Tasks passed to run, the game updates which
+ * GameService orders per game itself, run in parallel.
+ * <ul>
+ * <li>A connector with a game in the playing state has strict priority.
+ * While it has work queued or running, the tasks of the other connectors
+ * wait.</li>
+ * <li>While a connector is playing, the other connectors run at most
+ * MAX_BACKGROUND_TASKS_PER_PASS parse tasks and then wait BACKGROUND_DELAY
+ * milliseconds before their next pass.</li>
+ * </ul>
+ * Keeps the backlog, CPU time and wall time of each connector, including its
+ * game updates.
+ */
+public class ConnectorScheduler {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(ConnectorScheduler.class);
+
+	public static final int MAX_PLAYING_TASKS_PER_PASS = 64;
+	public static final int MAX_BACKGROUND_TASKS_PER_PASS = 4;
+	public static final long BACKGROUND_DELAY = 25;
+
+	protected static final int OTHER_PLAYING_NONE = 0;
+	protected static final int OTHER_PLAYING_IDLE = 1;
+	protected static final int OTHER_PLAYING_BUSY = 2;
+
+	private static final ConnectorScheduler singletonInstance = new ConnectorScheduler();
+
+	public static ConnectorScheduler getInstance() {
+		return singletonInstance;
+	}
+
+	/**
+	 * The statistics of a connector.
+	 */
+	public static class ConnectorStats {
+		protected int depth;
+		protected int maxDepth;
+		protected long executed;
+		protected long cpuNanos;
+		protected long wallNanos;
+		protected long maxWaitNanos;
+		protected long throttled;
+		protected boolean isPlaying;
+
+		protected ConnectorStats copy() {
+			ConnectorStats result = new ConnectorStats();
+			result.depth = depth;
+			result.maxDepth = maxDepth;
+			result.executed = executed;
+			result.cpuNanos = cpuNanos;
+			result.wallNanos = wallNanos;
+			result.maxWaitNanos = maxWaitNanos;
+			result.throttled = throttled;
+			result.isPlaying = isPlaying;
+			return result;
+		}
+
+		/**
+		 * Returns the CPU time used by the tasks in milliseconds. This is the
+		 * wall time if the JVM can not measure thread CPU time.
+		 */
+		public long getCpuMillis() {
+			return cpuNanos / 1000000;
+		}
+
+		/**
+		 * Returns the number of tasks queued or running.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getExecuted() {
+			return executed;
+		}
+
+		public int getMaxDepth() {
+			return maxDepth;
+		}
+
+		/**
+		 * Returns the longest time a task waited in the queue in
+		 * milliseconds.
+		 */
+		public long getMaxWaitMillis() {
+			return maxWaitNanos / 1000000;
+		}
+
+		/**
+		 * Returns the number of passes which were delayed because another
+		 * connector was playing.
+		 */
+		public long getThrottled() {
+			return throttled;
+		}
+
+		public long getWallMillis() {
+			return wallNanos / 1000000;
+		}
+
+		/**
+		 * Returns true if the connector was playing on its last pass.
+		 */
+		public boolean isPlaying() {
+			return isPlaying;
+		}
+
+		@Override
+		public String toString() {
+			return (isPlaying ? "playing" : "background") + " depth=" + depth
+					+ " maxDepth=" + maxDepth + " executed=" + executed
+					+ " cpu=" + getCpuMillis() + "ms wall=" + getWallMillis()
+					+ "ms maxWait=" + getMaxWaitMillis() + "ms throttled="
+					+ throttled;
+		}
+	}
+
+	/**
+	 * A task and the time it was queued.
+	 */
+	protected static class QueuedTask {
+		protected Runnable runnable;
+		protected long queuedNanos;
+
+		public QueuedTask(Runnable runnable) {
+			this.runnable = runnable;
+			queuedNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The pending tasks of a connector. Only handed to the ThreadService
+	 * while it has tasks.
+	 */
+	protected class ConnectorQueue implements Runnable {
+		protected Connector connector;
+		protected ArrayDeque<QueuedTask> tasks = new ArrayDeque<QueuedTask>();
+		protected ConnectorStats stats = new ConnectorStats();
+		protected boolean isScheduled;
+
+		public ConnectorQueue(Connector connector) {
+			this.connector = connector;
+		}
+
+		public void run() {
+			boolean isPlaying = isPlaying(connector);
+			int otherPlaying = getOtherPlaying(isPlaying);
+			if (otherPlaying == OTHER_PLAYING_BUSY) {
+				// Strict priority, wait until the playing connector is idle.
+				throttle(this);
+				return;
+			}
+			boolean isOtherPlaying = otherPlaying == OTHER_PLAYING_IDLE;
+
+			int maxTasks = isPlaying || !isOtherPlaying ? MAX_PLAYING_TASKS_PER_PASS
+					: MAX_BACKGROUND_TASKS_PER_PASS;
+			for (int i = 0; i < maxTasks; i++) {
+				QueuedTask task = null;
+				synchronized (ConnectorScheduler.this) {
+					stats.isPlaying = isPlaying;
+					task = tasks.poll();
+					if (task == null) {
+						isScheduled = false;
+						return;
+					}
+				}
+
+				runTask(task);
+			}
+
+			synchronized (ConnectorScheduler.this) {
+				if (tasks.isEmpty()) {
+					isScheduled = false;
+					return;
+				}
+			}
+			if (!isPlaying && isOtherPlaying) {
+				throttle(this);
+			} else {
+				submit(this);
+			}
+		}
+
+		/**
+		 * Returns OTHER_PLAYING_BUSY if this connector is not playing and
+		 * another connector which is playing has work, OTHER_PLAYING_IDLE if
+		 * another connector is playing and OTHER_PLAYING_NONE otherwise.
+		 */
+		protected int getOtherPlaying(boolean isPlaying) {
+			int result = OTHER_PLAYING_NONE;
+			for (ConnectorQueue queue : getQueues()) {
+				if (queue != this && isPlaying(queue.connector)) {
+					if (!isPlaying && queue.hasTasks()) {
+						return OTHER_PLAYING_BUSY;
+					}
+					result = OTHER_PLAYING_IDLE;
+				}
+			}
+			return result;
+		}
+
+		protected boolean hasTasks() {
+			synchronized (ConnectorScheduler.this) {
+				return !tasks.isEmpty() || stats.depth > 0;
+			}
+		}
+
+		/**
+		 * Runs the task and adds its times to the statistics.
+		 */
+		protected void runTask(QueuedTask task) {
+			long startNanos = System.nanoTime();
+			long startCpuNanos = getCpuNanos();
+			try {
+				task.runnable.run();
+			} catch (Throwable t) {
+				onError(connector, t);
+			} finally {
+				long endNanos = System.nanoTime();
+				long cpuNanos = startCpuNanos == -1 ? endNanos - startNanos
+						: getCpuNanos() - startCpuNanos;
+				completed(this, startNanos - task.queuedNanos, endNanos
+						- startNanos, cpuNanos);
+			}
+		}
+
+		protected void throttle(Runnable runnable) {
+			synchronized (ConnectorScheduler.this) {
+				stats.throttled++;
+			}
+			schedule(BACKGROUND_DELAY, runnable);
+		}
+	}
+
+	/**
+	 * A task passed to run. It is not ordered against the other tasks of the
+	 * connector.
+	 */
+	protected class UnorderedTask implements Runnable {
+		protected ConnectorQueue queue;
+		protected QueuedTask task;
+
+		public UnorderedTask(ConnectorQueue queue, QueuedTask task) {
+			this.queue = queue;
+			this.task = task;
+		}
+
+		public void run() {
+			boolean isPlaying = isPlaying(queue.connector);
+			if (queue.getOtherPlaying(isPlaying) == OTHER_PLAYING_BUSY) {
+				queue.throttle(this);
+				return;
+			}
+			synchronized (ConnectorScheduler.this) {
+				queue.stats.isPlaying = isPlaying;
+			}
+			queue.runTask(task);
+		}
+
+		@Override
+		public String toString() {
+			return "ConnectorScheduler.UnorderedTask " + task.runnable;
+		}
+	}
+
+	protected Map<Connector, ConnectorQueue> queues = new HashMap<Connector, ConnectorQueue>();
+	protected ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	protected boolean isCpuTimeSupported;
+
+	protected ConnectorScheduler() {
+		try {
+			isCpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported()
+					&& threadBean.isThreadCpuTimeEnabled();
+		} catch (UnsupportedOperationException uoe) {
+			isCpuTimeSupported = false;
+		}
+	}
+
+	/**
+	 * Queues the task to run after all of the tasks previously submitted for
+	 * the connector.
+	 */
+	public void execute(Connector connector, Runnable task) {
+		ConnectorQueue queueToStart = null;
+		synchronized (this) {
+			ConnectorQueue queue = countNewTask(connector);
+			queue.tasks.add(new QueuedTask(task));
+			if (!queue.isScheduled) {
+				queue.isScheduled = true;
+				queueToStart = queue;
+			}
+		}
+		if (queueToStart != null) {
+			submit(queueToStart);
+		}
+	}
+
+	/**
+	 * Runs the task with the priority of the connector, in parallel with its
+	 * other tasks. The task counts towards the backlog and times of the
+	 * connector.
+	 */
+	public void run(Connector connector, Runnable task) {
+		ConnectorQueue queue = null;
+		synchronized (this) {
+			queue = countNewTask(connector);
+		}
+		submit(new UnorderedTask(queue, new QueuedTask(task)));
+	}
+
+	/**
+	 * Returns a copy of the statistics of the connector, or null if nothing
+	 * was ever queued for it.
+	 */
+	public synchronized ConnectorStats getStats(Connector connector) {
+		ConnectorQueue queue = queues.get(connector);
+		return queue == null ? null : queue.stats.copy();
+	}
+
+	/**
+	 * Returns one line of statistics per connector.
+	 */
+	public String getSummary() {
+		StringBuilder result = new StringBuilder(200);
+		for (ConnectorQueue queue : getQueues()) {
+			result.append(queue.connector.getShortName()).append(": ")
+					.append(getStats(queue.connector)).append('\n');
+		}
+		if (!isCpuTimeSupported) {
+			result.append("This JVM can not measure thread CPU time, "
+					+ "cpu is the wall time.\n");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Clears the statistics of all connectors. The backlogs are kept.
+	 */
+	public synchronized void reset() {
+		for (ConnectorQueue queue : queues.values()) {
+			ConnectorStats stats = new ConnectorStats();
+			stats.depth = queue.stats.depth;
+			stats.maxDepth = stats.depth;
+			stats.isPlaying = queue.stats.isPlaying;
+			queue.stats = stats;
+		}
+	}
+
+	/**
+	 * Returns true if the connector has a game the user is playing.
+	 */
+	protected boolean isPlaying(Connector connector) {
+		return connector.getGameService() != null
+				&& connector.getGameService().isPlayingAGame();
+	}
+
+	/**
+	 * Invoked when a task throws.
+	 */
+	protected void onError(Connector connector, Throwable t) {
+		Raptor.getInstance().onError(
+				"Error running a task for " + connector.getShortName(), t);
+	}
+
+	/**
+	 * Runs the queue on another thread.
+	 */
+	protected void submit(Runnable queue) {
+		ThreadService.getInstance().run(queue);
+	}
+
+	/**
+	 * Runs the queue on another thread after delay milliseconds.
+	 */
+	protected void schedule(long delay, Runnable queue) {
+		if (ThreadService.getInstance().scheduleOneShot(delay, queue) == null) {
+			LOG.info("Could not schedule the queue, running it now.");
+			submit(queue);
+		}
+	}
+
+	private synchronized void completed(ConnectorQueue queue, long waitNanos,
+			long wallNanos, long cpuNanos) {
+		ConnectorStats stats = queue.stats;
+		if (stats.depth > 0) {
+			stats.depth--;
+		}
+		stats.executed++;
+		stats.wallNanos += wallNanos;
+		stats.cpuNanos += cpuNanos;
+		if (waitNanos > stats.maxWaitNanos) {
+			stats.maxWaitNanos = waitNanos;
+		}
+	}
+
+	private long getCpuNanos() {
+		return isCpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	/**
+	 * Returns the queue of the connector, creating it if needed, and counts a
+	 * new task in its backlog. Must be invoked while holding the lock on
+	 * this.
+	 */
+	private ConnectorQueue countNewTask(Connector connector) {
+		ConnectorQueue queue = queues.get(connector);
+		if (queue == null) {
+			queue = new ConnectorQueue(connector);
+			queues.put(connector, queue);
+		}
+		queue.stats.depth++;
+		if (queue.stats.depth > queue.stats.maxDepth) {
+			queue.stats.maxDepth = queue.stats.depth;
+		}
+		return queue;
+	}
+
+	private synchronized List<ConnectorQueue> getQueues() {
+		return new ArrayList<ConnectorQueue>(queues.values());
+	}
+}
@@ -53,7 +53,7 @@ public class DictionaryService {
 		serviceCreated = true;
 	}
 
-	public static DictionaryService getInstance() {
+	public static synchronized DictionaryService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
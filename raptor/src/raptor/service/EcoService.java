@@ -46,7 +46,7 @@ public class EcoService {
 	
 	public static boolean serviceCreated = false;
 
-	public static EcoService getInstance() {
+	public static synchronized EcoService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
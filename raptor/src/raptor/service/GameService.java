@@ -15,13 +15,29 @@ package raptor.service;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
+import raptor.Raptor;
 import raptor.chess.Game;
+import raptor.connector.Connector;
+import raptor.service.LatencyTraceService.Stage;
+import raptor.util.ContentHash;
+import raptor.util.KeyedSerialExecutor;
+import raptor.util.KeyedSerialExecutor.KeyStats;
 
 /**
  * A class which manages active games that belong to a connector.
+ * 
+ * The game map and listeners may be used from several threads. Connectors
+ * apply updates to a game with execute, which runs the updates of one game in
+ * order while the updates of different games run in parallel. Listeners are
+ * still notified of one event at a time. The updates are run by the
+ * ConnectorScheduler, so the games of the connector the user is playing on go
+ * first.
  */
 public class GameService {
 
@@ -395,15 +411,44 @@ public class GameService {
 		}
 	}
 
-	protected HashMap<String, Game> gameMap = new HashMap<String, Game>();
-	protected List<Offer> offers = new ArrayList<Offer>(10);
+	protected Map<String, Game> gameMap = new ConcurrentHashMap<String, Game>();
+	protected List<Offer> offers = new CopyOnWriteArrayList<Offer>();
 	protected List<GameInfo> gameInfo = new ArrayList<GameInfo>(400);
+	protected long gameInfoHash = new ContentHash().get();
+
+	protected List<GameServiceListener> listeners = new CopyOnWriteArrayList<GameServiceListener>();
+	protected Connector connector;
+
+	protected KeyedSerialExecutor<String> gameExecutor = new KeyedSerialExecutor<String>(new Executor() {
+		public void execute(Runnable runnable) {
+			if (connector == null) {
+				ThreadService.getInstance().run(runnable);
+			} else {
+				ConnectorScheduler.getInstance().run(connector, runnable);
+			}
+		}
+	}) {
+		@Override
+		protected void onError(String gameId, Throwable t) {
+			Raptor.getInstance().onError("Error updating game " + gameId, t);
+		}
+	};
+
+	public GameService() {
+	}
 
-	protected List<GameServiceListener> listeners = Collections
-			.synchronizedList(new ArrayList<GameServiceListener>(20));
+	/**
+	 * Creates a GameService whose updates are scheduled with the priority of
+	 * the specified connector.
+	 */
+	public GameService(Connector connector) {
+		this.connector = connector;
+	}
 
 	public GameInfo[] getGameInfos() {
-		return gameInfo.toArray(new GameInfo[0]);
+		synchronized (gameInfo) {
+			return gameInfo.toArray(new GameInfo[0]);
+		}
 	}
 
 	public void addGame(Game game) {
@@ -418,6 +463,16 @@ public class GameService {
 		gameMap.clear();
 	}
 
+	/**
+	 * Runs the update of the game with the specified id after all of the
+	 * updates previously passed to this method for that game. Updates of
+	 * different games run in parallel. The update carries the read time of
+	 * the message being parsed to the LatencyTraceService.
+	 */
+	public void execute(String gameId, Runnable update) {
+		gameExecutor.execute(gameId, LatencyTraceService.getInstance().withReadTime(update));
+	}
+
 	/**
 	 * This method should only be invoked from a connector.
 	 */
@@ -479,16 +534,34 @@ public class GameService {
 		}
 	}
 
-	public void fireGameInfoChanged(GameInfo[] gameInfos) {
+	/**
+	 * Replaces the game infos. Listeners are only notified if the content
+	 * changed. Returns true if it changed.
+	 */
+	public boolean fireGameInfoChanged(GameInfo[] gameInfos) {
+		ContentHash contentHash = new ContentHash();
+		for (GameInfo info : gameInfos) {
+			contentHash.add(info.getId()).add(info.getWhiteName()).add(info.getWhiteElo())
+					.add(info.getBlackName()).add(info.getBlackElo()).add(info.isRated())
+					.add(info.isWhitesMove()).add(info.isBeingExamined()).add(info.isPrivate())
+					.add(info.getCategory()).add(info.getMoveNumber()).add(info.getTime()).add(info.getInc());
+		}
+		long hash = contentHash.get();
+
 		synchronized (gameInfo) {
 			gameInfo.clear();
             Collections.addAll(gameInfo, gameInfos);
-			synchronized (listeners) {
-				for (GameServiceListener listener : listeners) {
-					listener.gameInfoChanged();
-				}
+			if (hash == gameInfoHash) {
+				return false;
+			}
+			gameInfoHash = hash;
+		}
+		synchronized (listeners) {
+			for (GameServiceListener listener : listeners) {
+				listener.gameInfoChanged();
 			}
 		}
+		return true;
 	}
 
 	/**
@@ -516,6 +589,7 @@ public class GameService {
 					listener.gameStateChanged(game, isNewMove);
 				}
 			}
+			LatencyTraceService.getInstance().recordInbound(Stage.GAME_STATE_CHANGED);
 		}
 	}
 
@@ -628,6 +702,18 @@ public class GameService {
 		return result.toArray(new Game[0]);
 	}
 
+	/**
+	 * Returns true if one of the games is being played by the user.
+	 */
+	public boolean isPlayingAGame() {
+		for (Game game : gameMap.values()) {
+			if (game.isInState(Game.PLAYING_STATE)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Returns the game with the specified id.
 	 */
@@ -635,6 +721,14 @@ public class GameService {
 		return gameMap.get(gameId);
 	}
 
+	/**
+	 * Returns the update queue statistics of the game with the specified id,
+	 * or null if no updates were run for it.
+	 */
+	public KeyStats getGameQueueStats(String gameId) {
+		return gameExecutor.getStats(gameId);
+	}
+
 	/**
 	 * Returns the number of games this game service is managing.
 	 */
@@ -655,6 +749,7 @@ public class GameService {
 	 */
 	public void removeGame(Game game) {
 		gameMap.remove(game.getId());
+		gameExecutor.clearStats(game.getId());
 	}
 
 	/**
@@ -0,0 +1,289 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import raptor.util.LatencyHistogram;
+
+/**
+ * Traces where the time goes between the ICS socket and the board, and
+ * between the user dropping a piece and the move being written to the
+ * socket. Each stage has a LatencyHistogram of the nanoseconds since the
+ * stage's origin:
+ * <ul>
+ * <li>Inbound stages are measured from the socket read which completed the
+ * message. The read time is passed with the message to the parse task, and
+ * each task the message spawns on another thread is wrapped with
+ * withReadTime so it carries the read time along.</li>
+ * <li>Outbound stages are measured from the drop that made the move, or for
+ * a premove from the read which made it the users move.</li>
+ * </ul>
+ * The ping stage holds the timeseal ping times the server reports. Recording
+ * is lock-free, so the trace points stay in place in release builds.
+ */
+public class LatencyTraceService {
+	public static enum Stage {
+		TIMESEAL("read to timeseal handled"),
+		PARSE("read to IcsParser.parse"),
+		GAME_STATE_CHANGED("read to fireGameStateChanged"),
+		CONTROLLER_UPDATE("read to controller update"),
+		PAINT("read to board paint"),
+		ENQUEUE("move to outbound enqueue"),
+		WRITE("move to socket write"),
+		PING("server ping");
+
+		private String description;
+
+		private Stage(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	private static final LatencyTraceService singletonInstance = new LatencyTraceService();
+
+	/**
+	 * Returns the singleton instance. It is created eagerly, so the trace
+	 * points do not contend on a lock.
+	 */
+	public static LatencyTraceService getInstance() {
+		return singletonInstance;
+	}
+
+	protected LatencyHistogram[] histograms = new LatencyHistogram[Stage
+			.values().length];
+	protected ThreadLocal<long[]> readTime = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+	protected AtomicLong moveOrigin = new AtomicLong();
+	protected AtomicLong writeOrigin = new AtomicLong();
+	protected AtomicLong paintOrigin = new AtomicLong();
+
+	private LatencyTraceService() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Should be invoked by the connector before the move is enqueued. Returns
+	 * the origin of the move, or 0 if it was not traced.
+	 */
+	public long beginMove() {
+		long origin = moveOrigin.getAndSet(0);
+		if (origin != 0) {
+			writeOrigin.set(origin);
+		}
+		return origin;
+	}
+
+	/**
+	 * Should be invoked when a board square has been painted.
+	 */
+	public void boardPainted() {
+		long origin = paintOrigin.get();
+		if (origin != 0 && paintOrigin.compareAndSet(origin, 0)) {
+			record(Stage.PAINT, origin);
+		}
+	}
+
+	/**
+	 * Should be invoked by a board controller after it has updated the board
+	 * for a game state change.
+	 */
+	public void controllerUpdated() {
+		long origin = getReadTime();
+		if (origin != 0) {
+			record(Stage.CONTROLLER_UPDATE, origin);
+			paintOrigin.set(origin);
+		}
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Returns the System.nanoTime of the socket read which completed the
+	 * message the current thread is handling, or 0 if it is not handling one.
+	 */
+	public long getReadTime() {
+		return readTime.get()[0];
+	}
+
+	/**
+	 * Should be invoked when the user drops a piece on the board.
+	 */
+	public void markDrop() {
+		moveOrigin.set(System.nanoTime());
+	}
+
+	/**
+	 * Should be invoked when a premove is made in response to a move read from
+	 * the socket.
+	 */
+	public void markPremove() {
+		long origin = getReadTime();
+		moveOrigin.set(origin == 0 ? System.nanoTime() : origin);
+	}
+
+	/**
+	 * Should be invoked by the connector after the move returned by
+	 * beginMove has been enqueued.
+	 */
+	public void moveEnqueued(long origin) {
+		if (origin != 0) {
+			record(Stage.ENQUEUE, origin);
+		}
+	}
+
+	/**
+	 * Records the time since the read of the message the current thread is
+	 * handling for an inbound stage.
+	 */
+	public void recordInbound(Stage stage) {
+		recordInbound(stage, getReadTime());
+	}
+
+	/**
+	 * Records the time since the specified read for an inbound stage. Does
+	 * nothing if readTime is 0.
+	 */
+	public void recordInbound(Stage stage, long readTime) {
+		if (readTime != 0) {
+			record(stage, readTime);
+		}
+	}
+
+	public void recordPing(int pingMillis) {
+		getHistogram(Stage.PING).record(pingMillis * 1000000L);
+	}
+
+	/**
+	 * Should be invoked by the outbound writer after each urgent message is
+	 * written. enqueueTime is the System.nanoTime the message was enqueued.
+	 */
+	public void recordWrite(long enqueueTime) {
+		long origin = writeOrigin.get();
+		if (origin != 0 && enqueueTime - origin >= 0
+				&& writeOrigin.compareAndSet(origin, 0)) {
+			record(Stage.WRITE, origin);
+		}
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Returns a table of the count, mean, percentiles and max of each stage,
+	 * in microseconds.
+	 */
+	public String getSummary() {
+		StringBuilder result = new StringBuilder(1000);
+		result.append(String.format("%-32s %8s %10s %10s %10s %10s %10s\n",
+				"stage (microseconds)", "count", "mean", "p50", "p90", "p99",
+				"max"));
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = getHistogram(stage);
+			result.append(String.format(
+					"%-32s %8d %10d %10d %10d %10d %10d\n", stage
+							.getDescription(), histogram.getCount(),
+					(long) histogram.getMean() / 1000, histogram
+							.getValueAtPercentile(50.0) / 1000, histogram
+							.getValueAtPercentile(90.0) / 1000, histogram
+							.getValueAtPercentile(99.0) / 1000, histogram
+							.getMax() / 1000));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the non-empty buckets of every stage to file as CSV with the
+	 * columns stage,from_ns,to_ns,count.
+	 */
+	public void writeCsv(File file) throws IOException {
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write("stage,from_ns,to_ns,count\n");
+			for (Stage stage : Stage.values()) {
+				LatencyHistogram histogram = getHistogram(stage);
+				for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+					long count = histogram.getCountAt(i);
+					if (count > 0) {
+						writer.write(stage.name() + ","
+								+ LatencyHistogram.lowestValueAt(i) + ","
+								+ LatencyHistogram.highestValueAt(i) + ","
+								+ count + "\n");
+					}
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Returns a runnable which runs the task with the read time of the message
+	 * the current thread is handling. Should be used for each task a message
+	 * hands to another thread.
+	 */
+	public Runnable withReadTime(Runnable task) {
+		return withReadTime(getReadTime(), task);
+	}
+
+	/**
+	 * Returns a runnable which runs the task with the specified read time.
+	 * Returns the task itself if messageReadTime is 0.
+	 */
+	public Runnable withReadTime(final long messageReadTime, final Runnable task) {
+		if (messageReadTime == 0) {
+			return task;
+		}
+		return new Runnable() {
+			public void run() {
+				long[] holder = readTime.get();
+				long previous = holder[0];
+				holder[0] = messageReadTime;
+				try {
+					task.run();
+				} finally {
+					holder[0] = previous;
+				}
+			}
+
+			@Override
+			public String toString() {
+				return task.toString();
+			}
+		};
+	}
+
+	private void record(Stage stage, long origin) {
+		getHistogram(stage).record(System.nanoTime() - origin);
+	}
+}
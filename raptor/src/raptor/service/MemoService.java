@@ -33,7 +33,7 @@ public class MemoService {
 	public static final SimpleDateFormat FORMAT = new SimpleDateFormat(
 			"'['yyyy-MM-dd' 'hh:mma']'");
 
-	public static MemoService getInstance() {
+	public static synchronized MemoService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
@@ -0,0 +1,335 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import raptor.Raptor;
+import raptor.chess.Game;
+import raptor.chess.GameRecord;
+import raptor.chess.Move;
+import raptor.chess.Variant;
+import raptor.chess.util.OpeningIndex;
+import raptor.chess.util.OpeningIndex.Entry;
+import raptor.chess.util.OpeningIndexBuilder;
+import raptor.util.RaptorLogger;
+
+/**
+ * Maintains the opening explorer index built from the users local PGN files.
+ * The index is rebuilt incrementally: only games appended to a PGN file since
+ * the last update are imported and merged into a new index file. A file which
+ * shrank is treated as rewritten and causes a full rebuild.
+ */
+public class OpeningExplorerService {
+	public static interface OpeningExplorerListener {
+		/**
+		 * Invoked on a non SWT thread after a new index is available.
+		 */
+		public void indexChanged();
+	}
+
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(OpeningExplorerService.class);
+
+	public static final String EXPLORER_DIR = Raptor.USER_RAPTOR_HOME_PATH
+			+ "/openingExplorer";
+	public static final String SOURCES_FILE = EXPLORER_DIR
+			+ "/sources.properties";
+
+	private static final String INDEX_KEY = "index";
+	private static final String SOURCE_PREFIX = "source.";
+	private static final String INDEX_FILE_PREFIX = "opening-";
+	private static final String INDEX_FILE_SUFFIX = ".idx";
+
+	private static OpeningExplorerService singletonInstance;
+	public static boolean serviceCreated = false;
+
+	public static synchronized OpeningExplorerService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new OpeningExplorerService();
+		return singletonInstance;
+	}
+
+	protected volatile OpeningIndex index;
+	protected volatile boolean isUpdating;
+	protected List<OpeningExplorerListener> listeners = new CopyOnWriteArrayList<OpeningExplorerListener>();
+	protected Properties sources = new Properties();
+
+	private OpeningExplorerService() {
+		File dir = new File(EXPLORER_DIR);
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		loadSources();
+
+		String indexName = sources.getProperty(INDEX_KEY);
+		if (indexName != null) {
+			try {
+				index = new OpeningIndex(new File(dir, indexName));
+			} catch (IOException ioe) {
+				LOG.warn("Could not open opening index " + indexName
+						+ ". It will be rebuilt on the next update.", ioe);
+				sources.remove(INDEX_KEY);
+			}
+		}
+		deleteStaleIndexFiles();
+		serviceCreated = true;
+	}
+
+	public void addOpeningExplorerListener(OpeningExplorerListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Adds a PGN file to the sources of the index and imports it on a
+	 * ThreadService thread.
+	 */
+	public void addPgnFile(String path) {
+		String key = SOURCE_PREFIX + new File(path).getAbsolutePath();
+		synchronized (sources) {
+			if (sources.getProperty(key) == null) {
+				sources.setProperty(key, "0,0");
+			}
+		}
+		updateInBackground();
+	}
+
+	public void dispose() {
+		listeners.clear();
+		OpeningIndex oldIndex = index;
+		index = null;
+		if (oldIndex != null) {
+			oldIndex.close();
+		}
+	}
+
+	/**
+	 * Returns the moves played from the position of the specified game, most
+	 * played first. Returns an empty array if the game is not a classic game
+	 * or the position is not in the index.
+	 */
+	public Entry[] getEntries(Game game) {
+		OpeningIndex currentIndex = index;
+		if (currentIndex == null || !Variant.isClassic(game.getVariant())) {
+			return new Entry[0];
+		}
+		return currentIndex.getEntries(game.getZobristPositionHash());
+	}
+
+	/**
+	 * Returns the absolute paths of the PGN files in the index.
+	 */
+	public String[] getPgnFiles() {
+		TreeSet<String> result = new TreeSet<String>();
+		synchronized (sources) {
+			for (Object key : sources.keySet()) {
+				String name = (String) key;
+				if (name.startsWith(SOURCE_PREFIX)) {
+					result.add(name.substring(SOURCE_PREFIX.length()));
+				}
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Returns the SAN of each entry's move in the position of the specified
+	 * game. Entries whose move is not legal in the position, which can only
+	 * happen on a hash collision, have a null SAN.
+	 */
+	public String[] getSans(Game game, Entry[] entries) {
+		String[] result = new String[entries.length];
+		if (entries.length == 0) {
+			return result;
+		}
+		Game copy = game.deepCopy(true);
+		copy.addState(Game.UPDATING_SAN_STATE);
+		copy.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+		Move[] legals = copy.getLegalMoves().asArray();
+		for (int i = 0; i < entries.length; i++) {
+			for (Move move : legals) {
+				if (GameRecord.isPackedMove(move, entries[i].getMove())) {
+					copy.forceMove(move);
+					result[i] = copy.getLastMove().getSan();
+					copy.rollback();
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	public boolean isUpdating() {
+		return isUpdating;
+	}
+
+	public void removeOpeningExplorerListener(OpeningExplorerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Imports the games added to the source PGN files since the last update
+	 * and publishes the merged index. Returns the number of games imported.
+	 */
+	public synchronized int update() throws IOException {
+		isUpdating = true;
+		try {
+			String[] paths = getPgnFiles();
+			long[] lengths = new long[paths.length];
+			int[] startLines = new int[paths.length];
+			boolean isRebuilding = index == null;
+			for (int i = 0; i < paths.length; i++) {
+				String[] state = sources.getProperty(SOURCE_PREFIX + paths[i],
+						"0,0").split(",");
+				lengths[i] = Long.parseLong(state[0]);
+				startLines[i] = Integer.parseInt(state[1]) + 1;
+				if (new File(paths[i]).length() < lengths[i]) {
+					isRebuilding = true;
+				}
+			}
+
+			OpeningIndexBuilder builder = new OpeningIndexBuilder();
+			List<String> changed = new ArrayList<String>();
+			for (int i = 0; i < paths.length; i++) {
+				File file = new File(paths[i]);
+				if (!file.exists()) {
+					continue;
+				}
+				long length = file.length();
+				if (isRebuilding || length != lengths[i]) {
+					int lastLine = builder.addPgnFile(file, isRebuilding ? 1
+							: startLines[i]);
+					changed.add(SOURCE_PREFIX + paths[i]);
+					changed.add(length + "," + lastLine);
+				}
+			}
+
+			if (changed.isEmpty() && !isRebuilding) {
+				return 0;
+			}
+
+			OpeningIndex oldIndex = index;
+			List<Entry> entries = builder.merge(isRebuilding ? null : oldIndex);
+			String indexName = INDEX_FILE_PREFIX + System.currentTimeMillis()
+					+ INDEX_FILE_SUFFIX;
+			File indexFile = new File(EXPLORER_DIR, indexName);
+			OpeningIndex.write(indexFile, entries);
+			index = new OpeningIndex(indexFile);
+
+			synchronized (sources) {
+				for (int i = 0; i < changed.size(); i += 2) {
+					sources.setProperty(changed.get(i), changed.get(i + 1));
+				}
+				sources.setProperty(INDEX_KEY, indexName);
+			}
+			saveSources();
+
+			if (oldIndex != null) {
+				oldIndex.close();
+			}
+			deleteStaleIndexFiles();
+
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Imported " + builder.getGameCount()
+						+ " games into the opening index. "
+						+ index.getSize() + " entries.");
+			}
+			for (OpeningExplorerListener listener : listeners) {
+				listener.indexChanged();
+			}
+			return builder.getGameCount();
+		} finally {
+			isUpdating = false;
+		}
+	}
+
+	/**
+	 * Runs update on a ThreadService thread.
+	 */
+	public void updateInBackground() {
+		ThreadService.getInstance().run(new Runnable() {
+			public void run() {
+				try {
+					update();
+				} catch (IOException ioe) {
+					Raptor.getInstance().onError(
+							"Error updating the opening explorer index.", ioe);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes index files other than the current one. Files still mapped by a
+	 * reader can not be deleted on some platforms, they are removed the next
+	 * time this runs.
+	 */
+	protected void deleteStaleIndexFiles() {
+		String current = sources.getProperty(INDEX_KEY);
+		File[] files = new File(EXPLORER_DIR).listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().startsWith(INDEX_FILE_PREFIX)
+					&& file.getName().endsWith(INDEX_FILE_SUFFIX)
+					&& !file.getName().equals(current)) {
+				if (!file.delete() && LOG.isDebugEnabled()) {
+					LOG.debug("Could not delete stale index " + file);
+				}
+			}
+		}
+	}
+
+	protected void loadSources() {
+		File file = new File(SOURCES_FILE);
+		if (file.exists()) {
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(file);
+				sources.load(in);
+			} catch (IOException ioe) {
+				LOG.warn("Error reading " + SOURCES_FILE, ioe);
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException ioe) {
+					}
+				}
+			}
+		}
+	}
+
+	protected void saveSources() throws IOException {
+		FileOutputStream out = new FileOutputStream(SOURCES_FILE);
+		try {
+			synchronized (sources) {
+				sources.store(out, "Opening explorer sources");
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
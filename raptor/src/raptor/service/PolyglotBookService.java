@@ -0,0 +1,100 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.Raptor;
+import raptor.chess.Game;
+import raptor.chess.util.PolyglotBook;
+import raptor.pref.PreferenceKeys;
+import raptor.util.RaptorLogger;
+
+/**
+ * Provides the Polyglot opening book set in the BOOK_FILE preference. The
+ * book is reopened when the preference changes.
+ */
+public class PolyglotBookService {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(PolyglotBookService.class);
+
+	private static PolyglotBookService singletonInstance;
+	public static boolean serviceCreated = false;
+
+	public static synchronized PolyglotBookService getInstance() {
+		if (singletonInstance != null)
+			return singletonInstance;
+
+		singletonInstance = new PolyglotBookService();
+		return singletonInstance;
+	}
+
+	protected PolyglotBook book;
+	protected String bookFile;
+
+	private PolyglotBookService() {
+		serviceCreated = true;
+	}
+
+	public synchronized void dispose() {
+		book = null;
+		bookFile = null;
+	}
+
+	/**
+	 * Returns the book, or null if there is no book set or it could not be
+	 * opened.
+	 */
+	public synchronized PolyglotBook getBook() {
+		String file = Raptor.getInstance().getPreferences().getString(
+				PreferenceKeys.BOOK_FILE);
+		if (!StringUtils.equals(file, bookFile)) {
+			bookFile = file;
+			book = null;
+			if (StringUtils.isNotBlank(file)) {
+				try {
+					book = new PolyglotBook(new File(file));
+					if (LOG.isInfoEnabled()) {
+						LOG.info("Opened book " + file + " with "
+								+ book.getSize() + " entries.");
+					}
+				} catch (IOException ioe) {
+					LOG.warn("Could not open the book " + file, ioe);
+				}
+			}
+		}
+		return book;
+	}
+
+	/**
+	 * Returns the book moves of the games current position, an empty array
+	 * if there are none or there is no book.
+	 */
+	public PolyglotBook.Entry[] getEntries(Game game) {
+		PolyglotBook book = getBook();
+		return book == null ? new PolyglotBook.Entry[0] : book
+				.getEntries(game);
+	}
+
+	/**
+	 * Returns true if the games current position is in the book.
+	 */
+	public boolean isInBook(Game game) {
+		PolyglotBook book = getBook();
+		return book != null && book.contains(game);
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import raptor.Raptor;
+import raptor.chat.ChatType;
+import raptor.connector.Connector;
+import raptor.pref.PreferenceKeys;
+import raptor.util.RaptorLogger;
+
+/**
+ * Schedules the polling requests (bugwho, sought, games) for a single
+ * connector. Window items no longer run their own timers; instead they mark
+ * themselves visible or hidden for a refresh key.
+ * 
+ * <ul>
+ * <li>Only one poll loop runs per key, no matter how many windows show it.</li>
+ * <li>Immediate requests made while a request is still outstanding are merged
+ * into it.</li>
+ * <li>Polling stops while no window showing the key is visible.</li>
+ * <li>Each unchanged result doubles the poll interval up to MAX_BACKOFF times
+ * the base interval. A changed result resets it.</li>
+ * </ul>
+ * 
+ * The parser reports each result with onResult, after the service has
+ * compared the content with the previous result and skipped firing its
+ * listeners if nothing changed.
+ */
+public class RefreshScheduler {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(RefreshScheduler.class);
+
+	public static final String BUG_AVAILABLE_TEAMS = "bugwho p";
+	public static final String BUG_GAMES = "bugwho g";
+	public static final String BUG_UNPARTNERED_BUGGERS = "bugwho u";
+	public static final String SEEKS = "sought";
+	public static final String GAMES = "games";
+
+	/**
+	 * The largest multiple of the base interval the poll interval backs off
+	 * to.
+	 */
+	public static final int MAX_BACKOFF = 8;
+
+	/**
+	 * The games list is large. Never poll it more than once a minute, it
+	 * causes bandwidth issues with fics.
+	 */
+	public static final long GAMES_MIN_INTERVAL = 60 * 1000;
+
+	/**
+	 * A request with no result after this long is no longer considered
+	 * outstanding.
+	 */
+	public static final long OUTSTANDING_TIMEOUT = 15 * 1000;
+
+	protected class Refresh implements Runnable {
+		protected String key;
+		protected Set<Object> visibleSubscribers = new HashSet<Object>();
+		protected Future<?> future;
+		protected int backoff = 1;
+		protected long lastRequestTime;
+		protected boolean isOutstanding;
+		protected long requestCount;
+		protected long mergedCount;
+		protected long skippedCount;
+		protected long resultCount;
+
+		protected Refresh(String key) {
+			this.key = key;
+		}
+
+		public void run() {
+			synchronized (this) {
+				future = null;
+				if (visibleSubscribers.isEmpty()) {
+					return;
+				}
+			}
+			request(this, false);
+			schedule(this);
+		}
+
+		protected long getInterval() {
+			long base = GAMES.equals(key) ? GAMES_MIN_INTERVAL : Raptor.getInstance().getPreferences().getInt(
+					PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000L;
+			return base * backoff;
+		}
+
+		@Override
+		public String toString() {
+			return "RefreshScheduler " + key + " runnable";
+		}
+	}
+
+	protected Connector connector;
+	protected Map<String, Refresh> keyToRefresh = new HashMap<String, Refresh>();
+
+	public RefreshScheduler(Connector connector) {
+		this.connector = connector;
+		for (String key : new String[] { BUG_AVAILABLE_TEAMS, BUG_GAMES, BUG_UNPARTNERED_BUGGERS, SEEKS, GAMES }) {
+			keyToRefresh.put(key, new Refresh(key));
+		}
+	}
+
+	/**
+	 * Stops all polling.
+	 */
+	public void dispose() {
+		for (Refresh refresh : keyToRefresh.values()) {
+			synchronized (refresh) {
+				refresh.visibleSubscribers.clear();
+				if (refresh.future != null) {
+					refresh.future.cancel(false);
+					refresh.future = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the request, merged request, result and skipped (unchanged)
+	 * result counts for every key.
+	 */
+	public String getStatistics() {
+		StringBuilder result = new StringBuilder(400);
+		for (Refresh refresh : keyToRefresh.values()) {
+			synchronized (refresh) {
+				result.append(refresh.key).append(": requests=").append(refresh.requestCount).append(" merged=")
+						.append(refresh.mergedCount).append(" results=").append(refresh.resultCount)
+						.append(" skipped=").append(refresh.skippedCount).append(" interval=")
+						.append(refresh.getInterval() / 1000).append("s visible=")
+						.append(refresh.visibleSubscribers.size()).append("\n");
+			}
+		}
+		return result.toString();
+	}
+
+	public long getRequestCount(String key) {
+		Refresh refresh = getRefresh(key);
+		synchronized (refresh) {
+			return refresh.requestCount;
+		}
+	}
+
+	public long getSkippedCount(String key) {
+		Refresh refresh = getRefresh(key);
+		synchronized (refresh) {
+			return refresh.skippedCount;
+		}
+	}
+
+	/**
+	 * Should be invoked by the parser when the result for a key arrives.
+	 * 
+	 * @param key
+	 *            The refresh key.
+	 * @param isChanged
+	 *            True if the result differed from the previous one.
+	 */
+	public void onResult(String key, boolean isChanged) {
+		Refresh refresh = getRefresh(key);
+		synchronized (refresh) {
+			refresh.isOutstanding = false;
+			refresh.resultCount++;
+			if (isChanged) {
+				refresh.backoff = 1;
+			} else {
+				refresh.skippedCount++;
+				refresh.backoff = Math.min(refresh.backoff * 2, MAX_BACKOFF);
+			}
+		}
+	}
+
+	/**
+	 * Sends the request for the key now, unless a request for it is still
+	 * outstanding, in which case this request is merged into that one.
+	 */
+	public void requestNow(String key) {
+		request(getRefresh(key), true);
+	}
+
+	/**
+	 * Marks the subscriber as showing or no longer showing the key. The first
+	 * visible subscriber requests the key immediately and starts polling;
+	 * polling stops once no subscribers are visible. Subscribers must mark
+	 * themselves not visible when they are disposed.
+	 */
+	public void setVisible(String key, Object subscriber, boolean isVisible) {
+		Refresh refresh = getRefresh(key);
+		boolean isStarting = false;
+		synchronized (refresh) {
+			if (isVisible) {
+				isStarting = refresh.visibleSubscribers.add(subscriber) && refresh.visibleSubscribers.size() == 1;
+				if (isStarting) {
+					refresh.backoff = 1;
+				}
+			} else {
+				refresh.visibleSubscribers.remove(subscriber);
+				if (refresh.visibleSubscribers.isEmpty() && refresh.future != null) {
+					refresh.future.cancel(false);
+					refresh.future = null;
+				}
+			}
+		}
+		if (isStarting) {
+			request(refresh, true);
+			schedule(refresh);
+		}
+	}
+
+	protected Refresh getRefresh(String key) {
+		Refresh refresh = keyToRefresh.get(key);
+		if (refresh == null) {
+			throw new IllegalArgumentException("Unknown refresh key " + key);
+		}
+		return refresh;
+	}
+
+	protected void request(Refresh refresh, boolean isImmediate) {
+		synchronized (refresh) {
+			long now = System.currentTimeMillis();
+			if (refresh.isOutstanding && now - refresh.lastRequestTime < OUTSTANDING_TIMEOUT) {
+				refresh.mergedCount++;
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Merged " + (isImmediate ? "immediate " : "") + "request for " + refresh.key);
+				}
+				return;
+			}
+			if (!connector.isLoggedIn()) {
+				return;
+			}
+			refresh.isOutstanding = true;
+			refresh.lastRequestTime = now;
+			refresh.requestCount++;
+		}
+		sendRequest(refresh.key);
+	}
+
+	protected void schedule(Refresh refresh) {
+		synchronized (refresh) {
+			if (refresh.future == null && !refresh.visibleSubscribers.isEmpty()) {
+				refresh.future = ThreadService.getInstance().scheduleOneShot(refresh.getInterval(), refresh);
+			}
+		}
+	}
+
+	protected void sendRequest(String key) {
+		if (BUG_AVAILABLE_TEAMS.equals(key)) {
+			connector.sendBugAvailableTeamsMessage();
+		} else if (BUG_GAMES.equals(key)) {
+			connector.sendBugGamesMessage();
+		} else if (BUG_UNPARTNERED_BUGGERS.equals(key)) {
+			connector.sendBugUnpartneredBuggersMessage();
+		} else if (SEEKS.equals(key)) {
+			connector.sendGetSeeksMessage();
+		} else if (GAMES.equals(key)) {
+			connector.sendMessage("$$games", true, ChatType.GAMES);
+		}
+	}
+}
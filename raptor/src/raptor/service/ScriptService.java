@@ -57,7 +57,7 @@ public class ScriptService {
 	public static boolean serviceCreated = false;
 	private static ScriptService singletonInstance;
 
-	public static ScriptService getInstance() {
+	public static synchronized ScriptService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
@@ -18,6 +18,7 @@ import java.util.List;
 
 import raptor.chat.Seek;
 import raptor.connector.Connector;
+import raptor.util.ContentHash;
 
 public class SeekService {
 	public static interface SeekServiceListener {
@@ -30,6 +31,7 @@ public class SeekService {
 
     private Seek[] seeks = new Seek[0];
 	private Connector connector;
+	private long seeksHash = new ContentHash().get();
 	private List<SeekServiceListener> listeners = new ArrayList<SeekServiceListener>(
 			10);
 
@@ -57,9 +59,25 @@ public class SeekService {
 		listeners.remove(listener);
 	}
 
-	public void setSeeks(Seek[] seeks) {
+	/**
+	 * Sets the seeks. Listeners are only notified if the content changed.
+	 * Returns true if it changed.
+	 */
+	public boolean setSeeks(Seek[] seeks) {
+		ContentHash contentHash = new ContentHash();
+		for (Seek seek : seeks) {
+			contentHash.add(seek.getAd()).add(seek.getName()).add(seek.getRating()).add(seek.getMinutes())
+					.add(seek.getIncrement()).add(seek.isRated()).add(seek.getTypeDescription())
+					.add(seek.getColor()).add(seek.getFlags()).add(seek.getRatingRange());
+		}
+		long hash = contentHash.get();
 		this.seeks = seeks;
-		fireSeeksChanged();
+		if (hash != seeksHash) {
+			seeksHash = hash;
+			fireSeeksChanged();
+			return true;
+		}
+		return false;
 	}
 
 	protected void fireSeeksChanged() {
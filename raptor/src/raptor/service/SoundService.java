@@ -22,9 +22,11 @@ import java.util.List;
 import raptor.Raptor;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.sound.MixingSoundPlayer;
 import raptor.sound.SoundPlayer;
 import raptor.sound.SoundUtils;
 import raptor.speech.Speech;
+import raptor.speech.SpeechQueue;
 import raptor.speech.SpeechUtils;
 import raptor.util.RaptorLogger;
 
@@ -35,6 +37,7 @@ public class SoundService {
 	private static final RaptorLogger LOG = RaptorLogger.getLog(SoundService.class);
 	public static final String SOUNDS_DIR = Raptor.RESOURCES_DIR + "sounds/";
 	public static final String DEFAULT_SOUND_PACK_DIR = SOUNDS_DIR + "Raptor/";
+	public static final String SPEECH_CACHE_DIR = Raptor.USER_RAPTOR_HOME_PATH + "/speechcache";
 	public static boolean serviceCreated = false;
 	private static SoundService singletonInstance;
 
@@ -54,6 +57,7 @@ public class SoundService {
 	protected SoundPlayer soundPlayer;
 
 	protected Speech speech = null;
+	protected SpeechQueue speechQueue = null;
 	protected RaptorPreferenceStore preferences = Raptor.getInstance().getPreferences();
 
 	private SoundService() {
@@ -66,8 +70,8 @@ public class SoundService {
 		if (soundPlayer != null) {
 			soundPlayer.dispose();
 		}
-		if (speech != null) {
-			speech.dispose();
+		if (speechQueue != null) {
+			speechQueue.dispose();
 		}
 	}
 
@@ -97,7 +101,22 @@ public class SoundService {
 			}
 		}
 		soundPlayer = SoundUtils.getSoundPlayer();
-		if (soundPlayer != null) {
+		if (soundPlayer instanceof MixingSoundPlayer) {
+			try {
+				soundPlayer.init();
+				((MixingSoundPlayer) soundPlayer).preload(getSoundPaths());
+			} catch (Throwable t) {
+				LOG.warn("Could not initialize the MixingSoundPlayer, falling back.", t);
+				// Closes the line and stops the mixer thread if init succeeded.
+				try {
+					soundPlayer.dispose();
+				} catch (Throwable t2) {
+				}
+				soundPlayer = SoundUtils.getFallbackSoundPlayer();
+				soundPlayer.init();
+			}
+			LOG.info("Initialized soundPlayer: " + soundPlayer);
+		} else if (soundPlayer != null) {
 			soundPlayer.init();
 			LOG.info("Initialized soundPlayer: " + soundPlayer);
 		} else {
@@ -107,10 +126,15 @@ public class SoundService {
 	}
 
 	public void initSpeech() {
+		if (speechQueue != null) {
+			speechQueue.dispose();
+			speechQueue = null;
+		}
 		try {
 			speech = SpeechUtils.getSpeech();
 			if (speech != null) {
 				speech.init();
+				speechQueue = createSpeechQueue(speech);
 				LOG.info("Initialized speech: " + speech);
 			} else {
 				LOG.info("No speech is currently configured.");
@@ -133,11 +157,7 @@ public class SoundService {
 	 */
 	public void play(final String pathToSound) {
 		if (Raptor.getInstance().getPreferences().getBoolean(PreferenceKeys.APP_SOUND_ENABLED) && soundPlayer != null) {
-			ThreadService.getInstance().run(new Runnable() {
-				public void run() {
-					soundPlayer.play(pathToSound);
-				}
-			});
+			playOnSoundPlayer(pathToSound, MixingSoundPlayer.PRIORITY_NORMAL);
 		}
 	}
 
@@ -147,11 +167,7 @@ public class SoundService {
 	 */
 	public void playBughouseSound(final String sound) {
 		if (Raptor.getInstance().getPreferences().getBoolean(PreferenceKeys.APP_SOUND_ENABLED) && soundPlayer != null) {
-			ThreadService.getInstance().run(new Runnable() {
-				public void run() {
-					soundPlayer.play(deriveBughouseSoundPath(sound));
-				}
-			});
+			playOnSoundPlayer(deriveBughouseSoundPath(sound), MixingSoundPlayer.PRIORITY_HIGH);
 		}
 	}
 
@@ -161,14 +177,69 @@ public class SoundService {
 	 */
 	public void playSound(final String sound) {
 		if (Raptor.getInstance().getPreferences().getBoolean(PreferenceKeys.APP_SOUND_ENABLED) && soundPlayer != null) {
+			playOnSoundPlayer(deriveSoundPath(sound), getSoundPriority(sound));
+		}
+	}
+
+	/**
+	 * Returns the measured trigger to audio latency of the sound player, or
+	 * null if the current sound player does not measure it.
+	 */
+	public String getLatencyReport() {
+		SoundPlayer player = soundPlayer;
+		return player instanceof MixingSoundPlayer ? ((MixingSoundPlayer) player).getLatencyReport() : null;
+	}
+
+	/**
+	 * The MixingSoundPlayer does not block so it is invoked directly. All
+	 * other players are launched on a ThreadService thread.
+	 */
+	protected void playOnSoundPlayer(final String pathToSound, int priority) {
+		final SoundPlayer player = soundPlayer;
+		if (player instanceof MixingSoundPlayer) {
+			((MixingSoundPlayer) player).play(pathToSound, priority);
+		} else {
 			ThreadService.getInstance().run(new Runnable() {
 				public void run() {
-					soundPlayer.play(deriveSoundPath(sound));
+					player.play(pathToSound);
 				}
 			});
 		}
 	}
 
+	/**
+	 * Countdown sounds are time critical and chat notifications are not. When
+	 * the mixer runs out of voices lower priority sounds are dropped first.
+	 */
+	protected int getSoundPriority(String sound) {
+		if (sound.startsWith("countdown") || sound.equals("illegalMove")) {
+			return MixingSoundPlayer.PRIORITY_HIGH;
+		} else if (sound.equals("chat") || sound.startsWith("notification")) {
+			return MixingSoundPlayer.PRIORITY_LOW;
+		} else {
+			return MixingSoundPlayer.PRIORITY_NORMAL;
+		}
+	}
+
+	/**
+	 * Returns the paths of every sound and bughouse sound in the current sound
+	 * pack.
+	 */
+	protected String[] getSoundPaths() {
+		List<String> result = new ArrayList<String>(100);
+		if (soundKeys != null) {
+			for (String key : soundKeys) {
+				result.add(deriveSoundPath(key));
+			}
+		}
+		if (bughouseSoundKeys != null) {
+			for (String key : bughouseSoundKeys) {
+				result.add(deriveBughouseSoundPath(key));
+			}
+		}
+		return result.toArray(new String[0]);
+	}
+
 	private String deriveBughouseSoundPath(String sound) {
 		return deriveSoundPath("bughouse/" + sound);
 	}
@@ -191,20 +262,30 @@ public class SoundService {
 	}
 
 	/**
-	 * Speaks the specified text. Returns true if speech is configured and the
-	 * result was spoken.
+	 * Speaks the specified text as chat. Returns true if speech is configured
+	 * and the text was queued to be spoken.
 	 */
 	public boolean textToSpeech(String text) {
+		return textToSpeech(text, SpeechQueue.PRIORITY_CHAT);
+	}
+
+	/**
+	 * Queues the specified text to be spoken with one of the SpeechQueue
+	 * priorities. Returns true if speech is configured and the text was
+	 * queued to be spoken.
+	 */
+	public boolean textToSpeech(String text, int priority) {
 		boolean result = false;
 		if (Raptor.getInstance().getPreferences().getBoolean(PreferenceKeys.APP_SOUND_ENABLED)) {
 			if (speech == null && Raptor.getInstance().getPreferences().contains(PreferenceKeys.SPEECH_PROCESS_NAME)) {
 				initSpeech();
 			}
-			if (speech != null) {
-				speech.speak(text);
+			SpeechQueue queue = speechQueue;
+			if (queue != null) {
+				queue.add(text, priority);
 				result = true;
 				if (LOG.isDebugEnabled()) {
-					LOG.debug("Spoke " + text);
+					LOG.debug("Queued " + text + " " + queue.getSummary());
 				}
 			}
 		}
@@ -212,8 +293,49 @@ public class SoundService {
 	}
 
 	/**
-	 * I have tried caching the Clips. However i ran out of lines. So now i just
-	 * create a new clip each time.
+	 * Cached phrases are played on the MixingSoundPlayer. With other sound
+	 * players every text is spoken by the speech process.
+	 */
+	protected SpeechQueue createSpeechQueue(Speech speech) {
+		return new SpeechQueue(speech, new File(SPEECH_CACHE_DIR)) {
+			@Override
+			protected long playAudio(File wavFile, int priority) {
+				SoundPlayer player = soundPlayer;
+				if (!(player instanceof MixingSoundPlayer)
+						|| !Raptor.getInstance().getPreferences().getBoolean(PreferenceKeys.APP_SOUND_ENABLED)) {
+					return -1;
+				}
+				MixingSoundPlayer mixer = (MixingSoundPlayer) player;
+				long length = mixer.getLengthMillis(wavFile.getAbsolutePath());
+				if (length >= 0) {
+					mixer.play(wavFile.getAbsolutePath(), priority == PRIORITY_PARTNER ? MixingSoundPlayer.PRIORITY_HIGH
+							: MixingSoundPlayer.PRIORITY_NORMAL);
+				}
+				return length;
+			}
+
+			@Override
+			protected void stopAudio(File wavFile) {
+				SoundPlayer player = soundPlayer;
+				if (player instanceof MixingSoundPlayer) {
+					((MixingSoundPlayer) player).stop(wavFile.getAbsolutePath());
+				}
+			}
+
+			@Override
+			protected void unloadAudio(File wavFile) {
+				SoundPlayer player = soundPlayer;
+				if (player instanceof MixingSoundPlayer) {
+					((MixingSoundPlayer) player).unload(wavFile.getAbsolutePath());
+				}
+			}
+		};
+	}
+
+	/**
+	 * I have tried caching the Clips. However i ran out of lines. The
+	 * MixingSoundPlayer avoids that by decoding the sounds once and mixing
+	 * them into a single line.
 	 */
 	protected void init() {
 		LOG.info("Initializing sound service.");
@@ -0,0 +1,246 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.service;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import raptor.Raptor;
+import raptor.util.RaptorLogger;
+
+/**
+ * Orchestrates Raptor startup. Startup tasks declare the names of the tasks
+ * they depend on, and every task whose dependencies have completed is run in
+ * parallel on the ThreadService. The time spent in each task is recorded and
+ * written to STARTUP_REPORT_PATH once startup completes.
+ * 
+ * Services initialized here must have a synchronized getInstance, since the UI
+ * thread may request a service while it is being created on a startup thread.
+ */
+public class StartupService {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(StartupService.class);
+
+	public static final String STARTUP_REPORT_PATH = Raptor.USER_RAPTOR_HOME_PATH + "/logs/startup.txt";
+
+	/**
+	 * The longest the report will wait on tasks which have not yet completed.
+	 */
+	protected static final long REPORT_TIMEOUT_SECONDS = 60;
+
+	private static final StartupService instance = new StartupService();
+
+	public static StartupService getInstance() {
+		return instance;
+	}
+
+	/**
+	 * A named unit of startup work.
+	 */
+	protected class StartupTask implements Runnable {
+		protected String name;
+		protected String[] dependencies;
+		protected Runnable runnable;
+		protected CountDownLatch completed = new CountDownLatch(1);
+		protected long startNanos;
+		protected long endNanos;
+		protected String threadName;
+		protected Throwable error;
+
+		protected StartupTask(String name, String[] dependencies, Runnable runnable) {
+			this.name = name;
+			this.dependencies = dependencies;
+			this.runnable = runnable;
+		}
+
+		public void run() {
+			try {
+				for (String dependency : dependencies) {
+					StartupTask task = tasks.get(dependency);
+					if (task != null) {
+						task.completed.await();
+					}
+				}
+				startNanos = System.nanoTime();
+				threadName = Thread.currentThread().getName();
+				runnable.run();
+			} catch (Throwable t) {
+				error = t;
+				Raptor.getInstance().onError("Error in startup task " + name, t);
+			} finally {
+				endNanos = System.nanoTime();
+				completed.countDown();
+			}
+		}
+	}
+
+	protected Map<String, StartupTask> tasks = new LinkedHashMap<String, StartupTask>();
+	protected Map<String, Long> milestones = new LinkedHashMap<String, Long>();
+	protected long startupNanos = System.nanoTime();
+	protected boolean isStarted = false;
+	protected boolean isReportWritten = false;
+
+	private StartupService() {
+	}
+
+	/**
+	 * Adds a startup task. Tasks must be added before start is invoked, and
+	 * dependencies must name tasks which were added before this one.
+	 */
+	public synchronized void addTask(String name, String[] dependencies, Runnable runnable) {
+		if (isStarted) {
+			throw new IllegalStateException("Startup tasks can not be added after start. Task: " + name);
+		}
+		for (String dependency : dependencies) {
+			if (!tasks.containsKey(dependency)) {
+				throw new IllegalArgumentException("Startup task " + name + " depends on unknown task " + dependency);
+			}
+		}
+		tasks.put(name, new StartupTask(name, dependencies, runnable));
+	}
+
+	/**
+	 * Blocks until the specified task has completed.
+	 */
+	public void awaitTask(String name) {
+		StartupTask task = getTask(name);
+		if (task != null) {
+			try {
+				task.completed.await();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Records the time the named milestone was reached, i.e. the first board
+	 * being shown. Milestones reached after the report was written cause the
+	 * report to be rewritten.
+	 */
+	public synchronized void markMilestone(String name) {
+		if (!milestones.containsKey(name)) {
+			milestones.put(name, System.nanoTime());
+			if (isReportWritten) {
+				ThreadService.getInstance().run(new Runnable() {
+					public void run() {
+						writeReport();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Starts every task. Tasks are queued in the order they were added, since
+	 * dependencies always precede their dependents a task never waits on a
+	 * task which has not been queued.
+	 * 
+	 * The executor is used directly because ThreadService.run vetoes runnables
+	 * until the RaptorWindow exists. Tasks handle their own errors.
+	 */
+	public synchronized void start() {
+		isStarted = true;
+		for (StartupTask task : tasks.values()) {
+			ThreadService.getInstance().getExecutor().execute(task);
+		}
+	}
+
+	/**
+	 * Writes the startup timeline to STARTUP_REPORT_PATH on a ThreadService
+	 * thread once all tasks have completed.
+	 */
+	public void writeReportWhenComplete() {
+		ThreadService.getInstance().run(new Runnable() {
+			public void run() {
+				try {
+					for (StartupTask task : getTasks()) {
+						if (!task.completed.await(REPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+							LOG.warn("Startup task " + task.name + " did not complete, writing a partial report.");
+						}
+					}
+					writeReport();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the startup timeline. Each task is listed with the time it
+	 * started relative to startup and how long it ran.
+	 */
+	public synchronized String getReport() {
+		StringBuilder result = new StringBuilder(1000);
+		result.append("Raptor startup timeline ").append(new Date()).append("\n");
+		result.append(String.format("%-25s %10s %10s  %s%n", "Task", "Start(ms)", "Took(ms)", "Thread"));
+		for (StartupTask task : tasks.values()) {
+			if (task.completed.getCount() > 0) {
+				result.append(String.format("%-25s %10s %10s  %s%n", task.name, "-", "-", "incomplete"));
+			} else {
+				result.append(String.format("%-25s %10d %10d  %s%s%n", task.name,
+						toMillis(task.startNanos - startupNanos), toMillis(task.endNanos - task.startNanos),
+						task.threadName, task.error == null ? "" : " FAILED " + task.error));
+			}
+		}
+		for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+			result.append(String.format("%-25s %10d%n", milestone.getKey(), toMillis(milestone.getValue()
+					- startupNanos)));
+		}
+		return result.toString();
+	}
+
+	protected void writeReport() {
+		String report = null;
+		synchronized (this) {
+			report = getReport();
+			isReportWritten = true;
+		}
+		LOG.info(report);
+		PrintWriter writer = null;
+		try {
+			new File(STARTUP_REPORT_PATH).getParentFile().mkdirs();
+			writer = new PrintWriter(new FileWriter(STARTUP_REPORT_PATH, false));
+			writer.print(report);
+			writer.flush();
+		} catch (IOException ioe) {
+			LOG.warn("Error writing startup report " + STARTUP_REPORT_PATH, ioe);
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+	}
+
+	protected synchronized StartupTask getTask(String name) {
+		return tasks.get(name);
+	}
+
+	protected synchronized List<StartupTask> getTasks() {
+		return new ArrayList<StartupTask>(tasks.values());
+	}
+
+	protected static long toMillis(long nanos) {
+		return nanos / 1000000L;
+	}
+}
@@ -16,6 +16,7 @@ package raptor.service;
 import java.io.File;
 
 import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIEnginePool;
 import raptor.util.OSUtils;
 import raptor.util.RaptorLogger;
 
@@ -43,6 +44,18 @@ public class UCIEngineService {
 			engine.quit();
 	}
 
+	/**
+	 * Returns a new pool of size copies of the default engine, each searching
+	 * with the specified number of threads and megabytes of hash. The pool
+	 * must be started before it is used and quit when it is no longer needed.
+	 * Its evaluations are stored in the shared analysis cache.
+	 */
+	public UCIEnginePool createEnginePool(int size, int threadsPerEngine, int hashPerEngine) {
+		UCIEnginePool result = new UCIEnginePool(getEngine(), size, threadsPerEngine, hashPerEngine);
+		result.setAnalysisCache(AnalysisCacheService.getInstance().getCache());
+		return result;
+	}
+
 	public UCIEngine getEngine() {
 		if (engine == null)
 			synchronized (this) {
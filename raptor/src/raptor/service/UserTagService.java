@@ -43,7 +43,7 @@ public class UserTagService {
 	public static boolean serviceCreated = false;
 	protected Map<String, Set<String>> tagToUsersMap = new TreeMap<String, Set<String>>();
 
-	public static UserTagService getInstance() {
+	public static synchronized UserTagService getInstance() {
 		if (singletonInstance != null)
 			return singletonInstance;
 
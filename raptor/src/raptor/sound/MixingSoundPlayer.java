@@ -0,0 +1,384 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.sound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import raptor.service.ThreadService;
+import raptor.util.RaptorLogger;
+
+/**
+ * A SoundPlayer which decodes each sound once into a PcmSound and plays every
+ * sound through a single open SourceDataLine. Overlapping sounds are mixed in
+ * software on a dedicated daemon thread. When more than MAX_VOICES sounds are
+ * playing the lowest priority sound is dropped.
+ * 
+ * Unlike the other SoundPlayers play does not block, so the SoundService does
+ * not need to launch it on a ThreadService thread.
+ */
+public class MixingSoundPlayer implements SoundPlayer {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(MixingSoundPlayer.class);
+
+	public static final int PRIORITY_LOW = 0;
+	public static final int PRIORITY_NORMAL = 5;
+	public static final int PRIORITY_HIGH = 10;
+
+	public static final float SAMPLE_RATE = 44100f;
+	public static final int CHANNELS = 2;
+	public static final int MAX_VOICES = 8;
+
+	/**
+	 * The number of frames mixed per write. 256 frames is about 6ms.
+	 */
+	protected static final int FRAMES_PER_CHUNK = 256;
+
+	/**
+	 * The line buffer is kept small, it is the dominant part of the latency.
+	 */
+	protected static final int CHUNKS_PER_LINE_BUFFER = 4;
+
+	/**
+	 * The same sound triggered again within this window is ignored. This
+	 * replaces the soundsPlaying check the other players use to avoid
+	 * flooding on bursts of identical bughouse sounds.
+	 */
+	protected static final long DUPLICATE_WINDOW_NANOS = 50L * 1000000L;
+
+	protected static class Voice {
+		protected PcmSound sound;
+		protected int priority;
+		protected int position;
+		protected long triggerNanos;
+		protected boolean isStarted;
+
+		protected Voice(PcmSound sound, int priority, long triggerNanos) {
+			this.sound = sound;
+			this.priority = priority;
+			this.triggerNanos = triggerNanos;
+		}
+	}
+
+	protected AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, SAMPLE_RATE, 16, CHANNELS,
+			CHANNELS * 2, SAMPLE_RATE, false);
+	protected Map<String, PcmSound> soundCache = new ConcurrentHashMap<String, PcmSound>();
+	protected List<Voice> voices = new ArrayList<Voice>(MAX_VOICES);
+	protected SourceDataLine line;
+	protected Thread mixerThread;
+	protected volatile boolean isDisposed = false;
+
+	protected long latencySamples;
+	protected long totalLatencyNanos;
+	protected long maxLatencyNanos;
+	protected long lastLatencyNanos;
+	protected long droppedCount;
+
+	public void dispose() {
+		LOG.info("Disposing MixingSoundPlayer " + getLatencyReport());
+		isDisposed = true;
+		synchronized (voices) {
+			voices.clear();
+			voices.notifyAll();
+		}
+		if (line != null) {
+			try {
+				line.stop();
+				line.close();
+			} catch (Throwable t) {
+			}
+			line = null;
+		}
+		mixerThread = null;
+		soundCache.clear();
+	}
+
+	/**
+	 * Opens the output line and starts the mixer thread. Throws a
+	 * RuntimeException if a line could not be opened, in which case the caller
+	 * should fall back to one of the other SoundPlayers.
+	 */
+	public void init() {
+		try {
+			line = openLine();
+		} catch (Throwable t) {
+			line = null;
+			throw new RuntimeException("Could not open a SourceDataLine for " + format, t);
+		}
+
+		mixerThread = new Thread(new Runnable() {
+			public void run() {
+				mixLoop();
+			}
+		});
+		mixerThread.setDaemon(true);
+		mixerThread.setName("MixingSoundPlayer Thread");
+		mixerThread.setPriority(Thread.MAX_PRIORITY);
+		mixerThread.start();
+	}
+
+	/**
+	 * Opens and starts the line the mixed sound is written to.
+	 */
+	protected SourceDataLine openLine() throws LineUnavailableException {
+		DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+		SourceDataLine result = (SourceDataLine) AudioSystem.getLine(info);
+		result.open(format, FRAMES_PER_CHUNK * format.getFrameSize() * CHUNKS_PER_LINE_BUFFER);
+		result.start();
+		return result;
+	}
+
+	/**
+	 * Decodes and caches the specified sounds so the first play of each does
+	 * not have to touch the disk.
+	 */
+	public void preload(String[] pathsToSounds) {
+		long startTime = System.currentTimeMillis();
+		int loaded = 0;
+		for (String path : pathsToSounds) {
+			if (getSound(path) != null) {
+				loaded++;
+			}
+		}
+		LOG.info("Preloaded " + loaded + " sounds in " + (System.currentTimeMillis() - startTime) + "ms");
+	}
+
+	public void play(String pathToSound) {
+		play(pathToSound, PRIORITY_NORMAL);
+	}
+
+	/**
+	 * Queues the sound for mixing and returns immediately. Sounds which have
+	 * not been preloaded are decoded on a ThreadService thread first.
+	 */
+	public void play(final String pathToSound, final int priority) {
+		if (isDisposed) {
+			return;
+		}
+		final long triggerNanos = System.nanoTime();
+		PcmSound sound = soundCache.get(pathToSound);
+		if (sound != null) {
+			addVoice(sound, priority, triggerNanos);
+		} else {
+			ThreadService.getInstance().run(new Runnable() {
+				public void run() {
+					PcmSound loadedSound = getSound(pathToSound);
+					if (loadedSound != null) {
+						addVoice(loadedSound, priority, triggerNanos);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Decodes the sound if needed and returns its length in milliseconds, or
+	 * -1 if it can not be decoded.
+	 */
+	public long getLengthMillis(String pathToSound) {
+		PcmSound sound = getSound(pathToSound);
+		return sound == null ? -1 : sound.getSamples().length * 1000L / CHANNELS / (long) SAMPLE_RATE;
+	}
+
+	/**
+	 * Removes the decoded sound from the cache.
+	 */
+	public void unload(String pathToSound) {
+		soundCache.remove(pathToSound);
+	}
+
+	/**
+	 * Stops every voice playing the specified sound.
+	 */
+	public void stop(String pathToSound) {
+		synchronized (voices) {
+			for (int i = voices.size() - 1; i >= 0; i--) {
+				if (voices.get(i).sound.getPath().equals(pathToSound)) {
+					voices.remove(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a one line summary of the measured trigger to audio latency. The
+	 * latency is the time from play being invoked to the first sample of the
+	 * sound being written, plus the audio already queued in the line ahead of
+	 * it.
+	 */
+	public String getLatencyReport() {
+		synchronized (voices) {
+			return "sounds=" + latencySamples + " avgLatency="
+					+ (latencySamples == 0 ? 0 : totalLatencyNanos / latencySamples / 1000) + "us maxLatency="
+					+ maxLatencyNanos / 1000 + "us lastLatency=" + lastLatencyNanos / 1000 + "us dropped="
+					+ droppedCount;
+		}
+	}
+
+	public long getLastLatencyNanos() {
+		synchronized (voices) {
+			return lastLatencyNanos;
+		}
+	}
+
+	public long getAverageLatencyNanos() {
+		synchronized (voices) {
+			return latencySamples == 0 ? 0 : totalLatencyNanos / latencySamples;
+		}
+	}
+
+	public long getDroppedCount() {
+		synchronized (voices) {
+			return droppedCount;
+		}
+	}
+
+	protected PcmSound getSound(String pathToSound) {
+		PcmSound result = soundCache.get(pathToSound);
+		if (result == null) {
+			try {
+				result = PcmSound.decode(pathToSound, SAMPLE_RATE, CHANNELS);
+				soundCache.put(pathToSound, result);
+			} catch (Throwable t) {
+				LOG.error("Error decoding sound " + pathToSound, t);
+			}
+		}
+		return result;
+	}
+
+	protected void addVoice(PcmSound sound, int priority, long triggerNanos) {
+		synchronized (voices) {
+			Voice lowest = null;
+			for (Voice voice : voices) {
+				if (voice.sound == sound && triggerNanos - voice.triggerNanos < DUPLICATE_WINDOW_NANOS) {
+					droppedCount++;
+					return;
+				}
+				if (lowest == null || voice.priority < lowest.priority) {
+					lowest = voice;
+				}
+			}
+
+			if (voices.size() >= MAX_VOICES) {
+				if (lowest.priority > priority) {
+					droppedCount++;
+					if (LOG.isDebugEnabled()) {
+						LOG.debug("Dropped sound " + sound.getPath() + " all voices are busy.");
+					}
+					return;
+				}
+				voices.remove(lowest);
+				droppedCount++;
+			}
+			voices.add(new Voice(sound, priority, triggerNanos));
+			voices.notifyAll();
+		}
+	}
+
+	protected void mixLoop() {
+		int samplesPerChunk = FRAMES_PER_CHUNK * CHANNELS;
+		int[] mix = new int[samplesPerChunk];
+		byte[] out = new byte[samplesPerChunk * 2];
+		int bytesPerSecond = (int) (SAMPLE_RATE * format.getFrameSize());
+
+		try {
+			while (!isDisposed) {
+				SourceDataLine currentLine = line;
+				if (currentLine == null) {
+					break;
+				}
+
+				synchronized (voices) {
+					while (voices.isEmpty() && !isDisposed) {
+						try {
+							voices.wait();
+						} catch (InterruptedException ie) {
+							return;
+						}
+					}
+					if (isDisposed) {
+						break;
+					}
+
+					Arrays.fill(mix, 0);
+					long now = System.nanoTime();
+					long queuedNanos = (currentLine.getBufferSize() - currentLine.available()) * 1000000000L
+							/ bytesPerSecond;
+
+					for (int i = voices.size() - 1; i >= 0; i--) {
+						Voice voice = voices.get(i);
+						short[] samples = voice.sound.getSamples();
+						int length = Math.min(samplesPerChunk, samples.length - voice.position);
+						for (int j = 0; j < length; j++) {
+							mix[j] += samples[voice.position + j];
+						}
+						voice.position += length;
+
+						if (!voice.isStarted) {
+							voice.isStarted = true;
+							recordLatency(now - voice.triggerNanos + queuedNanos);
+						}
+						if (voice.position >= samples.length) {
+							voices.remove(i);
+						}
+					}
+				}
+
+				for (int i = 0; i < samplesPerChunk; i++) {
+					int sample = mix[i];
+					if (sample > Short.MAX_VALUE) {
+						sample = Short.MAX_VALUE;
+					} else if (sample < Short.MIN_VALUE) {
+						sample = Short.MIN_VALUE;
+					}
+					out[2 * i] = (byte) sample;
+					out[2 * i + 1] = (byte) (sample >> 8);
+				}
+				// Blocks until there is room in the line, which paces the loop.
+				currentLine.write(out, 0, out.length);
+			}
+		} catch (Throwable t) {
+			if (!isDisposed) {
+				LOG.error("Error in MixingSoundPlayer mix loop", t);
+			}
+		} finally {
+			LOG.debug("Leaving MixingSoundPlayer mix loop");
+		}
+	}
+
+	/**
+	 * Must be invoked while holding the voices lock.
+	 */
+	protected void recordLatency(long latencyNanos) {
+		latencySamples++;
+		totalLatencyNanos += latencyNanos;
+		lastLatencyNanos = latencyNanos;
+		if (latencyNanos > maxLatencyNanos) {
+			maxLatencyNanos = latencyNanos;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MixingSoundPlayer " + format;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.sound;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A sound file decoded once into 16 bit signed PCM samples in the
+ * MixingSoundPlayer output format. Samples are interleaved by channel.
+ */
+public class PcmSound {
+	protected String path;
+	protected short[] samples;
+
+	public PcmSound(String path, short[] samples) {
+		this.path = path;
+		this.samples = samples;
+	}
+
+	/**
+	 * Decodes the specified sound file into a PcmSound with the specified
+	 * sample rate and channel count. The file is converted to 16 bit signed
+	 * PCM with the java sound converters, then resampled and remapped to the
+	 * target channels in software since most providers do not support sample
+	 * rate conversion.
+	 */
+	public static PcmSound decode(String pathToSound, float targetSampleRate, int targetChannels)
+			throws IOException, UnsupportedAudioFileException {
+		AudioInputStream sourceStream = AudioSystem.getAudioInputStream(new File(pathToSound));
+		AudioInputStream pcmStream = null;
+		try {
+			AudioFormat sourceFormat = sourceStream.getFormat();
+			AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), 16,
+					sourceFormat.getChannels(), sourceFormat.getChannels() * 2, sourceFormat.getSampleRate(), false);
+			pcmStream = AudioSystem.getAudioInputStream(pcmFormat, sourceStream);
+
+			byte[] bytes = readFully(pcmStream);
+			int sourceChannels = pcmFormat.getChannels();
+			int sourceFrames = bytes.length / (2 * sourceChannels);
+			short[] source = new short[sourceFrames * sourceChannels];
+			for (int i = 0; i < source.length; i++) {
+				source[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+			}
+
+			return new PcmSound(pathToSound, convert(source, sourceChannels, pcmFormat.getSampleRate(),
+					targetChannels, targetSampleRate));
+		} finally {
+			try {
+				if (pcmStream != null) {
+					pcmStream.close();
+				}
+			} catch (Throwable t) {
+			}
+			try {
+				sourceStream.close();
+			} catch (Throwable t) {
+			}
+		}
+	}
+
+	/**
+	 * Linearly resamples the interleaved source samples and maps the source
+	 * channels onto the target channels. Mono is copied to every target
+	 * channel, extra source channels are dropped.
+	 */
+	protected static short[] convert(short[] source, int sourceChannels, float sourceSampleRate, int targetChannels,
+			float targetSampleRate) {
+		int sourceFrames = source.length / sourceChannels;
+		if (sourceFrames == 0) {
+			return new short[0];
+		}
+		double step = sourceSampleRate / targetSampleRate;
+		int targetFrames = (int) Math.floor((sourceFrames - 1) / step) + 1;
+		short[] result = new short[targetFrames * targetChannels];
+
+		for (int frame = 0; frame < targetFrames; frame++) {
+			double sourcePosition = frame * step;
+			int index = (int) sourcePosition;
+			double fraction = sourcePosition - index;
+			int nextIndex = Math.min(index + 1, sourceFrames - 1);
+
+			for (int channel = 0; channel < targetChannels; channel++) {
+				int sourceChannel = Math.min(channel, sourceChannels - 1);
+				int first = source[index * sourceChannels + sourceChannel];
+				int second = source[nextIndex * sourceChannels + sourceChannel];
+				result[frame * targetChannels + channel] = (short) Math.round(first + (second - first) * fraction);
+			}
+		}
+		return result;
+	}
+
+	protected static byte[] readFully(AudioInputStream stream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(65536);
+		byte[] buffer = new byte[16384];
+		int read = 0;
+		while ((read = stream.read(buffer, 0, buffer.length)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the interleaved 16 bit samples. Callers must not modify the
+	 * array, it is shared by every voice playing this sound.
+	 */
+	public short[] getSamples() {
+		return samples;
+	}
+}
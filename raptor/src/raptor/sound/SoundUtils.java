@@ -24,14 +24,22 @@ public class SoundUtils {
 				.getString(PreferenceKeys.SOUND_PROCESS_NAME))) {
 			return new ProcessSoundPlayer();
 		} else {
-			String osName = System.getProperty("os.name");
-			if (osName.startsWith("Mac OS")) {
-				return new JavaxSampledSoundPlayer();
-			} else if (osName.startsWith("Windows")) {
-				return new JavaxSampledSoundPlayer();
-			} else {
-				return new LinuxSoundPlayer();
-			}
+			return new MixingSoundPlayer();
+		}
+	}
+
+	/**
+	 * Returns the SoundPlayer to use when a MixingSoundPlayer could not open
+	 * an output line.
+	 */
+	public static SoundPlayer getFallbackSoundPlayer() {
+		String osName = System.getProperty("os.name");
+		if (osName.startsWith("Mac OS")) {
+			return new JavaxSampledSoundPlayer();
+		} else if (osName.startsWith("Windows")) {
+			return new JavaxSampledSoundPlayer();
+		} else {
+			return new LinuxSoundPlayer();
 		}
 	}
 }
@@ -13,12 +13,9 @@
  */
 package raptor.speech;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.File;
 
 public class OSXSpeech extends ProcessSpeech {
-	protected Queue<String> speakQueue = new ConcurrentLinkedQueue<String>();
-
 	public OSXSpeech() {
 		super("say");
 	}
@@ -26,4 +23,9 @@ public class OSXSpeech extends ProcessSpeech {
 	public String getDescription() {
 		return "OSX native speech.";
 	}
+
+	@Override
+	protected String[] getSynthesizeCommand(String text, File wavFile) {
+		return new String[] { command, "-o", wavFile.getAbsolutePath(), "--data-format=LEI16@22050", text };
+	}
 }
@@ -13,70 +13,114 @@
  */
 package raptor.speech;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.File;
 
 import org.apache.commons.lang.StringUtils;
 
 import raptor.Raptor;
 import raptor.pref.PreferenceKeys;
-import raptor.service.ThreadService;
 
+/**
+ * Speaks text by running a process with the text as its last argument.
+ * espeak style processes can also write the text to a wav file with -w.
+ */
 public class ProcessSpeech implements Speech {
-	protected Queue<String> speakQueue;
-
 	protected String command;
+	protected volatile Process process;
+	protected volatile boolean isStopped;
 
 	public ProcessSpeech(String command) {
 		this.command = command;
-		speakQueue = new ConcurrentLinkedQueue<String>();
 	}
 
 	public void dispose() {
+		stop();
 	}
 
 	public void init() {
 	}
 
-	public void speak(final String text) {
+	public void speak(String text) {
 		if (StringUtils.isBlank(text))
 			return;
 
-		speakQueue.add(text);
-		ThreadService.getInstance().run(new Runnable() {
-			public void run() {
-				synchronized (ProcessSpeech.this) {
-					try {
-						long startTime = System.currentTimeMillis();
-						Process process = Runtime.getRuntime().exec(new String[] { command, speakQueue.poll() });
+		try {
+			run(new String[] { command, text });
+		} catch (Exception e) {
+			Raptor.getInstance().onError("Error occured speaking text: " + text, e);
+		}
+	}
 
-						while (System.currentTimeMillis() - startTime < Raptor.getInstance().getPreferences()
-								.getInt(PreferenceKeys.PROCESS_SPEECH_MAX_TIME_SECONDS)*1000) {
-							try {
-								process.exitValue();
-								break;
-							} catch (IllegalThreadStateException ie) {
-								try {
-									Thread.sleep(250);
-								} catch (InterruptedException ie2) {
-								}
-							}
-						}
+	public void stop() {
+		isStopped = true;
+		Process currentProcess = process;
+		if (currentProcess != null) {
+			try {
+				currentProcess.destroy();
+			} catch (Throwable t) {
+			}
+		}
+	}
 
-						// if process is still alive destroy it.
-						try {
-							process.exitValue();
-						} catch (IllegalThreadStateException ie) {
-							try {
-								process.destroy();
-							} catch (Throwable t) {
-							}
-						}
-					} catch (Exception e) {
-						Raptor.getInstance().onError("Error occured speaking text: " + text, e);
+	public boolean synthesize(String text, File wavFile) {
+		String[] synthesizeCommand = getSynthesizeCommand(text, wavFile);
+		if (synthesizeCommand == null || StringUtils.isBlank(text)) {
+			return false;
+		}
+		try {
+			return run(synthesizeCommand) && wavFile.length() > 0;
+		} catch (Exception e) {
+			Raptor.getInstance().onError("Error occured synthesizing text: " + text, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the command which writes the text to the wav file, or null if
+	 * the process can not write audio files.
+	 */
+	protected String[] getSynthesizeCommand(String text, File wavFile) {
+		String name = new File(command).getName();
+		if (name.startsWith("espeak")) {
+			return new String[] { command, "-w", wavFile.getAbsolutePath(), text };
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the command and waits for it to exit, for stop to be invoked or
+	 * for the maximum process time to pass. Returns true if the process
+	 * exited normally.
+	 */
+	protected synchronized boolean run(String[] commandLine) throws Exception {
+		isStopped = false;
+		long startTime = System.currentTimeMillis();
+		long maxTime = Raptor.getInstance().getPreferences().getInt(PreferenceKeys.PROCESS_SPEECH_MAX_TIME_SECONDS) * 1000L;
+		process = Runtime.getRuntime().exec(commandLine);
+		try {
+			while (!isStopped && System.currentTimeMillis() - startTime < maxTime) {
+				try {
+					return process.exitValue() == 0;
+				} catch (IllegalThreadStateException ie) {
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException ie2) {
 					}
 				}
 			}
-		});
+
+			// if process is still alive destroy it.
+			try {
+				process.exitValue();
+			} catch (IllegalThreadStateException ie) {
+				try {
+					process.destroy();
+				} catch (Throwable t) {
+				}
+			}
+			return false;
+		} finally {
+			process = null;
+		}
 	}
 }
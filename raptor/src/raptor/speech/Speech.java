@@ -13,10 +13,27 @@
  */
 package raptor.speech;
 
+import java.io.File;
+
 public interface Speech {
 	public void dispose();
 
 	public void init();
 
+	/**
+	 * Speaks the text and returns when it has been spoken or stop was
+	 * invoked. The SpeechQueue makes sure only one text is spoken at a time.
+	 */
 	public void speak(String text);
+
+	/**
+	 * Stops the text currently being spoken, if any.
+	 */
+	public void stop();
+
+	/**
+	 * Writes the spoken text to a wav file. Returns false if this speech can
+	 * not write audio files or if writing it failed.
+	 */
+	public boolean synthesize(String text, File wavFile);
 }
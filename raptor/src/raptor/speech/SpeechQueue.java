@@ -0,0 +1,437 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.speech;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import raptor.service.ThreadService;
+import raptor.util.RaptorLogger;
+
+/**
+ * Speaks texts one at a time on a ThreadService thread, most important
+ * first:
+ * <ul>
+ * <li>Partner tells are spoken before game callouts, which are spoken before
+ * chat. A text interrupts a less important text being spoken.</li>
+ * <li>Texts which waited longer than the MAX_AGE of their priority are
+ * dropped, they no longer matter.</li>
+ * <li>A text identical to one already waiting, or to the one just spoken, is
+ * collapsed into it.</li>
+ * <li>Short partner and game phrases are written to wav files the first time
+ * they are spoken and played from the file afterwards, so repeated bughouse
+ * callouts are not synthesized again. Short chat phrases are only cached
+ * once they are spoken a second time. This needs a Speech which can
+ * synthesize and an override of playAudio.</li>
+ * </ul>
+ */
+public class SpeechQueue {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(SpeechQueue.class);
+
+	public static final int PRIORITY_PARTNER = 0;
+	public static final int PRIORITY_GAME = 1;
+	public static final int PRIORITY_CHAT = 2;
+
+	/**
+	 * The milliseconds a text of each priority may wait before it is dropped.
+	 */
+	public static final long[] MAX_AGE = { 10000, 5000, 30000 };
+
+	/**
+	 * A text identical to the one spoken within this many milliseconds is
+	 * dropped.
+	 */
+	public static final long DUPLICATE_WINDOW = 2000;
+
+	public static final int MAX_PENDING = 20;
+	public static final int MAX_CACHED_PHRASE_LENGTH = 32;
+	public static final int MAX_CACHED_PHRASES = 40;
+	public static final int MAX_SEEN_PHRASES = 200;
+
+	/**
+	 * A text waiting to be spoken.
+	 */
+	protected static class Entry {
+		protected String text;
+		protected String key;
+		protected int priority;
+		protected long queuedTime;
+
+		public Entry(String text, String key, int priority, long queuedTime) {
+			this.text = text;
+			this.key = key;
+			this.priority = priority;
+			this.queuedTime = queuedTime;
+		}
+	}
+
+	protected Speech speech;
+	protected File cacheDir;
+	protected List<Entry> pending = new ArrayList<Entry>(MAX_PENDING);
+	protected Map<String, File> phraseCache = new LinkedHashMap<String, File>(16, 0.75f, true);
+	/**
+	 * Chat phrases spoken without being cached.
+	 */
+	protected Map<String, Boolean> seenPhrases = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_SEEN_PHRASES;
+		}
+	};
+	protected Entry current;
+	protected File currentAudio;
+	protected String lastKey;
+	protected long lastSpokenTime;
+	protected int nextFileId;
+	protected boolean isRunning;
+	protected boolean isInterrupted;
+	protected boolean isSynthesizeSupported = true;
+	protected boolean isDisposed;
+	protected long collapsed;
+	protected long expired;
+	protected long interrupted;
+	protected long synthesized;
+	protected long cacheHits;
+
+	/**
+	 * Creates a SpeechQueue which speaks with speech. Phrases are cached in
+	 * cacheDir, which is emptied first. If cacheDir is null nothing is
+	 * cached.
+	 */
+	public SpeechQueue(Speech speech, File cacheDir) {
+		this.speech = speech;
+		this.cacheDir = cacheDir;
+		if (cacheDir != null) {
+			deleteCacheFiles();
+			cacheDir.mkdirs();
+		}
+	}
+
+	/**
+	 * Queues the text to be spoken with the specified priority.
+	 */
+	public void add(String text, int priority) {
+		if (StringUtils.isBlank(text)) {
+			return;
+		}
+		text = text.trim();
+		priority = Math.max(PRIORITY_PARTNER, Math.min(PRIORITY_CHAT, priority));
+		String key = text.toLowerCase();
+		boolean isStarting = false;
+
+		synchronized (this) {
+			if (isDisposed) {
+				return;
+			}
+			long now = currentTimeMillis();
+			removeExpired(now);
+
+			if (key.equals(lastKey) && now - lastSpokenTime < DUPLICATE_WINDOW) {
+				collapsed++;
+				return;
+			}
+			for (Entry entry : pending) {
+				if (entry.key.equals(key)) {
+					entry.priority = Math.min(entry.priority, priority);
+					collapsed++;
+					return;
+				}
+			}
+
+			if (pending.size() >= MAX_PENDING) {
+				Entry leastImportant = null;
+				for (Entry entry : pending) {
+					if (leastImportant == null || entry.priority > leastImportant.priority) {
+						leastImportant = entry;
+					}
+				}
+				if (leastImportant.priority < priority) {
+					expired++;
+					return;
+				}
+				pending.remove(leastImportant);
+				expired++;
+			}
+			pending.add(new Entry(text, key, priority, now));
+
+			if (current != null && current.priority > priority) {
+				interruptCurrent();
+			}
+			if (!isRunning) {
+				isRunning = true;
+				isStarting = true;
+			}
+		}
+
+		if (isStarting) {
+			submit(new Runnable() {
+				public void run() {
+					speakPending();
+				}
+
+				@Override
+				public String toString() {
+					return "SpeechQueue.speakPending runnable";
+				}
+			});
+		}
+	}
+
+	/**
+	 * Drops the pending texts, stops the one being spoken and deletes the
+	 * cached phrases.
+	 */
+	public void dispose() {
+		LOG.info("Disposing SpeechQueue " + getSummary());
+		synchronized (this) {
+			isDisposed = true;
+			pending.clear();
+			interruptCurrent();
+		}
+		speech.dispose();
+		deleteCacheFiles();
+	}
+
+	/**
+	 * Returns a one line summary of what the queue has done.
+	 */
+	public synchronized String getSummary() {
+		return "pending=" + pending.size() + " collapsed=" + collapsed + " expired=" + expired + " interrupted="
+				+ interrupted + " synthesized=" + synthesized + " cacheHits=" + cacheHits;
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Plays the wav file and returns its length in milliseconds, or -1 if it
+	 * can not be played. Returns -1 by default.
+	 */
+	protected long playAudio(File wavFile, int priority) {
+		return -1;
+	}
+
+	/**
+	 * Stops the wav file passed to playAudio.
+	 */
+	protected void stopAudio(File wavFile) {
+	}
+
+	/**
+	 * Releases anything held for the wav file, which is about to be deleted.
+	 */
+	protected void unloadAudio(File wavFile) {
+	}
+
+	protected void submit(Runnable runnable) {
+		ThreadService.getInstance().run(runnable);
+	}
+
+	/**
+	 * Speaks the pending texts until there are none left.
+	 */
+	protected void speakPending() {
+		while (true) {
+			Entry entry = null;
+			synchronized (this) {
+				removeExpired(currentTimeMillis());
+				for (Entry candidate : pending) {
+					if (entry == null || candidate.priority < entry.priority) {
+						entry = candidate;
+					}
+				}
+				if (entry == null || isDisposed) {
+					isRunning = false;
+					return;
+				}
+				pending.remove(entry);
+				current = entry;
+				isInterrupted = false;
+			}
+
+			try {
+				speak(entry);
+			} catch (Throwable t) {
+				LOG.error("Error speaking " + entry.text, t);
+			} finally {
+				synchronized (this) {
+					current = null;
+					currentAudio = null;
+					lastKey = entry.key;
+					lastSpokenTime = currentTimeMillis();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Plays the cached phrase of the entry if there is one, otherwise speaks
+	 * it.
+	 */
+	protected void speak(Entry entry) {
+		File wavFile = getCachedPhrase(entry);
+		synchronized (this) {
+			if (isInterrupted) {
+				return;
+			}
+			currentAudio = wavFile;
+		}
+		if (wavFile != null) {
+			long length = playAudio(wavFile, entry.priority);
+			if (length >= 0) {
+				waitForAudio(length);
+				return;
+			}
+			synchronized (this) {
+				currentAudio = null;
+			}
+		}
+		speech.speak(entry.text);
+	}
+
+	/**
+	 * Returns the wav file of the phrase, synthesizing it if it is short and
+	 * has not been cached yet. Chat phrases are only synthesized the second
+	 * time they are spoken. Returns null if it is not cached.
+	 */
+	protected File getCachedPhrase(Entry entry) {
+		if (cacheDir == null || entry.text.length() > MAX_CACHED_PHRASE_LENGTH) {
+			return null;
+		}
+		File result = null;
+		synchronized (this) {
+			if (!isSynthesizeSupported) {
+				return null;
+			}
+			result = phraseCache.get(entry.key);
+			if (result != null) {
+				cacheHits++;
+				return result;
+			}
+			if (entry.priority == PRIORITY_CHAT && seenPhrases.put(entry.key, Boolean.TRUE) == null) {
+				return null;
+			}
+			seenPhrases.remove(entry.key);
+			result = new File(cacheDir, "phrase" + nextFileId++ + ".wav");
+		}
+
+		if (speech.synthesize(entry.text, result)) {
+			synchronized (this) {
+				synthesized++;
+				phraseCache.put(entry.key, result);
+				trimPhraseCache();
+			}
+			return result;
+		}
+		result.delete();
+		synchronized (this) {
+			if (synthesized == 0 && !isInterrupted) {
+				LOG.info("Speech can not synthesize to files, phrases will not be cached.");
+				isSynthesizeSupported = false;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the least recently used phrases over MAX_CACHED_PHRASES, except
+	 * the one being played. Must be invoked while holding the lock on this.
+	 */
+	protected void trimPhraseCache() {
+		for (Iterator<File> iterator = phraseCache.values().iterator(); phraseCache.size() > MAX_CACHED_PHRASES
+				&& iterator.hasNext();) {
+			File file = iterator.next();
+			if (!file.equals(currentAudio)) {
+				iterator.remove();
+				unloadAudio(file);
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Must be invoked while holding the lock on this.
+	 */
+	protected void interruptCurrent() {
+		if (current == null) {
+			return;
+		}
+		interrupted++;
+		isInterrupted = true;
+		if (currentAudio != null) {
+			stopAudio(currentAudio);
+		} else {
+			speech.stop();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Must be invoked while holding the lock on this.
+	 */
+	protected void removeExpired(long now) {
+		for (Iterator<Entry> iterator = pending.iterator(); iterator.hasNext();) {
+			Entry entry = iterator.next();
+			if (now - entry.queuedTime > MAX_AGE[entry.priority]) {
+				iterator.remove();
+				expired++;
+			}
+		}
+	}
+
+	protected synchronized void waitForAudio(long length) {
+		long endTime = System.currentTimeMillis() + length;
+		long remaining = length;
+		while (!isInterrupted && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			remaining = endTime - System.currentTimeMillis();
+		}
+	}
+
+	protected void deleteCacheFiles() {
+		synchronized (this) {
+			for (File file : phraseCache.values()) {
+				unloadAudio(file);
+			}
+			phraseCache.clear();
+		}
+		if (cacheDir != null) {
+			File[] files = cacheDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.getName().endsWith(".wav")) {
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+}
@@ -15,6 +15,8 @@ package raptor.swt;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
@@ -31,10 +33,9 @@ import raptor.chat.Bugger;
 import raptor.chat.Partnership;
 import raptor.connector.Connector;
 import raptor.international.L10n;
-import raptor.pref.PreferenceKeys;
 import raptor.service.BughouseService;
 import raptor.service.BughouseService.BughouseServiceListener;
-import raptor.service.ThreadService;
+import raptor.service.RefreshScheduler;
 import raptor.swt.RaptorTable.RaptorTableAdapter;
 import raptor.util.RaptorRunnable;
 
@@ -50,21 +51,6 @@ public class BugGames extends Composite {
 
 	protected RaptorTable bugGamesTable;
 	protected boolean isActive = false;
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive && !isDisposed()) {
-				service.refreshGamesInProgress();
-				ThreadService
-						.getInstance()
-						.scheduleOneShot(
-								Raptor.getInstance()
-										.getPreferences()
-										.getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-								this);
-			}
-		}
-	};
-
 	protected BughouseServiceListener listener = new BughouseServiceListener() {
 		public void availablePartnershipsChanged(Partnership[] newPartnerships) {
 		}
@@ -78,11 +64,19 @@ public class BugGames extends Composite {
 		}
 	};
 
-	public BugGames(Composite parent, BughouseService service) {
+	public BugGames(Composite parent, final BughouseService service) {
 		super(parent, SWT.NONE);
 		this.service = service;
 		init();
 		service.addBughouseServiceListener(listener);
+		addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				isActive = false;
+				service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_GAMES, BugGames.this,
+						false);
+				service.removeBughouseServiceListener(listener);
+			}
+		});
 	}
 
 	public Connector getConnector() {
@@ -145,28 +139,21 @@ public class BugGames extends Composite {
 
 			}
 		});
-		service.refreshGamesInProgress();
+		service.getConnector().getRefreshScheduler().requestNow(RefreshScheduler.BUG_GAMES);
 		refreshTable();
 	}
 
 	public void onActivate() {
 		if (!isActive) {
 			isActive = true;
-			service.refreshGamesInProgress();
-			ThreadService
-					.getInstance()
-					.scheduleOneShot(
-							Raptor.getInstance()
-									.getPreferences()
-									.getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-							timer);
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_GAMES, this, true);
 		}
-
 	}
 
 	public void onPassivate() {
 		if (isActive) {
 			isActive = false;
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_GAMES, this, false);
 		}
 	}
 
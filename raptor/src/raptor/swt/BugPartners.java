@@ -41,7 +41,7 @@ import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.service.BughouseService;
 import raptor.service.BughouseService.BughouseServiceListener;
-import raptor.service.ThreadService;
+import raptor.service.RefreshScheduler;
 import raptor.service.UserTagService;
 import raptor.swt.RaptorTable.RaptorTableAdapter;
 import raptor.swt.chat.ChatUtils;
@@ -65,21 +65,6 @@ public class BugPartners extends Composite {
 	protected static L10n local;
 	protected RaptorTable table;
 
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive && !isDisposed()) {
-				service.refreshUnpartneredBuggers();
-				ThreadService
-						.getInstance()
-						.scheduleOneShot(
-								Raptor.getInstance()
-										.getPreferences()
-										.getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-								this);
-			}
-		}
-	};
-
 	protected BughouseServiceListener listener = new BughouseServiceListener() {
 		public void availablePartnershipsChanged(Partnership[] newPartnerships) {
 		}
@@ -101,6 +86,7 @@ public class BugPartners extends Composite {
 		addDisposeListener(new DisposeListener() {
 			public void widgetDisposed(DisposeEvent e) {
 				isActive = false;
+				service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_UNPARTNERED_BUGGERS, BugPartners.this, false);
 				service.removeBughouseServiceListener(listener);
 			}
 		});
@@ -258,28 +244,21 @@ public class BugPartners extends Composite {
 				}
 			}
 		});
-		service.refreshUnpartneredBuggers();
+		service.getConnector().getRefreshScheduler().requestNow(RefreshScheduler.BUG_UNPARTNERED_BUGGERS);
 		refreshTable();
 	}
 
 	public void onActivate() {
 		if (!isActive) {
 			isActive = true;
-			service.refreshUnpartneredBuggers();
-			ThreadService
-					.getInstance()
-					.scheduleOneShot(
-							Raptor.getInstance()
-									.getPreferences()
-									.getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-							timer);
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_UNPARTNERED_BUGGERS, this, true);
 		}
-
 	}
 
 	public void onPassivate() {
 		if (isActive) {
 			isActive = false;
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_UNPARTNERED_BUGGERS, this, false);
 		}
 	}
 
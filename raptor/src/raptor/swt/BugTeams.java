@@ -42,7 +42,7 @@ import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.service.BughouseService;
 import raptor.service.BughouseService.BughouseServiceListener;
-import raptor.service.ThreadService;
+import raptor.service.RefreshScheduler;
 import raptor.swt.RaptorTable.RaptorTableAdapter;
 import raptor.swt.chat.ChatUtils;
 import raptor.util.RaptorRunnable;
@@ -60,18 +60,6 @@ public class BugTeams extends Composite {
 	protected Button isRated;
 	protected static L10n local = L10n.getInstance();
 
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive && !isDisposed()) {
-				service.refreshAvailablePartnerships();
-				ThreadService.getInstance().scheduleOneShot(
-						Raptor.getInstance().getPreferences().getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL)
-								* 1000,
-						this);
-			}
-		}
-	};
-
 	protected BughouseServiceListener listener = new BughouseServiceListener() {
 		public void availablePartnershipsChanged(Partnership[] newPartnerships) {
 			refreshTable();
@@ -92,6 +80,7 @@ public class BugTeams extends Composite {
 		addDisposeListener(new DisposeListener() {
 			public void widgetDisposed(DisposeEvent e) {
 				isActive = false;
+				service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_AVAILABLE_TEAMS, BugTeams.this, false);
 				service.removeBughouseServiceListener(listener);
 			}
 		});
@@ -441,7 +430,7 @@ public class BugTeams extends Composite {
 				matchAll(3, 0);
 			}
 		});
-		service.refreshAvailablePartnerships();
+		service.getConnector().getRefreshScheduler().requestNow(RefreshScheduler.BUG_AVAILABLE_TEAMS);
 		refreshTable();
 	}
 
@@ -550,17 +539,14 @@ public class BugTeams extends Composite {
 	public void onActivate() {
 		if (!isActive) {
 			isActive = true;
-			service.refreshAvailablePartnerships();
-			ThreadService.getInstance().scheduleOneShot(
-					Raptor.getInstance().getPreferences().getInt(PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-					timer);
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_AVAILABLE_TEAMS, this, true);
 		}
-
 	}
 
 	public void onPassivate() {
 		if (isActive) {
 			isActive = false;
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.BUG_AVAILABLE_TEAMS, this, false);
 		}
 	}
 
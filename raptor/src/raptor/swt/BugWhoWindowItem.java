@@ -31,7 +31,6 @@ import raptor.connector.Connector;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.service.BughouseService;
-import raptor.service.ThreadService;
 
 public class BugWhoWindowItem implements RaptorConnectorWindowItem {
 	public static final Quadrant[] MOVE_TO_QUADRANTS = { Quadrant.I,
@@ -47,23 +46,6 @@ public class BugWhoWindowItem implements RaptorConnectorWindowItem {
 	protected boolean isActive = false;
 	protected static L10n local = L10n.getInstance();
 
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive) {
-				service.refreshGamesInProgress();
-				ThreadService
-						.getInstance()
-						.scheduleOneShot(
-								Raptor
-										.getInstance()
-										.getPreferences()
-										.getInt(
-												PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-								this);
-			}
-		}
-	};
-
 	public BugWhoWindowItem(BughouseService service) {
 		this.service = service;
 	}
@@ -38,14 +38,13 @@ import org.eclipse.swt.widgets.TabItem;
 import raptor.Quadrant;
 import raptor.Raptor;
 import raptor.RaptorConnectorWindowItem;
-import raptor.chat.ChatType;
 import raptor.connector.Connector;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.service.GameService.GameInfo;
 import raptor.service.GameService.GameServiceAdapter;
 import raptor.service.GameService.GameServiceListener;
-import raptor.service.ThreadService;
+import raptor.service.RefreshScheduler;
 import raptor.swt.RaptorTable.RaptorTableAdapter;
 import raptor.util.IntegerComparator;
 import raptor.util.RaptorRunnable;
@@ -92,17 +91,6 @@ public class GamesWindowItem implements RaptorConnectorWindowItem {
 	protected boolean isActive = false;
 	protected static L10n local;
 
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive && !composite.isDisposed()) {
-				issueGamesMessage();
-				// Never drop this below 60 seconds. It causes bandwidth
-				// issues with fics.
-				ThreadService.getInstance().scheduleOneShot(60 * 1000, this);
-			}
-		}
-	};
-
 	protected GameServiceListener listener = new GameServiceAdapter() {
 		@Override
 		public void gameInfoChanged() {
@@ -145,6 +133,7 @@ public class GamesWindowItem implements RaptorConnectorWindowItem {
 
 	public void dispose() {
 		isActive = false;
+		connector.getRefreshScheduler().setVisible(RefreshScheduler.GAMES, this, false);
 		composite.dispose();
 		connector.getGameService().removeGameServiceListener(listener);
 	}
@@ -265,22 +254,23 @@ public class GamesWindowItem implements RaptorConnectorWindowItem {
 
 	public void sendGamesMessage() {
 		if (isActive && connector.isLoggedIn()) {
-			connector.sendMessage("$$games", true, ChatType.GAMES);
+			connector.getRefreshScheduler().requestNow(RefreshScheduler.GAMES);
 		}
 	}
 
 	public void onActivate() {
 		if (!isActive) {
 			isActive = true;
-			sendGamesMessage();
-			// Never drop this below 1 minute, it causes fics bandwidth issues.
-			ThreadService.getInstance().scheduleOneShot(60 * 1000, timer);
+			// The scheduler never polls games more than once a minute, it
+			// causes fics bandwidth issues.
+			connector.getRefreshScheduler().setVisible(RefreshScheduler.GAMES, this, true);
 		}
 	}
 
 	public void onPassivate() {
 		if (isActive) {
 			isActive = false;
+			connector.getRefreshScheduler().setVisible(RefreshScheduler.GAMES, this, false);
 		}
 	}
 
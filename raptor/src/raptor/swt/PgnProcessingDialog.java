@@ -34,6 +34,7 @@ import org.eclipse.swt.widgets.Shell;
 
 import raptor.Raptor;
 import raptor.chess.Game;
+import raptor.chess.GameRecord;
 import raptor.chess.pgn.LenientPgnParserListener;
 import raptor.chess.pgn.PgnHeader;
 import raptor.chess.pgn.PgnParserError;
@@ -71,19 +72,21 @@ public class PgnProcessingDialog extends Dialog {
 			if (isClosed) {
 				throw new RuntimeException("Closed");
 			} else {
+				GameRecord record = GameRecord.fromGame(game);
 				PgnParseResultsRow row = new PgnParseResultsRow();
-				row.setVariant(StringUtils.defaultString(game.getHeader(PgnHeader.Variant), "?"));
-				row.setDate(StringUtils.defaultString(game.getHeader(PgnHeader.Date), "?"));
-				row.setEvent(StringUtils.defaultString(game.getHeader(PgnHeader.Event), "?"));
-				row.setWhite(StringUtils.defaultString(game.getHeader(PgnHeader.White), "?"));
-				row.setWhiteElo(StringUtils.defaultString(game.getHeader(PgnHeader.WhiteElo), "?"));
-				row.setBlack(StringUtils.defaultString(game.getHeader(PgnHeader.Black), "?"));
-				row.setBlackElo(StringUtils.defaultString(game.getHeader(PgnHeader.BlackElo), "?"));
-				row.setResultDescription(StringUtils.defaultString(game.getHeader(PgnHeader.Result), "?"));
-				row.setEco(StringUtils.defaultString(game.getHeader(PgnHeader.ECO), "?"));
-				row.setOpening(StringUtils.defaultString(game.getHeader(PgnHeader.Opening), "?"));
+				row.setVariant(StringUtils.defaultString(record.getHeader(PgnHeader.Variant), "?"));
+				row.setDate(StringUtils.defaultString(record.getHeader(PgnHeader.Date), "?"));
+				row.setEvent(StringUtils.defaultString(record.getHeader(PgnHeader.Event), "?"));
+				row.setWhite(StringUtils.defaultString(record.getHeader(PgnHeader.White), "?"));
+				row.setWhiteElo(StringUtils.defaultString(record.getHeader(PgnHeader.WhiteElo), "?"));
+				row.setBlack(StringUtils.defaultString(record.getHeader(PgnHeader.Black), "?"));
+				row.setBlackElo(StringUtils.defaultString(record.getHeader(PgnHeader.BlackElo), "?"));
+				row.setResultDescription(StringUtils.defaultString(record.getHeader(PgnHeader.Result), "?"));
+				row.setEco(StringUtils.defaultString(record.getHeader(PgnHeader.ECO), "?"));
+				row.setOpening(StringUtils.defaultString(record.getHeader(PgnHeader.Opening), "?"));
+				row.setRecord(record);
 				row.setLineNumber(lineNumber);
-				row.setResult(game.getResult());
+				row.setResult(record.getResult());
 				rows.add(row);
 
 				if (rows.size() % 20 == 0) {
@@ -13,8 +13,8 @@
  */
 package raptor.swt;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -38,6 +38,8 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.ToolTip;
 
@@ -45,6 +47,7 @@ import raptor.Raptor;
 import raptor.chat.Seek;
 import raptor.pref.PreferenceKeys;
 import raptor.service.SeekService;
+import raptor.util.GridIndex;
 import raptor.util.RaptorLogger;
 
 /**
@@ -56,6 +59,12 @@ public class SeekGraph extends Canvas {
 
 	private static final int SEEK_SIZE = 10;
 
+	/**
+	 * A refresh changing more seek locations than this repaints the whole
+	 * graph instead of each location.
+	 */
+	private static final int MAX_PARTIAL_REDRAWS = 100;
+
 	/**
 	 * @param args
 	 */
@@ -119,7 +128,25 @@ public class SeekGraph extends Canvas {
 
 	private final Map<Point, List<Seek>> seeks;
 
-	private final Map<Point, Point> screen;
+	/**
+	 * The top left corner of each seek location on screen, for a graph of
+	 * indexedWidth x indexedHeight.
+	 */
+	private final Map<Point, Point> screenPoints;
+
+	/**
+	 * Finds the seek location under the mouse.
+	 */
+	private final GridIndex<Point> index;
+
+	private int indexedWidth = -1;
+
+	private int indexedHeight = -1;
+
+	/**
+	 * The axes and legend, drawn once for each size.
+	 */
+	private Image backgroundImage;
 
 	private int inset;
 
@@ -163,7 +190,8 @@ public class SeekGraph extends Canvas {
 		});
 
 		seeks = new HashMap<Point, List<Seek>>();
-		screen = new HashMap<Point, Point>();
+		screenPoints = new HashMap<Point, Point>();
+		index = new GridIndex<Point>(SEEK_SIZE * 2);
 		inset = 20;
 
 		tooltip = new ToolTip(parent.getShell(), SWT.BALLOON);
@@ -171,29 +199,36 @@ public class SeekGraph extends Canvas {
 		addMouseMoveListener(new MouseMoveListener() {
 
 			public void mouseMove(MouseEvent e) {
-				Point where = new Point(e.x, e.y);
-				boolean showing = false;
-
-				for (Point loc : screen.keySet()) {
-
-					Rectangle rect = new Rectangle(loc.x, loc.y, SEEK_SIZE,
-							SEEK_SIZE);
-
-					if (rect.contains(where)) {
-						showAcceptPopup(where, loc, rect);
-						showing = true;
-						break;
-					}
-				}
-
-				if (!showing) {
-					tooltip.setVisible(showing);
+				Point loc = getSeekLocationAt(e.x, e.y);
+				if (loc != null) {
+					Point screenPoint = screenPoints.get(loc);
+					showAcceptPopup(loc, new Rectangle(screenPoint.x,
+							screenPoint.y, SEEK_SIZE, SEEK_SIZE));
+				} else {
+					tooltip.setVisible(false);
 					// we're not pointing at anything, so reset _lastPopupRect
 					lastPopupRect = null;
 				}
 			}
 		});
 
+		// Every location moves when the size changes.
+		addListener(SWT.Resize, new Listener() {
+			public void handleEvent(Event event) {
+				redraw();
+			}
+		});
+
+		addListener(SWT.Dispose, new Listener() {
+			public void handleEvent(Event event) {
+				disposeBackground();
+				if (legendImage != null) {
+					legendImage.dispose();
+					legendImage = null;
+				}
+			}
+		});
+
 		addMouseListener(new MouseAdapter() {
 
 			@Override
@@ -205,12 +240,16 @@ public class SeekGraph extends Canvas {
 	}
 
 	public void redoLegend() {
+		if (legendImage != null) {
+			legendImage.dispose();
+		}
 		legendImage = null;
+		disposeBackground();
 	}
 
 	/**
-	 * This is empirically faster then replace by one, as it just does one
-	 * repaint call
+	 * Replaces the seeks on the graph. Only the locations whose seeks were
+	 * added, removed or drawn differently are repainted.
 	 * 
 	 * @param incoming
 	 */
@@ -225,19 +264,71 @@ public class SeekGraph extends Canvas {
 
 				long before = System.nanoTime();
 
-				screen.clear();
+				Map<Point, List<Seek>> incomingSeeks = new HashMap<Point, List<Seek>>();
+				for (Seek seek : incoming) {
+					addSeek(incomingSeeks, seek);
+				}
+
+				Rectangle clientArea = getClientArea();
+				if (clientArea.width > 0 && clientArea.height > 0) {
+					updateIndex(clientArea.width, clientArea.height);
+				}
+
+				List<Point> changed = new ArrayList<Point>();
+				for (Point loc : seeks.keySet()) {
+					if (!incomingSeeks.containsKey(loc)) {
+						changed.add(loc);
+					}
+				}
+				for (Map.Entry<Point, List<Seek>> entry : incomingSeeks
+						.entrySet()) {
+					List<Seek> existing = seeks.get(entry.getKey());
+					if (existing == null
+							|| !isDrawnAlike(existing, entry.getValue())) {
+						changed.add(entry.getKey());
+					}
+				}
+
+				if (lastPopupRect != null) {
+					Point popupLoc = index.get(lastPopupRect.x,
+							lastPopupRect.y);
+					if (popupLoc != null
+							&& !hasSameAds(seeks.get(popupLoc), incomingSeeks
+									.get(popupLoc))) {
+						tooltip.setVisible(false);
+						lastPopupRect = null;
+					}
+				}
+
+				List<Point> dirty = new ArrayList<Point>(changed.size());
+				for (Point loc : changed) {
+					Point screenPoint = screenPoints.get(loc);
+					if (!incomingSeeks.containsKey(loc)) {
+						unindexLocation(loc);
+					} else if (screenPoint == null && indexedWidth != -1) {
+						screenPoint = indexLocation(loc, indexedWidth,
+								indexedHeight);
+					}
+					if (screenPoint != null) {
+						dirty.add(screenPoint);
+					}
+				}
+
 				seeks.clear();
-				lastPopupRect = null;
-				tooltip.setVisible(false);
+				seeks.putAll(incomingSeeks);
 
-				for (Seek seek : incoming) {
-					addSeek(seek, true);
+				if (changed.size() > MAX_PARTIAL_REDRAWS) {
+					redraw();
+				} else {
+					for (Point screenPoint : dirty) {
+						redrawLocation(screenPoint);
+					}
 				}
-				redraw();
 				long after = System.nanoTime();
 
 				if (LOG.isDebugEnabled()) {
-					LOG.debug("Time to reload: " + (after - before));
+					LOG.debug("Time to reload: " + (after - before)
+							+ " changed locations: " + changed.size());
 				}
 			}
 		});
@@ -245,6 +336,7 @@ public class SeekGraph extends Canvas {
 
 	public void setDrawingLegend(boolean value) {
 		isDrawingLegend = value;
+		disposeBackground();
 	}
 
 	public void setHScale(int[][] scale) {
@@ -254,10 +346,12 @@ public class SeekGraph extends Canvas {
 		for (int[] range : hscale) {
 			hfactor += range[1];
 		}
+		invalidateLayout();
 	}
 
 	public void setHStart(int start) {
 		hstart = start;
+		invalidateLayout();
 	}
 
 	public void setVScale(int[][] scale) {
@@ -267,30 +361,26 @@ public class SeekGraph extends Canvas {
 		for (int[] range : vscale) {
 			vfactor += range[1];
 		}
+		invalidateLayout();
 	}
 
 	public void setVStart(int start) {
 		vstart = start;
+		invalidateLayout();
 	}
 
 	protected void acceptGameAt(Point where) {
 		if (seekService != null) {
-			for (Map.Entry<Point, Point> pointPointEntry : screen.entrySet()) {
-				Rectangle rect = new Rectangle(pointPointEntry.getKey().x, pointPointEntry.getKey().y, SEEK_SIZE,
-						SEEK_SIZE);
-
-				if (rect.contains(where)) {
-					List<Seek> existing = seeks.get(pointPointEntry.getValue());
-					if (existing.size() == 1) {
-						seekService.getConnector().acceptSeek(
-								existing.get(0).getAd());
-					} else {
-						// TODO: show dialog to pick one
-						seekService.getConnector().acceptSeek(
-								existing.get(0).getAd());
-					}
-
-					break;
+			Point loc = getSeekLocationAt(where.x, where.y);
+			if (loc != null) {
+				List<Seek> existing = seeks.get(loc);
+				if (existing.size() == 1) {
+					seekService.getConnector().acceptSeek(
+							existing.get(0).getAd());
+				} else {
+					// TODO: show dialog to pick one
+					seekService.getConnector().acceptSeek(
+							existing.get(0).getAd());
 				}
 			}
 		}
@@ -305,39 +395,21 @@ public class SeekGraph extends Canvas {
 
 		int width = clientArea.width;
 		int height = clientArea.height;
+		if (width <= 0 || height <= 0) {
+			return;
+		}
 
 		Rectangle clip = event.gc.getClipping();
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Clip: " + clip);
 		}
 
-		// fix resize problem
-		if (clip.width == width && clip.height == height) {
-			// we're probably resizing, this will invalidate screen map
-			screen.clear();
-			lastPopupRect = null;
-		}
+		updateIndex(width, height);
 
 		GC gc = event.gc;
-
+		gc.drawImage(getBackgroundImage(width, height), 0, 0);
 		gc.setAntialias(SWT.ON);
-
-		// Fill with white background
-		gc.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_WHITE));
-		gc.fillRectangle(inset, inset, width - 2 * inset, height - 2 * inset);
-
-		drawHorizontalLines(gc, height, height - 2 * inset, width, width - 2
-				* inset);
-		drawVerticalLines(gc, height, height - 2 * inset, width, width - 2
-				* inset);
-
-		if (isDrawingLegend) {
-			drawLegend(gc, height, width);
-		}
-
-		drawPoints(gc, clip, width, height);
-
-		// TODO: dispose of something???
+		drawPoints(gc, clip);
 	}
 
 	protected Point scale(Point p, int width, int height) {
@@ -405,40 +477,39 @@ public class SeekGraph extends Canvas {
 		seek.setIncrement(incr);
 		seek.setRated(rated);
 
-		addSeek(seek, false);
+		addSeek(seek);
 	}
 
-	private void addSeek(Seek seek, boolean fullRepaint) {
+	private void addSeek(Seek seek) {
+		Point loc = new Point(getX(seek), getY(seek));
+		if (addSeek(seeks, seek) && indexedWidth != -1) {
+			Point screenPoint = screenPoints.get(loc);
+			if (screenPoint == null) {
+				screenPoint = indexLocation(loc, indexedWidth, indexedHeight);
+			}
+			redrawLocation(screenPoint);
+		}
+	}
 
+	/**
+	 * Adds the seek to the list at its location. Returns false if a seek with
+	 * the same ad was already there.
+	 */
+	private boolean addSeek(Map<Point, List<Seek>> target, Seek seek) {
 		Point loc = new Point(getX(seek), getY(seek));
-		List<Seek> existing = seeks.get(loc);
+		List<Seek> existing = target.get(loc);
 		if (existing == null) {
-			existing = new LinkedList<Seek>();
-			seeks.put(loc, existing);
+			existing = new ArrayList<Seek>(2);
+			target.put(loc, existing);
 		}
 
-		boolean already = false;
 		for (Seek s : existing) {
 			if (s.getAd().equals(seek.getAd())) {
-				already = true;
-				break;
-			}
-		}
-
-		if (!already) {
-			existing.add(seek);
-
-			if (!fullRepaint && isVisible()) {
-
-				int width = getClientArea().width;
-				int height = getClientArea().height;
-				Point where = scale(loc, width - 2 * inset, height - 2 * inset);
-				where.y = height - inset - where.y;
-                where.x += inset;
-				redraw(where.x - SEEK_SIZE / 2, where.y - SEEK_SIZE / 2,
-						SEEK_SIZE, SEEK_SIZE, false);
+				return false;
 			}
 		}
+		existing.add(seek);
+		return true;
 	}
 
 	private Image createSingleLegend(String text, Color color) {
@@ -517,6 +588,10 @@ public class SeekGraph extends Canvas {
 			cx += unrated.getBounds().width;
 			lg.drawImage(many, cx, 0);
 			lg.dispose();
+			computer.dispose();
+			rated.dispose();
+			unrated.dispose();
+			many.dispose();
 			// Raptor.getInstance().getImageRegistry().put(SEEK_LEGEND_KEY,
 			// legendImage);
 		}
@@ -530,16 +605,114 @@ public class SeekGraph extends Canvas {
 		gc.drawImage(legendImage, x, y);
 	}
 
-	private void drawPoints(GC gc, Rectangle clip, int width, int height) {
+	private void drawPoints(GC gc, Rectangle clip) {
 		for (Map.Entry<Point, List<Seek>> pointListEntry : seeks.entrySet()) {
-			Point p = scale(pointListEntry.getKey(), width - 2 * inset, height - 2 * inset);
-			p.y = height - inset - p.y - SEEK_SIZE / 2;
-			p.x = p.x + inset - SEEK_SIZE / 2;
-			// TODO: fix this...
-			// if (clip.contains(p)) { // we will honor the clip!
-			paintSeeks(gc, p, pointListEntry.getValue());
-			screen.put(p, pointListEntry.getKey());
-			// }
+			Point p = screenPoints.get(pointListEntry.getKey());
+			if (p != null
+					&& clip.intersects(p.x - 1, p.y - 1, SEEK_SIZE + 2,
+							SEEK_SIZE + 2)) {
+				paintSeeks(gc, p, pointListEntry.getValue());
+			}
+		}
+	}
+
+	private void disposeBackground() {
+		if (backgroundImage != null) {
+			backgroundImage.dispose();
+			backgroundImage = null;
+		}
+	}
+
+	/**
+	 * Returns the plot area, axes and legend for the size, which only have
+	 * to be drawn again when the size or legend changes.
+	 */
+	private Image getBackgroundImage(int width, int height) {
+		if (backgroundImage == null) {
+			backgroundImage = new Image(getDisplay(), width, height);
+			GC gc = new GC(backgroundImage);
+			gc.setFont(getFont());
+			gc.setBackground(getBackground());
+			gc.fillRectangle(0, 0, width, height);
+			gc.setAntialias(SWT.ON);
+
+			// Fill with white background
+			gc.setBackground(Display.getCurrent().getSystemColor(
+					SWT.COLOR_WHITE));
+			gc.fillRectangle(inset, inset, width - 2 * inset, height - 2
+					* inset);
+
+			drawHorizontalLines(gc, height, height - 2 * inset, width, width
+					- 2 * inset);
+			drawVerticalLines(gc, height, height - 2 * inset, width, width
+					- 2 * inset);
+
+			if (isDrawingLegend) {
+				drawLegend(gc, height, width);
+			}
+			gc.dispose();
+		}
+		return backgroundImage;
+	}
+
+	/**
+	 * Returns the seek location drawn at x,y or null if there is none.
+	 */
+	private Point getSeekLocationAt(int x, int y) {
+		Rectangle clientArea = getClientArea();
+		if (clientArea.width <= 0 || clientArea.height <= 0) {
+			return null;
+		}
+		updateIndex(clientArea.width, clientArea.height);
+		return index.get(x, y);
+	}
+
+	private Point indexLocation(Point loc, int width, int height) {
+		Point p = scale(loc, width - 2 * inset, height - 2 * inset);
+		p.y = height - inset - p.y - SEEK_SIZE / 2;
+		p.x = p.x + inset - SEEK_SIZE / 2;
+		screenPoints.put(loc, p);
+		index.add(p.x, p.y, SEEK_SIZE, SEEK_SIZE, loc);
+		return p;
+	}
+
+	/**
+	 * Forces the locations and background to be computed again, after a
+	 * scale changed.
+	 */
+	private void invalidateLayout() {
+		indexedWidth = -1;
+		indexedHeight = -1;
+		disposeBackground();
+	}
+
+	private void redrawLocation(Point screenPoint) {
+		redraw(screenPoint.x - 1, screenPoint.y - 1, SEEK_SIZE + 2,
+				SEEK_SIZE + 2, false);
+	}
+
+	private void unindexLocation(Point loc) {
+		Point p = screenPoints.remove(loc);
+		if (p != null) {
+			index.remove(p.x, p.y, SEEK_SIZE, SEEK_SIZE, loc);
+		}
+	}
+
+	/**
+	 * Computes the screen location of every seek location again if the size
+	 * changed since they were last computed.
+	 */
+	private void updateIndex(int width, int height) {
+		if (width != indexedWidth || height != indexedHeight) {
+			index.clear();
+			screenPoints.clear();
+			disposeBackground();
+			lastPopupRect = null;
+			for (Point loc : seeks.keySet()) {
+				indexLocation(loc, width, height);
+			}
+			indexedWidth = width;
+			indexedHeight = height;
 		}
 	}
 
@@ -573,7 +746,7 @@ public class SeekGraph extends Canvas {
 		return seek.getRatingAsInt();
 	}
 
-	private void paintSeeks(GC gc, Point p, List<Seek> here) {
+	private Color getColor(List<Seek> here) {
 		Color color = getUnratedColor();
 
 		if (here.size() == 1) {
@@ -586,16 +759,44 @@ public class SeekGraph extends Canvas {
 		} else {
 			color = getManyColor();
 		}
+		return color;
+	}
+
+	private boolean hasSameAds(List<Seek> seeks1, List<Seek> seeks2) {
+		if (seeks1 == null || seeks2 == null || seeks1.size() != seeks2.size()) {
+			return false;
+		}
+		for (int i = 0; i < seeks1.size(); i++) {
+			if (!seeks1.get(i).getAd().equals(seeks2.get(i).getAd())) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-		gc.setBackground(color);
+	/**
+	 * Returns true if both lists are painted with the same color.
+	 */
+	private boolean isDrawnAlike(List<Seek> seeks1, List<Seek> seeks2) {
+		if (seeks1.size() > 1 || seeks2.size() > 1) {
+			return seeks1.size() > 1 && seeks2.size() > 1;
+		}
+		Seek seek1 = seeks1.get(0);
+		Seek seek2 = seeks2.get(0);
+		return seek1.isComputer() == seek2.isComputer()
+				&& seek1.isRated() == seek2.isRated();
+	}
+
+	private void paintSeeks(GC gc, Point p, List<Seek> here) {
+		gc.setBackground(getColor(here));
 		gc.fillOval(p.x, p.y, SEEK_SIZE, SEEK_SIZE);
 	}
 
-	private void showAcceptPopup(Point clickLoc, Point loc, Rectangle rect) {
+	private void showAcceptPopup(Point loc, Rectangle rect) {
 		// are we're already showing for this?
 		if (lastPopupRect == null || !rect.equals(lastPopupRect)) {
 			// recreate the menu
-			List<Seek> existing = seeks.get(screen.get(loc));
+			List<Seek> existing = seeks.get(loc);
 			StringBuilder all = new StringBuilder();
 			for (Seek seek : existing) {
 				String rating = seek.getRatingAsInt() == -1 ? " (Guest) "
@@ -618,7 +819,7 @@ public class SeekGraph extends Canvas {
 			tooltip.setText(all.substring(0, all.length() - 1));
 			lastPopupRect = rect;
 
-			tooltip.setLocation(toDisplay(loc.x + SEEK_SIZE - 2, loc.y
+			tooltip.setLocation(toDisplay(rect.x + SEEK_SIZE - 2, rect.y
 					+ SEEK_SIZE - 2));
 			tooltip.setVisible(true);
 		}
@@ -39,9 +39,9 @@ import raptor.chat.Seek;
 import raptor.connector.Connector;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
+import raptor.service.RefreshScheduler;
 import raptor.service.SeekService;
 import raptor.service.SeekService.SeekServiceListener;
-import raptor.service.ThreadService;
 import raptor.swt.RaptorTable.RaptorTableAdapter;
 import raptor.swt.chat.ChatUtils;
 import raptor.util.IntegerComparator;
@@ -83,23 +83,6 @@ public class SeekTableWindowItem implements RaptorConnectorWindowItem {
 	protected Composite settings;
 	protected boolean isActive = false;
 
-	protected Runnable timer = new Runnable() {
-		public void run() {
-			if (isActive && !composite.isDisposed()) {
-				service.refreshSeeks();
-				ThreadService
-						.getInstance()
-						.scheduleOneShot(
-								Raptor
-										.getInstance()
-										.getPreferences()
-										.getInt(
-												PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-								this);
-			}
-		}
-	};
-
 	protected SeekServiceListener listener = new SeekServiceListener() {
 		public void seeksChanged(Seek[] seeks) {
 			refreshSeekView();
@@ -130,6 +113,7 @@ public class SeekTableWindowItem implements RaptorConnectorWindowItem {
 
 	public void dispose() {
 		isActive = false;
+		service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.SEEKS, this, false);
 		composite.dispose();
 		service.removeSeekServiceLisetner(listener);
 	}
@@ -244,30 +228,21 @@ public class SeekTableWindowItem implements RaptorConnectorWindowItem {
 			}
 		});
 
-		service.refreshSeeks();
+		service.getConnector().getRefreshScheduler().requestNow(RefreshScheduler.SEEKS);
 		refreshSeekView();
 	}
 
 	public void onActivate() {
 		if (!isActive) {
 			isActive = true;
-			service.refreshSeeks();
-			ThreadService
-					.getInstance()
-					.scheduleOneShot(
-							Raptor
-									.getInstance()
-									.getPreferences()
-									.getInt(
-											PreferenceKeys.APP_WINDOW_ITEM_POLL_INTERVAL) * 1000,
-							timer);
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.SEEKS, this, true);
 		}
-
 	}
 
 	public void onPassivate() {
 		if (isActive) {
 			isActive = false;
+			service.getConnector().getRefreshScheduler().setVisible(RefreshScheduler.SEEKS, this, false);
 		}
 	}
 
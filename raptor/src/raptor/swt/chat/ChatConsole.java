@@ -17,6 +17,8 @@ import org.apache.commons.lang.StringUtils;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.LineStyleEvent;
+import org.eclipse.swt.custom.LineStyleListener;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
@@ -36,7 +38,10 @@ import raptor.Raptor;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.service.LatencyTraceService;
+import raptor.service.LatencyTraceService.Stage;
 import raptor.swt.RaptorStyledText;
+import raptor.util.LatencyHistogram;
 import raptor.util.RaptorLogger;
 
 /**
@@ -97,6 +102,16 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 		inputText.setLineSpacing(1);
 		inputText.setLeftMargin(3);
 
+		// The text and styles are kept in chunks so old text can be dropped
+		// without shifting the rest.
+		final ChatConsoleContent inputContent = new ChatConsoleContent();
+		inputText.setContent(inputContent);
+		inputText.addLineStyleListener(new LineStyleListener() {
+			public void lineGetStyle(LineStyleEvent event) {
+				event.styles = inputContent.getStyleRanges(event.lineOffset, event.lineText.length());
+			}
+		});
+
 		southControlsComposite = new Composite(this, SWT.NONE);
 		southControlsComposite.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
 		GridLayout gridLayout = new GridLayout(5, false);
@@ -152,6 +167,16 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 		this.controller = controller;
 	}
 
+	/**
+	 * Returns the median and 99th percentile of the pings recorded by the
+	 * LatencyTraceService.
+	 */
+	protected String getPingToolTip() {
+		LatencyHistogram pings = LatencyTraceService.getInstance().getHistogram(Stage.PING);
+		return local.getString("chatConsolePingToolTip", String.valueOf(pings.getValueAtPercentile(50.0) / 1000000),
+				String.valueOf(pings.getValueAtPercentile(99.0) / 1000000));
+	}
+
 	public void setPingTime(long pingTimeMillis) {
 		if (LOG.isDebugEnabled())
 			LOG.debug("In set ping time: " + pingTimeMillis);
@@ -166,6 +191,7 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 
 				pingValueLabel = new Label(southControlsComposite, SWT.NONE);
 				pingValueLabel.setText(newPingValue);
+				pingValueLabel.setToolTipText(getPingToolTip());
 
 				RaptorPreferenceStore prefs = getPreferences();
 				pingLabel.setFont(prefs.getFont(CHAT_OUTPUT_FONT));
@@ -183,6 +209,7 @@ public class ChatConsole extends Composite implements PreferenceKeys {
 				if (LOG.isDebugEnabled())
 					LOG.debug("Setting ping values...");
 				pingValueLabel.setText(newPingValue);
+				pingValueLabel.setToolTipText(getPingToolTip());
 				southControlsComposite.layout(true);
 			}
 
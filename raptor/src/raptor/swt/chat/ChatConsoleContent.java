@@ -0,0 +1,564 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+import raptor.chat.ChatEvent;
+
+/**
+ * StyledTextContent for the chat console. The text is kept in a ring of
+ * chunks of whole lines, so removing the oldest chunks from the front is
+ * O(1) per chunk instead of moving the whole document. Each chunk also keeps
+ * the styles of its text, served to the StyledText with a LineStyleListener,
+ * so trimming drops the styles with the text instead of shifting all of
+ * them.
+ * 
+ * Appends, removing whole chunks from the front and inserting whole lines
+ * at the front as one new chunk are the fast paths. Any other edit merges
+ * the chunks it touches into one and moves their styles along with the text.
+ * 
+ * Each chunk keeps the chat event its first line belongs to, so the console
+ * can reload the text before the first chunk from the chat log once it was
+ * removed.
+ */
+public class ChatConsoleContent implements StyledTextContent {
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	/**
+	 * Offsets are counted from the creation of the content, including
+	 * removed text, and rebased once they reach this.
+	 */
+	protected static final int REBASE_OFFSET = 1 << 30;
+
+	protected static class Chunk {
+		protected int start;
+		protected int firstLine;
+		protected StringBuilder text = new StringBuilder();
+		protected int[] lineStarts = new int[16];
+		protected int lineCount = 1;
+		protected ChatEvent event;
+
+		/**
+		 * Offsets relative to the start of the chunk.
+		 */
+		protected StyleRangeBatch styles = new StyleRangeBatch();
+
+		protected Chunk(int start, int firstLine) {
+			this.start = start;
+			this.firstLine = firstLine;
+		}
+
+		protected void addLineStart(int offset) {
+			if (lineCount == lineStarts.length) {
+				int[] newLineStarts = new int[lineStarts.length * 2];
+				System.arraycopy(lineStarts, 0, newLineStarts, 0, lineCount);
+				lineStarts = newLineStarts;
+			}
+			lineStarts[lineCount++] = offset;
+		}
+
+		protected int getEnd() {
+			return start + text.length();
+		}
+
+		/**
+		 * Returns the index of the line in this chunk containing offset,
+		 * which is relative to the chunk.
+		 */
+		protected int getLineIndex(int offset) {
+			int low = 0;
+			int high = lineCount - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (lineStarts[middle] <= offset) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the end of the line, without its delimiter, relative to the
+		 * chunk.
+		 */
+		protected int getLineEnd(int index) {
+			if (index + 1 < lineCount) {
+				return lineStarts[index + 1] - 1;
+			}
+			int length = text.length();
+			return length > lineStarts[index]
+					&& text.charAt(length - 1) == '\n' ? length - 1 : length;
+		}
+	}
+
+	protected Chunk[] chunks = new Chunk[16];
+	protected int head;
+	protected int chunkCount;
+	protected int chunkSize;
+	protected ChatEvent appendEvent;
+	protected List<TextChangeListener> listeners = new ArrayList<TextChangeListener>(
+			2);
+
+	public ChatConsoleContent() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize
+	 *            A new chunk is started at the first line which begins after
+	 *            the current chunk reached this many chars.
+	 */
+	public ChatConsoleContent(int chunkSize) {
+		this.chunkSize = chunkSize;
+		addChunk(0, 0);
+	}
+
+	public void addTextChangeListener(TextChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Returns the chat event the first line belongs to, or null if it is not
+	 * known.
+	 */
+	public ChatEvent getFirstEvent() {
+		return getFirst().event;
+	}
+
+	public int getCharCount() {
+		return getLast().getEnd() - getFirst().start;
+	}
+
+	/**
+	 * Returns the number of chunks the text is held in.
+	 */
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	public String getLine(int lineIndex) {
+		int line = lineIndex + getFirst().firstLine;
+		Chunk chunk = getChunk(getChunkIndexAtLine(line));
+		int index = line - chunk.firstLine;
+		return chunk.text.substring(chunk.lineStarts[index], chunk
+				.getLineEnd(index));
+	}
+
+	public int getLineAtOffset(int offset) {
+		Chunk first = getFirst();
+		int position = offset + first.start;
+		Chunk chunk = getChunk(getChunkIndexAtOffset(position));
+		return chunk.firstLine + chunk.getLineIndex(position - chunk.start)
+				- first.firstLine;
+	}
+
+	public int getLineCount() {
+		Chunk last = getLast();
+		return last.firstLine + last.lineCount - getFirst().firstLine;
+	}
+
+	public String getLineDelimiter() {
+		return "\n";
+	}
+
+	public int getOffsetAtLine(int lineIndex) {
+		Chunk first = getFirst();
+		int line = lineIndex + first.firstLine;
+		Chunk chunk = getChunk(getChunkIndexAtLine(line));
+		return chunk.start + chunk.lineStarts[line - chunk.firstLine]
+				- first.start;
+	}
+
+	/**
+	 * Returns the styles of the text from offset to offset + length, which
+	 * must be on one line. Used by the LineStyleListener of the console.
+	 */
+	public StyleRange[] getStyleRanges(int offset, int length) {
+		int position = offset + getFirst().start;
+		Chunk chunk = getChunk(getChunkIndexAtOffset(position));
+		int chunkOffset = position - chunk.start;
+		StyleRange[] result = chunk.styles.getRanges(chunkOffset, chunkOffset
+				+ length);
+		for (StyleRange range : result) {
+			range.start += offset - chunkOffset;
+		}
+		return result;
+	}
+
+	public String getTextRange(int start, int length) {
+		StringBuilder result = new StringBuilder(length);
+		int position = start + getFirst().start;
+		int index = getChunkIndexAtOffset(position);
+		while (length > 0 && index < chunkCount) {
+			Chunk chunk = getChunk(index++);
+			int from = position - chunk.start;
+			int to = Math.min(chunk.text.length(), from + length);
+			result.append(chunk.text, from, to);
+			length -= to - from;
+			position += to - from;
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Returns the offset the text has to be removed up to, for at least
+	 * minChars chars to be removed in whole chunks. Returns 0 if that is not
+	 * possible without removing the chunk being appended to.
+	 */
+	public int getTrimOffset(int minChars) {
+		int first = getFirst().start;
+		for (int i = 1; i < chunkCount; i++) {
+			int offset = getChunk(i).start - first;
+			if (offset >= minChars) {
+				return offset;
+			}
+		}
+		return 0;
+	}
+
+	public void removeTextChangeListener(TextChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	public void replaceTextRange(int start, int replaceLength, String text) {
+		TextChangingEvent event = new TextChangingEvent(this);
+		event.start = start;
+		event.newText = text;
+		event.replaceCharCount = replaceLength;
+		event.newCharCount = text.length();
+		event.newLineCount = countLines(text);
+
+		if (replaceLength == 0 && start == getCharCount()) {
+			event.replaceLineCount = 0;
+			fireTextChanging(event);
+			append(text);
+		} else if (start == 0 && replaceLength == 0 && text.endsWith("\n")) {
+			event.replaceLineCount = 0;
+			fireTextChanging(event);
+			insertChunk(text);
+		} else if (start == 0 && text.length() == 0
+				&& getChunkIndexStartingAt(replaceLength) != -1) {
+			int index = getChunkIndexStartingAt(replaceLength);
+			event.replaceLineCount = getChunk(index).firstLine
+					- getFirst().firstLine;
+			fireTextChanging(event);
+			removeChunks(index);
+		} else {
+			event.replaceLineCount = countLines(getTextRange(start,
+					replaceLength));
+			fireTextChanging(event);
+			replaceInChunks(start, replaceLength, text);
+		}
+
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
+		for (TextChangeListener listener : listeners) {
+			listener.textChanged(changedEvent);
+		}
+	}
+
+	/**
+	 * Sets the chat event the text added next belongs to.
+	 */
+	public void setAppendEvent(ChatEvent appendEvent) {
+		this.appendEvent = appendEvent;
+	}
+
+	public void setText(String text) {
+		reset();
+		append(text);
+		TextChangedEvent event = new TextChangedEvent(this);
+		for (TextChangeListener listener : listeners) {
+			listener.textSet(event);
+		}
+	}
+
+	/**
+	 * Stores the styles with the text they cover. As with setStyleRange a
+	 * range replaces the styles of the ranges stored before it which it
+	 * overlaps. The StyledText must be redrawn afterwards.
+	 */
+	public void setStyleRanges(StyleRange[] ranges) {
+		int first = getFirst().start;
+		for (StyleRange range : ranges) {
+			int position = range.start + first;
+			int end = position + range.length;
+			int index = getChunkIndexAtOffset(position);
+			while (position < end && index < chunkCount) {
+				Chunk chunk = getChunk(index++);
+				int chunkEnd = Math.min(end, chunk.getEnd());
+				if (chunkEnd > position) {
+					StyleRange piece = (StyleRange) range.clone();
+					piece.start = position - chunk.start;
+					piece.length = chunkEnd - position;
+					chunk.styles.add(piece);
+					position = chunkEnd;
+				}
+			}
+		}
+	}
+
+	protected Chunk addChunk(int start, int firstLine) {
+		ensureCapacity();
+		Chunk chunk = new Chunk(start, firstLine);
+		chunks[(head + chunkCount++) % chunks.length] = chunk;
+		return chunk;
+	}
+
+	protected void append(String text) {
+		Chunk chunk = getLast();
+		if (chunk.text.length() == 0) {
+			chunk.event = appendEvent;
+		}
+		int from = 0;
+		int newLine = 0;
+		while ((newLine = text.indexOf('\n', from)) != -1) {
+			chunk.text.append(text, from, newLine + 1);
+			if (chunk.text.length() >= chunkSize) {
+				chunk = addChunk(chunk.getEnd(), chunk.firstLine
+						+ chunk.lineCount);
+				chunk.event = appendEvent;
+			} else {
+				chunk.addLineStart(chunk.text.length());
+			}
+			from = newLine + 1;
+		}
+		chunk.text.append(text, from, text.length());
+	}
+
+	/**
+	 * Adds text, which ends with a line delimiter, before the first chunk as
+	 * one new chunk.
+	 */
+	protected void insertChunk(String text) {
+		Chunk first = getFirst();
+		Chunk chunk = new Chunk(first.start - text.length(), 0);
+		int newLine = 0;
+		while ((newLine = text.indexOf('\n', newLine) + 1) < text.length()) {
+			chunk.addLineStart(newLine);
+		}
+		chunk.firstLine = first.firstLine - chunk.lineCount;
+		chunk.text.append(text);
+		chunk.event = appendEvent;
+
+		ensureCapacity();
+		head = (head + chunks.length - 1) % chunks.length;
+		chunks[head] = chunk;
+		chunkCount++;
+	}
+
+	protected int countLines(String text) {
+		int result = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	protected void ensureCapacity() {
+		if (chunkCount == chunks.length) {
+			Chunk[] newChunks = new Chunk[chunks.length * 2];
+			for (int i = 0; i < chunkCount; i++) {
+				newChunks[i] = getChunk(i);
+			}
+			chunks = newChunks;
+			head = 0;
+		}
+	}
+
+	protected void fireTextChanging(TextChangingEvent event) {
+		for (TextChangeListener listener : listeners) {
+			listener.textChanging(event);
+		}
+	}
+
+	protected Chunk getChunk(int index) {
+		return chunks[(head + index) % chunks.length];
+	}
+
+	/**
+	 * Returns the index of the last chunk starting at or before position.
+	 */
+	protected int getChunkIndexAtOffset(int position) {
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (getChunk(middle).start <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	protected int getChunkIndexAtLine(int line) {
+		int low = 0;
+		int high = chunkCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (getChunk(middle).firstLine <= line) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the chunk starting at offset, other than the first
+	 * one, or -1 if no chunk starts there.
+	 */
+	protected int getChunkIndexStartingAt(int offset) {
+		if (offset <= 0) {
+			return -1;
+		}
+		int position = offset + getFirst().start;
+		int index = getChunkIndexAtOffset(position);
+		return getChunk(index).start == position ? index : -1;
+	}
+
+	protected Chunk getFirst() {
+		return chunks[head];
+	}
+
+	protected Chunk getLast() {
+		return getChunk(chunkCount - 1);
+	}
+
+	/**
+	 * Drops the chunks before index.
+	 */
+	protected void removeChunks(int index) {
+		for (int i = 0; i < index; i++) {
+			chunks[head] = null;
+			head = (head + 1) % chunks.length;
+		}
+		chunkCount -= index;
+
+		Chunk first = getFirst();
+		if (first.start >= REBASE_OFFSET) {
+			int start = first.start;
+			int firstLine = first.firstLine;
+			for (int i = 0; i < chunkCount; i++) {
+				getChunk(i).start -= start;
+				getChunk(i).firstLine -= firstLine;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the text in the chunks it touches, which are merged into one.
+	 * The merged chunk also takes the chunks after it until it ends with a
+	 * line delimiter, so no line spans two chunks. Styles before the replaced
+	 * text are kept, styles after it move with the text and the styles of the
+	 * replaced text are dropped.
+	 */
+	protected void replaceInChunks(int start, int replaceLength, String text) {
+		int position = start + getFirst().start;
+		int end = position + replaceLength;
+		int firstIndex = getChunkIndexAtOffset(position);
+		int lastIndex = replaceLength == 0 ? firstIndex
+				: getChunkIndexAtOffset(end - 1);
+		Chunk merged = getChunk(firstIndex);
+		for (int i = firstIndex + 1; i <= lastIndex; i++) {
+			mergeChunk(merged, getChunk(i));
+		}
+
+		int from = position - merged.start;
+		int to = end - merged.start;
+		int delta = text.length() - replaceLength;
+		merged.text.replace(from, to, text);
+		StyleRangeBatch styles = new StyleRangeBatch();
+		for (StyleRange range : merged.styles.ranges) {
+			int rangeEnd = range.start + range.length;
+			if (range.start < from) {
+				StyleRange head = (StyleRange) range.clone();
+				head.length = Math.min(rangeEnd, from) - range.start;
+				styles.ranges.add(head);
+			}
+			if (rangeEnd > to) {
+				StyleRange tail = (StyleRange) range.clone();
+				tail.start = Math.max(range.start, to) + delta;
+				tail.length = rangeEnd + delta - tail.start;
+				styles.ranges.add(tail);
+			}
+		}
+		merged.styles = styles;
+
+		while (lastIndex + 1 < chunkCount
+				&& (merged.text.length() == 0 || merged.text.charAt(merged.text
+						.length() - 1) != '\n')) {
+			mergeChunk(merged, getChunk(++lastIndex));
+		}
+
+		boolean isLast = lastIndex == chunkCount - 1;
+		merged.lineCount = 1;
+		for (int i = 0; i < merged.text.length(); i++) {
+			if (merged.text.charAt(i) == '\n'
+					&& (isLast || i + 1 < merged.text.length())) {
+				merged.addLineStart(i + 1);
+			}
+		}
+
+		Chunk[] newChunks = new Chunk[chunks.length];
+		int newCount = 0;
+		for (int i = 0; i < chunkCount; i++) {
+			if (i <= firstIndex || i > lastIndex) {
+				newChunks[newCount++] = getChunk(i);
+			}
+		}
+		for (int i = firstIndex + 1; i < newCount; i++) {
+			Chunk previous = newChunks[i - 1];
+			newChunks[i].start += delta;
+			newChunks[i].firstLine = previous.firstLine + previous.lineCount;
+		}
+		chunks = newChunks;
+		chunkCount = newCount;
+		head = 0;
+	}
+
+	/**
+	 * Appends the text and styles of next, which follows chunk, to chunk.
+	 */
+	protected void mergeChunk(Chunk chunk, Chunk next) {
+		int shift = chunk.text.length();
+		chunk.text.append(next.text);
+		for (StyleRange range : next.styles.ranges) {
+			StyleRange moved = (StyleRange) range.clone();
+			moved.start += shift;
+			chunk.styles.ranges.add(moved);
+		}
+	}
+
+	protected void reset() {
+		chunks = new Chunk[16];
+		head = 0;
+		chunkCount = 0;
+		addChunk(0, 0);
+	}
+}
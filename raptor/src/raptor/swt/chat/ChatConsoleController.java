@@ -20,10 +20,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +33,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledTextContent;
 import org.eclipse.swt.dnd.DND;
 import org.eclipse.swt.dnd.TextTransfer;
 import org.eclipse.swt.dnd.Transfer;
@@ -97,6 +100,11 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	public static final long SPELL_CHECK_DELAY = 1000;
 	private static final RaptorLogger LOG = RaptorLogger.getLog(ChatConsoleController.class);
 	public static final int TEXT_CHUNK_SIZE = 1000;
+	/**
+	 * The most chat events appended in one pass on the UI thread before it is
+	 * given back to paint and handle input.
+	 */
+	public static final int MAX_EVENTS_PER_PASS = 100;
 	public static int[] DONT_FORWARD_KEYSTROKES = { SWT.PAGE_UP, SWT.PAGE_DOWN, SWT.HOME, SWT.END };
 	public static int[] DONT_FORWARD_KEYMASKS = { SWT.COMMAND, SWT.CONTROL };
 	public static final Pattern RELAY_GAME_PATTERN = Pattern.compile("^\\:(\\d+)\\s.*");
@@ -106,18 +114,41 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	protected ChatConsole chatConsole;
 	protected Queue<ChatEvent> chatEventQueue = new ConcurrentLinkedQueue<ChatEvent>();
 
+	/**
+	 * Events waiting to be appended on the UI thread. A burst of events is
+	 * appended in one pass so its styles can be applied at once.
+	 */
+	protected Queue<ChatEvent> pendingChatEvents = new ConcurrentLinkedQueue<ChatEvent>();
+	protected AtomicBoolean isAppendingPendingEvents = new AtomicBoolean(false);
+
+	/**
+	 * Styles of appended text which have not been applied yet.
+	 */
+	protected StyleRangeBatch pendingStyleRanges = new StyleRangeBatch();
+	protected int styleBatchDepth;
+
+	/**
+	 * True once old text was trimmed from the input text and the chat log may
+	 * still hold events before the first line.
+	 */
+	protected boolean hasTrimmedText;
+	protected AtomicBoolean isReloadingTrimmedText = new AtomicBoolean(false);
+
+	/**
+	 * Chars reloaded from the chat log since auto scrolling was last on. They
+	 * are not trimmed again until the user scrolls back to the end. At most
+	 * CHAT_MAX_CONSOLE_CHARS are reloaded.
+	 */
+	protected int reloadedChars;
+
 	protected ChatListener chatServiceListener = new ChatListener() {
 		public void chatEventOccured(final ChatEvent event) {
 			if (!isDisposed && chatConsole != null && !chatConsole.isDisposed()) {
 				if (event.getType() == ChatType.CHANNEL_TELL)
 					chatEventQueue.add(event);
 
-				chatConsole.getDisplay().asyncExec(new RaptorRunnable(getConnector()) {
-					@Override
-					public void execute() {
-						onChatEvent(event);
-					}
-				});
+				pendingChatEvents.add(event);
+				schedulePendingChatEvents();
 			} else {
 				eventsWhileBeingReparented.add(event);
 			}
@@ -162,6 +193,9 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		@Override
 		public void widgetSelected(SelectionEvent e) {
 			smartScroll();
+			if (chatConsole.inputText.getVerticalBar().getSelection() == 0) {
+				reloadTrimmedText();
+			}
 		}
 	};
 
@@ -577,21 +611,11 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			if (event.getType() == ChatType.CHANNEL_TELL)
 				event = (chatEventQueue.size() == 0) ? event : chatEventQueue.poll();
 
-			String messageText = filterText(event.getMessage());
-			String date = "";
-			if (Raptor.getInstance().getPreferences().getBoolean(CHAT_TIMESTAMP_CONSOLE)) {
-				SimpleDateFormat format = new SimpleDateFormat(
-						Raptor.getInstance().getPreferences().getString(CHAT_TIMESTAMP_CONSOLE_FORMAT));
-				date = format.format(new Date(event.getTime()));
-			} else {
-				messageText = RaptorStringUtils.removeBeginingNewlines(messageText);
-			}
-			// There use to be an else {messageText = messateText.trim();} here.
-			// It was removed to fix Issue 48.
-			// This comment is here just in case someone ever adds it back.
-
-			appendText = (chatConsole.inputText.getCharCount() == 0 ? "" : "\n") + date + messageText;
+			appendText = (chatConsole.inputText.getCharCount() == 0 ? "" : "\n") + formatChatEvent(event);
 
+			if (chatConsole.inputText.getContent() instanceof ChatConsoleContent) {
+				((ChatConsoleContent) chatConsole.inputText.getContent()).setAppendEvent(event);
+			}
 			chatConsole.inputText.append(appendText);
 
 			startIndex = chatConsole.inputText.getCharCount() - appendText.length();
@@ -601,7 +625,12 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			}
 		}
 
-		onDecorateInputText(event, appendText, startIndex);
+		beginStyleBatch();
+		try {
+			onDecorateInputText(event, appendText, startIndex);
+		} finally {
+			endStyleBatch();
+		}
 		reduceInputTextIfNeeded();
 	}
 
@@ -630,6 +659,32 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		}
 	}
 
+	/**
+	 * Appends the events which arrived since the last pass. The styles of all
+	 * of them are applied together when the pass ends.
+	 */
+	public void onPendingChatEvents() {
+		isAppendingPendingEvents.set(false);
+		if (isDisposed || chatConsole == null || chatConsole.isDisposed()) {
+			return;
+		}
+
+		beginStyleBatch();
+		try {
+			ChatEvent event = null;
+			int appended = 0;
+			while (appended++ < MAX_EVENTS_PER_PASS && (event = pendingChatEvents.poll()) != null) {
+				onChatEvent(event);
+			}
+		} finally {
+			endStyleBatch();
+		}
+
+		if (!pendingChatEvents.isEmpty()) {
+			schedulePendingChatEvents();
+		}
+	}
+
 	public void onForceAutoScroll() {
 		if (isIgnoringActions()) {
 			return;
@@ -1193,6 +1248,14 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 		ChatUtils.addPersonMenuItems(menu, connector, word);
 	}
 
+	/**
+	 * Queues a style range for the input text. It is applied when the
+	 * outermost style batch ends.
+	 */
+	protected void addInputTextStyleRange(StyleRange range) {
+		pendingStyleRanges.add(range);
+	}
+
 	protected void adjustAwayButtonEnabled() {
 		setToolItemEnabled(ToolBarItemKey.AWAY_BUTTON, !awayList.isEmpty());
 	}
@@ -1227,7 +1290,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1243,7 +1306,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			message = message.substring(0, message.length() - prompt.length());
 		}
 
-		chatConsole.inputText.setStyleRange(
+		addInputTextStyleRange(
 				new StyleRange(textStartPosition, message.length(), color, chatConsole.inputText.getBackground()));
 	}
 
@@ -1269,7 +1332,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + startIndex, (endIndex - startIndex) + 1,
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1298,7 +1361,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 
 		}
@@ -1366,7 +1429,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1443,7 +1506,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1524,7 +1587,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1624,12 +1687,12 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 			}
 
 			// add all the ranges that were found.
+			Color underlineColor = chatConsole.getPreferences().getColor(CHAT_LINK_UNDERLINE_COLOR);
 			for (int[] linkRange : linkRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(CHAT_LINK_UNDERLINE_COLOR);
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						underlineColor, chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1690,7 +1753,7 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				StyleRange range = new StyleRange(textStartPosition + linkRange[0], linkRange[1] - linkRange[0],
 						getPreferences().getColor(event), chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1749,12 +1812,12 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				}
 			}
 
+			Color underlineColor = chatConsole.getPreferences().getColor(CHAT_QUOTE_UNDERLINE_COLOR);
 			for (int[] quotedRange : quotedRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(CHAT_QUOTE_UNDERLINE_COLOR);
 				StyleRange range = new StyleRange(textStartPosition + quotedRange[0], quotedRange[1] - quotedRange[0],
 						underlineColor, chatConsole.inputText.getBackground());
 				range.underline = true;
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -1770,11 +1833,11 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 				nextIndex = message.indexOf("[next]", nextIndex + 1);
 			}
 
+			Color underlineColor = chatConsole.getPreferences().getColor(CHAT_QUOTE_UNDERLINE_COLOR);
 			for (int[] nextRange : nextRanges) {
-				Color underlineColor = chatConsole.getPreferences().getColor(CHAT_QUOTE_UNDERLINE_COLOR);
 				StyleRange range = new StyleRange(textStartPosition + nextRange[0], nextRange[1] - nextRange[0],
 						underlineColor, chatConsole.inputText.getBackground());
-				chatConsole.inputText.setStyleRange(range);
+				addInputTextStyleRange(range);
 			}
 		}
 	}
@@ -2174,16 +2237,195 @@ public abstract class ChatConsoleController implements PreferenceKeys {
 	protected void reduceInputTextIfNeeded() {
 
 		int charCount = chatConsole.inputText.getCharCount();
-		if (charCount > Raptor.getInstance().getPreferences().getInt(CHAT_MAX_CONSOLE_CHARS)) {
-			LOG.info("Cleaning chat console");
+		int maxChars = Raptor.getInstance().getPreferences().getInt(CHAT_MAX_CONSOLE_CHARS);
+		if (isAutoScrolling) {
+			reloadedChars = 0;
+		} else {
+			maxChars += reloadedChars;
+		}
+		if (charCount > maxChars) {
+			// The pending ranges use offsets from before the cleaning.
+			applyPendingStyleRanges();
+			StyledTextContent content = chatConsole.inputText.getContent();
+			int cleanTo = 0;
+			if (content instanceof ChatConsoleContent) {
+				// Drops the oldest chunks, which is cheap enough to do each
+				// time the limit is passed.
+				cleanTo = ((ChatConsoleContent) content).getTrimOffset(charCount - maxChars);
+				if (cleanTo == 0) {
+					return;
+				}
+				hasTrimmedText = true;
+			} else {
+				cleanTo = (int) (charCount * CLEAN_PERCENTAGE);
+				int lineNumber = content.getLineAtOffset(cleanTo);
+				cleanTo = content.getOffsetAtLine(lineNumber++);
+			}
+			LOG.debug("Cleaning chat console");
 			long startTime = System.currentTimeMillis();
-			int cleanTo = (int) (charCount * CLEAN_PERCENTAGE);
-			int lineNumber = chatConsole.inputText.getContent().getLineAtOffset(cleanTo);
-			cleanTo = chatConsole.inputText.getContent().getOffsetAtLine(lineNumber++);
 			chatConsole.inputText.replaceTextRange(0, cleanTo, "");
 			setCaretToOutputTextEnd();
 			onForceAutoScroll();
-			LOG.info("Cleaned console in " + (System.currentTimeMillis() - startTime));
+			LOG.debug("Cleaned console in " + (System.currentTimeMillis() - startTime));
+		}
+	}
+
+	/**
+	 * Reloads the events before the first line of the input text from the
+	 * chat log once old text has been trimmed. Invoked when the input text is
+	 * scrolled to the top. The log is read backwards from the log offset of
+	 * the first event on a ThreadService thread, and at most a chunk of the
+	 * events before it is inserted as one ChatConsoleContent chunk. Events the
+	 * chat log does not keep, such as internal messages, are not reloaded.
+	 */
+	protected void reloadTrimmedText() {
+		if (!hasTrimmedText || !(chatConsole.inputText.getContent() instanceof ChatConsoleContent)) {
+			return;
+		}
+		final ChatConsoleContent content = (ChatConsoleContent) chatConsole.inputText.getContent();
+		final ChatEvent firstEvent = content.getFirstEvent();
+		if (firstEvent == null || firstEvent.getLogOffset() < 0
+				|| reloadedChars >= Raptor.getInstance().getPreferences().getInt(CHAT_MAX_CONSOLE_CHARS)
+				|| !isReloadingTrimmedText.compareAndSet(false, true)) {
+			return;
+		}
+
+		ThreadService.getInstance().run(new RaptorRunnable(getConnector()) {
+			@Override
+			public void execute() {
+				final LinkedList<ChatEvent> events = new LinkedList<ChatEvent>();
+				final int[] chars = new int[1];
+				try {
+					connector.getChatService().getChatLogger().parseFileBackwards(firstEvent.getLogOffset(),
+							new ChatEventParseListener() {
+						public boolean onNewEventParsed(ChatEvent event) {
+							if (isAcceptingChatEvent(event)) {
+								events.addFirst(event);
+								chars[0] += event.getMessage().length() + 1;
+							}
+							return chars[0] < ChatConsoleContent.DEFAULT_CHUNK_SIZE;
+						}
+
+						public void onParseCompleted() {
+						}
+					});
+				} catch (RuntimeException re) {
+					LOG.warn("Error reading the chat log", re);
+					isReloadingTrimmedText.set(false);
+					return;
+				}
+
+				chatConsole.getDisplay().asyncExec(new RaptorRunnable(getConnector()) {
+					@Override
+					public void execute() {
+						isReloadingTrimmedText.set(false);
+						if (!isDisposed && !chatConsole.isDisposed() && content.getFirstEvent() == firstEvent) {
+							insertTrimmedText(content, events);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Inserts the reloaded events before the first line and decorates them.
+	 * The lines shown stay where they are.
+	 */
+	protected void insertTrimmedText(ChatConsoleContent content, List<ChatEvent> events) {
+		if (events.isEmpty()) {
+			hasTrimmedText = false;
+			return;
+		}
+
+		String[] texts = new String[events.size()];
+		StringBuilder text = new StringBuilder(ChatConsoleContent.DEFAULT_CHUNK_SIZE + 100);
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = (i == 0 ? "" : "\n") + formatChatEvent(events.get(i));
+			text.append(texts[i]);
+		}
+		text.append('\n');
+
+		// The pending ranges use offsets from before the insert.
+		applyPendingStyleRanges();
+		int topIndex = chatConsole.inputText.getTopIndex();
+		int lineCount = chatConsole.inputText.getLineCount();
+		content.setAppendEvent(events.get(0));
+		chatConsole.inputText.replaceTextRange(0, 0, text.toString());
+		reloadedChars += text.length();
+
+		beginStyleBatch();
+		try {
+			int startIndex = 0;
+			for (int i = 0; i < texts.length; i++) {
+				onDecorateInputText(events.get(i), texts[i], startIndex);
+				startIndex += texts[i].length();
+			}
+		} finally {
+			endStyleBatch();
+		}
+		chatConsole.inputText.setTopIndex(topIndex + chatConsole.inputText.getLineCount() - lineCount);
+	}
+
+	/**
+	 * Returns the text the event is shown with in the input text, without the
+	 * line delimiter before it.
+	 */
+	protected String formatChatEvent(ChatEvent event) {
+		String messageText = filterText(event.getMessage());
+		String date = "";
+		if (Raptor.getInstance().getPreferences().getBoolean(CHAT_TIMESTAMP_CONSOLE)) {
+			SimpleDateFormat format = new SimpleDateFormat(
+					Raptor.getInstance().getPreferences().getString(CHAT_TIMESTAMP_CONSOLE_FORMAT));
+			date = format.format(new Date(event.getTime()));
+		} else {
+			messageText = RaptorStringUtils.removeBeginingNewlines(messageText);
+		}
+		// There use to be an else {messageText = messateText.trim();} here.
+		// It was removed to fix Issue 48.
+		// This comment is here just in case someone ever adds it back.
+		return date + messageText;
+	}
+
+	/**
+	 * Applies the queued style ranges to the input text in one call. Ranges
+	 * past the end of the text are dropped, the text was cleared after they
+	 * were queued.
+	 */
+	protected void applyPendingStyleRanges() {
+		if (pendingStyleRanges.isEmpty()) {
+			return;
+		} else if (chatConsole.isDisposed() || pendingStyleRanges.getEnd() > chatConsole.inputText.getCharCount()) {
+			pendingStyleRanges.clear();
+		} else if (chatConsole.inputText.getContent() instanceof ChatConsoleContent) {
+			int start = pendingStyleRanges.getStart();
+			int end = pendingStyleRanges.getEnd();
+			((ChatConsoleContent) chatConsole.inputText.getContent()).setStyleRanges(pendingStyleRanges.toArray());
+			pendingStyleRanges.clear();
+			chatConsole.inputText.redrawRange(start, end - start, false);
+		} else {
+			pendingStyleRanges.apply(chatConsole.inputText);
+		}
+	}
+
+	protected void beginStyleBatch() {
+		styleBatchDepth++;
+	}
+
+	protected void endStyleBatch() {
+		if (--styleBatchDepth == 0) {
+			applyPendingStyleRanges();
+		}
+	}
+
+	protected void schedulePendingChatEvents() {
+		if (isAppendingPendingEvents.compareAndSet(false, true)) {
+			chatConsole.getDisplay().asyncExec(new RaptorRunnable(getConnector()) {
+				@Override
+				public void execute() {
+					onPendingChatEvents();
+				}
+			});
 		}
 	}
 
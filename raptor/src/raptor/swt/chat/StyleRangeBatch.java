@@ -0,0 +1,158 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
+
+/**
+ * Collects style ranges so they can be applied to a StyledText with one
+ * replaceStyleRanges call instead of one setStyleRange call, and one
+ * restyle, per range. As with setStyleRange a range added later replaces
+ * the styles of the earlier ranges it overlaps.
+ */
+public class StyleRangeBatch {
+	/**
+	 * Sorted by start, never overlapping.
+	 */
+	protected List<StyleRange> ranges = new ArrayList<StyleRange>();
+
+	public void add(StyleRange range) {
+		if (range.length <= 0) {
+			return;
+		}
+		int end = range.start + range.length;
+
+		int first = getFirstEndingAfter(range.start);
+		int last = first;
+		while (last < ranges.size() && ranges.get(last).start < end) {
+			last++;
+		}
+
+		List<StyleRange> pieces = new ArrayList<StyleRange>(3);
+		if (first < last) {
+			StyleRange firstOverlapped = ranges.get(first);
+			if (firstOverlapped.start < range.start) {
+				StyleRange head = (StyleRange) firstOverlapped.clone();
+				head.length = range.start - firstOverlapped.start;
+				pieces.add(head);
+			}
+			pieces.add(range);
+			StyleRange lastOverlapped = ranges.get(last - 1);
+			int lastEnd = lastOverlapped.start + lastOverlapped.length;
+			if (lastEnd > end) {
+				StyleRange tail = (StyleRange) lastOverlapped.clone();
+				tail.start = end;
+				tail.length = lastEnd - end;
+				pieces.add(tail);
+			}
+			ranges.subList(first, last).clear();
+		} else {
+			pieces.add(range);
+		}
+		ranges.addAll(first, pieces);
+	}
+
+	/**
+	 * Applies the ranges to text and empties the batch. Styles between the
+	 * first and the last range which are not covered by a range are cleared.
+	 */
+	public void apply(StyledText text) {
+		if (!ranges.isEmpty()) {
+			int start = getStart();
+			text.replaceStyleRanges(start, getEnd() - start, toArray());
+			ranges.clear();
+		}
+	}
+
+	public void clear() {
+		ranges.clear();
+	}
+
+	/**
+	 * Returns copies of the ranges overlapping start to end, clipped to it.
+	 */
+	public StyleRange[] getRanges(int start, int end) {
+		List<StyleRange> result = new ArrayList<StyleRange>();
+		for (int i = getFirstEndingAfter(start); i < ranges.size()
+				&& ranges.get(i).start < end; i++) {
+			StyleRange range = (StyleRange) ranges.get(i).clone();
+			int rangeEnd = Math.min(range.start + range.length, end);
+			range.start = Math.max(range.start, start);
+			range.length = rangeEnd - range.start;
+			result.add(range);
+		}
+		return result.toArray(new StyleRange[result.size()]);
+	}
+
+	/**
+	 * Returns the offset after the last range, or 0 if the batch is empty.
+	 */
+	public int getEnd() {
+		if (ranges.isEmpty()) {
+			return 0;
+		}
+		StyleRange last = ranges.get(ranges.size() - 1);
+		return last.start + last.length;
+	}
+
+	/**
+	 * Returns the start of the first range, or 0 if the batch is empty.
+	 */
+	public int getStart() {
+		return ranges.isEmpty() ? 0 : ranges.get(0).start;
+	}
+
+	public boolean isEmpty() {
+		return ranges.isEmpty();
+	}
+
+	/**
+	 * Returns the ranges sorted by offset, with adjacent ranges of the same
+	 * style merged.
+	 */
+	public StyleRange[] toArray() {
+		List<StyleRange> result = new ArrayList<StyleRange>(ranges.size());
+		StyleRange previous = null;
+		for (StyleRange range : ranges) {
+			if (previous != null
+					&& previous.start + previous.length == range.start
+					&& previous.similarTo(range)) {
+				previous.length += range.length;
+			} else {
+				previous = (StyleRange) range.clone();
+				result.add(previous);
+			}
+		}
+		return result.toArray(new StyleRange[result.size()]);
+	}
+
+	protected int getFirstEndingAfter(int offset) {
+		int low = 0;
+		int high = ranges.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			StyleRange range = ranges.get(middle);
+			if (range.start + range.length <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
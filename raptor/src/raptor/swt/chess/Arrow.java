@@ -26,6 +26,7 @@ public class Arrow {
 	protected Color color;
 	protected int frame;
 	protected boolean isFadeAway;
+	protected int widthPercentage;
 
 	public Arrow(int startSquare, int endSquare, Color color) {
 		this.startSquare = startSquare;
@@ -65,6 +66,14 @@ public class Arrow {
 		return startSquare;
 	}
 
+	/**
+	 * Returns the width of the arrow as a percentage of the square size, 0 to
+	 * use the ARROW_WIDTH_PERCENTAGE preference.
+	 */
+	public int getWidthPercentage() {
+		return widthPercentage;
+	}
+
 	public void setColor(Color color) {
 		this.color = color;
 	}
@@ -76,4 +85,8 @@ public class Arrow {
 	public void setStartSquare(int startSquare) {
 		this.startSquare = startSquare;
 	}
+
+	public void setWidthPercentage(int widthPercentage) {
+		this.widthPercentage = widthPercentage;
+	}
 }
@@ -725,23 +725,13 @@ public class ArrowDecorator {
 			// Don't put log statements in here it gets called quite often.
 			for (ArrowSpec spec : specs) {
 				if (spec.arrow.frame == -1) {
-					int width = (int) (Raptor.getInstance().getPreferences()
-							.getInt(PreferenceKeys.ARROW_WIDTH_PERCENTAGE) / 100.0 * square
-							.getSize().x);
-					if (width % 2 != 0) {
-						width++;
-					}
+					int width = getWidth(spec.arrow);
 					ArrowSegment segment = board.isWhiteOnTop() ? spec.segment
 							.rotate180() : spec.segment;
 
 					segment.draw(square, spec.arrow.color, width, e.gc);
 				} else if (spec.arrow.frame != 0) {
-					int width = (int) (Raptor.getInstance().getPreferences()
-							.getInt(PreferenceKeys.ARROW_WIDTH_PERCENTAGE) / 100.0 * square
-							.getSize().x);
-					if (width % 2 != 0) {
-						width++;
-					}
+					int width = getWidth(spec.arrow);
 
 					e.gc.setAdvanced(true);
 				    e.gc.setAlpha((int) (255.0/Arrow.ANIMATION_STAGES * spec.arrow.frame));
@@ -756,6 +746,20 @@ public class ArrowDecorator {
 			}
 		}
 
+		/**
+		 * Returns the even width in pixels of the arrow on this square.
+		 */
+		protected int getWidth(Arrow arrow) {
+			int percentage = arrow.widthPercentage > 0 ? arrow.widthPercentage
+					: Raptor.getInstance().getPreferences().getInt(
+							PreferenceKeys.ARROW_WIDTH_PERCENTAGE);
+			int width = (int) (percentage / 100.0 * square.getSize().x);
+			if (width % 2 != 0) {
+				width++;
+			}
+			return width;
+		}
+
 		public void remove(Arrow arrow, boolean isForced) {
 			if (!arrow.isFadeAway || isForced) {
 				ArrowSpec specToRemove = null;
@@ -66,6 +66,7 @@ public class ChessBoard implements BoardConstants {
 	protected boolean isWhitePieceJailOnTop = true;
 	protected ChessBoardMoveList moveList;
 	protected EngineAnalysisWidget engineAnalysisWidget;
+	protected OpeningExplorerWidget openingExplorerWidget;
 	protected RaptorLabel openingDescriptionLabel;
 	protected CoolBar coolbar;
 
@@ -139,9 +140,13 @@ public class ChessBoard implements BoardConstants {
 
 			createEngineAnalysisWidget();
 			engineAnalysisWidget.create(analysisSash);
-			analysisSash.setWeights(new int[] { 70, 30 });
+			openingExplorerWidget = new OpeningExplorerWidget();
+			openingExplorerWidget.setController(controller);
+			openingExplorerWidget.create(analysisSash);
+			analysisSash.setWeights(new int[] { 70, 30, 30 });
 			analysisSash.setMaximizedControl(boardMoveListSash);
 			engineAnalysisWidget.getControl().setVisible(false);
+			openingExplorerWidget.getControl().setVisible(false);
 
 			boardMoveListSash.addDisposeListener(new DisposeListener() {
 				public void widgetDisposed(DisposeEvent e) {
@@ -291,6 +296,10 @@ public class ChessBoard implements BoardConstants {
 		return moveList;
 	}
 
+	public OpeningExplorerWidget getOpeningExplorerWidget() {
+		return openingExplorerWidget;
+	}
+
 	public synchronized RaptorLabel getOpeningDescriptionLabel() {
 		return openingDescriptionLabel;
 	}
@@ -373,11 +382,24 @@ public class ChessBoard implements BoardConstants {
 	}
 
 	public void hideEngineAnalysisWidget() {
-		analysisSash.setMaximizedControl(boardMoveListSash);
 		engineAnalysisWidget.getControl().setVisible(false);
+		if (!isShowingOpeningExplorer()) {
+			analysisSash.setMaximizedControl(boardMoveListSash);
+		} else {
+			analysisSash.layout(true);
+		}
 		engineAnalysisWidget.quit();
 	}
 
+	public void hideOpeningExplorer() {
+		openingExplorerWidget.getControl().setVisible(false);
+		if (!isShowingEngineAnaylsis()) {
+			analysisSash.setMaximizedControl(boardMoveListSash);
+		} else {
+			analysisSash.layout(true);
+		}
+	}
+
 	public void hideMoveList() {
 		if (moveList != null && moveList.getControl() != null
 				&& moveList.getControl().isVisible()) {
@@ -405,6 +427,10 @@ public class ChessBoard implements BoardConstants {
 		return engineAnalysisWidget.getControl().isVisible();
 	}
 
+	public boolean isShowingOpeningExplorer() {
+		return openingExplorerWidget.getControl().isVisible();
+	}
+
 	/**
 	 * Returns true if white is on top, false if white is on botton.
 	 */
@@ -470,6 +496,9 @@ public class ChessBoard implements BoardConstants {
 		if (engineAnalysisWidget != null) {
 			engineAnalysisWidget.setController(controller);
 		}
+		if (openingExplorerWidget != null) {
+			openingExplorerWidget.setController(controller);
+		}
 	}
 
 	/**
@@ -494,6 +523,13 @@ public class ChessBoard implements BoardConstants {
 		engineAnalysisWidget.onShow();
 	}
 
+	public synchronized void showOpeningExplorer() {
+		openingExplorerWidget.getControl().setVisible(true);
+		analysisSash.setMaximizedControl(null);
+		analysisSash.layout(true);
+		openingExplorerWidget.updateToGame();
+	}
+
 	public synchronized void showMoveList() {
 
 		int width = moveList.getControl().computeSize(350, SWT.DEFAULT).x;
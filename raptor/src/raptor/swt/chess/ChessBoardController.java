@@ -33,11 +33,14 @@ import raptor.chess.Move;
 import raptor.chess.Variant;
 import raptor.chess.pgn.PgnHeader;
 import raptor.chess.util.GameUtils;
+import raptor.chess.util.PolyglotBook;
 import raptor.connector.Connector;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.service.PolyglotBookService;
 import raptor.service.SoundService;
+import raptor.speech.SpeechQueue;
 import raptor.swt.ItemChangedListener;
 import raptor.swt.chess.controller.ToolBarItemKey;
 import raptor.util.RaptorLogger;
@@ -56,8 +59,14 @@ public abstract class ChessBoardController implements BoardConstants,
 		GameConstants {
 	static final RaptorLogger LOG = RaptorLogger.getLog(ChessBoardController.class);
 
+	/**
+	 * The most book moves shown as arrows.
+	 */
+	public static final int MAX_BOOK_ARROWS = 5;
+
 	protected ClockLabelUpdater blackClockUpdater;
 	protected ChessBoard board;
+	protected List<Arrow> bookArrows = new ArrayList<Arrow>(MAX_BOOK_ARROWS);
 	protected Game game;
 	protected List<ItemChangedListener> itemChangedListeners = new ArrayList<ItemChangedListener>(
 			5);
@@ -472,6 +481,18 @@ public abstract class ChessBoardController implements BoardConstants,
 		}
 	}
 
+	/**
+	 * Handles the opening explorer action. The default implementation toggles
+	 * the showing of the opening explorer.
+	 */
+	public void onOpeningExplorer() {
+		if (isToolItemSelected(ToolBarItemKey.TOGGLE_OPENING_EXPLORER)) {
+			board.showOpeningExplorer();
+		} else {
+			board.hideOpeningExplorer();
+		}
+	}
+
 	/**
 	 * Handles the first action. The default implementation does nothing.
 	 */
@@ -605,6 +626,7 @@ public abstract class ChessBoardController implements BoardConstants,
 		refreshClocks(isUpdatingClocks);
 		adjustPieceJailVisibility();
 		adjustBoard();
+		adjustBookArrows();
 		adjustPieceJail();
 		board.redrawPiecesAndArtifacts(false);
 
@@ -716,7 +738,7 @@ public abstract class ChessBoardController implements BoardConstants,
 				break;
 			}
 		}
-		SoundService.getInstance().textToSpeech(text);
+		SoundService.getInstance().textToSpeech(text, SpeechQueue.PRIORITY_GAME);
 	}
 
 	public void speakResults(Game game) {
@@ -745,7 +767,7 @@ public abstract class ChessBoardController implements BoardConstants,
 			}
 			}
 		}
-		SoundService.getInstance().textToSpeech(text);
+		SoundService.getInstance().textToSpeech(text, SpeechQueue.PRIORITY_GAME);
 	}
 
 	/**
@@ -884,6 +906,46 @@ public abstract class ChessBoardController implements BoardConstants,
 		}
 	}
 
+	/**
+	 * Replaces the book arrows with arrows for the book moves of the current
+	 * position. Arrow widths are scaled by the move weights, the most played
+	 * move getting the ARROW_WIDTH_PERCENTAGE width.
+	 * 
+	 * This method is provided so it can easily be overridden.
+	 */
+	protected void adjustBookArrows() {
+		if (isDisposed() || board.getArrowDecorator() == null) {
+			return;
+		}
+		for (Arrow arrow : bookArrows) {
+			board.getArrowDecorator().removeArrow(arrow);
+		}
+		bookArrows.clear();
+
+		if (!getPreferences().getBoolean(PreferenceKeys.BOOK_SHOW_ARROWS)) {
+			return;
+		}
+		PolyglotBook.Entry[] entries = PolyglotBookService.getInstance()
+				.getEntries(getGame());
+		if (entries.length == 0) {
+			return;
+		}
+
+		Color color = getPreferences().getColor(
+				PreferenceKeys.BOOK_ARROW_COLOR);
+		int maxWidth = getPreferences().getInt(
+				PreferenceKeys.ARROW_WIDTH_PERCENTAGE);
+		int topWeight = entries[0].getWeight();
+		for (int i = 0; i < entries.length && i < MAX_BOOK_ARROWS; i++) {
+			Arrow arrow = new Arrow(entries[i].getFrom(), entries[i].getTo(),
+					color);
+			arrow.setWidthPercentage(topWeight == 0 ? maxWidth : Math.max(2,
+					maxWidth * entries[i].getWeight() / topWeight));
+			bookArrows.add(arrow);
+			board.getArrowDecorator().addArrow(arrow);
+		}
+	}
+
 	/**
 	 * Adjusts only the colors of the chess clocks based on whose move it is in
 	 * the game.
@@ -1164,6 +1226,7 @@ public abstract class ChessBoardController implements BoardConstants,
 	 */
 	protected void refreshBoard() {
 		adjustBoard();
+		adjustBookArrows();
 		adjustPieceJail();
 		board.redrawPiecesAndArtifacts(false);
 	}
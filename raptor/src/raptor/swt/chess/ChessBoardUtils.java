@@ -64,6 +64,7 @@ import raptor.action.game.MoveListAction;
 import raptor.action.game.RematchAction;
 import raptor.action.game.RevertAction;
 import raptor.action.game.ToggleEngineAnalysisAction;
+import raptor.action.game.ToggleOpeningExplorerAction;
 import raptor.chess.Game;
 import raptor.chess.GameConstants;
 import raptor.chess.Move;
@@ -816,6 +817,19 @@ public class ChessBoardUtils implements BoardConstants {
 			if (result == null) {
 				return null;
 			}
+		} else if (action instanceof ToggleOpeningExplorerAction) {
+			if ((controller instanceof InactiveController || controller instanceof ExamineController
+					|| controller instanceof ObserveController)
+					&& Variant.isClassic(controller.getGame().getVariant())) {
+				result = new ToolItem(toolbar, SWT.CHECK);
+				controller.addToolItem(ToolBarItemKey.TOGGLE_OPENING_EXPLORER, result);
+
+				if (controller.getBoard() != null && controller.getBoard().isShowingOpeningExplorer()) {
+					result.setSelection(true);
+				}
+			} else {
+				return null;
+			}
 		} else if (action instanceof AutoDrawAction) {
 			result = new ToolItem(toolbar, SWT.CHECK);
 			controller.addToolItem(ToolBarItemKey.AUTO_DRAW, result);
@@ -23,6 +23,7 @@ import raptor.RaptorConnectorWindowItem;
 import raptor.connector.Connector;
 import raptor.pref.PreferenceKeys;
 import raptor.service.ChessBoardCacheService;
+import raptor.service.StartupService;
 import raptor.swt.ItemChangedListener;
 import raptor.swt.chess.controller.InactiveController;
 import raptor.util.RaptorLogger;
@@ -188,6 +189,8 @@ public class ChessBoardWindowItem implements RaptorConnectorWindowItem {
 
 		// board.getControl().setLayoutDeferred(true);
 
+		StartupService.getInstance().markMilestone("First chess board");
+
 		if (LOG.isDebugEnabled()) {
 			LOG.debug("Inited window item in "
 					+ (System.currentTimeMillis() - startTime));
@@ -34,6 +34,7 @@ import raptor.chess.GameConstants;
 import raptor.chess.util.GameUtils;
 import raptor.pref.PreferenceKeys;
 import raptor.pref.RaptorPreferenceStore;
+import raptor.service.LatencyTraceService;
 import raptor.swt.SWTUtils;
 import raptor.util.RaptorLogger;
 
@@ -286,6 +287,8 @@ public class ChessSquare extends Canvas implements BoardConstants {
 				}
 			}
 
+			LatencyTraceService.getInstance().boardPainted();
+
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Drew chess square: " + getId() + " in "
 						+ (System.currentTimeMillis() - startTime));
@@ -0,0 +1,171 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chess;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+
+import raptor.Raptor;
+import raptor.chess.Game;
+import raptor.chess.util.OpeningIndex.Entry;
+import raptor.international.L10n;
+import raptor.service.OpeningExplorerService;
+import raptor.service.OpeningExplorerService.OpeningExplorerListener;
+import raptor.swt.RaptorTable;
+import raptor.util.IntegerComparator;
+import raptor.util.RaptorRunnable;
+
+/**
+ * Shows the moves played from the current position of a chess board in the
+ * games of the opening explorer index, with how often each was played, how it
+ * scored and the average Elo of the players who chose it.
+ */
+public class OpeningExplorerWidget {
+	protected static L10n local = L10n.getInstance();
+
+	protected Composite composite;
+	protected ChessBoardController controller;
+	protected RaptorTable movesTable;
+	protected Label statusLabel;
+
+	protected OpeningExplorerListener listener = new OpeningExplorerListener() {
+		public void indexChanged() {
+			Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable() {
+				@Override
+				public void execute() {
+					updateToGame();
+				}
+			});
+		}
+	};
+
+	public Composite create(Composite parent) {
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(3, false));
+
+		statusLabel = new Label(composite, SWT.LEFT);
+		statusLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		Button addButton = new Button(composite, SWT.PUSH);
+		addButton.setText(local.getString("openExpW1"));
+		addButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog fd = new FileDialog(composite.getShell(), SWT.OPEN);
+				fd.setText(local.getString("openExpW1"));
+				fd.setFilterExtensions(new String[] { "*.pgn", "*.*" });
+				String selected = fd.open();
+				if (StringUtils.isNotBlank(selected)) {
+					OpeningExplorerService.getInstance().addPgnFile(selected);
+					updateStatus();
+				}
+			}
+		});
+
+		Button updateButton = new Button(composite, SWT.PUSH);
+		updateButton.setText(local.getString("openExpW2"));
+		updateButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				OpeningExplorerService.getInstance().updateInBackground();
+				updateStatus();
+			}
+		});
+
+		movesTable = new RaptorTable(composite, SWT.BORDER | SWT.FULL_SELECTION, false, true);
+		movesTable.addColumn(local.getString("openExpW3"), SWT.LEFT, 20, false, null);
+		movesTable.addColumn(local.getString("openExpW4"), SWT.RIGHT, 20, false, new IntegerComparator());
+		movesTable.addColumn(local.getString("openExpW5"), SWT.RIGHT, 15, false, null);
+		movesTable.addColumn(local.getString("openExpW6"), SWT.RIGHT, 15, false, null);
+		movesTable.addColumn(local.getString("openExpW7"), SWT.RIGHT, 15, false, null);
+		movesTable.addColumn(local.getString("openExpW8"), SWT.RIGHT, 15, false, new IntegerComparator());
+		movesTable.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 3, 1));
+
+		OpeningExplorerService.getInstance().addOpeningExplorerListener(listener);
+		composite.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				OpeningExplorerService.getInstance().removeOpeningExplorerListener(listener);
+			}
+		});
+		return composite;
+	}
+
+	public ChessBoardController getChessBoardController() {
+		return controller;
+	}
+
+	public Composite getControl() {
+		return composite;
+	}
+
+	public void setController(ChessBoardController controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * Shows the moves for the current position of the controllers game. Does
+	 * nothing while the widget is hidden.
+	 */
+	public void updateToGame() {
+		if (composite == null || composite.isDisposed() || !composite.isVisible() || controller == null
+				|| controller.getGame() == null) {
+			return;
+		}
+		Game game = controller.getGame();
+		OpeningExplorerService service = OpeningExplorerService.getInstance();
+		Entry[] entries = service.getEntries(game);
+		String[] sans = service.getSans(game, entries);
+
+		String[][] data = new String[entries.length][6];
+		for (int i = 0; i < entries.length; i++) {
+			Entry entry = entries[i];
+			int finished = entry.getWhiteWins() + entry.getDraws() + entry.getBlackWins();
+			data[i][0] = StringUtils.defaultString(sans[i], "?");
+			data[i][1] = String.valueOf(entry.getCount());
+			data[i][2] = getPercentage(entry.getWhiteWins(), finished);
+			data[i][3] = getPercentage(entry.getDraws(), finished);
+			data[i][4] = getPercentage(entry.getBlackWins(), finished);
+			data[i][5] = entry.getAverageElo() == 0 ? "" : String.valueOf(entry.getAverageElo());
+		}
+		movesTable.refreshTable(data);
+		updateStatus();
+	}
+
+	protected String getPercentage(int count, int total) {
+		if (total == 0) {
+			return "";
+		}
+		return BigDecimal.valueOf(count * 100.0 / total).setScale(1, RoundingMode.HALF_UP).toString() + "%";
+	}
+
+	protected void updateStatus() {
+		OpeningExplorerService service = OpeningExplorerService.getInstance();
+		statusLabel.setText(service.isUpdating() ? local.getString("openExpW9")
+				: local.getString("openExpW10", service.getPgnFiles().length));
+		composite.layout(true);
+	}
+}
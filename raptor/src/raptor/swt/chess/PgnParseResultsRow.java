@@ -1,5 +1,6 @@
 package raptor.swt.chess;
 
+import raptor.chess.GameRecord;
 import raptor.chess.Result;
 
 /**
@@ -18,6 +19,7 @@ public class PgnParseResultsRow {
 	private String opening;
 	private Result result;
 	private String resultDescription;
+	private GameRecord record;
 
 	public long getLineNumber() {
 		return lineNumber;
@@ -115,6 +117,18 @@ public class PgnParseResultsRow {
 		this.resultDescription = resultDescription;
 	}
 
+	/**
+	 * Returns the compact record of the parsed game, or null if the game has
+	 * to be reloaded from the pgn file.
+	 */
+	public GameRecord getRecord() {
+		return record;
+	}
+
+	public void setRecord(GameRecord record) {
+		this.record = record;
+	}
+
 	@Override
 	public String toString() {
 		return "PgnParseResultsRow [lineNumber=" + lineNumber + ", variant=" + variant + ", date=" + date + ", event="
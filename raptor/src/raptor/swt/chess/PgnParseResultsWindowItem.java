@@ -17,7 +17,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
@@ -72,6 +74,7 @@ public class PgnParseResultsWindowItem implements RaptorWindowItem {
 
 	protected List<PgnParserError> errors;
 	protected List<PgnParseResultsRow> gameRows;
+	protected Map<Long, PgnParseResultsRow> lineNumberToRow = new HashMap<Long, PgnParseResultsRow>();
 	protected String title;
 	protected boolean isPassive;
 	protected String pathToFile;
@@ -84,6 +87,11 @@ public class PgnParseResultsWindowItem implements RaptorWindowItem {
 		this.gameRows = gameRows;
 		this.title = title;
 		this.pathToFile = pathToFile;
+		if (gameRows != null) {
+			for (PgnParseResultsRow row : gameRows) {
+				lineNumberToRow.put(row.getLineNumber(), row);
+			}
+		}
 	}
 
 	public void addItemChangedListener(ItemChangedListener listener) {
@@ -108,6 +116,7 @@ public class PgnParseResultsWindowItem implements RaptorWindowItem {
 			gameRows.clear();
 			gameRows = null;
 		}
+		lineNumberToRow.clear();
 		if (composite != null && !composite.isDisposed()) {
 			composite.dispose();
 		}
@@ -279,7 +288,7 @@ public class PgnParseResultsWindowItem implements RaptorWindowItem {
 					try {
 						fileWriter = new FileWriter(new File(pathToFile), false);
 						for (int i = 0; i < gamesTable.getRowCount(); i++) {
-							int row = Integer.parseInt(gamesTable.getSelectedRowData()[0]);
+							int row = Integer.parseInt(gamesTable.getText(i, 0));
 							Game game = loadGame(row);
 							if (game != null) {
 								fileWriter.write(game.toPgn() + "\n\n");
@@ -365,6 +374,16 @@ public class PgnParseResultsWindowItem implements RaptorWindowItem {
 	}
 
 	protected Game loadGame(int lineNumber) {
+		PgnParseResultsRow row = lineNumberToRow.get((long) lineNumber);
+		if (row != null && row.getRecord() != null) {
+			try {
+				return row.getRecord().toGame();
+			} catch (Throwable t) {
+				LOG.warn("Error restoring game record at line number " + lineNumber
+						+ ". Reloading it from the pgn file.", t);
+			}
+		}
+
 		try {
 			StreamingPgnParser parser = new StreamingPgnParser(new File(pathToFile), Integer.MAX_VALUE);
 			parser.jumpToLine(lineNumber);
@@ -0,0 +1,334 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chess;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+
+import raptor.Quadrant;
+import raptor.Raptor;
+import raptor.RaptorWindowItem;
+import raptor.chess.Game;
+import raptor.chess.pgn.LenientPgnParserListener;
+import raptor.chess.pgn.PgnHeader;
+import raptor.chess.pgn.PgnParserError;
+import raptor.chess.pgn.SimplePgnParser;
+import raptor.chess.util.PositionSearch;
+import raptor.chess.util.PositionSearch.Hit;
+import raptor.chess.util.PositionSearch.PositionSearchListener;
+import raptor.chess.util.PositionSearch.Query;
+import raptor.international.L10n;
+import raptor.pref.PreferenceKeys;
+import raptor.service.ThreadService;
+import raptor.swt.ItemChangedListener;
+import raptor.swt.RaptorTable;
+import raptor.swt.RaptorTable.RaptorTableAdapter;
+import raptor.swt.chess.controller.InactiveController;
+import raptor.util.IntegerComparator;
+import raptor.util.RaptorLogger;
+import raptor.util.RaptorRunnable;
+
+/**
+ * Searches PGN files for the position of a chess board. The position is
+ * matched exactly, by its material or by its pawn structure. Hits are added to
+ * the table as the search finds them and double clicking one opens the game at
+ * the matching move.
+ */
+public class PositionSearchWindowItem implements RaptorWindowItem {
+	private static final RaptorLogger LOG = RaptorLogger.getLog(PositionSearchWindowItem.class);
+
+	public static final Quadrant[] MOVE_TO_QUADRANTS = { Quadrant.I, Quadrant.II, Quadrant.III, Quadrant.IV, Quadrant.V,
+			Quadrant.VI, Quadrant.VII, Quadrant.VIII, Quadrant.IX };
+
+	/**
+	 * How often the table and status are refreshed while searching.
+	 */
+	public static final int REFRESH_MILLIS = 500;
+
+	protected static L10n local = L10n.getInstance();
+
+	protected Composite composite;
+	protected Combo modeCombo;
+	protected Button searchButton;
+	protected Button stopButton;
+	protected Label statusLabel;
+	protected RaptorTable hitsTable;
+
+	protected Query[] queries;
+	protected String title;
+	protected boolean isPassive;
+	protected PositionSearch search;
+	protected List<Hit> pendingHits = new ArrayList<Hit>();
+	protected Map<Integer, Hit> hitsByLine = new HashMap<Integer, Hit>();
+
+	protected Runnable refreshRunnable = new RaptorRunnable() {
+		@Override
+		public void execute() {
+			refresh();
+		}
+	};
+
+	/**
+	 * Creates a window item searching for the current position of the
+	 * specified game.
+	 */
+	public PositionSearchWindowItem(Game game) {
+		queries = new Query[] { Query.position(game), Query.material(game), Query.pawnStructure(game) };
+		title = local.getString("posSearchW1");
+	}
+
+	public void addItemChangedListener(ItemChangedListener listener) {
+	}
+
+	public void afterQuadrantMove(Quadrant newQuadrant) {
+	}
+
+	public boolean confirmClose() {
+		return true;
+	}
+
+	public void dispose() {
+		if (search != null) {
+			search.cancel();
+		}
+		if (composite != null && !composite.isDisposed()) {
+			composite.dispose();
+		}
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Disposed PositionSearchWindowItem");
+		}
+	}
+
+	public Composite getControl() {
+		return composite;
+	}
+
+	public Image getImage() {
+		return null;
+	}
+
+	public Quadrant[] getMoveToQuadrants() {
+		return MOVE_TO_QUADRANTS;
+	}
+
+	public Quadrant getPreferredQuadrant() {
+		return Raptor.getInstance().getPreferences().getQuadrant(PreferenceKeys.APP_PGN_RESULTS_QUADRANT);
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public Control getToolbar(Composite parent) {
+		return null;
+	}
+
+	public void init(Composite parent) {
+		composite = new Composite(parent, SWT.NONE);
+		composite.setLayout(new GridLayout(4, false));
+
+		modeCombo = new Combo(composite, SWT.DROP_DOWN | SWT.READ_ONLY);
+		modeCombo.add(local.getString("posSearchW2"));
+		modeCombo.add(local.getString("posSearchW3"));
+		modeCombo.add(local.getString("posSearchW4"));
+		modeCombo.select(0);
+
+		searchButton = new Button(composite, SWT.PUSH);
+		searchButton.setText(local.getString("posSearchW5"));
+		searchButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog fd = new FileDialog(composite.getShell(), SWT.OPEN);
+				fd.setText(local.getString("posSearchW5"));
+				fd.setFilterExtensions(new String[] { "*.pgn", "*.*" });
+				String selected = fd.open();
+				if (StringUtils.isNotBlank(selected)) {
+					startSearch(new File(selected), queries[modeCombo.getSelectionIndex()]);
+				}
+			}
+		});
+
+		stopButton = new Button(composite, SWT.PUSH);
+		stopButton.setText(local.getString("posSearchW6"));
+		stopButton.setEnabled(false);
+		stopButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (search != null) {
+					search.cancel();
+				}
+			}
+		});
+
+		statusLabel = new Label(composite, SWT.LEFT);
+		statusLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+		hitsTable = new RaptorTable(composite, SWT.BORDER | SWT.H_SCROLL | SWT.V_SCROLL | SWT.SINGLE
+				| SWT.FULL_SELECTION);
+		hitsTable.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 4, 1));
+		hitsTable.addColumn(local.getString("posSearchW7"), SWT.LEFT, 8, true, new IntegerComparator());
+		hitsTable.addColumn(local.getString("posSearchW8"), SWT.LEFT, 6, true, new IntegerComparator());
+		hitsTable.addColumn(local.getString("posSearchW9"), SWT.LEFT, 18, true, null);
+		hitsTable.addColumn(local.getString("posSearchW10"), SWT.LEFT, 7, true, new IntegerComparator());
+		hitsTable.addColumn(local.getString("posSearchW11"), SWT.LEFT, 18, true, null);
+		hitsTable.addColumn(local.getString("posSearchW12"), SWT.LEFT, 7, true, new IntegerComparator());
+		hitsTable.addColumn(local.getString("posSearchW13"), SWT.LEFT, 8, true, null);
+		hitsTable.addColumn(local.getString("posSearchW14"), SWT.LEFT, 10, true, null);
+		hitsTable.addColumn(local.getString("posSearchW15"), SWT.LEFT, 18, true, null);
+		hitsTable.addRaptorTableListener(new RaptorTableAdapter() {
+			@Override
+			public void rowDoubleClicked(MouseEvent event, String[] rowData) {
+				openHit(hitsByLine.get(Integer.parseInt(rowData[0])));
+			}
+		});
+	}
+
+	public void onActivate() {
+		if (isPassive) {
+			if (composite != null && !composite.isDisposed()) {
+				composite.layout(true);
+			}
+			isPassive = false;
+		}
+	}
+
+	public void onPassivate() {
+		isPassive = true;
+	}
+
+	public void removeItemChangedListener(ItemChangedListener listener) {
+	}
+
+	/**
+	 * Opens the game of the specified hit at the move it matched.
+	 */
+	protected void openHit(Hit hit) {
+		if (hit == null) {
+			return;
+		}
+		final List<Game> games = new ArrayList<Game>(1);
+		SimplePgnParser parser = new SimplePgnParser(hit.getPgn());
+		parser.addPgnParserListener(new LenientPgnParserListener() {
+			@Override
+			public void errorEncountered(PgnParserError error) {
+			}
+
+			@Override
+			public boolean gameParsed(Game game, int lineNumber) {
+				games.add(game);
+				return true;
+			}
+		});
+		parser.parse();
+
+		if (games.isEmpty()) {
+			Raptor.getInstance().onError("Error occurred loading game at line number " + hit.getLineNumber() + ".");
+			return;
+		}
+		Game game = games.get(0);
+		InactiveController controller = new InactiveController(game, game.getHeader(PgnHeader.White) + " vs "
+				+ game.getHeader(PgnHeader.Black), false);
+		Raptor.getInstance().getWindow().addRaptorWindowItem(new ChessBoardWindowItem(controller), false);
+		controller.gotoMove(hit.getHalfMoveIndex());
+	}
+
+	/**
+	 * Moves the hits found since the last refresh into the table and updates
+	 * the status. Reschedules itself until the search has finished.
+	 */
+	protected void refresh() {
+		if (composite == null || composite.isDisposed() || search == null) {
+			return;
+		}
+		Hit[] hits;
+		synchronized (pendingHits) {
+			hits = pendingHits.toArray(new Hit[pendingHits.size()]);
+			pendingHits.clear();
+		}
+		for (Hit hit : hits) {
+			hitsByLine.put(hit.getLineNumber(), hit);
+			hitsTable.appendRow(new String[] { String.valueOf(hit.getLineNumber()),
+					String.valueOf(hit.getHalfMoveIndex()), StringUtils.defaultString(hit.getWhite()),
+					StringUtils.defaultString(hit.getWhiteElo()), StringUtils.defaultString(hit.getBlack()),
+					StringUtils.defaultString(hit.getBlackElo()), StringUtils.defaultString(hit.getResult()),
+					StringUtils.defaultString(hit.getDate()), StringUtils.defaultString(hit.getEvent()) });
+		}
+
+		statusLabel.setText(local.getString("posSearchW16", String.valueOf(search.getGamesScanned()),
+				String.valueOf(search.getGamesPerSecond()))
+				+ "  "
+				+ local.getString("posSearchW17", search.getHitCount()));
+		composite.layout(true);
+
+		if (search.isFinished()) {
+			searchButton.setEnabled(true);
+			stopButton.setEnabled(false);
+			modeCombo.setEnabled(true);
+		} else {
+			Raptor.getInstance().getDisplay().timerExec(REFRESH_MILLIS, refreshRunnable);
+		}
+	}
+
+	protected void startSearch(final File file, Query query) {
+		hitsTable.clearTable();
+		hitsByLine.clear();
+		synchronized (pendingHits) {
+			pendingHits.clear();
+		}
+		searchButton.setEnabled(false);
+		stopButton.setEnabled(true);
+		modeCombo.setEnabled(false);
+
+		final PositionSearch newSearch = new PositionSearch(query,
+				new PositionSearchListener() {
+					public void hitFound(Hit hit) {
+						synchronized (pendingHits) {
+							pendingHits.add(hit);
+						}
+					}
+
+					public void searchFinished(PositionSearch search) {
+					}
+				});
+		search = newSearch;
+		ThreadService.getInstance().run(new Runnable() {
+			public void run() {
+				try {
+					newSearch.search(file);
+				} catch (Throwable t) {
+					Raptor.getInstance().onError(local.getString("posSearchW18") + file.getAbsolutePath(), t);
+				}
+			}
+		});
+		Raptor.getInstance().getDisplay().timerExec(REFRESH_MILLIS, refreshRunnable);
+	}
+}
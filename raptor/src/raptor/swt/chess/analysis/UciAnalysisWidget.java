@@ -15,6 +15,8 @@ package raptor.swt.chess.analysis;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
@@ -46,6 +48,8 @@ import raptor.chess.Game;
 import raptor.chess.Move;
 import raptor.chess.Variant;
 import raptor.chess.util.GameUtils;
+import raptor.chess.util.PolyglotBook;
+import raptor.engine.uci.AnalysisCache;
 import raptor.engine.uci.UCIBestMove;
 import raptor.engine.uci.UCIEngine;
 import raptor.engine.uci.UCIInfo;
@@ -60,6 +64,8 @@ import raptor.engine.uci.info.TimeInfo;
 import raptor.engine.uci.options.UCICheck;
 import raptor.international.L10n;
 import raptor.pref.PreferenceKeys;
+import raptor.service.AnalysisCacheService;
+import raptor.service.PolyglotBookService;
 import raptor.service.ThreadService;
 import raptor.service.UCIEngineService;
 import raptor.swt.RaptorTable;
@@ -90,6 +96,9 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 	protected boolean ignoreUciInfo = false;
 	protected static L10n local = L10n.getInstance();
 	protected Object engineLock = new Object();
+	protected int[] rowDepths = new int[0];
+	protected volatile long analysisHash;
+	protected volatile String analysisEngineName;
 
 	protected UCIInfoListener listener = new UCIInfoListener() {
 		public void engineSentBestMove(UCIBestMove uciBestMove) {
@@ -107,28 +116,29 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 						String nps = null;
 						String pv = null;
 						String bestMove = null;
+						ScoreInfo exactScore = null;
+						int depthPlies = 0;
+						UCIMove[] pvMoves = null;
+						boolean isPvLegal = false;
 
 						for (UCIInfo info : infos) {
 							if (info instanceof ScoreInfo) {
 								ScoreInfo scoreInfo = (ScoreInfo) info;
 								if (((ScoreInfo) info).getMateInMoves() != 0) {
-									score = "Mate in " + scoreInfo.getMateInMoves();
+									score = getScoreText(0, scoreInfo.getMateInMoves());
+									exactScore = scoreInfo;
 								} else if (scoreInfo.isLowerBoundScore()) {
 									score = "Calibrating";
 								} else if (scoreInfo.isUpperBoundScore()) {
 									score = "Calibrating";
 								} else {
-									double scoreAsDouble = controller.getGame().isWhitesMove()
-											|| !engine.isMultiplyBlackScoreByMinus1()
-													? scoreInfo.getValueInCentipawns() / 100.0
-													: -scoreInfo.getValueInCentipawns() / 100.0;
-
-									score = "" + new BigDecimal(scoreAsDouble).setScale(2, BigDecimal.ROUND_HALF_UP)
-											.toString();
+									score = getScoreText(scoreInfo.getValueInCentipawns(), 0);
+									exactScore = scoreInfo;
 								}
 							} else if (info instanceof DepthInfo) {
 								DepthInfo depthInfo = (DepthInfo) info;
-								depth = "" + depthInfo.getSearchDepthPlies();
+								depthPlies = depthInfo.getSearchDepthPlies();
+								depth = "" + depthPlies;
 							} else if (info instanceof NodesPerSecondInfo) {
 								NodesPerSecondInfo nodesPerSecInfo = (NodesPerSecondInfo) info;
 								nps = DECIMAL_FORMAT.format(nodesPerSecInfo.getNodesPerSecond());
@@ -137,55 +147,23 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 								time = new BigDecimal(timeInfo.getTimeMillis() / 1000.0)
 										.setScale(1, BigDecimal.ROUND_HALF_UP).toString();
 							} else if (info instanceof BestLineFoundInfo) {
-								BestLineFoundInfo bestLineFoundInfo = (BestLineFoundInfo) info;
-								StringBuilder line = new StringBuilder(100);
-								Game gameClone = controller.getGame().deepCopy(true);
-								gameClone.addState(Game.UPDATING_SAN_STATE);
-								gameClone.clearState(Game.UPDATING_ECO_HEADERS_STATE);
-
-								boolean isFirstMove = true;
-
-								for (UCIMove move : bestLineFoundInfo.getMoves()) {
-									try {
-										Move gameMove = null;
-
-										if (move.isPromotion()) {
-											gameMove = gameClone.makeMove(move.getStartSquare(), move.getEndSquare(),
-													move.getPromotedPiece());
-										} else {
-											gameMove = gameClone.makeMove(move.getStartSquare(), move.getEndSquare());
-										}
-
-										String san = GameUtils.convertSanToUseUnicode(gameMove.getSan(),
-												gameMove.isWhitesMove());
-										String moveNumber = isFirstMove && !gameMove.isWhitesMove()
-												? gameMove.getFullMoveCount() + ") ... "
-												: gameMove.isWhitesMove() ? gameMove.getFullMoveCount() + ") " : "";
-										line.append((line.equals("") ? "" : " ") + moveNumber + san
-												+ (gameClone.isInCheck() ? "+" : "")
-												+ (gameClone.isCheckmate() ? "#" : ""));
-										if (isFirstMove) {
-											bestMove = moveNumber + san + (gameClone.isInCheck() ? "+" : "")
-													+ (gameClone.isCheckmate() ? "#" : "");
-										}
-										isFirstMove = false;
-									} catch (Throwable t) {
-										if (LOG.isInfoEnabled()) {
-											LOG.info(
-													"Illegal line found skipping line (This can occur if the position was "
-															+ "changing when the analysis line was being calculated).",
-													t);
-										}
-										break;
-									}
+								pvMoves = ((BestLineFoundInfo) info).getMoves();
+								String[] moves = getLineText(pvMoves);
+								isPvLegal = moves.length == pvMoves.length;
+								pv = StringUtils.join(moves, " ");
+								if (moves.length > 0) {
+									bestMove = moves[0];
 								}
-								pv = line.toString();
 							} else if (info instanceof MultiPV) {
 								MultiPV multiPvInfo = (MultiPV) info;
 								multiPv = multiPvInfo.getId();
 							}
 						}
 
+						if (!ignoreUciInfo && exactScore != null && isPvLegal && multiPv > 0 && depthPlies > 0) {
+							cacheLine(multiPv, depthPlies, exactScore, pvMoves);
+						}
+
 						if (!ignoreUciInfo && score != null && multiPv != -1) {
 							final String finalScore = score;
 							final String finalTime = time;
@@ -194,6 +172,7 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 							final String finalPV = pv;
 							final String finalBestMove = bestMove;
 							final int finalMultiPv = multiPv;
+							final int finalDepthPlies = depthPlies;
 
 							Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable(controller.getConnector()) {
 								@Override
@@ -202,16 +181,21 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 										return;
 									}
 
-									if (bestMoves.getRowCount() == 0) {
-										String[][] data = new String[Raptor.getInstance().getPreferences()
-												.getInt(PreferenceKeys.STOCKFISH_MOVES_TO_SUGGEST)][6];
-										for (int i = 0; i < data.length; i++)
-											for (int j = 0; j < data[i].length; j++)
-												data[i][j] = "";
-										bestMoves.refreshTable(data);
+									if (StringUtils.isNotBlank(finalTime)) {
+										timeLabel.setText(finalTime);
+									}
+									if (StringUtils.isNotBlank(finalNodes)) {
+										nodesLabel.setText(finalNodes);
 									}
 
 									int row = finalMultiPv - 1;
+									ensureRows();
+									if (row >= rowDepths.length || finalDepthPlies < rowDepths[row]) {
+										// A deeper cached line is being shown.
+										topLine.layout();
+										return;
+									}
+									rowDepths[row] = finalDepthPlies;
 
 									if (StringUtils.isNotBlank(finalScore)) {
 										bestMoves.setText(row, 0, finalScore);
@@ -222,12 +206,6 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 									if (StringUtils.isNotBlank(finalDepth)) {
 										depthLabel.setText(finalDepth);
 									}
-									if (StringUtils.isNotBlank(finalTime)) {
-										timeLabel.setText(finalTime);
-									}
-									if (StringUtils.isNotBlank(finalNodes)) {
-										nodesLabel.setText(finalNodes);
-									}
 									if (row == 0 && StringUtils.isNotBlank(finalBestMove)) {
 										bestMoveLabel.setText(finalBestMove);
 									}
@@ -247,6 +225,7 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 			@Override
 			public void execute() {
 				bestMoves.clearTable();
+				rowDepths = new int[0];
 			}
 		});
 	}
@@ -461,6 +440,29 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 							} catch (Throwable t) {
 							}
 
+							// Book positions are shown from the book instead
+							// of being analyzed unless the user asked for
+							// them to be analyzed too.
+							boolean isAnalyzingBook = Raptor.getInstance().getPreferences()
+									.getBoolean(PreferenceKeys.BOOK_ANALYZE_POSITIONS);
+							final PolyglotBook.Entry[] bookEntries = isAnalyzingBook ? new PolyglotBook.Entry[0]
+									: PolyglotBookService.getInstance().getEntries(controller.getGame());
+							if (bookEntries.length > 0) {
+								ignoreUciInfo = true;
+								Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable() {
+									@Override
+									public void execute() {
+										if (composite.isVisible()) {
+											startStopButton.setText(local.getString("uciAnalW_54"));
+											bestMoves.clearTable();
+											rowDepths = new int[0];
+											showBookEntries(bookEntries);
+										}
+									}
+								});
+								return;
+							}
+
 							if (!engine.isConnected()) {
 								engine.connect();
 							}
@@ -478,17 +480,41 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 							engine.newGame();
 							engine.setPosition(controller.getGame().toFen(), null);
 							engine.isReady();
-							ignoreUciInfo = false;
-							engine.go(engine.getGoAnalysisParameters(), listener);
+
+							analysisHash = controller.getGame().getZobristPositionHash();
+							analysisEngineName = engine.getEngineName();
+							AnalysisCache cache = AnalysisCacheService.getInstance().getCache();
+							final AnalysisCache.Entry cached = cache == null ? null
+									: cache.get(analysisHash, controller.getGame().getVariant(), analysisEngineName);
+
+							// Queued before go so the cached lines are shown
+							// before any of the engines. The engine can't be
+							// handed the cached search, so it starts again at
+							// depth 1 and its lines replace the cached ones as
+							// they get deeper. A depth limited analysis the
+							// cache already covers is not searched again.
+							final boolean isCovered = cached != null
+									&& cached.covers(engine.getGoAnalysisParameters());
 							Raptor.getInstance().getDisplay().asyncExec(new RaptorRunnable() {
 								@Override
 								public void execute() {
 									if (composite.isVisible()) {
-										startStopButton.setText(local.getString("uciAnalW_54"));
+										startStopButton.setText(local.getString(isCovered ? "uciAnalW_34"
+												: "uciAnalW_54"));
 										bestMoves.clearTable();
+										rowDepths = new int[0];
+										if (cached != null) {
+											showCachedEntry(cached);
+										}
 									}
 								}
 							});
+							if (isCovered) {
+								ignoreUciInfo = true;
+								return;
+							}
+							ignoreUciInfo = false;
+							engine.go(engine.getGoAnalysisParameters(), listener);
 						}
 					} catch (Throwable t) {
 						LOG.error("Error starting engine", t);
@@ -499,6 +525,19 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 		}
 	}
 
+	/**
+	 * Stores an exact line in the analysis cache if the board is still on the
+	 * position being analyzed.
+	 */
+	protected void cacheLine(int multiPv, int depth, ScoreInfo score, UCIMove[] pv) {
+		AnalysisCache cache = AnalysisCacheService.getInstance().getCache();
+		Game game = controller.getGame();
+		if (cache != null && game.getZobristPositionHash() == analysisHash) {
+			cache.put(analysisHash, game.getVariant(), analysisEngineName, multiPv, depth,
+					score.getValueInCentipawns(), score.getMateInMoves(), pv);
+		}
+	}
+
 	protected void createEnginesCombo() {
 
 		engineCombo.removeAll();
@@ -512,4 +551,123 @@ public class UciAnalysisWidget implements EngineAnalysisWidget {
 		topLine.pack(true);
 		topLine.layout(true, true);
 	}
+
+	/**
+	 * Adds the table rows if the table is empty.
+	 */
+	protected void ensureRows() {
+		if (bestMoves.getRowCount() == 0) {
+			String[][] data = new String[Raptor.getInstance().getPreferences()
+					.getInt(PreferenceKeys.STOCKFISH_MOVES_TO_SUGGEST)][6];
+			for (int i = 0; i < data.length; i++)
+				for (int j = 0; j < data[i].length; j++)
+					data[i][j] = "";
+			bestMoves.refreshTable(data);
+			rowDepths = new int[data.length];
+		}
+	}
+
+	/**
+	 * Returns the numbered san of each move of the line which is legal in the
+	 * current position. A line cut short can occur if the position was
+	 * changing when the line was being calculated.
+	 */
+	protected String[] getLineText(UCIMove[] moves) {
+		List<String> result = new ArrayList<String>(moves.length);
+		Game gameClone = controller.getGame().deepCopy(true);
+		gameClone.addState(Game.UPDATING_SAN_STATE);
+		gameClone.clearState(Game.UPDATING_ECO_HEADERS_STATE);
+
+		for (UCIMove move : moves) {
+			try {
+				Move gameMove = null;
+
+				if (move.isPromotion()) {
+					gameMove = gameClone.makeMove(move.getStartSquare(), move.getEndSquare(),
+							move.getPromotedPiece());
+				} else {
+					gameMove = gameClone.makeMove(move.getStartSquare(), move.getEndSquare());
+				}
+
+				String san = GameUtils.convertSanToUseUnicode(gameMove.getSan(), gameMove.isWhitesMove());
+				String moveNumber = result.isEmpty() && !gameMove.isWhitesMove()
+						? gameMove.getFullMoveCount() + ") ... "
+						: gameMove.isWhitesMove() ? gameMove.getFullMoveCount() + ") " : "";
+				result.add(moveNumber + san + (gameClone.isInCheck() ? "+" : "")
+						+ (gameClone.isCheckmate() ? "#" : ""));
+			} catch (Throwable t) {
+				if (LOG.isInfoEnabled()) {
+					LOG.info("Illegal line found skipping line (This can occur if the position was "
+							+ "changing when the analysis line was being calculated).", t);
+				}
+				break;
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Returns the score text for a score from the side to moves point of
+	 * view.
+	 */
+	protected String getScoreText(int centipawns, int mateInMoves) {
+		if (mateInMoves != 0) {
+			return "Mate in " + mateInMoves;
+		}
+		double scoreAsDouble = controller.getGame().isWhitesMove() || !engine.isMultiplyBlackScoreByMinus1()
+				? centipawns / 100.0 : -centipawns / 100.0;
+		return "" + new BigDecimal(scoreAsDouble).setScale(2, BigDecimal.ROUND_HALF_UP).toString();
+	}
+
+	/**
+	 * Shows the book moves of the position with their share of the total
+	 * weight.
+	 */
+	protected void showBookEntries(PolyglotBook.Entry[] entries) {
+		ensureRows();
+		int totalWeight = 0;
+		for (PolyglotBook.Entry entry : entries) {
+			totalWeight += entry.getWeight();
+		}
+		for (int row = 0; row < entries.length && row < rowDepths.length; row++) {
+			String[] moves = getLineText(new UCIMove[] { new UCIMove(entries[row].getFrom(),
+					entries[row].getTo(), entries[row].getPromotedPiece()) });
+			if (moves.length == 0) {
+				continue;
+			}
+			bestMoves.setText(row, 0, local.getString("bookMove"));
+			bestMoves.setText(row, 1, moves[0] + (totalWeight == 0 ? ""
+					: " (" + entries[row].getWeight() * 100 / totalWeight + "%)"));
+			if (row == 0) {
+				depthLabel.setText("");
+				bestMoveLabel.setText(moves[0]);
+			}
+		}
+		topLine.layout();
+	}
+
+	/**
+	 * Shows the cached lines of the position. Engine lines replace them only
+	 * once they are at least as deep.
+	 */
+	protected void showCachedEntry(AnalysisCache.Entry entry) {
+		ensureRows();
+		for (AnalysisCache.Line line : entry.getLines()) {
+			int row = line.getMultiPv() - 1;
+			if (row >= rowDepths.length) {
+				continue;
+			}
+			String[] moves = getLineText(line.getMoves());
+			rowDepths[row] = line.getDepth();
+			bestMoves.setText(row, 0, getScoreText(line.getCentipawns(), line.getMateInMoves()));
+			bestMoves.setText(row, 1, StringUtils.join(moves, " "));
+			if (row == 0) {
+				depthLabel.setText("" + line.getDepth());
+				if (moves.length > 0) {
+					bestMoveLabel.setText(moves[0]);
+				}
+			}
+		}
+		topLine.layout();
+	}
 }
\ No newline at end of file
@@ -374,6 +374,7 @@ public class ExamineController extends ChessBoardController {
 		board.getMoveList().select(getGame().getMoveList().getSize());
 		super.refresh(isUpdatingClocks);
 		board.getEngineAnalysisWidget().updateToGame();
+		board.getOpeningExplorerWidget().updateToGame();
 	}
 
 	@Override
@@ -462,7 +462,8 @@ public class InactiveController extends ChessBoardController implements
 		if (isDisposed()) {
 			return;
 		}
-		board.getEngineAnalysisWidget().updateToGame();	
+		board.getEngineAnalysisWidget().updateToGame();
+		board.getOpeningExplorerWidget().updateToGame();
 		
 		//if (!variationMode)
 		board.getMoveList().select(getCursor().getCursorPosition());			
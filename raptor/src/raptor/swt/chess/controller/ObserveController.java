@@ -27,6 +27,7 @@ import raptor.connector.Connector;
 import raptor.pref.PreferenceKeys;
 import raptor.service.GameService.GameServiceAdapter;
 import raptor.service.GameService.GameServiceListener;
+import raptor.service.LatencyTraceService;
 import raptor.service.SoundService;
 import raptor.swt.SWTUtils;
 import raptor.swt.chat.ChatUtils;
@@ -140,7 +141,8 @@ public class ObserveController extends ChessBoardController {
 
 				
 				board.getControl().getDisplay()
-						.asyncExec(new RaptorRunnable(getConnector()) {
+						.asyncExec(LatencyTraceService.getInstance().withReadTime(
+								new RaptorRunnable(getConnector()) {
 							@Override
 							public void execute() {
 									if (isDisposed()) {
@@ -169,11 +171,13 @@ public class ObserveController extends ChessBoardController {
 													false);
 										}
 										refresh();
+										LatencyTraceService.getInstance()
+												.controllerUpdated();
 									}
 									
 									//System.err.println("Handled obs move in move in " + (System.currentTimeMillis() - startTime));
 								}
-						});
+						}));
 			}
 
 		}
@@ -404,6 +408,7 @@ public class ObserveController extends ChessBoardController {
 		enableDisableNavButtons();
 		super.refresh(isUpdatingClocks);
 		board.getEngineAnalysisWidget().updateToGame();
+		board.getOpeningExplorerWidget().updateToGame();
 	}
 
 	@Override
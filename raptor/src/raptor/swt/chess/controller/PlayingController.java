@@ -58,6 +58,7 @@ import raptor.connector.Connector;
 import raptor.pref.PreferenceKeys;
 import raptor.service.GameService.GameServiceAdapter;
 import raptor.service.GameService.GameServiceListener;
+import raptor.service.LatencyTraceService;
 import raptor.service.PlayingStatisticsService;
 import raptor.service.SoundService;
 import raptor.service.ThreadService;
@@ -195,7 +196,7 @@ public class PlayingController extends ChessBoardController {
 		public void gameStateChanged(final Game game, final boolean isNewMove) {
 			if (!isDisposed() && game.getId().equals(getGame().getId())) {
 				// final long startTime = System.currentTimeMillis();
-				board.getControl().getDisplay().asyncExec(new RaptorRunnable(getConnector()) {
+				board.getControl().getDisplay().asyncExec(LatencyTraceService.getInstance().withReadTime(new RaptorRunnable(getConnector()) {
 					@Override
 					public void execute() {
 						if (isDisposed()) {
@@ -245,10 +246,11 @@ public class PlayingController extends ChessBoardController {
 							addDecorationsForLastMoveListMove();
 							refresh();
 						}
+						LatencyTraceService.getInstance().controllerUpdated();
 						// System.err.println("Handled move in " +
 						// (System.currentTimeMillis() - startTime));
 					}
-				});
+				}));
 			}
 		}
 
@@ -709,6 +711,7 @@ public class PlayingController extends ChessBoardController {
 			LOG.debug("userMadeMove " + getGame().getId() + " " + getSan(fromSquare) + " " + getSan(toSquare));
 		}
 		board.unhidePieces();
+		LatencyTraceService.getInstance().markDrop();
 
 		long startTime = System.currentTimeMillis();
 
@@ -999,6 +1002,7 @@ public class PlayingController extends ChessBoardController {
 						move = game.makeMove(info.fromSquare, info.toSquare, info.promotionColorlessPiece);
 					}
 					game.rollback();
+					LatencyTraceService.getInstance().markPremove();
 					final Move finalMove = move;
 					ThreadService.getInstance().run(new Runnable() {
 						public void run() {
@@ -1083,6 +1087,7 @@ public class PlayingController extends ChessBoardController {
 				try {
 					move = game.makeMove(info.fromSquare, info.toSquare);
 					game.rollback();
+					LatencyTraceService.getInstance().markPremove();
 					final Move finalMove = move;
 					ThreadService.getInstance().run(new Runnable() {
 						public void run() {
@@ -14,5 +14,5 @@
 package raptor.swt.chess.controller;
 
 public enum ToolBarItemKey {
-	AUTO_BISHOP, AUTO_DRAW, AUTO_KING, AUTO_KNIGHT, AUTO_QUEEN, AUTO_ROOK, FORCE_UPDATE, MOVE_LIST, BACK_NAV, CLEAR_PREMOVES, COMMIT_NAV, FIRST_NAV, LAST_NAV, NEXT_NAV, REVERT_NAV, CASTLE_SHORT, CASTLE_LONG, MATCH_WINNER, TOGGLE_ANALYSIS_ENGINE, TRY_VARIATION
+	AUTO_BISHOP, AUTO_DRAW, AUTO_KING, AUTO_KNIGHT, AUTO_QUEEN, AUTO_ROOK, FORCE_UPDATE, MOVE_LIST, BACK_NAV, CLEAR_PREMOVES, COMMIT_NAV, FIRST_NAV, LAST_NAV, NEXT_NAV, REVERT_NAV, CASTLE_SHORT, CASTLE_LONG, MATCH_WINNER, TOGGLE_ANALYSIS_ENGINE, TOGGLE_OPENING_EXPLORER, TRY_VARIATION
 }
\ No newline at end of file
@@ -78,4 +78,15 @@ public class MoveListVariation {
 	public List<Integer> getMoveNodesLengths() {
 		return moveNodesLengths;
 	}
+
+	/**
+	 * Moves the variation by delta chars after text was inserted before it.
+	 */
+	public void shift(int delta) {
+		startOffset += delta;
+		nextNodeOffset += delta;
+		for (int i = 0; i < moveNodes.size(); i++) {
+			moveNodes.set(i, moveNodes.get(i) + delta);
+		}
+	}
 }
@@ -0,0 +1,77 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.swt.chess.movelist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import raptor.chess.Game;
+import raptor.chess.Move;
+import raptor.chess.MoveList;
+
+/**
+ * Remembers which moves a move list has painted, one entry per ply, so an
+ * update only has to repaint the plies which changed instead of the whole
+ * game.
+ */
+public class PaintedMoves {
+	protected List<Move> moves = new ArrayList<Move>();
+	protected List<String> sans = new ArrayList<String>();
+
+	/**
+	 * Records the move painted for the next ply.
+	 */
+	public void add(Move move) {
+		moves.add(move);
+		sans.add(move.toString());
+	}
+
+	public void clear() {
+		moves.clear();
+		sans.clear();
+	}
+
+	/**
+	 * Returns the first ply which is no longer painted correctly for the
+	 * game. Returns size() if all painted plies are still current. Plies are
+	 * compared from the end, so a new move or a takeback only looks at the
+	 * last few plies.
+	 */
+	public int getFirstChangedPly(Game game) {
+		MoveList moveList = game.getMoveList();
+		int result = Math.min(moves.size(), moveList.getSize());
+		while (result > 0 && !isCurrent(moveList.get(result - 1), result - 1)) {
+			result--;
+		}
+		return result;
+	}
+
+	public int size() {
+		return moves.size();
+	}
+
+	/**
+	 * Forgets all plies from ply on.
+	 */
+	public void truncate(int ply) {
+		if (ply < moves.size()) {
+			moves.subList(ply, moves.size()).clear();
+			sans.subList(ply, sans.size()).clear();
+		}
+	}
+
+	protected boolean isCurrent(Move move, int ply) {
+		return move == moves.get(ply) && sans.get(ply).equals(move.toString());
+	}
+}
@@ -20,6 +20,7 @@ import org.eclipse.swt.widgets.Listener;
 
 import raptor.Raptor;
 import raptor.chess.Game;
+import raptor.chess.Move;
 import raptor.chess.util.GameUtils;
 import raptor.pref.PreferenceKeys;
 import raptor.swt.RaptorTable;
@@ -40,6 +41,11 @@ public class TableMoveList implements ChessBoardMoveList {
 	protected RaptorTable movesTable;
 	protected long lastWheel;
 
+	/**
+	 * The moves in the table. Used to update only the rows which changed.
+	 */
+	protected PaintedMoves paintedMoves = new PaintedMoves();
+
 	Listener mouseWheelListener = new Listener() {
 		public void handleEvent(Event event) {
 			switch (event.type) {
@@ -60,6 +66,7 @@ public class TableMoveList implements ChessBoardMoveList {
 	 */
 	public void clear() {
 		movesTable.clearTable();
+		paintedMoves.clear();
 	}
 
 	/**
@@ -141,6 +148,9 @@ public class TableMoveList implements ChessBoardMoveList {
 
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * Rows are only rewritten from the first ply which changed, so a new move
+	 * touches one cell instead of rebuilding the table.
 	 */
 	public void updateToGame() {
 		if (movesTable.isVisible()) {
@@ -151,26 +161,41 @@ public class TableMoveList implements ChessBoardMoveList {
 			
 			if (moveListSize == 0) {
 				movesTable.clearTable();
+				paintedMoves.clear();
 			} else {
-				int numRows = (moveListSize + 1) / 2;
+				int firstChangedPly = paintedMoves.getFirstChangedPly(game);
+				if (firstChangedPly == paintedMoves.size()
+						&& moveListSize == paintedMoves.size()) {
+					return;
+				}
 
-				String[][] data = new String[numRows][2];
-
-				for (int i = 0; i < data.length; i++) {
-					data[i][0] = i
-							+ 1
-							+ ") "
-							+ GameUtils.convertSanToUseUnicode(game
-									.getMoveList().get(i * 2).toString(), true);
-					if (i * 2 + 1 >= moveListSize) {
-						data[i][1] = "";
-					} else {
-						data[i][1] = GameUtils.convertSanToUseUnicode(game
-								.getMoveList().get(i * 2 + 1).toString(), true);
+				int numRows = (moveListSize + 1) / 2;
+				int firstChangedRow = firstChangedPly / 2;
+				movesTable.getTable().setRedraw(false);
+				try {
+					for (int i = movesTable.getRowCount() - 1; i >= numRows; i--) {
+						movesTable.removeRow(i);
+					}
+					for (int i = firstChangedRow; i < numRows; i++) {
+						String white = i + 1 + ") "
+								+ getSan(game, i * 2);
+						String black = i * 2 + 1 >= moveListSize ? ""
+								: getSan(game, i * 2 + 1);
+						if (i < movesTable.getRowCount()) {
+							movesTable.setText(i, 0, white);
+							movesTable.setText(i, 1, black);
+						} else {
+							movesTable.appendRow(new String[] { white, black });
+						}
 					}
+				} finally {
+					movesTable.getTable().setRedraw(true);
 				}
 
-				movesTable.refreshTable(data);
+				paintedMoves.truncate(firstChangedRow * 2);
+				for (int i = firstChangedRow * 2; i < moveListSize; i++) {
+					paintedMoves.add(game.getMoveList().get(i));
+				}
 
 				if (LOG.isDebugEnabled()) {
 					LOG.debug("Updated to game in : "
@@ -180,6 +205,11 @@ public class TableMoveList implements ChessBoardMoveList {
 		}
 	}
 
+	private String getSan(Game game, int halfMoveIndex) {
+		Move move = game.getMoveList().get(halfMoveIndex);
+		return GameUtils.convertSanToUseUnicode(move.toString(), true);
+	}
+
 	/**
 	 * Appends the move at the specified half move number to the movesTable.
 	 */
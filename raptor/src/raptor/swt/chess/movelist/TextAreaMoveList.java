@@ -14,6 +14,7 @@
 package raptor.swt.chess.movelist;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.swt.SWT;
@@ -69,6 +70,12 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 	 */
 	protected List<Integer> moveNodesLengths;
 
+	/**
+	 * The moves the move nodes were painted from. Used to find the plies to
+	 * repaint on an update.
+	 */
+	protected PaintedMoves paintedMoves = new PaintedMoves();
+
 	/**
 	 * The list contains all variations present in this game.
 	 */
@@ -83,6 +90,11 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 	 * Offset where the header ends.
 	 */
 	protected int movesTextStart;
+
+	/**
+	 * The header painted above the moves.
+	 */
+	protected String title;
 	
 	/**
 	 * The color of the move highlighting in the move list.
@@ -94,7 +106,6 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 	 */
 	private int selectedHalfmove;
 	protected long lastWheel;
-	private String lastMoveSan;
 
 	/**
 	 * True if any variation selected.
@@ -108,6 +119,8 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 		textPanel.replaceTextRange(0, textPanel.getCharCount(), "");
 		moveNodes.clear();
 		moveNodesLengths.clear();
+		paintedMoves.clear();
+		title = null;
 	}
 
 	/**
@@ -149,12 +162,7 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 		textPanel.setCaretOffset(origCaretPos);
 
 		// correct offsets for the following moves
-		int moveIndex = halfMoveIndex + 1;
-		while (moveIndex < moveNodes.size()) {
-			moveNodes.set(moveIndex, moveNodes.get(moveIndex) + text.length()
-					+ 1);
-			moveIndex++;
-		}
+		shiftOffsets(halfMoveIndex + 1, halfMoveIndex, text.length() + 1);
 	}
 
 	private void createControls(Composite parent) {
@@ -174,6 +182,9 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 		textPanel.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mouseDown(MouseEvent e) {
+				if (moveNodes.isEmpty()) {
+					return;
+				}
 				int caretOffset = textPanel.getCaretOffset();
 
 				if (caretOffset > moveNodes.get(moveNodes.size() - 1)) {
@@ -182,49 +193,39 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 				}
 
 				// check if user selected a variation
-				int count = 0;
-				for (int nodeOffset : moveNodes) {
-					for (MoveListVariation var : vars) {
-						if (var.getStartingMove() == count
-								&& var.getStartOffset() < caretOffset
-								&& var.getStartOffset() + var.getTotalLength() > caretOffset) {
-							int count2 = count;
-							for (int varNodeOffset : var.getMoveNodes()) {								
-								if (varNodeOffset < caretOffset
-										&& varNodeOffset
-												+ var.getMoveNodesLengths()
-														.get(count2	- var
-																.getStartingMove()) > caretOffset) {
-
-									if (!variationMode) {
-
-										currVariation = var;
-										((InactiveController) controller)
-												.setVariationMode(true);
-									}
-
-									controller
-											.userSelectedMoveListMove(count2 + 1);							
-									return;
+				for (MoveListVariation var : vars) {
+					if (var.getStartOffset() < caretOffset
+							&& var.getStartOffset() + var.getTotalLength() > caretOffset) {
+						List<Integer> varNodes = var.getMoveNodes();
+						for (int i = 0; i < varNodes.size(); i++) {
+							int varNodeOffset = varNodes.get(i);
+							if (varNodeOffset < caretOffset
+									&& varNodeOffset
+											+ var.getMoveNodesLengths().get(i) > caretOffset) {
+								if (!variationMode) {
+									currVariation = var;
+									((InactiveController) controller)
+											.setVariationMode(true);
 								}
 
-								count2++;
+								controller.userSelectedMoveListMove(var
+										.getStartingMove()
+										+ i + 1);
+								return;
 							}
 						}
 					}
+				}
 
-					if (nodeOffset <= caretOffset
-							&& nodeOffset + moveNodesLengths.get(count) >= caretOffset) {
-						if (variationMode) { // user has a variation selected, but clicked on an ordinary move
-							clearMoveSelection(selectedHalfmove);
-							((InactiveController) controller)
-									.setVariationMode(false);
-						}
-
-						controller.userSelectedMoveListMove(count + 1);
-						break;
+				int halfMove = getHalfMoveAt(caretOffset);
+				if (halfMove != -1) {
+					if (variationMode) { // user has a variation selected, but clicked on an ordinary move
+						clearMoveSelection(selectedHalfmove);
+						((InactiveController) controller)
+								.setVariationMode(false);
 					}
-					count++;
+
+					controller.userSelectedMoveListMove(halfMove + 1);
 				}
 			}
 		});
@@ -260,6 +261,26 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 		updateToGame();
 	}
 
+	/**
+	 * Returns the index of the move node containing offset, or -1 if offset is
+	 * not on a move.
+	 */
+	protected int getHalfMoveAt(int offset) {
+		int low = 0;
+		int high = moveNodes.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (moveNodes.get(middle) <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		int start = moveNodes.get(low);
+		return start <= offset && start + moveNodesLengths.get(low) >= offset ? low
+				: -1;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -367,124 +388,142 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * Only the plies which changed since the last update are repainted: new
+	 * moves are appended and a takeback removes the text of the plies taken
+	 * back.
 	 */
 	public void updateToGame() {
 		if (textPanel.isVisible()) {
 			long startTime = System.currentTimeMillis();
-
-			if (textPanel.getCharCount() == 0) {
-				String sd = textPanel.getLineDelimiter();
-				String title = controller.getGame().getHeader(PgnHeader.White)
-						+ " vs "
-						+ controller.getGame().getHeader(PgnHeader.Black) + sd
-						+ sd;
-				textPanel.append(title);
-				StyleRange styleRange = new StyleRange();
-				styleRange.start = 0;
-				styleRange.length = title.length();
-				styleRange.fontStyle = SWT.BOLD;
-				textPanel.setStyleRange(styleRange);
-				movesTextStart = textPanel.getCharCount();
-			}
 			Game game = controller.getGame();
+			updateTitle(game);
 
 			int moveListSize = game.getMoveList().getSize();
-			
-			if (moveListSize == 0 && textPanel.getCharCount() != 0) {
-				textPanel.setText("");
+			int firstChangedPly = variationMode ? moveNodes.size()
+					: paintedMoves.getFirstChangedPly(game);
+			if (firstChangedPly == moveNodes.size()
+					&& moveListSize <= moveNodes.size()) {
 				return;
-			} else {
-				if (moveListSize == moveNodes.size()) {
-					if (vars.size() == 0
-							&& !lastMoveSan.equals(game.getMoveList().get(
-									moveListSize - 1).toString())) {
-						prepareForRepaint();
-					} else
-						return;
-				} else if (!variationMode && moveListSize != moveNodes.size()) {
-					// move list shrinked
-					prepareForRepaint();
-				}
-
-				StringBuffer buff = new StringBuffer();
-				int lastMoveNLength = -1;
-				for (int i = moveNodes.size(); i < moveListSize; i++) {
-					boolean hasComments = false;
-					int start, length;
-					start = textPanel.getCharCount() + buff.length();
-					
-					String moveNumber;
-					if (moveNodes.size() == 0 && !game
-							.getMoveList().get(i).isWhitesMove())
-						moveNumber = getMoveNumberBlack(i);					
-					else
-						moveNumber = getMoveNumber(i);
-					
-					String move = moveNumber
-							+ GameUtils.convertSanToUseUnicode(game
-									.getMoveList().get(i).toString(), true);
-					buff.append(move);
-					length = move.length();
-					if (lastMoveNLength != -1) {
-						start -= lastMoveNLength;
-						length += lastMoveNLength;
-						lastMoveNLength = -1;
-					}
+			}
 
-					for (Nag nag : game.getMoveList().get(i).getNags()) {
-						if (nag.hasSymbol()) {
-							buff.append(nag.getSymbol());
-							length += nag.getSymbol().length();
-						}
-					}
+			if (firstChangedPly < moveNodes.size()) {
+				truncate(firstChangedPly);
+			}
+			if (moveNodes.size() < moveListSize) {
+				appendPlies(game, moveListSize);
+			}
+			if (!variationMode && moveListSize > 0) {
+				select(game.getHalfMoveCount());
+			}
 
-					for (Comment comment : game.getMoveList().get(i)
-							.getComments()) {
-						String sd = textPanel.getLineDelimiter();
-						buff.append(sd);
-                        buff.append("  [").append(comment).append("]");
-						buff.append(sd);
-						hasComments = true;
-					}
+			updateVariations();
 
-					moveNodes.add(start);
-					moveNodesLengths.add(length);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Updated to game in : "
+						+ (System.currentTimeMillis() - startTime));
+			}
+		}
+	}
 
-					if (!hasComments)
-						buff.append(" ");
-					else if (moveListSize - 1 != i) {
-						String num = getMoveNumberBlack(i - 1);
-						buff.append(num);
-						lastMoveNLength = num.length();
-					}
+	/**
+	 * Paints the plies from moveNodes.size() up to moveListSize at the end of
+	 * the text.
+	 */
+	private void appendPlies(Game game, int moveListSize) {
+		String sd = textPanel.getLineDelimiter();
+		int offset = textPanel.getCharCount();
+		StringBuilder buff = new StringBuilder();
+		for (int i = moveNodes.size(); i < moveListSize; i++) {
+			Move move = game.getMoveList().get(i);
+			int start = offset + buff.length();
+			buff.append(getPlyNumber(game, i)).append(
+					GameUtils.convertSanToUseUnicode(move.toString(), true));
+			for (Nag nag : move.getNags()) {
+				if (nag.hasSymbol()) {
+					buff.append(nag.getSymbol());
 				}
-				textPanel.append(buff.toString());
-				if (!variationMode)
-					select(game.getHalfMoveCount());
+			}
 
-				if (game.getMoveList().get(moveListSize - 1) != null) {
-					lastMoveSan = game.getMoveList().get(moveListSize - 1)
-							.toString();
-				}
-			}			
+			moveNodes.add(start);
+			moveNodesLengths.add(offset + buff.length() - start);
+			paintedMoves.add(move);
 
-			updateVariations();
+			Comment[] comments = move.getComments();
+			for (Comment comment : comments) {
+				buff.append(sd);
+				buff.append("  [").append(comment).append("]");
+				buff.append(sd);
+			}
+			if (comments.length == 0) {
+				buff.append(" ");
+			}
+		}
+		textPanel.append(buff.toString());
+	}
 
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Updated to game in : "
-						+ (System.currentTimeMillis() - startTime));
+	/**
+	 * Removes the text of the plies from ply on, along with the variations
+	 * which start there.
+	 */
+	private void truncate(int ply) {
+		int offset = moveNodes.get(ply);
+		textPanel.replaceTextRange(offset, textPanel.getCharCount() - offset,
+				"");
+		moveNodes.subList(ply, moveNodes.size()).clear();
+		moveNodesLengths.subList(ply, moveNodesLengths.size()).clear();
+		paintedMoves.truncate(ply);
+
+		for (Iterator<MoveListVariation> i = vars.iterator(); i.hasNext();) {
+			if (i.next().getStartingMove() >= ply) {
+				i.remove();
 			}
 		}
+		if (selectedHalfmove >= ply) {
+			selectedHalfmove = -1;
+		}
 	}
 
 	/**
-	 * Clear all info about painted object and prepare for a new repaint operation.
+	 * Paints the players above the moves, or replaces them if the headers
+	 * changed.
 	 */
-	private void prepareForRepaint() {		
-		textPanel.replaceTextRange(movesTextStart, textPanel.getCharCount()
-				- movesTextStart, "");
-		moveNodes.clear();
-		moveNodesLengths.clear();
+	private void updateTitle(Game game) {
+		String sd = textPanel.getLineDelimiter();
+		String newTitle = game.getHeader(PgnHeader.White) + " vs "
+				+ game.getHeader(PgnHeader.Black) + sd + sd;
+		if (textPanel.getCharCount() == 0) {
+			textPanel.append(newTitle);
+		} else if (!newTitle.equals(title)) {
+			textPanel.replaceTextRange(0, movesTextStart, newTitle);
+			shiftOffsets(0, 0, newTitle.length() - movesTextStart);
+		} else {
+			return;
+		}
+
+		StyleRange styleRange = new StyleRange();
+		styleRange.start = 0;
+		styleRange.length = newTitle.length();
+		styleRange.fontStyle = SWT.BOLD;
+		textPanel.setStyleRange(styleRange);
+		movesTextStart = newTitle.length();
+		title = newTitle;
+	}
+
+	/**
+	 * Moves the offsets of the plies from ply on and of the variations
+	 * starting at varsFromPly or later by delta, after text was inserted
+	 * before them.
+	 */
+	private void shiftOffsets(int ply, int varsFromPly, int delta) {
+		for (int i = ply; i < moveNodes.size(); i++) {
+			moveNodes.set(i, moveNodes.get(i) + delta);
+		}
+		for (MoveListVariation var : vars) {
+			if (var.getStartingMove() >= varsFromPly) {
+				var.shift(delta);
+			}
+		}
 	}
 
 	protected void appendMove(int moveListSize) {
@@ -503,6 +542,21 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 		return (i % 2 == 0) ? Integer.toString(number) + "..." : "";
 	}
 
+	/**
+	 * Returns the move number to paint before the ply. Black moves only get
+	 * one if they start the game or a comment ended the line before them.
+	 */
+	private String getPlyNumber(Game game, int ply) {
+		if (ply == 0 && !game.getMoveList().get(ply).isWhitesMove()) {
+			return getMoveNumberBlack(ply);
+		} else if (ply % 2 == 0) {
+			return getMoveNumber(ply);
+		} else if (game.getMoveList().get(ply - 1).getComments().length > 0) {
+			return getMoveNumberBlack(ply - 1);
+		}
+		return "";
+	}
+
 	/**
 	 * Sets the variation mode. currVariation should be null for it to work properly.
 	 * @param variationMode
@@ -595,12 +649,7 @@ public class TextAreaMoveList implements ChessBoardMoveList {
 				continue;
 
 			// correct offsets for the following moves
-			int moveIndex = mNumber + 1;
-			while (moveIndex < moveNodes.size()) {
-				moveNodes
-						.set(moveIndex, moveNodes.get(moveIndex) + deltaLength);
-				moveIndex++;
-			}
+			shiftOffsets(mNumber + 1, mNumber + 1, deltaLength);
 		}
 	}
 
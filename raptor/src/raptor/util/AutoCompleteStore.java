@@ -0,0 +1,150 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free, bounded store of lower case words used for auto completion.
+ * Words are kept in a ConcurrentSkipListMap so prefix completions are a range
+ * scan, and writers never block readers.
+ * 
+ * Permanent words (commands) are never evicted. Other words (handles) are
+ * stamped with a usage tick every time they are touched, and once more than
+ * maxSize of them are stored the least recently touched ones are evicted.
+ */
+public class AutoCompleteStore {
+	private static final long PERMANENT = Long.MAX_VALUE;
+
+	private static final Comparator<Map.Entry<String, Long>> TICK_COMPARATOR = new Comparator<Map.Entry<String, Long>>() {
+		public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+			return entry1.getValue().compareTo(entry2.getValue());
+		}
+	};
+
+	protected ConcurrentSkipListMap<String, Long> wordToTick = new ConcurrentSkipListMap<String, Long>();
+	protected AtomicLong tick = new AtomicLong();
+	protected AtomicInteger agingWordCount = new AtomicInteger();
+	protected AtomicBoolean isTrimming = new AtomicBoolean();
+	protected int maxSize;
+
+	/**
+	 * @param maxSize
+	 *            The maximum number of non permanent words to keep.
+	 */
+	public AutoCompleteStore(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds a word which is never evicted.
+	 */
+	public void addPermanent(String word) {
+		Long previous = wordToTick.put(word.toLowerCase(), PERMANENT);
+		if (previous != null && previous != PERMANENT) {
+			agingWordCount.decrementAndGet();
+		}
+	}
+
+	public void clear() {
+		wordToTick.clear();
+		agingWordCount.set(0);
+	}
+
+	/**
+	 * Returns up to max words which start with prefix and are not equal to
+	 * it, in alphabetical order.
+	 */
+	public String[] complete(String prefix, int max) {
+		String lowerCasePrefix = prefix.toLowerCase();
+		List<String> result = new ArrayList<String>(max);
+		for (String word : wordToTick.tailMap(lowerCasePrefix, false).keySet()) {
+			if (result.size() >= max || !word.startsWith(lowerCasePrefix)) {
+				break;
+			}
+			result.add(word);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	public boolean contains(String word) {
+		return wordToTick.containsKey(word.toLowerCase());
+	}
+
+	public int size() {
+		return wordToTick.size();
+	}
+
+	/**
+	 * Adds the word if it is not present, and marks it as the most recently
+	 * used word. Evicts the least recently used words if the store has grown
+	 * past maxSize. Safe to call from any thread.
+	 */
+	public void touch(String word) {
+		String lowerCaseWord = word.toLowerCase();
+		Long newTick = tick.incrementAndGet();
+		while (true) {
+			Long current = wordToTick.get(lowerCaseWord);
+			if (current == null) {
+				if (wordToTick.putIfAbsent(lowerCaseWord, newTick) == null) {
+					if (agingWordCount.incrementAndGet() > maxSize + maxSize / 10) {
+						trim();
+					}
+					return;
+				}
+			} else if (current == PERMANENT || wordToTick.replace(lowerCaseWord, current, newTick)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used words down to maxSize. Trimming waits
+	 * until the store is 10% over maxSize, so its cost is amortized over many
+	 * touches. Only one thread trims at a time.
+	 */
+	protected void trim() {
+		if (!isTrimming.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			List<Map.Entry<String, Long>> agingEntries = new ArrayList<Map.Entry<String, Long>>(agingWordCount.get());
+			for (Map.Entry<String, Long> entry : wordToTick.entrySet()) {
+				if (entry.getValue() != PERMANENT) {
+					agingEntries.add(entry);
+				}
+			}
+			Collections.sort(agingEntries, TICK_COMPARATOR);
+
+			int toRemove = agingEntries.size() - maxSize;
+			for (int i = 0; i < toRemove; i++) {
+				Map.Entry<String, Long> entry = agingEntries.get(i);
+				// Only remove it if it was not touched since the snapshot.
+				if (wordToTick.remove(entry.getKey(), entry.getValue())) {
+					agingWordCount.decrementAndGet();
+				}
+			}
+		} finally {
+			isTrimming.set(false);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+/**
+ * Accumulates a 64 bit hash over the content of parsed server output, so a
+ * result can cheaply be compared with the previous one. Null values and enums
+ * are supported.
+ */
+public class ContentHash {
+	protected long hash = 1125899906842597L;
+
+	public ContentHash add(boolean value) {
+		return add(value ? 1231 : 1237);
+	}
+
+	public ContentHash add(Enum<?> value) {
+		return add(value == null ? -1 : value.ordinal());
+	}
+
+	public ContentHash add(int value) {
+		hash = 31 * hash + value;
+		return this;
+	}
+
+	public ContentHash add(String value) {
+		if (value == null) {
+			return add(-1);
+		}
+		for (int i = 0; i < value.length(); i++) {
+			hash = 31 * hash + value.charAt(i);
+		}
+		return add(value.length());
+	}
+
+	public long get() {
+		return hash;
+	}
+}
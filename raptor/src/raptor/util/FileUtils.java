@@ -19,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Properties;
 
 import raptor.Raptor;
 
@@ -147,6 +148,100 @@ public class FileUtils {
 		}
 	}
 
+	/**
+	 * Copies the files in src to dest which have changed since the last copy.
+	 * The manifest records the length and last modified time of each source
+	 * file and of the copy made from it. A file is copied when it is missing
+	 * in dest, when the source changed, or when the copy in dest was changed
+	 * after it was made, so like copyFiles every file in dest ends up matching
+	 * src. The manifest is rewritten after the copy.
+	 * 
+	 * @param src
+	 *            -- The source directory.
+	 * @param dest
+	 *            -- The destination directory.
+	 * @param manifest
+	 *            -- A properties file recording the state of each copied file.
+	 * @return The number of files copied.
+	 * @throws IOException
+	 *             if unable to copy.
+	 */
+	public static int copyChangedFiles(File src, File dest, File manifest)
+			throws IOException {
+		Properties previous = new Properties();
+		if (manifest.exists()) {
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(manifest);
+				previous.load(in);
+			} catch (IOException ioe) {
+				LOG.warn("Error reading manifest " + manifest.getAbsolutePath()
+						+ " copying all files.", ioe);
+				previous.clear();
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (Throwable t) {
+					}
+				}
+			}
+		}
+
+		Properties current = new Properties();
+		int copied = copyChangedFiles(src, dest, "", previous, current);
+
+		if (copied > 0 || !current.equals(previous)) {
+			FileOutputStream out = null;
+			try {
+				out = new FileOutputStream(manifest);
+				current.store(out, "Raptor install manifest");
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (Throwable t) {
+					}
+				}
+			}
+		}
+		return copied;
+	}
+
+	private static int copyChangedFiles(File src, File dest, String relativePath,
+			Properties previous, Properties current) throws IOException {
+		if (src.getName().startsWith(".")) {
+			return 0;
+		}
+
+		int copied = 0;
+		if (src.isDirectory()) {
+			if (!dest.exists() && !dest.mkdirs()) {
+				throw new IOException("copyChangedFiles: Could not create direcotry: "
+						+ dest.getAbsolutePath() + ".");
+			}
+			String list[] = src.list();
+			for (String element : list) {
+				copied += copyChangedFiles(new File(src, element), new File(dest,
+						element), relativePath + "/" + element, previous, current);
+			}
+		} else {
+			String signature = getSignature(src) + "|" + getSignature(dest);
+			if (!dest.exists()
+					|| !signature.equals(previous.getProperty(relativePath))) {
+				copyFiles(src, dest);
+				copied++;
+				signature = getSignature(src) + "|" + getSignature(dest);
+			}
+			current.setProperty(relativePath, signature);
+		}
+		return copied;
+	}
+
+	private static String getSignature(File file) {
+		return file.length() + ":" + file.lastModified();
+	}
+
 	/**
 	 * Deletes all files and subdirectories under "dir".
 	 * 
@@ -173,6 +268,57 @@ public class FileUtils {
 		return dir.delete();
 	}
 
+	/**
+	 * Replaces file with tempFile. renameTo replaces an existing file in one
+	 * step where the platform allows it. Where it does not, file is first
+	 * renamed to a backup which is deleted once tempFile is in place, so a
+	 * complete copy exists at every point. Readers should open the file
+	 * returned by getReplacedFile.
+	 * 
+	 * @param tempFile
+	 *            -- The complete new contents, in the same directory as file.
+	 * @param file
+	 *            -- The file to replace.
+	 * @throws IOException
+	 *             if file could not be replaced.
+	 */
+	public static void replaceFile(File tempFile, File file) throws IOException {
+		if (tempFile.renameTo(file)) {
+			return;
+		}
+		File backup = getBackupFile(file);
+		backup.delete();
+		if (file.exists() && !file.renameTo(backup)) {
+			throw new IOException("replaceFile: Could not move "
+					+ file.getAbsolutePath() + " aside.");
+		}
+		if (!tempFile.renameTo(file)) {
+			backup.renameTo(file);
+			throw new IOException("replaceFile: Could not replace "
+					+ file.getAbsolutePath() + ".");
+		}
+		backup.delete();
+	}
+
+	/**
+	 * Returns the file to read the contents of a file written with
+	 * replaceFile from: the file itself, or its backup if a replacement was
+	 * interrupted before the new file was in place.
+	 */
+	public static File getReplacedFile(File file) {
+		if (!file.exists()) {
+			File backup = getBackupFile(file);
+			if (backup.exists()) {
+				return backup;
+			}
+		}
+		return file;
+	}
+
+	private static File getBackupFile(File file) {
+		return new File(file.getPath() + ".bak");
+	}
+
 	/**
 	 * Returns the contents of the specified file as a string.
 	 * 
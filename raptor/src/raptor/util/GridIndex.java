@@ -0,0 +1,135 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buckets rectangular items by the grid cells they overlap, so the item at a
+ * point is found by looking at one cell instead of at every item. Works best
+ * when items are no larger than a cell.
+ */
+public class GridIndex<T> {
+	protected static class Entry<T> {
+		protected int x;
+		protected int y;
+		protected int width;
+		protected int height;
+		protected T value;
+
+		protected Entry(int x, int y, int width, int height, T value) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.value = value;
+		}
+
+		protected boolean contains(int pointX, int pointY) {
+			return pointX >= x && pointY >= y && pointX < x + width
+					&& pointY < y + height;
+		}
+	}
+
+	protected int cellSize;
+	protected Map<Long, List<Entry<T>>> cells = new HashMap<Long, List<Entry<T>>>();
+	protected int size;
+
+	public GridIndex(int cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	public void add(int x, int y, int width, int height, T value) {
+		Entry<T> entry = new Entry<T>(x, y, width, height, value);
+		for (int cellX = getCell(x); cellX <= getCell(x + width - 1); cellX++) {
+			for (int cellY = getCell(y); cellY <= getCell(y + height - 1); cellY++) {
+				Long key = getKey(cellX, cellY);
+				List<Entry<T>> cell = cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<Entry<T>>(2);
+					cells.put(key, cell);
+				}
+				cell.add(entry);
+			}
+		}
+		size++;
+	}
+
+	public void clear() {
+		cells.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the item added last whose bounds contain the point, or null if
+	 * there is none.
+	 */
+	public T get(int x, int y) {
+		List<Entry<T>> cell = cells.get(getKey(getCell(x), getCell(y)));
+		if (cell != null) {
+			for (int i = cell.size() - 1; i >= 0; i--) {
+				if (cell.get(i).contains(x, y)) {
+					return cell.get(i).value;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the item added with these bounds. Returns false if it was not
+	 * found.
+	 */
+	public boolean remove(int x, int y, int width, int height, T value) {
+		boolean result = false;
+		for (int cellX = getCell(x); cellX <= getCell(x + width - 1); cellX++) {
+			for (int cellY = getCell(y); cellY <= getCell(y + height - 1); cellY++) {
+				Long key = getKey(cellX, cellY);
+				List<Entry<T>> cell = cells.get(key);
+				if (cell != null) {
+					for (int i = 0; i < cell.size(); i++) {
+						if (cell.get(i).value.equals(value)) {
+							cell.remove(i);
+							result = true;
+							break;
+						}
+					}
+					if (cell.isEmpty()) {
+						cells.remove(key);
+					}
+				}
+			}
+		}
+		if (result) {
+			size--;
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	protected int getCell(int coordinate) {
+		return coordinate >= 0 ? coordinate / cellSize : -((-coordinate - 1)
+				/ cellSize) - 1;
+	}
+
+	protected Long getKey(int cellX, int cellY) {
+		return ((long) cellX << 32) | (cellY & 0xffffffffL);
+	}
+}
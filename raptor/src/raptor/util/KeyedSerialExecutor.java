@@ -0,0 +1,226 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on an Executor so that tasks submitted with the same key run
+ * one at a time in the order they were submitted, while tasks with
+ * different keys run in parallel. A key never holds a thread for more than
+ * MAX_TASKS_PER_RUN tasks in a row, so one busy key can not starve the
+ * others.
+ * 
+ * Keeps the queue depth and run time of each key.
+ */
+public class KeyedSerialExecutor<K> {
+	private static final RaptorLogger LOG = RaptorLogger
+			.getLog(KeyedSerialExecutor.class);
+
+	public static final int MAX_TASKS_PER_RUN = 16;
+
+	/**
+	 * The queue statistics of a key.
+	 */
+	public static class KeyStats {
+		protected int depth;
+		protected int maxDepth;
+		protected long executed;
+		protected long totalNanos;
+		protected long maxNanos;
+
+		protected KeyStats copy() {
+			KeyStats result = new KeyStats();
+			result.depth = depth;
+			result.maxDepth = maxDepth;
+			result.executed = executed;
+			result.totalNanos = totalNanos;
+			result.maxNanos = maxNanos;
+			return result;
+		}
+
+		public long getAverageMicros() {
+			return executed == 0 ? 0 : totalNanos / executed / 1000;
+		}
+
+		/**
+		 * Returns the number of tasks queued or running.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getExecuted() {
+			return executed;
+		}
+
+		public int getMaxDepth() {
+			return maxDepth;
+		}
+
+		public long getMaxMicros() {
+			return maxNanos / 1000;
+		}
+
+		@Override
+		public String toString() {
+			return "depth=" + depth + " maxDepth=" + maxDepth + " executed="
+					+ executed + " avg=" + getAverageMicros() + "us max="
+					+ getMaxMicros() + "us";
+		}
+	}
+
+	/**
+	 * The pending tasks of a key. Only submitted to the executor while it
+	 * has tasks.
+	 */
+	protected class SerialQueue implements Runnable {
+		protected K key;
+		protected ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+		public SerialQueue(K key) {
+			this.key = key;
+		}
+
+		public void run() {
+			for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+				Runnable task = null;
+				synchronized (KeyedSerialExecutor.this) {
+					task = tasks.poll();
+					if (task == null) {
+						queues.remove(key);
+						return;
+					}
+				}
+
+				long startTime = System.nanoTime();
+				try {
+					task.run();
+				} catch (Throwable t) {
+					onError(key, t);
+				} finally {
+					completed(key, System.nanoTime() - startTime);
+				}
+			}
+
+			synchronized (KeyedSerialExecutor.this) {
+				if (tasks.isEmpty()) {
+					queues.remove(key);
+					return;
+				}
+			}
+			executor.execute(this);
+		}
+	}
+
+	protected Executor executor;
+	protected Map<K, SerialQueue> queues = new HashMap<K, SerialQueue>();
+	protected Map<K, KeyStats> stats = new HashMap<K, KeyStats>();
+
+	public KeyedSerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Forgets the statistics of the key. Tasks still queued for it are run.
+	 */
+	public synchronized void clearStats(K key) {
+		stats.remove(key);
+	}
+
+	/**
+	 * Queues the task to run after all of the tasks previously submitted with
+	 * the same key.
+	 */
+	public void execute(K key, Runnable task) {
+		SerialQueue queueToStart = null;
+		synchronized (this) {
+			SerialQueue queue = queues.get(key);
+			if (queue == null) {
+				queue = new SerialQueue(key);
+				queues.put(key, queue);
+				queueToStart = queue;
+			}
+			queue.tasks.add(task);
+
+			KeyStats keyStats = getOrCreateStats(key);
+			keyStats.depth++;
+			if (keyStats.depth > keyStats.maxDepth) {
+				keyStats.maxDepth = keyStats.depth;
+			}
+		}
+		if (queueToStart != null) {
+			executor.execute(queueToStart);
+		}
+	}
+
+	/**
+	 * Returns the keys which have statistics.
+	 */
+	public synchronized List<K> getKeys() {
+		return new ArrayList<K>(stats.keySet());
+	}
+
+	/**
+	 * Returns a copy of the statistics of the key, or null if it has none.
+	 */
+	public synchronized KeyStats getStats(K key) {
+		KeyStats keyStats = stats.get(key);
+		return keyStats == null ? null : keyStats.copy();
+	}
+
+	/**
+	 * Returns the number of tasks queued or running for all keys.
+	 */
+	public synchronized int getTotalDepth() {
+		int result = 0;
+		for (KeyStats keyStats : stats.values()) {
+			result += keyStats.depth;
+		}
+		return result;
+	}
+
+	/**
+	 * Invoked when a task throws. Logs the error by default.
+	 */
+	protected void onError(K key, Throwable t) {
+		LOG.error("Error running a task for " + key, t);
+	}
+
+	private synchronized void completed(K key, long nanos) {
+		KeyStats keyStats = getOrCreateStats(key);
+		if (keyStats.depth > 0) {
+			keyStats.depth--;
+		}
+		keyStats.executed++;
+		keyStats.totalNanos += nanos;
+		if (nanos > keyStats.maxNanos) {
+			keyStats.maxNanos = nanos;
+		}
+	}
+
+	private KeyStats getOrCreateStats(K key) {
+		KeyStats result = stats.get(key);
+		if (result == null) {
+			result = new KeyStats();
+			stats.put(key, result);
+		}
+		return result;
+	}
+}
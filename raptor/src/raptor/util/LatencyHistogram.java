@@ -0,0 +1,141 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package raptor.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Values are
+ * counted in log-linear buckets: each power of two is split into 16 linear
+ * sub-buckets, so a recorded value is kept to within about 6% over the whole
+ * range of a long. Recording is a few atomic increments and never allocates,
+ * so it can be used from the socket reader and the SWT thread.
+ */
+public class LatencyHistogram {
+	public static final int SUB_BUCKET_BITS = 4;
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	public static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS)
+			* SUB_BUCKET_COUNT;
+
+	/**
+	 * Returns the index of the bucket the value is counted in.
+	 */
+	public static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT
+				+ (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+	}
+
+	/**
+	 * Returns the lowest value counted in the bucket at index.
+	 */
+	public static long lowestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		return (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+	}
+
+	/**
+	 * Returns the highest value counted in the bucket at index.
+	 */
+	public static long highestValueAt(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		return lowestValueAt(index) + (1L << shift) - 1;
+	}
+
+	protected AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	protected AtomicLong count = new AtomicLong();
+	protected AtomicLong total = new AtomicLong();
+	protected AtomicLong max = new AtomicLong();
+
+	/**
+	 * Returns the number of values counted in the bucket at index.
+	 */
+	public long getCountAt(int index) {
+		return counts.get(index);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0.0 : (double) total.get() / currentCount;
+	}
+
+	/**
+	 * Returns the value which percentile percent of the recorded values are
+	 * at or below, to the precision of a bucket. Returns 0 if nothing has
+	 * been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long currentCount = count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1,
+				(long) Math.ceil(percentile / 100.0 * currentCount));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValueAt(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Counts the value. Negative values are counted as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Clears all counts. Values recorded while resetting may be partly lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+}
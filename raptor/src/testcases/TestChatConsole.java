@@ -0,0 +1,272 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+import org.junit.Test;
+
+import raptor.chat.ChatEvent;
+import raptor.chat.ChatEventUtils;
+import raptor.chat.ChatLogger;
+import raptor.chat.ChatLogger.ChatEventParseListener;
+import raptor.chat.ChatType;
+import raptor.swt.chat.ChatConsoleContent;
+import raptor.swt.chat.StyleRangeBatch;
+
+public class TestChatConsole {
+
+	@Test
+	public void testStyleRangeBatch() {
+		StyleRangeBatch batch = new StyleRangeBatch();
+		batch.add(new StyleRange(0, 10, null, null));
+		StyleRange link = new StyleRange(3, 2, null, null);
+		link.underline = true;
+		batch.add(link);
+		batch.add(new StyleRange(20, 5, null, null));
+
+		StyleRange[] ranges = batch.toArray();
+		assertEquals(4, ranges.length);
+		assertEquals(3, ranges[1].start);
+		assertTrue(ranges[1].underline);
+		assertEquals(5, ranges[2].start);
+		assertEquals(5, ranges[2].length);
+		assertEquals(0, batch.getStart());
+		assertEquals(25, batch.getEnd());
+
+		// A later range replaces what it covers, equal neighbours merge.
+		batch.add(new StyleRange(2, 20, null, null));
+		ranges = batch.toArray();
+		assertEquals(1, ranges.length);
+		assertEquals(25, ranges[0].length);
+	}
+
+	@Test
+	public void testChatConsoleContent() {
+		ChatConsoleContent content = new ChatConsoleContent(10);
+		final int[] lastChange = new int[2];
+		content.addTextChangeListener(new TextChangeListener() {
+			public void textChanged(TextChangedEvent event) {
+			}
+
+			public void textChanging(TextChangingEvent event) {
+				lastChange[0] = event.replaceCharCount;
+				lastChange[1] = event.replaceLineCount;
+			}
+
+			public void textSet(TextChangedEvent event) {
+			}
+		});
+
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			String line = (i == 0 ? "" : "\n") + "line " + i;
+			content.setAppendEvent(createEvent(1000 + i));
+			content.replaceTextRange(content.getCharCount(), 0, line);
+			expected.append(line);
+		}
+		assertEquals(expected.toString(), content.getTextRange(0, content
+				.getCharCount()));
+		assertEquals(20, content.getLineCount());
+		assertEquals("line 7", content.getLine(7));
+		assertEquals(7, content.getLineAtOffset(content.getOffsetAtLine(7) + 3));
+		assertTrue(content.getChunkCount() > 1);
+
+		StyleRange style = new StyleRange(content.getOffsetAtLine(5), 4,
+				null, null);
+		style.underline = true;
+		content.setStyleRanges(new StyleRange[] { style });
+		StyleRange[] styles = content.getStyleRanges(content.getOffsetAtLine(5), 6);
+		assertEquals(1, styles.length);
+		assertEquals(content.getOffsetAtLine(5), styles[0].start);
+
+		// Trim whole chunks off the front, offsets start over at 0.
+		int trimOffset = content.getTrimOffset(20);
+		assertTrue(trimOffset >= 20);
+		int lineCount = content.getLineCount();
+		int trimmedLines = content.getLineAtOffset(trimOffset);
+		content.replaceTextRange(0, trimOffset, "");
+		assertEquals(trimOffset, lastChange[0]);
+		assertEquals(trimmedLines, lastChange[1]);
+		assertEquals(expected.substring(trimOffset), content.getTextRange(0,
+				content.getCharCount()));
+		assertEquals(lineCount - trimmedLines, content.getLineCount());
+		assertEquals("line 19", content.getLine(content.getLineCount() - 1));
+		assertEquals(1000 + Integer.parseInt(content.getLine(0).substring(5)),
+				content.getFirstEvent().getTime());
+
+		// Reload the trimmed lines as one chunk in front.
+		int chunkCount = content.getChunkCount();
+		lineCount = content.getLineCount();
+		content.setAppendEvent(createEvent(1000));
+		content.replaceTextRange(0, 0, expected.substring(0, trimOffset));
+		assertEquals(0, lastChange[0]);
+		assertEquals(chunkCount + 1, content.getChunkCount());
+		assertEquals(1000, content.getFirstEvent().getTime());
+		assertEquals(expected.toString(), content.getTextRange(0, content
+				.getCharCount()));
+		assertEquals(lineCount + trimmedLines, content.getLineCount());
+		assertEquals("line 0", content.getLine(0));
+		assertEquals("line 7", content.getLine(7));
+		assertEquals(7, content.getLineAtOffset(content.getOffsetAtLine(7) + 3));
+		style = new StyleRange(content.getOffsetAtLine(1), 4, null, null);
+		content.setStyleRanges(new StyleRange[] { style });
+		styles = content.getStyleRanges(content.getOffsetAtLine(1), 6);
+		assertEquals(1, styles.length);
+		assertEquals(content.getOffsetAtLine(1), styles[0].start);
+
+		content.setText("");
+		assertEquals(0, content.getCharCount());
+		assertEquals(1, content.getLineCount());
+	}
+
+	@Test
+	public void testChatConsoleContentReplace() {
+		ChatConsoleContent content = new ChatConsoleContent(10);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			String line = (i == 0 ? "" : "\n") + "line " + i;
+			content.replaceTextRange(content.getCharCount(), 0, line);
+			expected.append(line);
+		}
+		StyleRange before = new StyleRange(content.getOffsetAtLine(2), 4,
+				null, null);
+		before.underline = true;
+		StyleRange after = new StyleRange(content.getOffsetAtLine(12), 4,
+				null, null);
+		after.strikeout = true;
+		content.setStyleRanges(new StyleRange[] { before, after });
+		int chunkCount = content.getChunkCount();
+
+		// From the middle of line 6 to the middle of line 9, across chunks.
+		int start = content.getOffsetAtLine(6) + 2;
+		int end = content.getOffsetAtLine(9) + 3;
+		content.replaceTextRange(start, end - start, "X\nY");
+		expected.replace(start, end, "X\nY");
+		checkContent(expected.toString(), content);
+		assertTrue(content.getChunkCount() < chunkCount);
+		assertEquals("liX", content.getLine(6));
+		assertEquals("Ye 9", content.getLine(7));
+
+		StyleRange[] styles = content.getStyleRanges(content.getOffsetAtLine(2), 6);
+		assertEquals(1, styles.length);
+		assertTrue(styles[0].underline);
+		assertEquals(content.getOffsetAtLine(2), styles[0].start);
+		int line12 = content.getLineAtOffset(expected.indexOf("line 12"));
+		styles = content.getStyleRanges(content.getOffsetAtLine(line12), 7);
+		assertEquals(1, styles.length);
+		assertTrue(styles[0].strikeout);
+		assertEquals(content.getOffsetAtLine(line12), styles[0].start);
+		assertEquals(4, styles[0].length);
+
+		// Joining two lines at a chunk boundary and editing the last line.
+		int newLine = expected.indexOf("\nline 11");
+		content.replaceTextRange(newLine, 1, " ");
+		expected.replace(newLine, newLine + 1, " ");
+		checkContent(expected.toString(), content);
+		content.replaceTextRange(content.getCharCount() - 2, 2, "nineteen\n");
+		expected.replace(expected.length() - 2, expected.length(), "nineteen\n");
+		checkContent(expected.toString(), content);
+		content.replaceTextRange(content.getCharCount(), 0, "more");
+		expected.append("more");
+		checkContent(expected.toString(), content);
+	}
+
+	@Test
+	public void testParseChatLogBackwards() throws Exception {
+		File file = File.createTempFile("chat", ".txt");
+		try {
+			// Enough events to span several blocks.
+			List<Long> offsets = new ArrayList<Long>();
+			FileWriter writer = new FileWriter(file);
+			long offset = 0;
+			for (int i = 0; i < 1000; i++) {
+				ChatEvent event = new ChatEvent("user" + i, ChatType.TELL,
+						"message " + i);
+				event.setTime(1000 + i);
+				String line = ChatEventUtils.serializeChatEvent(event) + "\n";
+				offsets.add(offset);
+				writer.write(line);
+				offset += line.getBytes().length;
+			}
+			writer.close();
+
+			ChatLogger logger = new ChatLogger(file.getAbsolutePath(), false);
+			final List<ChatEvent> events = new ArrayList<ChatEvent>();
+			logger.parseFileBackwards(offsets.get(700),
+					new ChatEventParseListener() {
+						public boolean onNewEventParsed(ChatEvent event) {
+							events.add(event);
+							return events.size() < 650;
+						}
+
+						public void onParseCompleted() {
+						}
+					});
+			assertEquals(650, events.size());
+			for (int i = 0; i < events.size(); i++) {
+				assertEquals("message " + (699 - i), events.get(i).getMessage());
+				assertEquals(offsets.get(699 - i).longValue(), events.get(i)
+						.getLogOffset());
+			}
+
+			// Reading on from the oldest event parsed reaches the start.
+			final List<ChatEvent> rest = new ArrayList<ChatEvent>();
+			logger.parseFileBackwards(events.get(events.size() - 1)
+					.getLogOffset(), new ChatEventParseListener() {
+				public boolean onNewEventParsed(ChatEvent event) {
+					rest.add(event);
+					return true;
+				}
+
+				public void onParseCompleted() {
+				}
+			});
+			assertEquals(50, rest.size());
+			assertEquals("message 0", rest.get(49).getMessage());
+			assertEquals(0, rest.get(49).getLogOffset());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static ChatEvent createEvent(long time) {
+		ChatEvent event = new ChatEvent();
+		event.setTime(time);
+		return event;
+	}
+
+	private void checkContent(String expected, ChatConsoleContent content) {
+		assertEquals(expected, content.getTextRange(0, content.getCharCount()));
+		String[] lines = expected.split("\n", -1);
+		assertEquals(lines.length, content.getLineCount());
+		int offset = 0;
+		for (int i = 0; i < lines.length; i++) {
+			assertEquals(lines[i], content.getLine(i));
+			assertEquals(offset, content.getOffsetAtLine(i));
+			assertEquals(i, content.getLineAtOffset(offset));
+			offset += lines[i].length() + 1;
+		}
+	}
+}
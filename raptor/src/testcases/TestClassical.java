@@ -13,6 +13,7 @@
  */
 package testcases;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static raptor.chess.GameFactory.createFromFen;
 import static raptor.chess.GameFactory.createStartingPosition;
@@ -27,6 +28,7 @@ import org.junit.Test;
 
 import raptor.chess.Game;
 import raptor.chess.GameConstants;
+import raptor.chess.GameCursor;
 import raptor.chess.Move;
 import raptor.chess.Variant;
 import raptor.chess.util.GameUtils;
@@ -412,6 +414,47 @@ public class TestClassical implements GameConstants {
 		}
 	}
 
+	@Test
+	public void testGameCursorNavigation() {
+		Game game = createStartingPosition(Variant.classic);
+		Random random = new Random(31);
+		for (int i = 0; i < 160; i++) {
+			Move[] legals = game.getLegalMoves().asArray();
+			if (legals.length == 0) {
+				break;
+			}
+			game.move(legals[random.nextInt(legals.length)]);
+		}
+
+		GameCursor checkpointed = new GameCursor(game,
+				GameCursor.Mode.MakeMovesOnMaster);
+		GameCursor copying = new GameCursor(game,
+				GameCursor.Mode.MakeMovesOnMaster);
+		copying.setCheckpointInterval(0);
+
+		int length = game.getMoveList().getSize();
+		for (int i = 0; i < 500; i++) {
+			int action = random.nextInt(4);
+			if (action == 0) {
+				int halfMoveIndex = random.nextInt(length + 1);
+				checkpointed.setCursor(halfMoveIndex);
+				copying.setCursor(halfMoveIndex);
+			} else if (action == 1) {
+				checkpointed.setCursorNext();
+				copying.setCursorNext();
+			} else {
+				checkpointed.setCursorPrevious();
+				copying.setCursorPrevious();
+			}
+			assertEquals(copying.getCursorPosition(), checkpointed
+					.getCursorPosition());
+			assertEquals(copying.toFen(), checkpointed.toFen());
+			assertEquals(copying.getCursorGame().getMoveList().getSize(),
+					checkpointed.getCursorGame().getMoveList().getSize());
+		}
+		assertEquals(length, game.getMoveList().getSize());
+	}
+
 	@Test
 	public void testInCheck() {
 		for (String fen : IN_CHECK_TESTS) {
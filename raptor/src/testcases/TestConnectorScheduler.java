@@ -0,0 +1,121 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import raptor.connector.Connector;
+import raptor.service.ConnectorScheduler;
+
+public class TestConnectorScheduler {
+
+	private static Connector createConnector(final String shortName) {
+		return (Connector) Proxy.newProxyInstance(Connector.class
+				.getClassLoader(), new Class<?>[] { Connector.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getShortName")) {
+							return shortName;
+						} else if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						} else if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testConnectorScheduler() {
+		final Connector playing = createConnector("playing");
+		Connector background = createConnector("background");
+		final List<Runnable> pending = new ArrayList<Runnable>();
+		ConnectorScheduler scheduler = new ConnectorScheduler() {
+			@Override
+			protected boolean isPlaying(Connector connector) {
+				return connector == playing;
+			}
+
+			@Override
+			protected void schedule(long delay, Runnable queue) {
+				pending.add(queue);
+			}
+
+			@Override
+			protected void submit(Runnable queue) {
+				pending.add(queue);
+			}
+		};
+
+		final StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			final int task = i;
+			scheduler.execute(background, new Runnable() {
+				public void run() {
+					order.append("b").append(task);
+				}
+			});
+		}
+		for (int i = 0; i < 3; i++) {
+			final int task = i;
+			scheduler.execute(playing, new Runnable() {
+				public void run() {
+					order.append("p").append(task);
+				}
+			});
+		}
+		assertEquals(6, scheduler.getStats(background).getDepth());
+		assertEquals(3, scheduler.getStats(playing).getMaxDepth());
+
+		scheduler.run(background, new Runnable() {
+			public void run() {
+				order.append("g");
+			}
+		});
+		scheduler.run(playing, new Runnable() {
+			public void run() {
+				order.append("h");
+			}
+		});
+
+		// The background tasks run first but wait for the playing ones.
+		while (!pending.isEmpty()) {
+			pending.remove(0).run();
+		}
+		assertEquals("p0p1p2hb0b1b2b3gb4b5", order.toString());
+
+		ConnectorScheduler.ConnectorStats stats = scheduler
+				.getStats(background);
+		assertEquals(0, stats.getDepth());
+		assertEquals(7, stats.getExecuted());
+		// The queue and the game update each wait once for the playing
+		// backlog, then the queue waits after its first pass.
+		assertEquals(3, stats.getThrottled());
+		assertFalse(stats.isPlaying());
+		assertTrue(scheduler.getStats(playing).isPlaying());
+		assertEquals(0, scheduler.getStats(playing).getThrottled());
+	}
+}
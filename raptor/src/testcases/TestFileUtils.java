@@ -0,0 +1,93 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import raptor.util.FileUtils;
+
+public class TestFileUtils {
+
+	private static void write(File file, String text, long lastModified) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	@Test
+	public void testCopyChangedFiles() throws Exception {
+		File dir = File.createTempFile("raptor", "install");
+		dir.delete();
+		try {
+			File src = new File(dir, "src");
+			File dest = new File(dir, "dest");
+			File manifest = new File(dir, "manifest.properties");
+			new File(src, "sounds").mkdirs();
+			write(new File(src, "a.txt"), "a", 1000000000L);
+			write(new File(src, "sounds/b.txt"), "b", 1000000000L);
+
+			assertEquals(2, FileUtils.copyChangedFiles(src, dest, manifest));
+			assertEquals(0, FileUtils.copyChangedFiles(src, dest, manifest));
+
+			// A copy the user edited is overwritten, like a full install does.
+			write(new File(dest, "a.txt"), "edited", 2000000000L);
+			assertEquals(1, FileUtils.copyChangedFiles(src, dest, manifest));
+			assertEquals("a\n", FileUtils.fileAsString(new File(dest, "a.txt").getAbsolutePath()));
+
+			write(new File(src, "sounds/b.txt"), "changed", 3000000000L);
+			assertEquals(1, FileUtils.copyChangedFiles(src, dest, manifest));
+			assertEquals("changed\n", FileUtils.fileAsString(new File(dest, "sounds/b.txt").getAbsolutePath()));
+
+			new File(dest, "sounds/b.txt").delete();
+			assertEquals(1, FileUtils.copyChangedFiles(src, dest, manifest));
+			assertEquals(0, FileUtils.copyChangedFiles(src, dest, manifest));
+		} finally {
+			FileUtils.deleteDir(dir);
+		}
+	}
+
+	@Test
+	public void testReplaceFile() throws Exception {
+		File dir = File.createTempFile("raptor", "replace");
+		dir.delete();
+		dir.mkdirs();
+		try {
+			File file = new File(dir, "cache.dat");
+			File tempFile = new File(dir, "cache.dat.tmp");
+			write(tempFile, "first", 1000000000L);
+			FileUtils.replaceFile(tempFile, file);
+			write(tempFile, "second", 1000000000L);
+			FileUtils.replaceFile(tempFile, file);
+			assertEquals(file, FileUtils.getReplacedFile(file));
+			assertEquals("second\n", FileUtils.fileAsString(file.getAbsolutePath()));
+			assertEquals(false, tempFile.exists());
+
+			// Interrupted after the old file was moved aside.
+			file.renameTo(new File(dir, "cache.dat.bak"));
+			assertEquals("second\n", FileUtils.fileAsString(FileUtils.getReplacedFile(file).getAbsolutePath()));
+		} finally {
+			FileUtils.deleteDir(dir);
+		}
+	}
+}
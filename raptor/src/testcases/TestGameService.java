@@ -0,0 +1,174 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import raptor.chess.BughouseGame;
+import raptor.chess.Game;
+import raptor.connector.ics.IcsParser;
+import raptor.connector.ics.game.message.G1Message;
+import raptor.connector.ics.game.message.Style12Message;
+import raptor.service.GameService;
+import raptor.service.GameService.GameServiceAdapter;
+import raptor.util.KeyedSerialExecutor;
+
+public class TestGameService {
+
+	/**
+	 * Adds G1 games without a connector.
+	 */
+	protected static class TestParser extends IcsParser {
+		public TestParser() {
+			super(false);
+		}
+
+		public void addGame(Game game, String partnerGameId,
+				GameService service) {
+			G1Message g1Message = new G1Message();
+			g1Message.gameId = game.getId();
+			g1Message.parterGameId = partnerGameId;
+			addG1Game(game, g1Message, new Style12Message(), service);
+		}
+
+		@Override
+		protected void adjustWhiteOnTopHeader(Game game, Style12Message message) {
+		}
+
+		@Override
+		protected boolean observePartnerBoardForGame(Game game) {
+			return false;
+		}
+	}
+
+	@Test
+	public void testBughousePair() throws Exception {
+		final TestParser parser = new TestParser();
+		for (int pair = 0; pair < 20; pair++) {
+			final GameService service = new GameService();
+			final AtomicInteger primaryBoards = new AtomicInteger();
+			final AtomicInteger notifying = new AtomicInteger();
+			final AtomicInteger overlaps = new AtomicInteger();
+			service.addGameServiceListener(new GameServiceAdapter() {
+				@Override
+				public void gameCreated(Game game) {
+					if (notifying.incrementAndGet() > 1) {
+						overlaps.incrementAndGet();
+					}
+					if (((BughouseGame) game).getOtherBoard() == null) {
+						primaryBoards.incrementAndGet();
+					}
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException ie) {
+					}
+					notifying.decrementAndGet();
+				}
+			});
+
+			final BughouseGame board1 = createBoard("1");
+			final BughouseGame board2 = createBoard("2");
+			final CyclicBarrier barrier = new CyclicBarrier(2);
+			final CountDownLatch done = new CountDownLatch(2);
+			for (final BughouseGame board : new BughouseGame[] { board1, board2 }) {
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							barrier.await();
+							parser.addGame(board, board == board1 ? "2" : "1",
+									service);
+						} catch (Exception e) {
+						} finally {
+							done.countDown();
+						}
+					}
+				}.start();
+			}
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+
+			// Exactly one board opens as the primary board.
+			assertEquals(1, primaryBoards.get());
+			assertEquals(0, overlaps.get());
+			assertSame(board2, board1.getOtherBoard());
+			assertSame(board1, board2.getOtherBoard());
+		}
+	}
+
+	@Test
+	public void testDisconnectionKeepsReusedId() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			final KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<String>(
+					pool);
+			GameService service = new GameService() {
+				{
+					gameExecutor = executor;
+				}
+			};
+			Game oldGame = createBoard("7");
+			oldGame.addState(Game.ACTIVE_STATE);
+			service.addGame(oldGame);
+
+			// Holds the queue of game 7 until the new connection created
+			// its game.
+			final CountDownLatch created = new CountDownLatch(1);
+			service.execute("7", new Runnable() {
+				public void run() {
+					try {
+						created.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ie) {
+					}
+				}
+			});
+			new TestParser().processDisconnection(service);
+
+			Game newGame = createBoard("7");
+			newGame.addState(Game.ACTIVE_STATE);
+			service.addGame(newGame);
+			created.countDown();
+
+			final CountDownLatch done = new CountDownLatch(1);
+			service.execute("7", new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertSame(newGame, service.getGame("7"));
+			assertTrue(newGame.isInState(Game.ACTIVE_STATE));
+			assertFalse(newGame.isInState(Game.INACTIVE_STATE));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static BughouseGame createBoard(String id) {
+		BughouseGame game = new BughouseGame();
+		game.setId(id);
+		return game;
+	}
+}
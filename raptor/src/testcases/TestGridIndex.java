@@ -0,0 +1,49 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import raptor.util.GridIndex;
+
+public class TestGridIndex {
+
+	@Test
+	public void testGridIndex() {
+		GridIndex<String> index = new GridIndex<String>(20);
+		index.add(15, 15, 10, 10, "across four cells");
+		index.add(-5, 0, 10, 10, "negative");
+		index.add(100, 100, 10, 10, "far");
+		assertEquals(3, index.size());
+
+		assertEquals("across four cells", index.get(24, 24));
+		assertEquals("across four cells", index.get(15, 15));
+		assertNull(index.get(25, 25));
+		assertEquals("negative", index.get(-1, 5));
+		assertEquals("far", index.get(109, 100));
+
+		// The last one added wins where items overlap.
+		index.add(20, 20, 10, 10, "on top");
+		assertEquals("on top", index.get(22, 22));
+		assertTrue(index.remove(20, 20, 10, 10, "on top"));
+		assertEquals("across four cells", index.get(22, 22));
+		assertFalse(index.remove(20, 20, 10, 10, "on top"));
+		assertEquals(3, index.size());
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import raptor.util.KeyedSerialExecutor;
+
+public class TestKeyedSerialExecutor {
+
+	@Test
+	public void testKeyedSerialExecutor() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<String>(
+					pool);
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(101);
+			final StringBuffer order = new StringBuffer();
+
+			// Game 1 is stuck, game 2 must still get through.
+			executor.execute("1", new Runnable() {
+				public void run() {
+					try {
+						blocked.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException ie) {
+					}
+					done.countDown();
+				}
+			});
+			for (int i = 0; i < 100; i++) {
+				final int index = i;
+				executor.execute("2", new Runnable() {
+					public void run() {
+						order.append(index).append(',');
+						done.countDown();
+					}
+				});
+			}
+			assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+			assertEquals(1, done.getCount());
+			blocked.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				expected.append(i).append(',');
+			}
+			assertEquals(expected.toString(), order.toString());
+			pool.shutdown();
+			assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+			assertEquals(100, executor.getStats("2").getExecuted());
+			assertEquals(0, executor.getTotalDepth());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import raptor.service.LatencyTraceService;
+import raptor.util.LatencyHistogram;
+
+public class TestLatencyTrace {
+
+	@Test
+	public void testLatencyHistogram() {
+		for (long value = 0; value < 100000; value += 7) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(LatencyHistogram.lowestValueAt(index) <= value);
+			assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+		}
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram
+				.indexOf(Long.MAX_VALUE));
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000L, histogram.getMax());
+		assertEquals(500500.0, histogram.getMean(), 0.001);
+		long median = histogram.getValueAtPercentile(50.0);
+		assertTrue(Math.abs(median - 500000L) < 500000L / 16);
+		long p99 = histogram.getValueAtPercentile(99.0);
+		assertTrue(Math.abs(p99 - 990000L) < 990000L / 16);
+		assertEquals(1000000L, histogram.getValueAtPercentile(100.0));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+	}
+
+	@Test
+	public void testLatencyTraceReadTime() throws Exception {
+		final LatencyTraceService trace = LatencyTraceService.getInstance();
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final long[] seen = new long[2];
+			final CountDownLatch done = new CountDownLatch(1);
+			trace.withReadTime(42, new Runnable() {
+				public void run() {
+					seen[0] = trace.getReadTime();
+					// The task handed to another thread carries the read time.
+					executor.execute(trace.withReadTime(new Runnable() {
+						public void run() {
+							seen[1] = trace.getReadTime();
+							done.countDown();
+						}
+					}));
+				}
+			}).run();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertEquals(42, seen[0]);
+			assertEquals(42, seen[1]);
+			assertEquals(0, trace.getReadTime());
+
+			Runnable task = new Runnable() {
+				public void run() {
+				}
+			};
+			assertTrue(task == trace.withReadTime(task));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
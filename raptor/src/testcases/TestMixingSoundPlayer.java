@@ -0,0 +1,121 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.SourceDataLine;
+
+import org.junit.Test;
+
+import raptor.sound.MixingSoundPlayer;
+import raptor.sound.PcmSound;
+
+public class TestMixingSoundPlayer {
+
+	/**
+	 * A MixingSoundPlayer writing to a fake line. Each write hands the first
+	 * mixed sample to written and then blocks until a permit is released, so
+	 * the test controls when the mixer takes its next chunk.
+	 */
+	private static class FakeLinePlayer extends MixingSoundPlayer {
+		private BlockingQueue<Integer> written = new LinkedBlockingQueue<Integer>();
+		private Semaphore writePermits = new Semaphore(0);
+
+		/**
+		 * Caches sound i as a constant sample of 1 << i, so the first sample
+		 * of a chunk tells which sounds were mixed into it.
+		 */
+		private FakeLinePlayer(int sounds) {
+			for (int i = 0; i < sounds; i++) {
+				short[] samples = new short[FRAMES_PER_CHUNK * CHANNELS * 8];
+				Arrays.fill(samples, (short) (1 << i));
+				soundCache.put("sound" + i, new PcmSound("sound" + i, samples));
+			}
+		}
+
+		@Override
+		protected SourceDataLine openLine() {
+			return (SourceDataLine) Proxy.newProxyInstance(SourceDataLine.class.getClassLoader(),
+					new Class<?>[] { SourceDataLine.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("write")) {
+								byte[] bytes = (byte[]) args[0];
+								written.add((bytes[0] & 0xff) | (bytes[1] << 8));
+								writePermits.acquire();
+								return args[2];
+							} else if (method.getReturnType() == int.class) {
+								return 0;
+							} else if (method.getReturnType() == long.class) {
+								return 0L;
+							} else if (method.getReturnType() == boolean.class) {
+								return false;
+							}
+							return null;
+						}
+					});
+		}
+
+		private int nextChunk() throws InterruptedException {
+			writePermits.release();
+			Integer result = written.poll(10, TimeUnit.SECONDS);
+			assertNotNull(result);
+			return result;
+		}
+	}
+
+	@Test
+	public void testPriorityAndVoiceStealing() throws Exception {
+		FakeLinePlayer player = new FakeLinePlayer(MixingSoundPlayer.MAX_VOICES + 2);
+		player.init();
+		try {
+			player.play("sound0", MixingSoundPlayer.PRIORITY_NORMAL);
+			// The mixer is now blocked writing a chunk of sound0 alone.
+			assertEquals(1, (int) player.written.poll(10, TimeUnit.SECONDS));
+
+			for (int i = 1; i < MixingSoundPlayer.MAX_VOICES; i++) {
+				player.play("sound" + i, MixingSoundPlayer.PRIORITY_NORMAL);
+			}
+			assertEquals(0, player.getDroppedCount());
+
+			// Every voice is busy. A high priority sound steals the oldest of
+			// the lowest priority voices and a low priority sound is dropped.
+			player.play("sound" + MixingSoundPlayer.MAX_VOICES, MixingSoundPlayer.PRIORITY_HIGH);
+			player.play("sound" + (MixingSoundPlayer.MAX_VOICES + 1), MixingSoundPlayer.PRIORITY_LOW);
+			assertEquals(2, player.getDroppedCount());
+
+			int expected = 0;
+			for (int i = 1; i <= MixingSoundPlayer.MAX_VOICES; i++) {
+				expected += 1 << i;
+			}
+			assertEquals(expected, player.nextChunk());
+			// sound0 and the eight voices which started in the second chunk.
+			assertTrue(player.getLatencyReport().startsWith("sounds=" + (MixingSoundPlayer.MAX_VOICES + 1) + " "));
+		} finally {
+			player.writePermits.release(1000);
+			player.dispose();
+		}
+	}
+}
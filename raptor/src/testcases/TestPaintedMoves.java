@@ -0,0 +1,47 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Variant;
+import raptor.swt.chess.movelist.PaintedMoves;
+
+public class TestPaintedMoves {
+
+	@Test
+	public void testPaintedMoves() {
+		Game game = GameFactory.createStartingPosition(Variant.classic);
+		PaintedMoves painted = new PaintedMoves();
+		for (String san : new String[] { "e4", "e5", "Nf3", "Nc6" }) {
+			game.makeSanMove(san);
+			assertEquals(painted.size(), painted.getFirstChangedPly(game));
+			painted.add(game.getMoveList().getLast());
+		}
+		assertEquals(4, painted.getFirstChangedPly(game));
+
+		// A takeback and a different move repaint from the changed ply.
+		game.rollback();
+		game.rollback();
+		game.makeSanMove("Bc4");
+		assertEquals(2, painted.getFirstChangedPly(game));
+		painted.truncate(2);
+		painted.add(game.getMoveList().getLast());
+		assertEquals(3, painted.getFirstChangedPly(game));
+	}
+}
@@ -16,6 +16,9 @@ package testcases;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,15 +26,25 @@ import org.junit.Test;
 
 import junit.framework.Assert;
 import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.GameRecord;
 import raptor.chess.MoveList;
 import raptor.chess.Result;
+import raptor.chess.Variant;
+import raptor.chess.pgn.GameRecordPgnParserListener;
 import raptor.chess.pgn.ListMaintainingPgnParserListener;
 import raptor.chess.pgn.Nag;
+import raptor.chess.pgn.PgnHeader;
 import raptor.chess.pgn.PgnParser;
 import raptor.chess.pgn.PgnParserError;
 import raptor.chess.pgn.PgnParserListener;
 import raptor.chess.pgn.SimplePgnParser;
 import raptor.chess.pgn.StreamingPgnParser;
+import raptor.chess.util.GameArchive;
+import raptor.chess.util.GameArchiveWriter;
+import raptor.chess.util.OpeningIndex;
+import raptor.chess.util.OpeningIndexBuilder;
+import raptor.chess.util.PositionSearch;
 
 public class TestPgnParsing {
 
@@ -254,6 +267,77 @@ public class TestPgnParsing {
 		listener.getGames().get(0).makeSanMove("O-O-O");
 	}
 
+	@Test
+	public void testGameArchive() throws Exception {
+		File archiveFile = File.createTempFile("games", ".rga");
+		File convertedFile = File.createTempFile("games", ".pgn");
+		try {
+			// Drops and ambiguous Fischer random castles fall back to packed moves.
+			checkGameArchive(new File("projectFiles/test/crazyhouseGames.pgn"), archiveFile);
+			checkGameArchive(new File("projectFiles/test/wildFrGames.pgn"), archiveFile);
+			List<Game> games = checkGameArchive(new File("projectFiles/test/afewgames.pgn"), archiveFile);
+
+			GameArchive archive = new GameArchive(archiveFile);
+			archive.writePgn(convertedFile);
+			archive.close();
+			StreamingPgnParser parser = new StreamingPgnParser(convertedFile, Integer.MAX_VALUE);
+			ListMaintainingPgnParserListener convertedListener = new ListMaintainingPgnParserListener();
+			parser.addPgnParserListener(convertedListener);
+			parser.parse();
+			parser.close();
+			Assert.assertEquals(games.size(), convertedListener.getGames().size());
+			for (int i = 0; i < games.size(); i++) {
+				Assert.assertEquals(games.get(i).getZobristPositionHash(), convertedListener.getGames().get(i)
+						.getZobristPositionHash());
+			}
+		} finally {
+			archiveFile.delete();
+			convertedFile.delete();
+		}
+	}
+
+	@Test
+	public void testGameArchiveVersion() throws Exception {
+		File archiveFile = File.createTempFile("games", ".rga");
+		try {
+			GameArchiveWriter.convertPgn(new File("projectFiles/test/afewgames.pgn"), archiveFile);
+			RandomAccessFile header = new RandomAccessFile(archiveFile, "rw");
+			header.seek(4);
+			header.writeInt(GameArchive.VERSION - 1);
+			header.close();
+			try {
+				new GameArchive(archiveFile).close();
+				Assert.fail("An archive of another version was opened.");
+			} catch (IOException ioe) {
+			}
+		} finally {
+			archiveFile.delete();
+		}
+	}
+
+	@Test
+	public void testGameRecords() throws Exception {
+		String[] files = { "afewgames.pgn", "crazyhouseGames.pgn", "wildFrGames.pgn", "rybkagame.pgn" };
+		for (String file : files) {
+			StreamingPgnParser parser = new StreamingPgnParser(new File("projectFiles/test/" + file),
+					Integer.MAX_VALUE);
+			ListMaintainingPgnParserListener listener = new ListMaintainingPgnParserListener();
+			GameRecordPgnParserListener recordListener = new GameRecordPgnParserListener();
+			parser.addPgnParserListener(listener);
+			parser.addPgnParserListener(recordListener);
+			parser.parse();
+
+			List<GameRecord> records = recordListener.getRecords();
+			Assert.assertEquals(listener.getGames().size(), records.size());
+			for (int i = 0; i < records.size(); i++) {
+				Game game = listener.getGames().get(i);
+				GameRecord record = records.get(i);
+				Assert.assertEquals(game.getMoveList().getSize(), record.getHalfMoveCount());
+				Assert.assertEquals(game.toPgn(), record.toGame().toPgn());
+			}
+		}
+	}
+
 	@Test
 	public void testLargeFile() throws Exception {
 		StreamingPgnParser parser = new StreamingPgnParser(new File("projectFiles/test/Alekhine4Pawns.pgn"),
@@ -290,6 +374,141 @@ public class TestPgnParsing {
 		System.err.println(listener.getErrors());
 	}
 
+	@Test
+	public void testOpeningIndex() throws Exception {
+		File indexFile = File.createTempFile("openingIndex", ".idx");
+		try {
+			File pgnFile = new File("projectFiles/test/afewgames.pgn");
+			OpeningIndexBuilder builder = new OpeningIndexBuilder();
+			int lastLine = builder.addPgnFile(pgnFile, 1);
+			Assert.assertTrue(builder.getGameCount() > 0);
+			OpeningIndex.write(indexFile, builder.merge(null));
+
+			OpeningIndex index = new OpeningIndex(indexFile);
+			Assert.assertEquals(builder.getGameCount(), countStartingGames(index));
+
+			// Nothing appended so nothing new is imported.
+			OpeningIndexBuilder incremental = new OpeningIndexBuilder();
+			Assert.assertEquals(lastLine, incremental.addPgnFile(pgnFile, lastLine + 1));
+			Assert.assertEquals(0, incremental.getGameCount());
+			Assert.assertEquals(index.getSize(), incremental.merge(index).size());
+			index.close();
+		} finally {
+			indexFile.delete();
+		}
+	}
+
+	@Test
+	public void testOpeningIndexAppend() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader("projectFiles/test/afewgames.pgn"));
+		try {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		int[] gameStarts = new int[4];
+		int gameCount = 0;
+		for (int i = 0; i < lines.size() && gameCount < gameStarts.length; i++) {
+			if (lines.get(i).startsWith(SimplePgnParser.GAME_START_WORD)) {
+				gameStarts[gameCount++] = i;
+			}
+		}
+		// The first two games and the third one without its last line, which
+		// holds its result.
+		int resultLine = gameStarts[3] - 1;
+		while (lines.get(resultLine).trim().length() == 0) {
+			resultLine--;
+		}
+
+		File pgnFile = File.createTempFile("openingIndex", ".pgn");
+		File indexFile = File.createTempFile("openingIndex", ".idx");
+		try {
+			writeLines(pgnFile, lines.subList(0, resultLine));
+			OpeningIndexBuilder builder = new OpeningIndexBuilder();
+			int lastLine = builder.addPgnFile(pgnFile, 1);
+			Assert.assertEquals(2, builder.getGameCount());
+			Assert.assertTrue(lastLine <= gameStarts[2]);
+			OpeningIndex.write(indexFile, builder.merge(null));
+			OpeningIndex index = new OpeningIndex(indexFile);
+			Assert.assertEquals(2, countStartingGames(index));
+
+			// Complete the third game and append the rest of the file.
+			writeLines(pgnFile, lines);
+			OpeningIndexBuilder incremental = new OpeningIndexBuilder();
+			incremental.addPgnFile(pgnFile, lastLine + 1);
+			OpeningIndexBuilder full = new OpeningIndexBuilder();
+			full.addPgnFile(new File("projectFiles/test/afewgames.pgn"), 1);
+			Assert.assertEquals(full.getGameCount() - 2, incremental.getGameCount());
+
+			File updatedFile = File.createTempFile("openingIndex", ".idx");
+			try {
+				OpeningIndex.write(updatedFile, incremental.merge(index));
+				index.close();
+				index = new OpeningIndex(updatedFile);
+				Assert.assertEquals(full.getGameCount(), countStartingGames(index));
+				Assert.assertEquals(full.merge(null).size(), index.getSize());
+				index.close();
+			} finally {
+				updatedFile.delete();
+			}
+		} finally {
+			pgnFile.delete();
+			indexFile.delete();
+		}
+	}
+
+	@Test
+	public void testPositionSearch() throws Exception {
+		File pgnFile = new File("projectFiles/test/afewgames.pgn");
+		StreamingPgnParser parser = new StreamingPgnParser(pgnFile, Integer.MAX_VALUE);
+		ListMaintainingPgnParserListener listener = new ListMaintainingPgnParserListener();
+		parser.addPgnParserListener(listener);
+		parser.parse();
+		parser.close();
+
+		Game game = listener.getGames().get(0);
+		while (game.getMoveList().getSize() > 10) {
+			game.rollback();
+		}
+
+		final List<PositionSearch.Hit> hits = new ArrayList<PositionSearch.Hit>();
+		final boolean[] isFinished = { false };
+		PositionSearch search = new PositionSearch(PositionSearch.Query.position(game),
+				new PositionSearch.PositionSearchListener() {
+					public void hitFound(PositionSearch.Hit hit) {
+						synchronized (hits) {
+							hits.add(hit);
+						}
+					}
+
+					public void searchFinished(PositionSearch search) {
+						isFinished[0] = true;
+					}
+				});
+		search.search(pgnFile);
+
+		Assert.assertTrue(isFinished[0]);
+		Assert.assertEquals(listener.getGames().size(), search.getGamesScanned());
+		Assert.assertEquals(hits.size(), search.getHitCount());
+		boolean isFirstGameFound = false;
+		for (PositionSearch.Hit hit : hits) {
+			Assert.assertTrue(hit.getHalfMoveIndex() <= 10);
+			isFirstGameFound |= hit.getLineNumber() == 1;
+		}
+		Assert.assertTrue(isFirstGameFound);
+
+		// A game which has lost material can't reach the starting material.
+		Game start = GameFactory.createStartingPosition(Variant.classic);
+		PositionSearch.Query material = PositionSearch.Query.material(start);
+		Assert.assertTrue(material.matches(start));
+		Assert.assertTrue(material.canStillMatch(start));
+		Assert.assertFalse(material.canStillMatch(listener.getGames().get(1)));
+	}
+
 	@Test
 	public void testSuicideFile() throws Exception {
 		StreamingPgnParser parser = new StreamingPgnParser(new File("projectFiles/test/suicidegames.pgn"),
@@ -386,4 +605,60 @@ public class TestPgnParsing {
 		return builder.toString();
 	}
 
+
+	protected int countStartingGames(OpeningIndex index) throws Exception {
+		Game start = GameFactory.createStartingPosition(Variant.classic);
+		int games = 0;
+		for (OpeningIndex.Entry entry : index.getEntries(start.getZobristPositionHash())) {
+			games += entry.getCount();
+		}
+		return games;
+	}
+
+	protected void writeLines(File file, List<String> lines) throws Exception {
+		FileWriter writer = new FileWriter(file);
+		try {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Converts the specified file into an archive and checks that every game
+	 * reads back with the same moves and headers. Returns the parsed games
+	 * and leaves the archive in archiveFile.
+	 */
+	protected List<Game> checkGameArchive(File pgnFile, File archiveFile) throws Exception {
+		StreamingPgnParser parser = new StreamingPgnParser(pgnFile, Integer.MAX_VALUE);
+		ListMaintainingPgnParserListener listener = new ListMaintainingPgnParserListener();
+		parser.addPgnParserListener(listener);
+		parser.parse();
+		parser.close();
+		List<Game> games = listener.getGames();
+
+		Assert.assertEquals(games.size(), GameArchiveWriter.convertPgn(pgnFile, archiveFile));
+		Assert.assertTrue(archiveFile.length() < pgnFile.length());
+
+		GameArchive archive = new GameArchive(archiveFile);
+		try {
+			Assert.assertEquals(games.size(), archive.getGameCount());
+			for (int i = 0; i < games.size(); i++) {
+				Game expected = games.get(i);
+				Assert.assertEquals(expected.getHeader(PgnHeader.White), archive.getHeader(i, PgnHeader.White));
+				Assert.assertEquals(expected.getMoveList().getSize(), archive.getHalfMoveCount(i));
+
+				Game actual = archive.getGame(i);
+				Assert.assertEquals(expected.getZobristPositionHash(), actual.getZobristPositionHash());
+				Assert.assertEquals(expected.getHeader(PgnHeader.Event), actual.getHeader(PgnHeader.Event));
+				Assert.assertEquals(expected.getResult(), actual.getResult());
+			}
+		} finally {
+			archive.close();
+		}
+		return games;
+	}
 }
@@ -0,0 +1,140 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Variant;
+import raptor.chess.util.PolyglotBook;
+import raptor.chess.util.PolyglotUtils;
+
+public class TestPolyglotBook {
+
+	@Test
+	public void testPolyglotBook() throws Exception {
+		// Keys from the Polyglot documentation.
+		String[][] published = {
+				{ "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+						"463b96181691fc9c" },
+				{ "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+						"823c9b50fd114196" },
+				{ "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+						"22a48b5a8e47ff78" },
+				{ "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4",
+						"00fdd303c946bdd9" },
+				{ "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3",
+						"3c8123ea7b067637" },
+				{ "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4",
+						"5c3f9b829b279560" } };
+		for (String[] position : published) {
+			assertEquals(position[0], position[1], String.format("%016x",
+					GameFactory.createFromFen(position[0], Variant.classic)
+							.getPolyglotKey()));
+		}
+
+		// The incremental keys match keys calculated from scratch through
+		// double pushes, en passant, castling, promotion and rollbacks.
+		Game game = GameFactory.createStartingPosition(Variant.classic);
+		long startKey = game.getPolyglotKey();
+		assertEquals(PolyglotUtils.polyglotHash(game), startKey);
+		String[] moves = { "e4", "d5", "e5", "f5", "exf6", "Nc6", "Nf3", "Qd6",
+				"Bc4", "Bd7", "O-O", "O-O-O", "fxg7", "Kb8", "gxh8=Q" };
+		for (String move : moves) {
+			game.makeSanMove(move);
+			assertEquals(move, PolyglotUtils.polyglotHash(game), game
+					.getPolyglotKey());
+		}
+		while (game.getMoveList().getSize() > 0) {
+			game.rollback();
+			assertEquals(PolyglotUtils.polyglotHash(game), game
+					.getPolyglotKey());
+		}
+		assertEquals(startKey, game.getPolyglotKey());
+
+		Game ep = GameFactory.createFromFen(
+				"rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 3",
+				Variant.classic);
+		assertEquals(4, PolyglotUtils.polyglotEpFile(ep));
+		ep = GameFactory.createFromFen(
+				"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+				Variant.classic);
+		assertEquals(-1, PolyglotUtils.polyglotEpFile(ep));
+
+		Game castle = GameFactory.createFromFen(
+				"r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", Variant.classic);
+		long castleKey = castle.getPolyglotKey();
+		long[][] entries = { { startKey, move(12, 28), 10 },
+				{ startKey, move(11, 27), 20 },
+				{ castleKey, move(4, 7), 5 }, { -1L, move(8, 16), 1 },
+				{ 1L, move(8, 16), 1 } };
+		Arrays.sort(entries, new Comparator<long[]>() {
+			public int compare(long[] entry1, long[] entry2) {
+				long key1 = entry1[0] ^ Long.MIN_VALUE;
+				long key2 = entry2[0] ^ Long.MIN_VALUE;
+				return key1 < key2 ? -1 : key1 > key2 ? 1 : 0;
+			}
+		});
+
+		File file = File.createTempFile("book", ".bin");
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(
+					file));
+			for (long[] entry : entries) {
+				out.writeLong(entry[0]);
+				out.writeShort((int) entry[1]);
+				out.writeShort((int) entry[2]);
+				out.writeInt(0);
+			}
+			out.close();
+
+			PolyglotBook book = new PolyglotBook(file);
+			assertEquals(5, book.getSize());
+			PolyglotBook.Entry[] bookMoves = book.getEntries(GameFactory
+					.createStartingPosition(Variant.classic));
+			assertEquals(2, bookMoves.length);
+			assertEquals(11, bookMoves[0].getFrom());
+			assertEquals(27, bookMoves[0].getTo());
+			assertEquals(20, bookMoves[0].getWeight());
+			assertEquals(12, bookMoves[1].getFrom());
+
+			bookMoves = book.getEntries(castle);
+			assertEquals(1, bookMoves.length);
+			assertEquals(6, bookMoves[0].getTo());
+
+			assertTrue(book.contains(-1L));
+			assertTrue(book.contains(1L));
+			assertFalse(book.contains(2L));
+			assertFalse(book.contains(GameFactory.createFromFen(
+					"r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1", Variant.classic)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static long move(int from, int to) {
+		return from << 6 | to;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import raptor.chess.Game;
+import raptor.chess.GameFactory;
+import raptor.chess.Variant;
+import raptor.engine.uci.UCIEngine;
+import raptor.engine.uci.UCIEnginePool;
+import raptor.engine.uci.UCIMove;
+import raptor.engine.uci.info.ScoreInfo;
+import raptor.problemgen.ProblemGenerator;
+import raptor.problemgen.ProblemResult;
+import raptor.util.FileUtils;
+
+public class TestProblemGenerator {
+	/**
+	 * Accepts every candidate as a problem with its first legal move as the
+	 * solution, without an engine, and fails to save the checkpoint after
+	 * failingBatch batches, as a crash between writing a batch and saving its
+	 * checkpoint would.
+	 */
+	protected static class FixtureGenerator extends ProblemGenerator {
+		protected List<String> fens = new ArrayList<String>();
+		protected List<Integer> halfMoves = new ArrayList<Integer>();
+		protected int failingBatch;
+
+		public FixtureGenerator(ExecutorService executor, int failingBatch) {
+			super(new UCIEnginePool(new UCIEngine(), 1, 0, 0), executor);
+			this.failingBatch = failingBatch;
+			batchSize = 2;
+		}
+
+		@Override
+		protected void saveCheckpoint(File outputFile, Properties checkpoint) throws IOException {
+			if (--failingBatch == 0) {
+				throw new IOException("Simulated crash");
+			}
+			super.saveCheckpoint(outputFile, checkpoint);
+		}
+
+		@Override
+		protected ProblemResult verify(Candidate candidate) {
+			synchronized (fens) {
+				fens.add(candidate.getFen());
+				halfMoves.add(candidate.getHalfMove());
+			}
+			Game game = GameFactory.createFromFen(candidate.getFen(), Variant.classic);
+			UCIMove[] line = { new UCIMove(game.getLegalMoves().asArray()[0]) };
+			return new ProblemResult(candidate.getFen(), line, new ScoreInfo());
+		}
+	}
+
+	private static Properties loadCheckpoint(File outputFile) throws IOException {
+		Properties result = new Properties();
+		InputStream in = new FileInputStream(ProblemGenerator.getCheckpointFile(outputFile));
+		try {
+			result.load(in);
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	@Test
+	public void testCandidates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		File outputFile = File.createTempFile("problems", ".pgn");
+		try {
+			FixtureGenerator generator = new FixtureGenerator(executor, -1);
+			int problems = generator.generate(new File("projectFiles/test/afewgames.pgn"), outputFile);
+
+			Assert.assertTrue(problems > 0);
+			Assert.assertEquals(problems, generator.fens.size());
+			Assert.assertEquals(problems, generator.getMetrics().getCandidates());
+			Assert.assertEquals(12, generator.getMetrics().getGames());
+			Assert.assertEquals(problems, new HashSet<String>(generator.fens).size());
+			for (int halfMove : generator.halfMoves) {
+				Assert.assertTrue(halfMove >= ProblemGenerator.FIRST_HALF_MOVE);
+			}
+		} finally {
+			executor.shutdown();
+			outputFile.delete();
+			ProblemGenerator.getCheckpointFile(outputFile).delete();
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		File pgnFile = new File("projectFiles/test/afewgames.pgn");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		File expectedFile = File.createTempFile("problems", ".pgn");
+		File outputFile = File.createTempFile("problems", ".pgn");
+		try {
+			int problems = new FixtureGenerator(executor, -1).generate(pgnFile, expectedFile);
+			String expected = FileUtils.fileAsString(expectedFile.getAbsolutePath());
+
+			try {
+				new FixtureGenerator(executor, 4).generate(pgnFile, outputFile);
+				Assert.fail("The simulated crash was not thrown.");
+			} catch (IOException ioe) {
+			}
+			Properties checkpoint = loadCheckpoint(outputFile);
+			Assert.assertEquals(6, Integer.parseInt(checkpoint.getProperty("games")));
+			Assert.assertTrue(outputFile.length() > Long.parseLong(checkpoint.getProperty("outputLength")));
+
+			// The batch written before the crash is dropped, not duplicated.
+			new FixtureGenerator(executor, -1).generate(pgnFile, outputFile);
+			Assert.assertEquals(expected, FileUtils.fileAsString(outputFile.getAbsolutePath()));
+			Assert.assertEquals(12, Integer.parseInt(loadCheckpoint(outputFile).getProperty("games")));
+			Assert.assertEquals(problems, Integer.parseInt(loadCheckpoint(outputFile).getProperty("problems")));
+
+			// A checkpoint whose output was deleted starts over with new totals.
+			outputFile.delete();
+			new FixtureGenerator(executor, -1).generate(pgnFile, outputFile);
+			Assert.assertEquals(expected, FileUtils.fileAsString(outputFile.getAbsolutePath()));
+			Assert.assertEquals(12, Integer.parseInt(loadCheckpoint(outputFile).getProperty("games")));
+		} finally {
+			executor.shutdown();
+			expectedFile.delete();
+			outputFile.delete();
+			ProblemGenerator.getCheckpointFile(expectedFile).delete();
+			ProblemGenerator.getCheckpointFile(outputFile).delete();
+		}
+	}
+}
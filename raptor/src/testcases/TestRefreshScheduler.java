@@ -0,0 +1,98 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import raptor.connector.Connector;
+import raptor.service.RefreshScheduler;
+
+public class TestRefreshScheduler {
+
+	/**
+	 * Returns a logged in connector which adds the name of every method
+	 * invoked on it to calls.
+	 */
+	private static Connector createConnector(final List<String> calls) {
+		return (Connector) Proxy.newProxyInstance(Connector.class
+				.getClassLoader(), new Class<?>[] { Connector.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						calls.add(method.getName());
+						if (method.getName().equals("isLoggedIn")) {
+							return true;
+						} else if (method.getName().equals("equals")) {
+							return proxy == args[0];
+						} else if (method.getName().equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testRequestCoalescing() {
+		List<String> calls = new ArrayList<String>();
+		RefreshScheduler scheduler = new RefreshScheduler(
+				createConnector(calls)) {
+			@Override
+			protected void schedule(Refresh refresh) {
+				// The test drives the requests, nothing is polled.
+			}
+		};
+
+		scheduler.requestNow(RefreshScheduler.SEEKS);
+		scheduler.requestNow(RefreshScheduler.SEEKS);
+		// Two windows becoming visible while the request is outstanding.
+		scheduler.setVisible(RefreshScheduler.SEEKS, "window1", true);
+		scheduler.setVisible(RefreshScheduler.SEEKS, "window2", true);
+		assertEquals(1, scheduler.getRequestCount(RefreshScheduler.SEEKS));
+		assertEquals(1, count(calls, "sendGetSeeksMessage"));
+
+		scheduler.onResult(RefreshScheduler.SEEKS, false);
+		assertEquals(1, scheduler.getSkippedCount(RefreshScheduler.SEEKS));
+		scheduler.requestNow(RefreshScheduler.SEEKS);
+		assertEquals(2, scheduler.getRequestCount(RefreshScheduler.SEEKS));
+		assertEquals(2, count(calls, "sendGetSeeksMessage"));
+
+		// The keys are independent.
+		scheduler.requestNow(RefreshScheduler.BUG_GAMES);
+		assertEquals(1, scheduler.getRequestCount(RefreshScheduler.BUG_GAMES));
+		assertEquals(1, count(calls, "sendBugGamesMessage"));
+
+		scheduler.onResult(RefreshScheduler.SEEKS, true);
+		assertEquals(1, scheduler.getSkippedCount(RefreshScheduler.SEEKS));
+		scheduler.dispose();
+	}
+
+	private static int count(List<String> calls, String name) {
+		int result = 0;
+		for (String call : calls) {
+			if (call.equals(name)) {
+				result++;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import raptor.speech.Speech;
+import raptor.speech.SpeechQueue;
+
+public class TestSpeechQueue {
+
+	@Test
+	public void testSpeechQueue() throws Exception {
+		final StringBuilder spoken = new StringBuilder();
+		final Map<File, String> phrases = new HashMap<File, String>();
+		Speech speech = new Speech() {
+			public void dispose() {
+			}
+
+			public void init() {
+			}
+
+			public void speak(String text) {
+				spoken.append(text).append(',');
+			}
+
+			public void stop() {
+			}
+
+			public boolean synthesize(String text, File wavFile) {
+				phrases.put(wavFile, text);
+				return true;
+			}
+		};
+
+		File cacheDir = File.createTempFile("raptor", "speech");
+		cacheDir.delete();
+		final List<Runnable> submitted = new ArrayList<Runnable>();
+		final long[] now = new long[1];
+		SpeechQueue queue = new SpeechQueue(speech, cacheDir) {
+			@Override
+			protected long currentTimeMillis() {
+				return now[0];
+			}
+
+			@Override
+			protected long playAudio(File wavFile, int priority) {
+				spoken.append("wav:").append(phrases.get(wavFile))
+						.append(',');
+				return 0;
+			}
+
+			@Override
+			protected void submit(Runnable runnable) {
+				submitted.add(runnable);
+			}
+		};
+
+		try {
+			queue.add("Newton tells you: how are you doing today?",
+					SpeechQueue.PRIORITY_CHAT);
+			queue.add("an old whisper that nobody wants to hear now",
+					SpeechQueue.PRIORITY_CHAT);
+			now[0] = SpeechQueue.MAX_AGE[SpeechQueue.PRIORITY_CHAT] - 1000;
+			queue.add("knight to f3", SpeechQueue.PRIORITY_GAME);
+			queue.add("sit", SpeechQueue.PRIORITY_CHAT);
+			queue.add("SIT", SpeechQueue.PRIORITY_PARTNER);
+			assertEquals(4, queue.getPendingCount());
+			assertEquals(1, submitted.size());
+
+			// The tells expire before they are spoken, the partner tell goes
+			// before the move.
+			now[0] = SpeechQueue.MAX_AGE[SpeechQueue.PRIORITY_CHAT] + 1;
+			submitted.remove(0).run();
+			assertEquals("wav:sit,wav:knight to f3,", spoken.toString());
+			assertEquals(2, phrases.size());
+
+			// Spoken again straight away it is collapsed, later it is played
+			// from the cache.
+			queue.add("knight to f3", SpeechQueue.PRIORITY_GAME);
+			assertTrue(submitted.isEmpty());
+			now[0] += SpeechQueue.DUPLICATE_WINDOW + 1;
+			queue.add("sit", SpeechQueue.PRIORITY_PARTNER);
+			queue.add("Newton tells you: are you still there?",
+					SpeechQueue.PRIORITY_CHAT);
+			submitted.remove(0).run();
+			assertEquals("wav:sit,wav:knight to f3,wav:sit,"
+					+ "Newton tells you: are you still there?,", spoken
+					.toString());
+			assertEquals(2, phrases.size());
+			assertEquals(0, queue.getPendingCount());
+
+			// A short chat phrase is only cached the second time.
+			spoken.setLength(0);
+			queue.add("good luck", SpeechQueue.PRIORITY_CHAT);
+			submitted.remove(0).run();
+			now[0] += SpeechQueue.DUPLICATE_WINDOW + 1;
+			queue.add("good luck", SpeechQueue.PRIORITY_CHAT);
+			submitted.remove(0).run();
+			now[0] += SpeechQueue.DUPLICATE_WINDOW + 1;
+			queue.add("good luck", SpeechQueue.PRIORITY_CHAT);
+			submitted.remove(0).run();
+			assertEquals("good luck,wav:good luck,wav:good luck,", spoken
+					.toString());
+			assertEquals(3, phrases.size());
+		} finally {
+			queue.dispose();
+			cacheDir.delete();
+		}
+	}
+
+	/**
+	 * Exposes the phrase cache.
+	 */
+	protected static class CacheQueue extends SpeechQueue {
+		public CacheQueue(Speech speech, File cacheDir) {
+			super(speech, cacheDir);
+		}
+
+		public void cache(String key, File file) {
+			synchronized (this) {
+				phraseCache.put(key, file);
+				trimPhraseCache();
+			}
+		}
+
+		public void setCurrentAudio(File file) {
+			synchronized (this) {
+				currentAudio = file;
+			}
+		}
+
+		@Override
+		protected void unloadAudio(File wavFile) {
+		}
+	}
+
+	@Test
+	public void testPhraseBeingPlayedIsKept() throws Exception {
+		File cacheDir = File.createTempFile("raptor", "speech");
+		cacheDir.delete();
+		CacheQueue queue = new CacheQueue(new Speech() {
+			public void dispose() {
+			}
+
+			public void init() {
+			}
+
+			public void speak(String text) {
+			}
+
+			public void stop() {
+			}
+
+			public boolean synthesize(String text, File wavFile) {
+				return false;
+			}
+		}, cacheDir);
+		try {
+			File playing = new File(cacheDir, "playing.wav");
+			playing.createNewFile();
+			queue.cache("playing", playing);
+			queue.setCurrentAudio(playing);
+			for (int i = 0; i < SpeechQueue.MAX_CACHED_PHRASES; i++) {
+				File file = new File(cacheDir, i + ".wav");
+				file.createNewFile();
+				queue.cache("phrase " + i, file);
+			}
+			assertTrue(playing.exists());
+			assertFalse(new File(cacheDir, "0.wav").exists());
+
+			// Once it is no longer played it is evicted.
+			queue.setCurrentAudio(null);
+			File last = new File(cacheDir, "last.wav");
+			last.createNewFile();
+			queue.cache("last", last);
+			assertFalse(playing.exists());
+		} finally {
+			queue.dispose();
+			cacheDir.delete();
+		}
+	}
+}
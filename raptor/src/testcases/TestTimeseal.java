@@ -0,0 +1,122 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import raptor.connector.ics.timeseal.MessageListener;
+import raptor.connector.ics.timeseal.OutboundQueue;
+import raptor.connector.ics.timeseal.ReplayMessageProducer;
+import raptor.connector.ics.timeseal.SessionRecording;
+import raptor.connector.ics.timeseal.TimesealCrypt;
+
+public class TestTimeseal {
+
+	@Test
+	public void testTimesealCrypt() {
+		assertEquals("adbbb8b1a0a5b3d5a4a57e83d8d2c27871a7607f61717c71800a",
+				crypt("e2e4", 123456L));
+		assertEquals(
+				"9b6c61697ba5a1ad75aca492909796aca57371bca6a8bf60637daf7e7da165a17260a960a9a9d7a5607d606ca793caa1bc7fc5b8bcb4a2a5b0bca199800a",
+				crypt("tell 1 hello there everybody, how is it going?", 0L));
+		assertEquals("adb0bcb2a0a1b5bba27878bed8d2c27871a7607f61717c71800a",
+				crypt("", 9876543210L));
+	}
+
+	@Test
+	public void testOutboundQueue() throws Exception {
+		OutboundQueue queue = new OutboundQueue(2);
+		assertTrue(queue.offer("tell 1 a".getBytes(), 1));
+		assertTrue(queue.offer("tell 1 b".getBytes(), 1));
+		assertTrue(queue.offer("e2e4".getBytes(), 0));
+		assertEquals(3, queue.size());
+
+		OutboundQueue.Message message = queue.take();
+		assertEquals("e2e4", new String(message.getBytes()));
+		queue.written(message);
+		assertEquals("tell 1 a", new String(queue.take().getBytes()));
+		assertEquals("tell 1 b", new String(queue.take().getBytes()));
+		assertEquals(1, queue.getStats(0).getMessages());
+		assertEquals(0, queue.getStats(1).getMessages());
+
+		queue.close();
+		assertFalse(queue.offer("tell 1 c".getBytes(), 1));
+		assertNull(queue.take());
+	}
+
+	@Test
+	public void testSessionReplay() throws Exception {
+		File file = File.createTempFile("raptor", ".rec");
+		try {
+			SessionRecording.Recorder recorder = new SessionRecording.Recorder(
+					file, true);
+			byte[] chunk1 = "Newton tells you: hi\r\nfics% ".getBytes();
+			byte[] chunk2 = "xx[G]\0<12> rnbqkbnr\nfics% ".getBytes();
+			recorder.record(chunk1, 0, chunk1.length);
+			recorder.record(chunk2, 2, chunk2.length - 2);
+			recorder.close();
+
+			SessionRecording recording = SessionRecording.read(file);
+			assertTrue(recording.isTimesealOn());
+			assertEquals(2, recording.getChunks().size());
+			assertEquals(chunk1.length + chunk2.length - 2, recording
+					.getTotalBytes());
+
+			final StringBuilder received = new StringBuilder();
+			final CountDownLatch closed = new CountDownLatch(1);
+			ReplayMessageProducer producer = new ReplayMessageProducer(
+					recording, 0, new MessageListener() {
+						public void connectionClosed(StringBuilder buffer) {
+							closed.countDown();
+						}
+
+						public void messageArrived(StringBuilder buffer, long readTime) {
+							received.append(buffer);
+							buffer.setLength(0);
+						}
+
+						public void onError(String message, Throwable t) {
+						}
+					});
+			producer.send("e2e4\n");
+			assertTrue(closed.await(10, TimeUnit.SECONDS));
+			assertEquals("Newton tells you: hi\nfics% <12> rnbqkbnr\nfics% ",
+					received.toString());
+			assertEquals(1, producer.getSentMessages());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static String crypt(String message, long timestamp) {
+		byte[] bytes = message.getBytes();
+		byte[] output = new byte[TimesealCrypt.getCryptedLength(bytes.length)];
+		int length = TimesealCrypt.crypt(bytes, 0, bytes.length, timestamp,
+				output);
+		StringBuilder result = new StringBuilder(length * 2);
+		for (int i = 0; i < length; i++) {
+			result.append(String.format("%02x", output[i] & 0xff));
+		}
+		return result.toString();
+	}
+}
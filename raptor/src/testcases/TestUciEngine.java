@@ -0,0 +1,120 @@
+/**
+ * New BSD License
+ * http://www.opensource.org/licenses/bsd-license.php
+ * Copyright 2009-2016 RaptorProject (https://github.com/Raptor-Fics-Interface/Raptor)
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * Neither the name of the RaptorProject nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package testcases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import raptor.chess.Variant;
+import raptor.engine.uci.AnalysisCache;
+import raptor.engine.uci.UCIInfoRecord;
+import raptor.engine.uci.UCIMove;
+
+public class TestUciEngine {
+
+	@Test
+	public void testAnalysisCache() throws Exception {
+		File file = File.createTempFile("analysis", ".dat");
+		file.delete();
+		try {
+			AnalysisCache cache = new AnalysisCache(file, 1);
+			UCIMove[] pv = { new UCIMove("e2e4"), new UCIMove("e7e5") };
+			assertTrue(cache.put(1L, Variant.classic, "engine", 1, 10, 35, 0, pv));
+			assertFalse(cache.put(1L, Variant.classic, "engine", 1, 8, 20, 0, pv));
+			assertTrue(cache.put(1L, Variant.classic, "engine", 2, 9, -10, 0, pv));
+			assertTrue(cache.put(2L, Variant.classic, "engine", 1, 5, 0, 3, pv));
+			assertNull(cache.get(1L, Variant.classic, "other"));
+			assertNull(cache.get(1L, Variant.atomic, "engine"));
+
+			// Position 1 was evicted and is read back from the log.
+			AnalysisCache.Entry entry = cache.get(1L, Variant.classic, "engine");
+			assertEquals(10, entry.getDepth());
+			assertEquals(35, entry.getLine(1).getCentipawns());
+			assertEquals(-10, entry.getLine(2).getCentipawns());
+			cache.close();
+
+			cache = new AnalysisCache(file, 10);
+			entry = cache.get(2L, Variant.classic, "engine");
+			assertEquals(3, entry.getLine(1).getMateInMoves());
+			assertEquals("e2e4 e7e5", entry.getLine(1).getPv());
+			assertEquals(2, entry.getLine(1).getMoves().length);
+			assertEquals(2, cache.getPositionCount());
+			cache.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testAnalysisCacheCompaction() throws Exception {
+		File file = File.createTempFile("analysis", ".dat");
+		file.delete();
+		try {
+			AnalysisCache cache = new AnalysisCache(file, 10);
+			UCIMove[] pv = { new UCIMove("d2d4") };
+			for (int depth = 1; depth <= 1500; depth++) {
+				assertTrue(cache.put(1L, Variant.classic, "engine", 1 + depth % 2, depth, depth, 0, pv));
+			}
+			cache.close();
+			long length = file.length();
+
+			// Only the last of the 1500 records is live, so the log is rewritten.
+			cache = new AnalysisCache(file, 10);
+			assertTrue(file.length() < length / 100);
+			assertEquals(1, cache.getPositionCount());
+			AnalysisCache.Entry entry = cache.get(1L, Variant.classic, "engine");
+			assertEquals(1500, entry.getLine(1).getDepth());
+			assertEquals(1499, entry.getLine(2).getCentipawns());
+			cache.close();
+			assertFalse(new File(file.getPath() + ".tmp").exists());
+			assertFalse(new File(file.getPath() + ".bak").exists());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testUciInfoRecord() throws Exception {
+		UCIInfoRecord record = new UCIInfoRecord();
+		byte[] line = "info depth 12 seldepth 18 multipv 2 score cp -35 upperbound nodes 123456 nps 100000 hashfull 5 pv e2e4 e7e5 a7a8q string hello there"
+				.getBytes("US-ASCII");
+		assertTrue(record.parse(line, line.length));
+		assertEquals(12, record.getDepth());
+		assertEquals(18, record.getSelectiveDepth());
+		assertEquals(2, record.getMultiPv());
+		assertEquals(-35, record.getCentipawns());
+		assertTrue(record.isUpperBound());
+		assertEquals(123456, record.getNodes());
+		assertEquals(3, record.getPvLength());
+		assertEquals("a7a8q", UCIInfoRecord.toUCIMove(record.getPvMove(2)).getValue());
+		assertEquals("hello there", record.getString());
+		assertFalse(record.has(UCIInfoRecord.TIME));
+
+		line = "info currmove g1f3 currmovenumber 3 score mate -4".getBytes("US-ASCII");
+		assertTrue(record.parse(line, line.length));
+		assertFalse(record.has(UCIInfoRecord.PV));
+		assertEquals(-4, record.getMateInMoves());
+		assertEquals(3, record.getCurrentMoveNumber());
+		assertEquals(2, record.toInfos().length);
+
+		line = "info depth x".getBytes("US-ASCII");
+		assertFalse(record.parse(line, line.length));
+	}
+}